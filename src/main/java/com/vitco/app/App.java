@@ -94,14 +94,19 @@ public class App {
             ((ComplexActionManager) context.getBean("ComplexActionManager")).performValidityCheck();
         }
 
-        // open vsd file when program is started with "open with"
+        // recover the changes that were not saved (e.g. after a crash)
         MainMenuLogic mainMenuLogic = ((MainMenuLogic) context.getBean("MainMenuLogic"));
-        for (String arg : args) {
-            if (arg.endsWith(".vsd")) {
-                File file = new File(arg);
-                if (file.exists() && !file.isDirectory()) {
-                    mainMenuLogic.openFile(file);
-                    break;
+        boolean recovered = mainMenuLogic.startAutosave();
+
+        // open vsd file when program is started with "open with"
+        if (!recovered) {
+            for (String arg : args) {
+                if (arg.endsWith(".vsd")) {
+                    File file = new File(arg);
+                    if (file.exists() && !file.isDirectory()) {
+                        mainMenuLogic.openFile(file);
+                        break;
+                    }
                 }
             }
         }
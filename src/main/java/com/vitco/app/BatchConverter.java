@@ -0,0 +1,337 @@
+package com.vitco.app;
+
+import com.vitco.app.core.data.Data;
+import com.vitco.app.export.AbstractExporter;
+import com.vitco.app.export.Kv6Exporter;
+import com.vitco.app.export.MagicaVoxelExporter;
+import com.vitco.app.export.PnxExporter;
+import com.vitco.app.export.QbExporter;
+import com.vitco.app.export.VoxGameExporter;
+import com.vitco.app.export.VoxVoxLapExporter;
+import com.vitco.app.export.collada.ColladaExportWrapper;
+import com.vitco.app.importer.AbstractImporter;
+import com.vitco.app.importer.BinVoxImporter;
+import com.vitco.app.importer.CCVxlImporter;
+import com.vitco.app.importer.Kv6Importer;
+import com.vitco.app.importer.KvxImporter;
+import com.vitco.app.importer.PnxImporter;
+import com.vitco.app.importer.QbImporter;
+import com.vitco.app.importer.RawVoxImporter;
+import com.vitco.app.importer.VoxImporter;
+import com.vitco.app.layout.content.console.ConsoleInterface;
+import com.vitco.app.layout.content.console.ConsoleListener;
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.manager.lang.LangSelectorInterface;
+import com.vitco.app.util.file.FileTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts voxel files without the user interface (e.g. on a build server).
+ *
+ * Only the data, the importers and the exporters are used (no spring context and no
+ * windows). The files are converted in parallel, one file per thread.
+ *
+ * Usage: BatchConverter <input file or directory> <output directory> <format> [threads]
+ */
+public class BatchConverter {
+
+    // the output formats (name, file extension)
+    private static final String[][] FORMATS = new String[][] {
+            {"vsd", "vsd"},
+            {"collada", "dae"},
+            {"magicavoxel", "vox"},
+            {"voxgame", "vox"},
+            {"voxlap", "vox"},
+            {"kv6", "kv6"},
+            {"pnx", "pnx"},
+            {"qb", "qb"}
+    };
+
+    // the input file extensions
+    private static final List<String> INPUT_EXTENSIONS = Arrays.asList(
+            "vsd", "binvox", "kv6", "pnx", "kvx", "qb", "vox", "rawvox", "vxl");
+
+    // writes messages to the standard output
+    private static final ConsoleInterface console = new ConsoleInterface() {
+        @Override
+        public void addLine(String text) {
+            System.out.println(text);
+        }
+        @Override
+        public void addConsoleListener(ConsoleListener consoleListener) {}
+        @Override
+        public void removeConsoleListener(ConsoleListener consoleListener) {}
+        @Override
+        public void init() {}
+        @Override
+        public void finish() {}
+        @Override
+        public void clear() {}
+        @Override
+        public ArrayList<String> getConsoleData() {
+            return new ArrayList<String>();
+        }
+    };
+
+    // writes errors to the error output
+    private static final ErrorHandlerInterface errorHandler = new ErrorHandlerInterface() {
+        @Override
+        public void handle(Throwable e) {
+            e.printStackTrace();
+        }
+        @Override
+        public void setLangSelector(LangSelectorInterface langSelector) {}
+        @Override
+        public void setDebugReportUrl(String debugReportUrl) {}
+        @Override
+        public void setConsole(ConsoleInterface console) {}
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            handle(e);
+        }
+    };
+
+    // the extension of an output format (null if the format is not known)
+    public static String getExtension(String format) {
+        for (String[] entry : FORMATS) {
+            if (entry[0].equals(format)) {
+                return entry[1];
+            }
+        }
+        return null;
+    }
+
+    // load a file into new data (null if the file could not be loaded)
+    public static Data load(File file) throws IOException {
+        Data data = new Data();
+        data.setErrorHandler(errorHandler);
+        String ext = FileTools.extractExtension(file).toLowerCase(Locale.ENGLISH);
+        if ("vsd".equals(ext)) {
+            return data.loadFromFile(file) ? data : null;
+        }
+        String name = FileTools.extractNameWithoutExtension(file);
+        AbstractImporter importer;
+        // the same placement as when importing in the editor
+        boolean shiftToCenter = false;
+        if ("binvox".equals(ext)) {
+            importer = new BinVoxImporter(file, name);
+            shiftToCenter = true;
+        } else if ("kv6".equals(ext)) {
+            importer = new Kv6Importer(file, name);
+        } else if ("pnx".equals(ext)) {
+            importer = new PnxImporter(file, name);
+        } else if ("kvx".equals(ext)) {
+            importer = new KvxImporter(file, name);
+        } else if ("qb".equals(ext)) {
+            importer = new QbImporter(file, name);
+        } else if ("vox".equals(ext)) {
+            importer = new VoxImporter(file, name);
+            shiftToCenter = true;
+        } else if ("rawvox".equals(ext)) {
+            importer = new RawVoxImporter(file, name);
+            shiftToCenter = true;
+        } else if ("vxl".equals(ext)) {
+            importer = new CCVxlImporter(file, name);
+            shiftToCenter = true;
+        } else {
+            return null;
+        }
+        if (!importer.hasLoaded()) {
+            return null;
+        }
+        // replace the initial layer
+        data.deleteLayer(data.getLayers()[0]);
+        int[] center = importer.getWeightedCenter();
+        int[] highest = importer.getHighest();
+        for (AbstractImporter.Layer layer : importer.getVoxel()) {
+            int layerId = data.createLayer(layer.name);
+            data.selectLayer(layerId);
+            data.setVisible(layerId, layer.isVisible());
+            if (shiftToCenter) {
+                layer.translate(-center[0], -highest[1], -center[2]);
+            }
+            data.addVoxelsDirect(layerId, layer.getVoxels(), layer.size());
+        }
+        data.clearHistoryV();
+        return data;
+    }
+
+    // write data in a format (with the default export settings)
+    public static boolean save(Data data, File file, String format) throws IOException {
+        if ("vsd".equals(format)) {
+            return data.saveToFile(file);
+        }
+        if ("collada".equals(format)) {
+            ColladaExportWrapper colladaExportWrapper = new ColladaExportWrapper(null, console);
+            colladaExportWrapper.setObjectName(FileTools.extractNameWithoutExtension(file));
+            return colladaExportWrapper.export(data, errorHandler, file);
+        }
+        AbstractExporter exporter;
+        if ("magicavoxel".equals(format)) {
+            exporter = new MagicaVoxelExporter(file, data, null, console, false);
+        } else if ("voxgame".equals(format)) {
+            exporter = new VoxGameExporter(file, data, null, console);
+        } else if ("voxlap".equals(format)) {
+            exporter = new VoxVoxLapExporter(file, data, null, console);
+        } else if ("kv6".equals(format)) {
+            exporter = new Kv6Exporter(file, data, null, console);
+        } else if ("pnx".equals(format)) {
+            exporter = new PnxExporter(file, data, null, console);
+        } else if ("qb".equals(format)) {
+            exporter = new QbExporter(file, data, null, console);
+        } else {
+            return false;
+        }
+        return exporter.writeData();
+    }
+
+    // convert a single file, returns a line that describes the result
+    public static String convert(File input, File output, String format) {
+        try {
+            long time = System.currentTimeMillis();
+            Data data = load(input);
+            if (data == null) {
+                return "FAILED " + input.getName() + " (could not be loaded)";
+            }
+            long loaded = System.currentTimeMillis();
+            if (!save(data, output, format)) {
+                return "FAILED " + input.getName() + " (could not be written)";
+            }
+            long saved = System.currentTimeMillis();
+            return String.format("OK %s -> %s (load %d ms, save %d ms)",
+                    input.getName(), output.getName(), loaded - time, saved - loaded);
+        } catch (Exception e) {
+            errorHandler.handle(e);
+            return "FAILED " + input.getName() + " (" + e + ")";
+        }
+    }
+
+    // find all files that can be converted
+    private static List<File> findInputs(File input) {
+        List<File> result = new ArrayList<File>();
+        File[] files = input.isDirectory() ? input.listFiles() : new File[] {input};
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && INPUT_EXTENSIONS.contains(
+                        FileTools.extractExtension(file).toLowerCase(Locale.ENGLISH))) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    // helper - the path of a file that is used to compare files
+    private static String getKey(File file) {
+        try {
+            return file.getCanonicalPath().toLowerCase(Locale.ENGLISH);
+        } catch (IOException e) {
+            return file.getAbsolutePath().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    // the output files of the inputs (in the same order), null if the output would overwrite
+    // an input or the output of another input. The input name is kept if several inputs
+    // have the same name without extension (e.g. "a.qb" -> "a.qb.vox" and "a.kv6" -> "a.kv6.vox")
+    static List<File> getOutputs(List<File> inputs, File outputDirectory, String format) {
+        String ext = getExtension(format);
+        HashMap<String, Integer> nameCount = new HashMap<String, Integer>();
+        HashSet<String> inputKeys = new HashSet<String>();
+        for (File file : inputs) {
+            String name = FileTools.extractNameWithoutExtension(file).toLowerCase(Locale.ENGLISH);
+            Integer count = nameCount.get(name);
+            nameCount.put(name, count == null ? 1 : count + 1);
+            inputKeys.add(getKey(file));
+        }
+        List<File> result = new ArrayList<File>();
+        HashSet<String> outputKeys = new HashSet<String>();
+        for (File file : inputs) {
+            String name = FileTools.extractNameWithoutExtension(file);
+            File output = new File(outputDirectory, (nameCount.get(name.toLowerCase(Locale.ENGLISH)) > 1 ?
+                    file.getName() : name) + "." + ext);
+            String key = getKey(output);
+            result.add(inputKeys.contains(key) || !outputKeys.add(key) ? null : output);
+        }
+        return result;
+    }
+
+    // convert all files in parallel, returns the number of files that failed
+    public static int convertAll(File input, File outputDirectory, final String format, int threads) throws InterruptedException {
+        List<File> inputs = findInputs(input);
+        // the outputs are known before any file is written
+        List<File> outputs = getOutputs(inputs, outputDirectory, format);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < inputs.size(); i++) {
+            final File file = inputs.get(i);
+            final File output = outputs.get(i);
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    if (output == null) {
+                        return "FAILED " + file.getName() + " (the output would overwrite an input or another output)";
+                    }
+                    return convert(file, output, format);
+                }
+            }));
+        }
+        executor.shutdown();
+        int failed = 0;
+        for (Future<String> result : results) {
+            String line;
+            try {
+                line = result.get();
+            } catch (ExecutionException e) {
+                line = "FAILED (" + e.getCause() + ")";
+            }
+            if (line.startsWith("FAILED")) {
+                failed++;
+            }
+            console.addLine(line);
+        }
+        return failed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // no display is needed
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length < 3 || args.length > 4 || getExtension(args[2]) == null) {
+            StringBuilder formats = new StringBuilder();
+            for (String[] entry : FORMATS) {
+                formats.append(formats.length() == 0 ? "" : ", ").append(entry[0]);
+            }
+            System.err.println("Usage: BatchConverter <input file or directory> <output directory> <format> [threads]");
+            System.err.println("Formats: " + formats);
+            System.exit(2);
+            return;
+        }
+        File input = new File(args[0]);
+        File outputDirectory = new File(args[1]);
+        if (!input.exists() || (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())) {
+            System.err.println("Invalid input or output directory.");
+            System.exit(2);
+            return;
+        }
+        int threads = args.length == 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        long time = System.currentTimeMillis();
+        int failed = convertAll(input, outputDirectory, args[2], threads);
+        console.addLine(String.format("Converted %s in %d ms (%d failed).",
+                input.getPath(), System.currentTimeMillis() - time, failed));
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
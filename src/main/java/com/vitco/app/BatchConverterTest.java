@@ -0,0 +1,121 @@
+package com.vitco.app;
+
+import com.vitco.app.core.data.Data;
+import com.vitco.app.importer.QbImporter;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the conversion of files without the user interface.
+ */
+public class BatchConverterTest {
+
+    // helper - write a qb file with a single matrix
+    private static void writeQb(File file, int size) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(100 + size * size * size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(257).putInt(0).putInt(1).putInt(0).putInt(0).putInt(1);
+        buffer.put((byte) 4).put("test".getBytes("ASCII"));
+        buffer.putInt(size).putInt(size).putInt(size).putInt(0).putInt(0).putInt(0);
+        for (int i = 0, count = size * size * size; i < count; i++) {
+            // some empty cells and a few colors
+            buffer.putInt(i % 3 == 0 ? 0 : 0xFF000000 | (i % 5) * 40);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            out.close();
+        }
+    }
+
+    // helper - delete a directory with all files
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                boolean deleted = file.delete();
+                assert deleted : file;
+            }
+        }
+        boolean deleted = dir.delete();
+        assert deleted : dir;
+    }
+
+    @Test
+    public void testConvertAll() throws Exception {
+        File input = Files.createTempDirectory("convert_in").toFile();
+        File output = Files.createTempDirectory("convert_out").toFile();
+        try {
+            int size = 16;
+            for (int i = 0; i < 4; i++) {
+                writeQb(new File(input, "model" + i + ".qb"), size);
+            }
+            // ignored (unknown extension)
+            boolean created = new File(input, "readme.txt").createNewFile();
+            assert created;
+            int voxelCount = new QbImporter(new File(input, "model0.qb"), "Import").getVoxelCount();
+
+            for (String format : new String[] {"vsd", "qb", "kv6", "magicavoxel", "voxlap", "voxgame", "pnx", "collada"}) {
+                int failed = BatchConverter.convertAll(input, output, format, 2);
+                assert failed == 0 : format;
+                for (int i = 0; i < 4; i++) {
+                    File converted = new File(output, "model" + i + "." + BatchConverter.getExtension(format));
+                    assert converted.length() > 0 : format;
+                }
+            }
+            // the converted files contain the voxels
+            for (String ext : new String[] {"vsd", "qb"}) {
+                Data data = BatchConverter.load(new File(output, "model0." + ext));
+                assert data != null && data.getVisibleLayerVoxel().length == voxelCount : ext;
+            }
+
+            // a file that can not be read
+            created = new File(input, "broken.kv6").createNewFile();
+            assert created;
+            int failed = BatchConverter.convertAll(input, output, "qb", 2);
+            assert failed == 1;
+        } finally {
+            delete(input);
+            delete(output);
+        }
+    }
+
+    // the inputs are never overwritten and the outputs do not collide
+    @Test
+    public void testOutputs() throws Exception {
+        File dir = Files.createTempDirectory("convert_same").toFile();
+        try {
+            writeQb(new File(dir, "a.qb"), 4);
+            writeQb(new File(dir, "b.qb"), 4);
+            long length = new File(dir, "a.qb").length();
+            // qb -> qb into the same directory
+            int failed = BatchConverter.convertAll(dir, dir, "qb", 2);
+            assert failed == 2;
+            assert new File(dir, "a.qb").length() == length;
+            // the same name with different extensions
+            File[] inputs = new File[] {new File(dir, "a.qb"), new File(dir, "a.kv6"), new File(dir, "b.qb")};
+            List<File> outputs = BatchConverter.getOutputs(Arrays.asList(inputs), dir, "magicavoxel");
+            assert outputs.get(0).getName().equals("a.qb.vox");
+            assert outputs.get(1).getName().equals("a.kv6.vox");
+            assert outputs.get(2).getName().equals("b.vox");
+            // "a.qb.qb" is fine, but "b.qb" is the input
+            outputs = BatchConverter.getOutputs(Arrays.asList(inputs), dir, "qb");
+            assert outputs.get(0).getName().equals("a.qb.qb");
+            assert outputs.get(2) == null;
+            // an output of another input
+            inputs = new File[] {new File(dir, "c.qb"), new File(dir, "c.qb.kv6"), new File(dir, "c.kv6")};
+            outputs = BatchConverter.getOutputs(Arrays.asList(inputs), dir, "qb");
+            assert outputs.get(0).getName().equals("c.qb.qb") && outputs.get(1) == null;
+            assert outputs.get(2).getName().equals("c.kv6.qb");
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.vitco.app.core.data.Data;
 import com.vitco.app.core.data.container.Voxel;
 import com.vitco.app.core.world.AbstractCWorld;
 import com.vitco.app.core.world.CWorld;
+import com.vitco.app.core.world.WorldManager;
 import com.vitco.app.layout.content.ViewPrototype;
 import com.vitco.app.layout.content.mainview.components.BoundingBoxDimChooser;
 import com.vitco.app.manager.action.types.StateActionPrototype;
@@ -16,6 +17,7 @@ import com.vitco.app.manager.async.AsyncAction;
 import com.vitco.app.manager.async.AsyncActionManager;
 import com.vitco.app.manager.pref.PrefChangeListener;
 import com.vitco.app.settings.DynamicSettings;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
@@ -25,6 +27,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Rendering functionality of this World (data + overlay). Uses a DrawContainer.
@@ -54,6 +58,8 @@ public abstract class EngineViewPrototype extends ViewPrototype {
 
     // information about this container
     protected final int side;
+    // the views refresh and render in parallel (each view in its own group)
+    private final String renderGroup;
     private boolean localMouseDown = false;
     private static boolean globalMouseDown = false;
 
@@ -93,6 +99,10 @@ public abstract class EngineViewPrototype extends ViewPrototype {
     public BufferedImage getDepthImage() {
         return container.getDepthImage();
     }
+    // render an image of any size in high quality and write it as png
+    public void writeImage(OutputStream out, int width, int height, ProgressDialog progressDialog) throws IOException {
+        container.writeImage(out, width, height, progressDialog);
+    }
 
     // ==============================
     // updating of world with voxels
@@ -128,7 +138,7 @@ public abstract class EngineViewPrototype extends ViewPrototype {
         for (Voxel added : changed[1]) {
             world.updateVoxel(added);
         }
-        asyncActionManager.addAsyncAction(new AsyncAction("asyncWorld" + side) {
+        asyncActionManager.addAsyncAction(new AsyncAction("asyncWorld" + side, renderGroup) {
             @Override
             public void performAction() {
                 container.doNotSkipNextWorldRender();
@@ -152,7 +162,7 @@ public abstract class EngineViewPrototype extends ViewPrototype {
         for (Voxel added : changed[1]) {
             selectedVoxelsWorld.updateVoxel(added);
         }
-        asyncActionManager.addAsyncAction(new AsyncAction("asyncSelWorld" + side) {
+        asyncActionManager.addAsyncAction(new AsyncAction("asyncSelWorld" + side, renderGroup) {
             @Override
             public void performAction() {
                 container.doNotSkipNextWorldRender();
@@ -197,7 +207,7 @@ public abstract class EngineViewPrototype extends ViewPrototype {
             final boolean skipNextWorldRender = container.isSkipNextWorldRender();
             final boolean doNotSkipNextWorldRender = container.isDoNotSkipNextWorldRender();
             container.resetSkipRenderFlags();
-            asyncActionManager.addAsyncAction(new AsyncAction("repaint" + side) {
+            asyncActionManager.addAsyncAction(new AsyncAction("repaint" + side, renderGroup) {
                 @Override
                 public void performAction() {
                     if (skipNextWorldRender) {
@@ -400,6 +410,7 @@ public abstract class EngineViewPrototype extends ViewPrototype {
             side = -1;
         }
         this.side = side;
+        renderGroup = "render" + side;
 
         // initialize the container
         container = new DrawContainer(side) {
@@ -449,16 +460,22 @@ public abstract class EngineViewPrototype extends ViewPrototype {
             }
         });
 
-        // NOTE: The sum should be not more than 40k (!)
-        // define the max poly count for this world
-        Config.maxPolysVisible = side == -1 ? 10000 : 2500;
-        // set up world objects
-        world = new CWorld(true, side, false);
-
-        // define the max poly count for this selected world
-        Config.maxPolysVisible = side == -1 ? 10000 : 2500;
-        // no culling, since we want to see all selected voxels (in the main view only)
-        selectedVoxelsWorld = new CWorld(side != -1, side, true);
+        // (the views that are already created might render meanwhile)
+        WorldManager.JPCT_LOCK.writeLock().lock();
+        try {
+            // NOTE: The sum should be not more than 40k (!)
+            // define the max poly count for this world
+            Config.maxPolysVisible = side == -1 ? 10000 : 2500;
+            // set up world objects
+            world = new CWorld(true, side, false);
+
+            // define the max poly count for this selected world
+            Config.maxPolysVisible = side == -1 ? 10000 : 2500;
+            // no culling, since we want to see all selected voxels (in the main view only)
+            selectedVoxelsWorld = new CWorld(side != -1, side, true);
+        } finally {
+            WorldManager.JPCT_LOCK.writeLock().unlock();
+        }
 
         // define camera
         camera = new CCamera();
@@ -2,9 +2,11 @@ package com.vitco.app.core.container;
 
 import com.threed.jpct.*;
 import com.vitco.app.core.data.container.ExtendedVector;
+import com.vitco.app.core.world.WorldManager;
 import com.vitco.app.manager.async.AsyncAction;
 import com.vitco.app.settings.DynamicSettings;
 import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.graphic.G2DUtil;
 
 import javax.swing.*;
@@ -12,10 +14,14 @@ import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Defines the final draw container that draws the rendering of animation and voxels.
@@ -806,14 +812,35 @@ public abstract class DrawContainer extends AbstractDrawContainer {
         return buffer.getPixels();
     }
 
+    // a world is only rendered by one thread at a time
+    private final Object renderSync = new Object();
+
+    // render the world into a buffer (the other views render at the same time)
+    private void renderWorld(FrameBuffer fb) {
+        WorldManager.JPCT_LOCK.readLock().lock();
+        try {
+            synchronized (renderSync) {
+                world.renderScene(fb);
+                world.draw(fb);
+            }
+        } finally {
+            WorldManager.JPCT_LOCK.readLock().unlock();
+        }
+    }
+
     // get the image currently rendered in high quality
     public final BufferedImage getImage() {
-        Config.useFramebufferWithAlpha = true;
-        HackedFrameBuffer fb = new HackedFrameBuffer(getWidth()*2, getHeight()*2, FrameBuffer.SAMPLINGMODE_NORMAL);
-        Config.useFramebufferWithAlpha = false;
+        HackedFrameBuffer fb;
+        WorldManager.JPCT_LOCK.writeLock().lock();
+        try {
+            Config.useFramebufferWithAlpha = true;
+            fb = new HackedFrameBuffer(getWidth()*2, getHeight()*2, FrameBuffer.SAMPLINGMODE_NORMAL);
+            Config.useFramebufferWithAlpha = false;
+        } finally {
+            WorldManager.JPCT_LOCK.writeLock().unlock();
+        }
         fb.clear(new Color(0, 0, 0, 0));
-        world.renderScene(fb);
-        world.draw(fb);
+        renderWorld(fb);
         fb.update();
 
         int w = fb.getWidth() * 2;
@@ -821,28 +848,7 @@ public abstract class DrawContainer extends AbstractDrawContainer {
         int[] pixels = fb.getPixels();
 
         // fix t-junction anomalies
-        for (int c = w + 1; c < zBuffer.length - w - 1; c++) {
-
-            int x = zBuffer[c] + Integer.MAX_VALUE;
-            int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
-            int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
-            int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
-            int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
-            int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
-            int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
-            int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
-            int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
-
-            if (Math.abs(x1 - x7) < 100000 && Math.abs(x1 - x) > 100000) {
-                pixels[c] = pixels[c-1];
-            } else if (Math.abs(x5 - x3) < 100000 && Math.abs(x5 - x) > 100000) {
-                pixels[c] = pixels[c-w];
-            } else if (Math.abs(x0 - x8) < 100000 && Math.abs(x0 - x) > 100000) {
-                pixels[c] = pixels[c+w-1];
-            } else if (Math.abs(x2 - x6) < 100000 && Math.abs(x2 - x) > 100000) {
-                pixels[c] = pixels[c-w-1];
-            }
-        }
+        ZBufferProcessor.fixTJunctions(zBuffer, pixels, w);
 
         BufferedImage largeResult = new BufferedImage(fb.getWidth(), fb.getHeight(), BufferedImage.TYPE_INT_ARGB);
         fb.display(largeResult.getGraphics());
@@ -859,82 +865,72 @@ public abstract class DrawContainer extends AbstractDrawContainer {
         return result;
     }
 
+    // render the current view in high quality with any size and write it as png
+    // (rendered in strips, so the image does not need to fit in memory)
+    public final void writeImage(OutputStream out, int width, int height, final ProgressDialog progressDialog) throws IOException {
+        new TiledRenderer(world, width, height) {
+            @Override
+            protected void renderExclusive(final Runnable render) throws IOException {
+                // render when no view is rendered
+                final CountDownLatch done = new CountDownLatch(1);
+                final RuntimeException[] error = new RuntimeException[1];
+                asyncActionManager.addAsyncAction(new AsyncAction() {
+                    @Override
+                    public void performAction() {
+                        try {
+                            render.run();
+                        } catch (RuntimeException e) {
+                            error[0] = e;
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while rendering.", e);
+                }
+                if (error[0] != null) {
+                    throw error[0];
+                }
+            }
+
+            @Override
+            protected void onProgress(float percent) {
+                if (progressDialog != null) {
+                    progressDialog.setProgress(percent);
+                }
+            }
+        }.write(out);
+    }
+
     // get the image currently rendered in high quality
     public final BufferedImage getDepthImage() {
-        HackedFrameBuffer fb = new HackedFrameBuffer(getWidth(), getHeight(), FrameBuffer.SAMPLINGMODE_OGSS);
+        HackedFrameBuffer fb;
+        WorldManager.JPCT_LOCK.readLock().lock();
+        try {
+            fb = new HackedFrameBuffer(getWidth(), getHeight(), FrameBuffer.SAMPLINGMODE_OGSS);
+        } finally {
+            WorldManager.JPCT_LOCK.readLock().unlock();
+        }
         fb.clear();
-        world.renderScene(fb);
-        world.draw(fb);
+        renderWorld(fb);
         fb.update();
         BufferedImage largeResult = new BufferedImage(fb.getWidth()*2, fb.getHeight()*2, BufferedImage.TYPE_INT_ARGB);
 
         int w = fb.getWidth() * 2;
         int[] zBuffer = fb.getZBuffer(); //requires hacked framebuffer
 
-        // compute mean
-        int count = 0;
-        long mean = 0;
-        for (int aZBuffer : zBuffer) {
-            if (aZBuffer != -2147483647) {
-                mean += aZBuffer;
-                count++;
-            }
-        }
-        mean /= count;
-
-        // compute std deviation
-        long sum = 0;
-        for (int aZBuffer : zBuffer) {
-            if (aZBuffer != -2147483647) {
-                sum += Math.pow(aZBuffer - mean, 2);
-            }
-        }
-        double stdDev = Math.sqrt(sum/(double)count);
-
         // compute min and max for non outliers
-        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
-        for (int aZBuffer : zBuffer) {
-            if (Math.abs(aZBuffer - mean) < 4*stdDev) {
-                min = Math.min(min, aZBuffer);
-                max = Math.max(max, aZBuffer);
-            }
-        }
-        int range = max - min;
+        int[] depthRange = ZBufferProcessor.getDepthRange(zBuffer, w);
 
         // fix t-junction anomalies
-        for (int c = w + 1; c < zBuffer.length - w - 1; c++) {
-
-            int x = zBuffer[c] + Integer.MAX_VALUE;
-            int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
-            int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
-            int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
-            int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
-            int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
-            int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
-            int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
-            int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
-
-            if (Math.abs(x1 - x7) < 100000 && Math.abs(x1 - x) > 100000) {
-                zBuffer[c] = zBuffer[c-1];
-            } else if (Math.abs(x5 - x3) < 100000 && Math.abs(x5 - x) > 100000) {
-                zBuffer[c] = zBuffer[c-w];
-            } else if (Math.abs(x0 - x8) < 100000 && Math.abs(x0 - x) > 100000) {
-                zBuffer[c] = zBuffer[c+w-1];
-            } else if (Math.abs(x2 - x6) < 100000 && Math.abs(x2 - x) > 100000) {
-                zBuffer[c] = zBuffer[c-w-1];
-            }
-        }
+        ZBufferProcessor.fixTJunctions(zBuffer, zBuffer, w);
 
         // compute values
-        for (int c = 0; c < zBuffer.length; c++) {
-            if (zBuffer[c] != -2147483647) {
-                int val = (int) Math.min(255,Math.max(0,
-                        ((zBuffer[c] - min) ) / (range/255f)
-                ));
-                //if (c%w < largeResult.getWidth() && c/w < largeResult.getHeight())
-                largeResult.setRGB((c % w), (c / w), new Color(val, val, val, 255).getRGB());
-            }
-        }
+        ZBufferProcessor.drawDepth(zBuffer, ((DataBufferInt) largeResult.getRaster().getDataBuffer()).getData(), w, depthRange);
 
         // resize
         BufferedImage result = new BufferedImage(largeResult.getWidth()/2, largeResult.getHeight()/2, BufferedImage.TYPE_INT_ARGB);
@@ -951,64 +947,9 @@ public abstract class DrawContainer extends AbstractDrawContainer {
     // draw shader
     private void drawShader() {
         // draw depth outline (software "shader")
-        // idea: http://coding-experiments.blogspot.de/2010/06/edge-detection.html
         int w = buffer.getWidth() * DynamicSettings.SAMPLING_MODE_MULTIPLICAND;
-        int factor = w * DynamicSettings.SAMPLING_MODE_MULTIPLICAND * DynamicSettings.SAMPLING_MODE_MULTIPLICAND;
-        int[] zBuffer = buffer.getZBuffer(); //requires hacked framebuffer
-        @SuppressWarnings("MismatchedReadAndWriteOfArray")
-        int[] pixels = buffer.getPixels();
-        for (int c = w*2 + 2; c < zBuffer.length - w*2 - 2; c++) {
-
-            int x = zBuffer[c] + Integer.MAX_VALUE;
-            if (x != 0) {
-                int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
-                int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
-                int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
-                int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
-                int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
-                int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
-                int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
-                int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
-
-                // move one more outwards
-                int x5t = zBuffer[c-2*w] + Integer.MAX_VALUE;
-                int x3t = zBuffer[c+2*w] + Integer.MAX_VALUE;
-                int x1t = zBuffer[c-2] + Integer.MAX_VALUE;
-                int x7t = zBuffer[c+2] + Integer.MAX_VALUE;
-                int x2t = zBuffer[c-2*w - 2] + Integer.MAX_VALUE;
-                int x8t = zBuffer[c-2*w + 2] + Integer.MAX_VALUE;
-                int x0t = zBuffer[c+2*w - 2] + Integer.MAX_VALUE;
-                int x6t = zBuffer[c+2*w + 2] + Integer.MAX_VALUE;
-
-                int p1 = Math.abs(x1 - x7)/10;
-                int p2 = Math.abs(x5 - x3)/10;
-                int p3 = Math.abs(x0 - x8)/10;
-                int p4 = Math.abs(x2 - x6)/10;
-                int val = (Math.abs(x7 - x7t) < p1 && Math.abs(x1 - x1t) < p1 ? 1 : 0) +
-                        (Math.abs(x5 - x5t) < p2 && Math.abs(x3 - x3t) < p2 ? 1 : 0) +
-                        (Math.abs(x0 - x0t) < p3 && Math.abs(x8 - x8t) < p3 ? 1 : 0) +
-                        (Math.abs(x2 - x2t) < p4 && Math.abs(x6 - x6t) < p4 ? 1 : 0);
-
-                if (val == 2 || val == 3) {
-                    pixels[(c/factor)*w + (c/DynamicSettings.SAMPLING_MODE_MULTIPLICAND)%w] = 0;
-                    c += DynamicSettings.SAMPLING_MODE_MULTIPLICAND -1;
-                } else {
-
-                    int xP = x + 100;
-                    int xM = x - 100;
-
-                    int s = ((x1t > xP && x7 > xP) || (x1t < xM && x7t < xM) ? 1 : 0) +
-                            ((x5t > xP && x3 > xP) || (x5t < xM && x3t < xM) ? 1 : 0) +
-                            ((x2t > xP && x6 > xP) || (x2t < xM && x6t < xM) ? 1 : 0) +
-                            ((x0t > xP && x8 > xP) || (x0t < xM && x8t < xM) ? 1 : 0);
-
-                    if (s == 2 || s == 3) {
-                        pixels[(c/factor)*w + (c/DynamicSettings.SAMPLING_MODE_MULTIPLICAND)%w] = 0;
-                        c += DynamicSettings.SAMPLING_MODE_MULTIPLICAND -1;
-                    }
-                }
-            }
-        }
+        //requires hacked framebuffer
+        ZBufferProcessor.shade(buffer.getZBuffer(), buffer.getPixels(), w, DynamicSettings.SAMPLING_MODE_MULTIPLICAND);
     }
 
     // render the content of this container
@@ -1023,16 +964,24 @@ public abstract class DrawContainer extends AbstractDrawContainer {
             buffer.clear(bgColor);
             if (drawWorld && world != null) {
                 refreshVoxels(false);
-                world.renderScene(buffer);
-                if (useWireFrame) {
-                    world.drawWireframe(buffer, VitcoSettings.WIREFRAME_COLOR);
-                } else {
-                    world.draw(buffer);
-                    if (drawSelectedVoxels) { // only draw selected voxels if enables
-                        selectedVoxelsWorld.drawAsShiftedWireframe(buffer,
-                                VitcoSettings.SELECTED_VOXEL_WIREFRAME_COLOR,
-                                VitcoSettings.SELECTED_VOXEL_WIREFRAME_COLOR_SHIFTED);
+                // the other views render at the same time, but may not change textures meanwhile
+                WorldManager.JPCT_LOCK.readLock().lock();
+                try {
+                    synchronized (renderSync) {
+                        world.renderScene(buffer);
+                        if (useWireFrame) {
+                            world.drawWireframe(buffer, VitcoSettings.WIREFRAME_COLOR);
+                        } else {
+                            world.draw(buffer);
+                            if (drawSelectedVoxels) { // only draw selected voxels if enables
+                                selectedVoxelsWorld.drawAsShiftedWireframe(buffer,
+                                        VitcoSettings.SELECTED_VOXEL_WIREFRAME_COLOR,
+                                        VitcoSettings.SELECTED_VOXEL_WIREFRAME_COLOR_SHIFTED);
+                            }
+                        }
                     }
+                } finally {
+                    WorldManager.JPCT_LOCK.readLock().unlock();
                 }
             }
             buffer.update();
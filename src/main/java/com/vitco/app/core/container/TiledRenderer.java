@@ -0,0 +1,195 @@
+package com.vitco.app.core.container;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.Config;
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.Matrix;
+import com.threed.jpct.World;
+import com.vitco.app.core.world.WorldManager;
+import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.graphic.PngStreamWriter;
+import com.vitco.app.util.misc.WorkerPool;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a world into a png image of any size (offline render mode).
+ *
+ * The image is split into strips of rows. Every strip is rendered with a sub-frustum of the camera
+ * (the camera space is sheared, so the strip is in the center), post-processed and encoded on the
+ * shared workers and then streamed into the png. Only a few strips are in memory at any time.
+ *
+ * Note: The world is rendered by one strip at a time (the world holds the render state), but the
+ * post-processing and encoding of the previous strips continues meanwhile.
+ */
+public class TiledRenderer {
+
+    // very small frame buffers are not rendered correctly
+    private static final int MIN_STRIP_ROWS = 16;
+
+    // sample rows that are rendered above and below a strip (neighbourhood of the t-junction repair)
+    private static final int MARGIN = 2;
+
+    private final World world;
+    private final int width;
+    private final int height;
+    private final int stripRows;
+
+    // constructor
+    public TiledRenderer(World world, int width, int height) {
+        this(world, width, height, VitcoSettings.OFFLINE_RENDER_STRIP_PIXELS / width);
+    }
+
+    // constructor (with the rows of a strip)
+    TiledRenderer(World world, int width, int height, int stripRows) {
+        this.world = world;
+        this.width = width;
+        this.height = height;
+        this.stripRows = Math.max(MIN_STRIP_ROWS, stripRows);
+    }
+
+    // run the rendering of a strip (can be overwritten to prevent
+    // that the world is rendered somewhere else at the same time)
+    protected void renderExclusive(Runnable render) throws IOException {
+        render.run();
+    }
+
+    // called when a strip was written
+    protected void onProgress(float percent) {}
+
+    // render a strip of samples (every pixel of the image has four samples)
+    private HackedFrameBuffer renderSamples(int top, int rows) {
+        int sampleWidth = width * 2;
+        HackedFrameBuffer fb;
+        WorldManager.JPCT_LOCK.writeLock().lock();
+        try {
+            Config.useFramebufferWithAlpha = true;
+            fb = new HackedFrameBuffer(sampleWidth, rows, FrameBuffer.SAMPLINGMODE_NORMAL);
+            Config.useFramebufferWithAlpha = false;
+        } finally {
+            WorldManager.JPCT_LOCK.writeLock().unlock();
+        }
+
+        // shift the strip into the center of the camera (the scale
+        // stays the same, the frustum only contains the strip)
+        Camera camera = world.getCamera();
+        Matrix back = camera.getBack().cloneMatrix();
+        Matrix shear = new Matrix();
+        shear.set(2, 1, (height - top - rows / 2f) / (sampleWidth / camera.getFOV()));
+        Matrix sheared = back.cloneMatrix();
+        sheared.matMul(shear);
+        camera.setBack(sheared);
+        try {
+            fb.clear(new Color(0, 0, 0, 0));
+            WorldManager.JPCT_LOCK.readLock().lock();
+            try {
+                world.renderScene(fb);
+                world.draw(fb);
+            } finally {
+                WorldManager.JPCT_LOCK.readLock().unlock();
+            }
+            fb.update();
+        } finally {
+            camera.setBack(back);
+        }
+        return fb;
+    }
+
+    // post-process and encode a rendered strip
+    private PngStreamWriter.Strip processStrip(HackedFrameBuffer fb, int offset, int rows) {
+        int sampleWidth = fb.getWidth();
+        int[] pixels = fb.getPixels();
+
+        // fix t-junction anomalies
+        ZBufferProcessor.fixTJunctions(fb.getZBuffer(), pixels, sampleWidth);
+
+        // resize (average the four samples of every pixel)
+        int[] result = new int[width * rows];
+        for (int y = 0; y < rows; y++) {
+            int c = (offset + y * 2) * sampleWidth;
+            for (int x = 0, i = y * width; x < width; x++, i++, c += 2) {
+                result[i] = average(pixels[c], pixels[c + 1], pixels[c + sampleWidth], pixels[c + sampleWidth + 1]);
+            }
+        }
+        return PngStreamWriter.encodeStrip(result, width, rows);
+    }
+
+    // average of four colors (weighted by alpha)
+    private static int average(int c1, int c2, int c3, int c4) {
+        int a1 = c1 >>> 24, a2 = c2 >>> 24, a3 = c3 >>> 24, a4 = c4 >>> 24;
+        int alpha = a1 + a2 + a3 + a4;
+        if (alpha == 0) {
+            return 0;
+        }
+        int red = (((c1 >> 16) & 0xFF) * a1 + ((c2 >> 16) & 0xFF) * a2 +
+                ((c3 >> 16) & 0xFF) * a3 + ((c4 >> 16) & 0xFF) * a4 + alpha / 2) / alpha;
+        int green = (((c1 >> 8) & 0xFF) * a1 + ((c2 >> 8) & 0xFF) * a2 +
+                ((c3 >> 8) & 0xFF) * a3 + ((c4 >> 8) & 0xFF) * a4 + alpha / 2) / alpha;
+        int blue = ((c1 & 0xFF) * a1 + (c2 & 0xFF) * a2 +
+                (c3 & 0xFF) * a3 + (c4 & 0xFF) * a4 + alpha / 2) / alpha;
+        return (((alpha + 2) / 4) << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    // helper - wait for an encoded strip
+    private static PngStreamWriter.Strip getStrip(Future<PngStreamWriter.Strip> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering strips.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // render the image and write it as png
+    public final void write(OutputStream out) throws IOException {
+        PngStreamWriter writer = new PngStreamWriter(out, width, height);
+        // the last strip also contains the remaining rows
+        int count = Math.max(1, height / stripRows);
+        // limit the strips that are in memory
+        int maxPending = Runtime.getRuntime().availableProcessors() + 1;
+        ArrayDeque<Future<PngStreamWriter.Strip>> pending = new ArrayDeque<Future<PngStreamWriter.Strip>>();
+        try {
+            for (int i = 0; i < count; i++) {
+                final int from = i * stripRows;
+                final int rows = i == count - 1 ? height - from : stripRows;
+                // the sample rows (with margin)
+                final int top = Math.max(0, from * 2 - MARGIN);
+                final int bottom = Math.min(height * 2, (from + rows) * 2 + MARGIN);
+                final HackedFrameBuffer[] result = new HackedFrameBuffer[1];
+                renderExclusive(new Runnable() {
+                    @Override
+                    public void run() {
+                        result[0] = renderSamples(top, bottom - top);
+                    }
+                });
+                final HackedFrameBuffer fb = result[0];
+                pending.add(WorkerPool.submit(new Callable<PngStreamWriter.Strip>() {
+                    @Override
+                    public PngStreamWriter.Strip call() throws Exception {
+                        return processStrip(fb, from * 2 - top, rows);
+                    }
+                }));
+                while (pending.size() > maxPending || (i == count - 1 && !pending.isEmpty())) {
+                    writer.write(getStrip(pending.poll()));
+                    onProgress((i + 1 - pending.size()) * 100f / count);
+                }
+            }
+        } finally {
+            for (Future<PngStreamWriter.Strip> future : pending) {
+                future.cancel(true);
+            }
+        }
+        writer.finish();
+    }
+}
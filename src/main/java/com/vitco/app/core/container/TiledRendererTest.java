@@ -0,0 +1,114 @@
+package com.vitco.app.core.container;
+
+import com.threed.jpct.SimpleVector;
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.world.CWorld;
+import com.vitco.app.settings.VitcoSettings;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Test that rendering in strips results in the same image as rendering in one piece.
+ */
+public class TiledRendererTest {
+
+    // helper - a world with random voxels
+    private static CWorld createWorld(int size) {
+        Random rand = new Random(1);
+        CWorld world = new CWorld(true, -1, false);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    if (rand.nextInt(3) != 0) {
+                        world.updateVoxel(new Voxel(0, x - size / 2, -y, z - size / 2, 0xFF000000 | rand.nextInt(), 0));
+                    }
+                }
+            }
+        }
+        //noinspection StatementWithEmptyBody
+        while (!world.refreshWorld()) {}
+        world.getCamera().setFOVLimits(VitcoSettings.MAIN_VIEW_ZOOM_FOV, VitcoSettings.MAIN_VIEW_ZOOM_FOV);
+        world.getCamera().setFOV(VitcoSettings.MAIN_VIEW_ZOOM_FOV);
+        world.getCamera().setPosition(new SimpleVector(-200, -150, -300));
+        world.getCamera().lookAt(new SimpleVector(0, -size / 2, 0));
+        return world;
+    }
+
+    // helper
+    private static BufferedImage render(CWorld world, int width, int height, int stripRows) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TiledRenderer(world, width, height, stripRows).write(out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testStrips() throws Exception {
+        CWorld world = createWorld(24);
+        int width = 400;
+        int height = 300;
+        // one strip (the camera is not changed)
+        BufferedImage expected = render(world, width, height, height);
+        int visible = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (expected.getRGB(x, y) != 0) {
+                    visible++;
+                }
+            }
+        }
+        assert visible > width * height / 10;
+        for (int stripRows : new int[] {16, 37, 100}) {
+            BufferedImage image = render(world, width, height, stripRows);
+            assert image.getWidth() == width && image.getHeight() == height;
+            // a few pixels on edges differ (rounding)
+            int different = 0;
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    if (image.getRGB(x, y) != expected.getRGB(x, y)) {
+                        different++;
+                    }
+                }
+            }
+            assert different < visible / 200 : stripRows + " " + different;
+        }
+    }
+
+    // render large images (only the encoded size is counted)
+    @Test
+    public void benchmark() throws Exception {
+        CWorld world = createWorld(32);
+        for (int size : new int[] {2048, 4096, 8192}) {
+            final long[] written = new long[1];
+            final long[] maxMemory = new long[1];
+            final Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            final long baseMemory = runtime.totalMemory() - runtime.freeMemory();
+            long time = System.currentTimeMillis();
+            new TiledRenderer(world, size, size) {
+                @Override
+                protected void onProgress(float percent) {
+                    maxMemory[0] = Math.max(maxMemory[0], runtime.totalMemory() - runtime.freeMemory() - baseMemory);
+                }
+            }.write(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    written[0]++;
+                }
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    written[0] += len;
+                }
+            });
+            System.out.println(String.format("%d x %d: %d ms, %d kb, at most %d mb used (%d cores)",
+                    size, size, System.currentTimeMillis() - time, written[0] / 1024, maxMemory[0] / 1024 / 1024,
+                    runtime.availableProcessors()));
+        }
+    }
+}
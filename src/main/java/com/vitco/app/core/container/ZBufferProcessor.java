@@ -0,0 +1,430 @@
+package com.vitco.app.core.container;
+
+import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.misc.WorkerPool;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Post-processing of rendered z buffers (depth outline shader, t-junction repair and depth range).
+ *
+ * Large buffers are split into tiles of rows that are processed by the shared workers. The shader
+ * and the t-junction repair are sequential by nature (positions are skipped, repaired values are
+ * read again), so the borders of the tiles are resolved afterwards. The result is the same as
+ * when the whole buffer is processed in one loop (which is done for small buffers and when
+ * there is only one core, as the tiles cost more than they save then).
+ */
+public final class ZBufferProcessor {
+
+    // prevent instantiation
+    private ZBufferProcessor() {}
+
+    // the value of an empty z buffer position
+    public static final int EMPTY = -2147483647;
+
+    // the rows of a tile (all rows if the buffer is processed in one loop)
+    private static int getTileRows(int[] zBuffer, int w) {
+        return WorkerPool.isParallel() && zBuffer.length >= VitcoSettings.POST_PROCESSING_MIN_TILED_SIZE ?
+                VitcoSettings.POST_PROCESSING_TILE_ROWS : zBuffer.length / w + 1;
+    }
+
+    // helper - the amount of tiles for a range
+    private static int getTileCount(int first, int last, int tileSize) {
+        return last <= first ? 0 : (last - first + tileSize - 1) / tileSize;
+    }
+
+    // ==============================
+    // depth outline
+    // ==============================
+
+    // check if a position is on a depth edge (software "shader")
+    // idea: http://coding-experiments.blogspot.de/2010/06/edge-detection.html
+    private static boolean isEdge(int[] zBuffer, int c, int w) {
+        int x = zBuffer[c] + Integer.MAX_VALUE;
+        if (x == 0) {
+            return false;
+        }
+        int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
+        int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
+        int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
+        int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
+        int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
+        int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
+        int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
+        int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
+
+        // move one more outwards
+        int x5t = zBuffer[c-2*w] + Integer.MAX_VALUE;
+        int x3t = zBuffer[c+2*w] + Integer.MAX_VALUE;
+        int x1t = zBuffer[c-2] + Integer.MAX_VALUE;
+        int x7t = zBuffer[c+2] + Integer.MAX_VALUE;
+        int x2t = zBuffer[c-2*w - 2] + Integer.MAX_VALUE;
+        int x8t = zBuffer[c-2*w + 2] + Integer.MAX_VALUE;
+        int x0t = zBuffer[c+2*w - 2] + Integer.MAX_VALUE;
+        int x6t = zBuffer[c+2*w + 2] + Integer.MAX_VALUE;
+
+        int p1 = Math.abs(x1 - x7)/10;
+        int p2 = Math.abs(x5 - x3)/10;
+        int p3 = Math.abs(x0 - x8)/10;
+        int p4 = Math.abs(x2 - x6)/10;
+        int val = (Math.abs(x7 - x7t) < p1 && Math.abs(x1 - x1t) < p1 ? 1 : 0) +
+                (Math.abs(x5 - x5t) < p2 && Math.abs(x3 - x3t) < p2 ? 1 : 0) +
+                (Math.abs(x0 - x0t) < p3 && Math.abs(x8 - x8t) < p3 ? 1 : 0) +
+                (Math.abs(x2 - x2t) < p4 && Math.abs(x6 - x6t) < p4 ? 1 : 0);
+        if (val == 2 || val == 3) {
+            return true;
+        }
+
+        int xP = x + 100;
+        int xM = x - 100;
+
+        int s = ((x1t > xP && x7 > xP) || (x1t < xM && x7t < xM) ? 1 : 0) +
+                ((x5t > xP && x3 > xP) || (x5t < xM && x3t < xM) ? 1 : 0) +
+                ((x2t > xP && x6 > xP) || (x2t < xM && x6t < xM) ? 1 : 0) +
+                ((x0t > xP && x8 > xP) || (x0t < xM && x8t < xM) ? 1 : 0);
+        return s == 2 || s == 3;
+    }
+
+    // shade the positions [from, to), returns the next position that needs to be checked
+    // (the positions after an edge are skipped when the buffer is over sampled)
+    private static int shade(int[] zBuffer, int[] pixels, int w, int m, int from, int to) {
+        int factor = w * m * m;
+        int c = from;
+        for (; c < to; c++) {
+            if (isEdge(zBuffer, c, w)) {
+                pixels[(c/factor)*w + (c/m)%w] = 0;
+                c += m - 1;
+            }
+        }
+        return c;
+    }
+
+    // the first position that is checked no matter which of the positions [start, start + m)
+    // is checked first (returns "to" if this is not known before the end of the tile)
+    private static int getSyncPosition(int[] zBuffer, int w, int m, int start, int to) {
+        int[] pos = new int[m];
+        for (int i = 0; i < m; i++) {
+            pos[i] = start + i;
+        }
+        while (true) {
+            int min = 0;
+            boolean synced = true;
+            for (int i = 1; i < m; i++) {
+                if (pos[i] != pos[0]) {
+                    synced = false;
+                }
+                if (pos[i] < pos[min]) {
+                    min = i;
+                }
+            }
+            if (synced || pos[min] >= to) {
+                return Math.min(pos[0], to);
+            }
+            pos[min] += isEdge(zBuffer, pos[min], w) ? m : 1;
+        }
+    }
+
+    // draw the depth outline into the pixels
+    // (w is the width of the z buffer, m the sampling mode multiplicand)
+    public static void shade(int[] zBuffer, int[] pixels, int w, int m) {
+        shade(zBuffer, pixels, w, m, getTileRows(zBuffer, w));
+    }
+
+    static void shade(final int[] zBuffer, final int[] pixels, final int w, final int m, int tileRows) {
+        final int first = w*2 + 2;
+        final int last = zBuffer.length - w*2 - 2;
+        final int tileSize = Math.max(2, tileRows) * w;
+        int count = getTileCount(first, last, tileSize);
+        if (count <= 1) {
+            shade(zBuffer, pixels, w, m, first, last);
+            return;
+        }
+        final int[] sync = new int[count];
+        final int[] next = new int[count];
+        WorkerPool.forEach(count, new WorkerPool.PartProcessor() {
+            @Override
+            public void process(int tile) {
+                int start = first + tile * tileSize;
+                int end = Math.min(last, start + tileSize);
+                sync[tile] = getSyncPosition(zBuffer, w, m, start, end);
+                if (sync[tile] < end) {
+                    next[tile] = shade(zBuffer, pixels, w, m, sync[tile], end);
+                }
+            }
+        });
+        // the first position of a tile depends on the previous tile
+        int c = first;
+        for (int tile = 0; tile < count; tile++) {
+            int end = Math.min(last, first + (tile + 1) * tileSize);
+            if (sync[tile] < end) {
+                shade(zBuffer, pixels, w, m, c, sync[tile]);
+                c = next[tile];
+            } else {
+                c = shade(zBuffer, pixels, w, m, c, end);
+            }
+        }
+    }
+
+    // ==============================
+    // t-junctions
+    // ==============================
+
+    // the relative position that a position is repaired from (zero if there is no anomaly)
+    private static int getRepairSource(int[] z, int i, int w) {
+        int x = z[i] + Integer.MAX_VALUE;
+        int x5 = z[i-w] + Integer.MAX_VALUE;
+        int x3 = z[i+w] + Integer.MAX_VALUE;
+        int x1 = z[i-1] + Integer.MAX_VALUE;
+        int x7 = z[i+1] + Integer.MAX_VALUE;
+        int x2 = z[i-w - 1] + Integer.MAX_VALUE;
+        int x8 = z[i-w + 1] + Integer.MAX_VALUE;
+        int x0 = z[i+w - 1] + Integer.MAX_VALUE;
+        int x6 = z[i+w + 1] + Integer.MAX_VALUE;
+
+        if (Math.abs(x1 - x7) < 100000 && Math.abs(x1 - x) > 100000) {
+            return -1;
+        } else if (Math.abs(x5 - x3) < 100000 && Math.abs(x5 - x) > 100000) {
+            return -w;
+        } else if (Math.abs(x0 - x8) < 100000 && Math.abs(x0 - x) > 100000) {
+            return w - 1;
+        } else if (Math.abs(x2 - x6) < 100000 && Math.abs(x2 - x) > 100000) {
+            return -w - 1;
+        }
+        return 0;
+    }
+
+    // repair the positions [from, to), the arrays start at the offset positions
+    // (the changed positions, their original and their new values are added to the log if there is one)
+    private static void fixTJunctions(int[] z, int zOffset, int[] t, int tOffset, int w, int from, int to, TIntArrayList log) {
+        for (int c = from; c < to; c++) {
+            int source = getRepairSource(z, c - zOffset, w);
+            if (source != 0) {
+                int j = c - tOffset;
+                if (log != null) {
+                    log.add(c);
+                    log.add(t[j]);
+                    log.add(t[j + source]);
+                }
+                t[j] = t[j + source];
+            }
+        }
+    }
+
+    // repair t-junction anomalies (positions with a different depth than both neighbours),
+    // the target is either the pixels or the z buffer itself (w is the width of the z buffer)
+    public static void fixTJunctions(int[] zBuffer, int[] target, int w) {
+        fixTJunctions(zBuffer, target, w, getTileRows(zBuffer, w));
+    }
+
+    static void fixTJunctions(final int[] zBuffer, final int[] target, final int w, int tileRows) {
+        final int first = w + 1;
+        final int last = zBuffer.length - w - 1;
+        // the positions before and after a position that are read
+        // (the repair of a position only depends on the halo before it and the original values after it)
+        final int halo = w + 1;
+        // the tiles need to be larger than three halos (the last tile contains the remainder)
+        final int tileSize = Math.max(4, tileRows) * w;
+        final int count = last - first < tileSize * 2 || w < 3 ? 1 : (last - first) / tileSize;
+        if (count == 1) {
+            fixTJunctions(zBuffer, 0, target, 0, w, first, last, null);
+            return;
+        }
+        final boolean inPlace = zBuffer == target;
+        // the original values around the tile borders (the values of the other tile that are read)
+        final int[][] before = new int[count][];
+        final int[][] after = new int[count][];
+        for (int tile = 1; tile < count; tile++) {
+            int start = first + tile * tileSize;
+            before[tile] = Arrays.copyOfRange(target, start - halo, start);
+            after[tile - 1] = Arrays.copyOfRange(target, start, start + halo);
+        }
+        // the changes of every tile (position, original value, new value)
+        final TIntArrayList[] logs = new TIntArrayList[count];
+        // repair the tiles with the original values of the neighbouring tiles
+        WorkerPool.forEach(count, new WorkerPool.PartProcessor() {
+            @Override
+            public void process(int tile) {
+                int start = first + tile * tileSize;
+                int end = tile == count - 1 ? last : start + tileSize;
+                TIntArrayList log = new TIntArrayList();
+                logs[tile] = log;
+                // the first positions (with the values before the tile)
+                int[] window = new int[halo * 3];
+                int offset = start - halo;
+                if (tile == 0) {
+                    System.arraycopy(target, offset, window, 0, halo);
+                } else {
+                    System.arraycopy(before[tile], 0, window, 0, halo);
+                }
+                System.arraycopy(target, start, window, halo, halo * 2);
+                fixTJunctions(inPlace ? window : zBuffer, inPlace ? offset : 0, window, offset, w, start, start + halo, log);
+                System.arraycopy(window, halo, target, start, halo);
+                // the center of the tile
+                fixTJunctions(zBuffer, 0, target, 0, w, start + halo, end - halo, log);
+                // the last positions
+                fixTileEnd(zBuffer, target, w, end, after[tile], log);
+            }
+        });
+        // repair a tile again if the previous tile changed the values before the tile
+        for (int tile = 1; tile < count; tile++) {
+            int start = first + tile * tileSize;
+            int end = tile == count - 1 ? last : start + tileSize;
+            int[] original = before[tile];
+            boolean changed = false;
+            for (int i = 0; i < halo && !changed; i++) {
+                changed = original[i] != target[start - halo + i];
+            }
+            if (changed) {
+                refixTile(zBuffer, target, w, start, end, after[tile], logs[tile]);
+            }
+        }
+    }
+
+    // repair the last positions of a tile (with the original values after the tile)
+    private static void fixTileEnd(int[] zBuffer, int[] target, int w, int end, int[] after, TIntArrayList log) {
+        int halo = w + 1;
+        int[] window = new int[halo * 3];
+        int offset = end - halo * 2;
+        System.arraycopy(target, offset, window, 0, halo * 2);
+        if (after == null) {
+            System.arraycopy(target, end, window, halo * 2, halo);
+        } else {
+            System.arraycopy(after, 0, window, halo * 2, halo);
+        }
+        boolean inPlace = zBuffer == target;
+        fixTJunctions(inPlace ? window : zBuffer, inPlace ? offset : 0, window, offset, w, end - halo, end, log);
+        System.arraycopy(window, halo, target, end - halo, halo);
+    }
+
+    // repair a tile again with the final values before the tile, the positions are only repaired
+    // until the result is the same as before for a full halo (then the remaining result is the same)
+    private static void refixTile(int[] zBuffer, int[] target, int w, int start, int end, int[] after, TIntArrayList log) {
+        int halo = w + 1;
+        // restore the original values
+        for (int i = log.size() - 3; i >= 0; i -= 3) {
+            target[log.getQuick(i)] = log.getQuick(i + 1);
+        }
+        int entry = 0;
+        int equal = 0;
+        int c = start;
+        for (int limit = end - halo; c < limit && equal < halo; c++) {
+            // the previous result of this position
+            while (entry < log.size() && log.getQuick(entry) < c) {
+                entry += 3;
+            }
+            int previous = entry < log.size() && log.getQuick(entry) == c ? log.getQuick(entry + 2) : target[c];
+            int source = getRepairSource(zBuffer, c, w);
+            if (source != 0) {
+                target[c] = target[c + source];
+            }
+            equal = target[c] == previous ? equal + 1 : 0;
+        }
+        if (equal < halo) {
+            // the result is different up to the last positions
+            TIntArrayList unused = new TIntArrayList();
+            fixTJunctions(zBuffer, 0, target, 0, w, c, end - halo, unused);
+            fixTileEnd(zBuffer, target, w, end, after, unused);
+        } else {
+            // the remaining result is the same as before
+            for (; entry < log.size(); entry += 3) {
+                if (log.getQuick(entry) >= c) {
+                    target[log.getQuick(entry)] = log.getQuick(entry + 2);
+                }
+            }
+        }
+    }
+
+    // ==============================
+    // depth range
+    // ==============================
+
+    // compute the range of the depth values (min and max, ignoring outliers)
+    public static int[] getDepthRange(int[] zBuffer, int w) {
+        return getDepthRange(zBuffer, w, getTileRows(zBuffer, w));
+    }
+
+    static int[] getDepthRange(final int[] zBuffer, int w, int tileRows) {
+        final int tileSize = Math.max(2, tileRows) * w;
+        final int count = getTileCount(0, zBuffer.length, tileSize);
+
+        // compute mean
+        final long[] sums = new long[count];
+        final int[] counts = new int[count];
+        WorkerPool.forEach(count, new WorkerPool.PartProcessor() {
+            @Override
+            public void process(int tile) {
+                long mean = 0;
+                int n = 0;
+                for (int c = tile * tileSize, end = Math.min(zBuffer.length, c + tileSize); c < end; c++) {
+                    if (zBuffer[c] != EMPTY) {
+                        mean += zBuffer[c];
+                        n++;
+                    }
+                }
+                sums[tile] = mean;
+                counts[tile] = n;
+            }
+        });
+        long mean = 0;
+        int n = 0;
+        for (int tile = 0; tile < count; tile++) {
+            mean += sums[tile];
+            n += counts[tile];
+        }
+        final long finalMean = mean / n;
+
+        // compute std deviation
+        // (sequential, the sum is rounded in every step and depends on the order)
+        long sum = 0;
+        for (int aZBuffer : zBuffer) {
+            if (aZBuffer != EMPTY) {
+                sum += Math.pow(aZBuffer - finalMean, 2);
+            }
+        }
+        final double stdDev = Math.sqrt(sum/(double)n);
+
+        // compute min and max for non outliers
+        final int[] mins = new int[count];
+        final int[] maxs = new int[count];
+        WorkerPool.forEach(count, new WorkerPool.PartProcessor() {
+            @Override
+            public void process(int tile) {
+                int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                for (int c = tile * tileSize, end = Math.min(zBuffer.length, c + tileSize); c < end; c++) {
+                    if (Math.abs(zBuffer[c] - finalMean) < 4*stdDev) {
+                        min = Math.min(min, zBuffer[c]);
+                        max = Math.max(max, zBuffer[c]);
+                    }
+                }
+                mins[tile] = min;
+                maxs[tile] = max;
+            }
+        });
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int tile = 0; tile < count; tile++) {
+            min = Math.min(min, mins[tile]);
+            max = Math.max(max, maxs[tile]);
+        }
+        return new int[] {min, max};
+    }
+
+    // write the depth values as gray scale into the rgb values (empty positions are not changed)
+    public static void drawDepth(final int[] zBuffer, final int[] rgb, int w, final int[] depthRange) {
+        final int tileSize = Math.max(2, getTileRows(zBuffer, w)) * w;
+        final int range = depthRange[1] - depthRange[0];
+        WorkerPool.forEach(getTileCount(0, zBuffer.length, tileSize), new WorkerPool.PartProcessor() {
+            @Override
+            public void process(int tile) {
+                for (int c = tile * tileSize, end = Math.min(zBuffer.length, c + tileSize); c < end; c++) {
+                    if (zBuffer[c] != EMPTY) {
+                        int val = (int) Math.min(255,Math.max(0,
+                                ((zBuffer[c] - depthRange[0]) ) / (range/255f)
+                        ));
+                        rgb[c] = 0xFF000000 | (val << 16) | (val << 8) | val;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package com.vitco.app.core.container;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test that the tiled post-processing produces the same result as processing the
+ * buffer in one loop (the previous implementation in the DrawContainer).
+ */
+public class ZBufferProcessorTest {
+
+    // helper - a z buffer with planes at different depths, noise and empty areas
+    private static int[] createZBuffer(int w, int h, long seed) {
+        Random rand = new Random(seed);
+        int[] zBuffer = new int[w * h];
+        Arrays.fill(zBuffer, ZBufferProcessor.EMPTY);
+        // planes with a gradient
+        for (int i = 0; i < 40; i++) {
+            int x1 = rand.nextInt(w), y1 = rand.nextInt(h);
+            int x2 = Math.min(w, x1 + rand.nextInt(w / 2 + 1) + 1), y2 = Math.min(h, y1 + rand.nextInt(h / 2 + 1) + 1);
+            int base = rand.nextInt(200000000);
+            int dx = rand.nextInt(2001) - 1000, dy = rand.nextInt(2001) - 1000;
+            for (int y = y1; y < y2; y++) {
+                for (int x = x1; x < x2; x++) {
+                    zBuffer[y * w + x] = base + dx * x + dy * y;
+                }
+            }
+        }
+        // anomalies (single positions and short runs)
+        for (int i = 0, count = zBuffer.length / 50; i < count; i++) {
+            int c = rand.nextInt(zBuffer.length);
+            int len = rand.nextInt(4) == 0 ? rand.nextInt(6) + 1 : 1;
+            int value = rand.nextInt(8) == 0 ? ZBufferProcessor.EMPTY : zBuffer[c] + 500000;
+            for (int j = c; j < Math.min(zBuffer.length, c + len); j++) {
+                zBuffer[j] = value;
+            }
+        }
+        return zBuffer;
+    }
+
+    // helper - random pixels
+    private static int[] createPixels(int length, long seed) {
+        Random rand = new Random(seed);
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = rand.nextInt();
+        }
+        return pixels;
+    }
+
+    // the previous implementation of the shader
+    private static void shadeReference(int[] zBuffer, int[] pixels, int w, int m) {
+        int factor = w * m * m;
+        for (int c = w*2 + 2; c < zBuffer.length - w*2 - 2; c++) {
+
+            int x = zBuffer[c] + Integer.MAX_VALUE;
+            if (x != 0) {
+                int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
+                int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
+                int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
+                int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
+                int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
+                int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
+                int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
+                int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
+
+                int x5t = zBuffer[c-2*w] + Integer.MAX_VALUE;
+                int x3t = zBuffer[c+2*w] + Integer.MAX_VALUE;
+                int x1t = zBuffer[c-2] + Integer.MAX_VALUE;
+                int x7t = zBuffer[c+2] + Integer.MAX_VALUE;
+                int x2t = zBuffer[c-2*w - 2] + Integer.MAX_VALUE;
+                int x8t = zBuffer[c-2*w + 2] + Integer.MAX_VALUE;
+                int x0t = zBuffer[c+2*w - 2] + Integer.MAX_VALUE;
+                int x6t = zBuffer[c+2*w + 2] + Integer.MAX_VALUE;
+
+                int p1 = Math.abs(x1 - x7)/10;
+                int p2 = Math.abs(x5 - x3)/10;
+                int p3 = Math.abs(x0 - x8)/10;
+                int p4 = Math.abs(x2 - x6)/10;
+                int val = (Math.abs(x7 - x7t) < p1 && Math.abs(x1 - x1t) < p1 ? 1 : 0) +
+                        (Math.abs(x5 - x5t) < p2 && Math.abs(x3 - x3t) < p2 ? 1 : 0) +
+                        (Math.abs(x0 - x0t) < p3 && Math.abs(x8 - x8t) < p3 ? 1 : 0) +
+                        (Math.abs(x2 - x2t) < p4 && Math.abs(x6 - x6t) < p4 ? 1 : 0);
+
+                if (val == 2 || val == 3) {
+                    pixels[(c/factor)*w + (c/m)%w] = 0;
+                    c += m - 1;
+                } else {
+                    int xP = x + 100;
+                    int xM = x - 100;
+
+                    int s = ((x1t > xP && x7 > xP) || (x1t < xM && x7t < xM) ? 1 : 0) +
+                            ((x5t > xP && x3 > xP) || (x5t < xM && x3t < xM) ? 1 : 0) +
+                            ((x2t > xP && x6 > xP) || (x2t < xM && x6t < xM) ? 1 : 0) +
+                            ((x0t > xP && x8 > xP) || (x0t < xM && x8t < xM) ? 1 : 0);
+
+                    if (s == 2 || s == 3) {
+                        pixels[(c/factor)*w + (c/m)%w] = 0;
+                        c += m - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    // the previous implementation of the t-junction repair
+    private static void fixTJunctionsReference(int[] zBuffer, int[] target, int w) {
+        for (int c = w + 1; c < zBuffer.length - w - 1; c++) {
+
+            int x = zBuffer[c] + Integer.MAX_VALUE;
+            int x5 = zBuffer[c-w] + Integer.MAX_VALUE;
+            int x3 = zBuffer[c+w] + Integer.MAX_VALUE;
+            int x1 = zBuffer[c-1] + Integer.MAX_VALUE;
+            int x7 = zBuffer[c+1] + Integer.MAX_VALUE;
+            int x2 = zBuffer[c-w - 1] + Integer.MAX_VALUE;
+            int x8 = zBuffer[c-w + 1] + Integer.MAX_VALUE;
+            int x0 = zBuffer[c+w - 1] + Integer.MAX_VALUE;
+            int x6 = zBuffer[c+w + 1] + Integer.MAX_VALUE;
+
+            if (Math.abs(x1 - x7) < 100000 && Math.abs(x1 - x) > 100000) {
+                target[c] = target[c-1];
+            } else if (Math.abs(x5 - x3) < 100000 && Math.abs(x5 - x) > 100000) {
+                target[c] = target[c-w];
+            } else if (Math.abs(x0 - x8) < 100000 && Math.abs(x0 - x) > 100000) {
+                target[c] = target[c+w-1];
+            } else if (Math.abs(x2 - x6) < 100000 && Math.abs(x2 - x) > 100000) {
+                target[c] = target[c-w-1];
+            }
+        }
+    }
+
+    // the previous implementation of the depth range
+    private static int[] getDepthRangeReference(int[] zBuffer) {
+        int count = 0;
+        long mean = 0;
+        for (int aZBuffer : zBuffer) {
+            if (aZBuffer != -2147483647) {
+                mean += aZBuffer;
+                count++;
+            }
+        }
+        mean /= count;
+        long sum = 0;
+        for (int aZBuffer : zBuffer) {
+            if (aZBuffer != -2147483647) {
+                sum += Math.pow(aZBuffer - mean, 2);
+            }
+        }
+        double stdDev = Math.sqrt(sum/(double)count);
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int aZBuffer : zBuffer) {
+            if (Math.abs(aZBuffer - mean) < 4*stdDev) {
+                min = Math.min(min, aZBuffer);
+                max = Math.max(max, aZBuffer);
+            }
+        }
+        return new int[] {min, max};
+    }
+
+    @Test
+    public void testShade() throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            int w = 40 + seed * 7;
+            int h = 30 + seed * 5;
+            int[] zBuffer = createZBuffer(w, h, seed);
+            for (int m = 1; m <= 2; m++) {
+                for (int tileRows : new int[] {1, 2, 3, 7, 1000}) {
+                    int[] expected = createPixels(zBuffer.length, seed);
+                    int[] pixels = expected.clone();
+                    shadeReference(zBuffer, expected, w, m);
+                    ZBufferProcessor.shade(zBuffer, pixels, w, m, tileRows);
+                    assert Arrays.equals(expected, pixels) : seed + " " + m + " " + tileRows;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFixTJunctions() throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            int w = 40 + seed * 7;
+            int h = 30 + seed * 5;
+            for (int tileRows : new int[] {1, 2, 3, 7, 1000}) {
+                // repair the pixels
+                int[] zBuffer = createZBuffer(w, h, seed);
+                int[] expected = createPixels(zBuffer.length, seed);
+                int[] pixels = expected.clone();
+                fixTJunctionsReference(zBuffer, expected, w);
+                ZBufferProcessor.fixTJunctions(zBuffer, pixels, w, tileRows);
+                assert Arrays.equals(expected, pixels) : seed + " " + tileRows;
+                // repair the z buffer
+                int[] expectedZ = zBuffer.clone();
+                fixTJunctionsReference(expectedZ, expectedZ, w);
+                ZBufferProcessor.fixTJunctions(zBuffer, zBuffer, w, tileRows);
+                assert Arrays.equals(expectedZ, zBuffer) : seed + " " + tileRows;
+            }
+        }
+    }
+
+    @Test
+    public void testDepthRange() throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            int w = 40 + seed * 7;
+            int[] zBuffer = createZBuffer(w, 30 + seed * 5, seed);
+            for (int tileRows : new int[] {1, 3, 1000}) {
+                assert Arrays.equals(getDepthRangeReference(zBuffer),
+                        ZBufferProcessor.getDepthRange(zBuffer, w, tileRows));
+            }
+        }
+    }
+
+    // post-processing of a 4K view with over sampling (the z buffer is twice the size)
+    @Test
+    public void benchmark() throws Exception {
+        int m = 2;
+        int w = 3840 * m;
+        int h = 2160 * m;
+        int[] zBuffer = createZBuffer(w, h, 1);
+        int[] pixels = createPixels(zBuffer.length, 1);
+        int[] work = new int[zBuffer.length];
+        for (int run = 0; run < 3; run++) {
+            System.arraycopy(pixels, 0, work, 0, work.length);
+            long time = System.currentTimeMillis();
+            shadeReference(zBuffer, work, w, m);
+            long shadeRef = System.currentTimeMillis() - time;
+            System.arraycopy(pixels, 0, work, 0, work.length);
+            time = System.currentTimeMillis();
+            ZBufferProcessor.shade(zBuffer, work, w, m);
+            long shadeTiled = System.currentTimeMillis() - time;
+
+            System.arraycopy(pixels, 0, work, 0, work.length);
+            time = System.currentTimeMillis();
+            fixTJunctionsReference(zBuffer, work, w);
+            long fixRef = System.currentTimeMillis() - time;
+            System.arraycopy(pixels, 0, work, 0, work.length);
+            time = System.currentTimeMillis();
+            ZBufferProcessor.fixTJunctions(zBuffer, work, w);
+            long fixTiled = System.currentTimeMillis() - time;
+
+            time = System.currentTimeMillis();
+            getDepthRangeReference(zBuffer);
+            long rangeRef = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            ZBufferProcessor.getDepthRange(zBuffer, w);
+            long rangeTiled = System.currentTimeMillis() - time;
+
+            System.out.println(String.format(
+                    "4K (OGSS): shader %d ms -> %d ms, t-junctions %d ms -> %d ms, depth range %d ms -> %d ms (%d cores)",
+                    shadeRef, shadeTiled, fixRef, fixTiled, rangeRef, rangeTiled, Runtime.getRuntime().availableProcessors()));
+        }
+    }
+}
@@ -14,11 +14,16 @@ import java.util.ArrayList;
 /**
  * Implements all functions defined in the AnimationDataInterface
  */
+// the intents are only serialized into the temporary history file (no versioning needed)
+@SuppressWarnings("serial")
 public abstract class AnimationData extends GeneralData implements AnimationDataInterface {
 
     // constructor
     protected AnimationData() {
         super();
+        // old history is moved to disk when it gets too big
+        historyManagerA.setSpillContext(this);
+        historyManagerA.setMemoryBudget(VitcoSettings.HISTORY_MEMORY_BUDGET);
         // notify when the data changes
         historyManagerA.addChangeListener(new HistoryChangeListener<BasicActionIntent>() {
             @Override
@@ -483,36 +488,46 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final boolean isValid(int pointId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.points.containsKey(pointId);
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int addPoint(SimpleVector position) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             int pointId = getFreePointId();
             ExtendedVector point = new ExtendedVector(position.x, position.y, position.z, pointId);
             historyManagerA.applyIntent(new AddPointIntent(point, false));
             return pointId;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean removePoint(int pointId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (isValid(pointId)) {
                 historyManagerA.applyIntent(new RemovePointIntent(pointId, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean movePoint(int pointId, SimpleVector pos) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (isValid(pointId)) {
                 if (dataContainer.activeFrame == -1) { // move real point
@@ -523,55 +538,70 @@ public abstract class AnimationData extends GeneralData implements AnimationData
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean areConnected(int id1, int id2) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.lines.containsKey(Math.min(id1, id2) + "_" + Math.max(id1, id2));
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean connect(int id1, int id2) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (isValid(id1) && isValid(id2) && !areConnected(id1, id2)) {
                 historyManagerA.applyIntent(new ConnectIntent(id1, id2, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean clearA() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.points.size() > 0) {
                 historyManagerA.applyIntent(new ClearAIntent(false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean disconnect(int id1, int id2) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (isValid(id1) && isValid(id2) && areConnected(id1, id2)) {
                 historyManagerA.applyIntent(new DisconnectIntent(id1, id2, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final ExtendedVector getPoint(int pointId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.activeFrame != -1) { // return frame point if defined
                 ExtendedVector point = dataContainer.frames.get(dataContainer.activeFrame).getPoint(pointId);
                 if (point != null) {
@@ -579,6 +609,8 @@ public abstract class AnimationData extends GeneralData implements AnimationData
                 }
             }
             return dataContainer.points.get(pointId);
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -586,18 +618,23 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean pointBufferValid = false;
     @Override
     public final ExtendedVector[] getPoints() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!pointBufferValid) {
-                if (pointBuffer.length != dataContainer.points.size()) {
-                    pointBuffer = new ExtendedVector[dataContainer.points.size()];
-                }
-                int i = 0;
-                for (int pointId : dataContainer.points.keySet()) {
-                    pointBuffer[i++] = getPoint(pointId);
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!pointBufferValid) {
+                    if (pointBuffer.length != dataContainer.points.size()) {
+                        pointBuffer = new ExtendedVector[dataContainer.points.size()];
+                    }
+                    int i = 0;
+                    for (int pointId : dataContainer.points.keySet()) {
+                        pointBuffer[i++] = getPoint(pointId);
+                    }
+                    pointBufferValid = true;
                 }
-                pointBufferValid = true;
+                return pointBuffer.clone();
             }
-            return pointBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -605,100 +642,132 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean lineBufferValid = false;
     @Override
     public final ExtendedVector[][] getLines() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!lineBufferValid) {
-                if (lineBuffer.length != dataContainer.lines.size()) {
-                    lineBuffer = new ExtendedVector[dataContainer.lines.size()][2];
-                }
-                int i = 0;
-                for (ExtendedLine line : dataContainer.lines.values()) {
-                    lineBuffer[i][0] = getPoint(line.point1);
-                    lineBuffer[i][1] = getPoint(line.point2);
-                    i++;
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!lineBufferValid) {
+                    if (lineBuffer.length != dataContainer.lines.size()) {
+                        lineBuffer = new ExtendedVector[dataContainer.lines.size()][2];
+                    }
+                    int i = 0;
+                    for (ExtendedLine line : dataContainer.lines.values()) {
+                        lineBuffer[i][0] = getPoint(line.point1);
+                        lineBuffer[i][1] = getPoint(line.point2);
+                        i++;
+                    }
+                    lineBufferValid = true;
                 }
-                lineBufferValid = true;
+                return lineBuffer.clone();
             }
-            return lineBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final void undoA() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerA.unapply();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final void redoA() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerA.apply();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean canUndoA() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return historyManagerA.canUndo();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean canRedoA() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return historyManagerA.canRedo();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean selectFrame(int frameId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.frames.containsKey(frameId) || frameId == -1) {
                 historyManagerA.applyIntent(new SetActiveFrameIntent(frameId, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int getSelectedFrame() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.activeFrame;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int createFrame(String frameName) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             int frameId = getFreeFrameId();
             historyManagerA.applyIntent(new CreateFrameIntent(frameId, frameName, false));
             return frameId;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean deleteFrame(int frameId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.frames.containsKey(frameId)) {
                 historyManagerA.applyIntent(new DeleteFrameIntent(frameId, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean renameFrame(int frameId, String newName) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.frames.containsKey(frameId)) {
                 historyManagerA.applyIntent(new RenameFrameIntent(frameId, newName, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -706,37 +775,48 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean frameBufferValid = false;
     @Override
     public final Integer[] getFrames() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!frameBufferValid) {
-                if (frameBuffer.length != dataContainer.frames.size()) {
-                    frameBuffer = new Integer[dataContainer.frames.size()];
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!frameBufferValid) {
+                    if (frameBuffer.length != dataContainer.frames.size()) {
+                        frameBuffer = new Integer[dataContainer.frames.size()];
+                    }
+                    dataContainer.frames.keySet().toArray(frameBuffer);
+                    frameBufferValid = true;
                 }
-                dataContainer.frames.keySet().toArray(frameBuffer);
-                frameBufferValid = true;
+                return frameBuffer.clone();
             }
-            return frameBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean resetFrame(int frameId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.frames.containsKey(frameId)) {
                 historyManagerA.applyIntent(new ResetFrameIntent(frameId, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final String getFrameName(int frameId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.frames.containsKey(frameId)) {
                 return dataContainer.frames.get(frameId).getName();
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.ExtendedVector;
-import com.vitco.app.settings.VitcoSettings;
 
 /**
  * Defines the methods that help highlighting of animation data (frame).
@@ -18,17 +17,21 @@ public abstract class AnimationHighlight extends AnimationData implements Animat
     // remove all highlights
     @Override
     public void removeAnimationHighlights() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             highlightPoint(-1);
             selectPoint(-1);
             setPreviewLine(-1, -1);
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // highlight / remove highlight of point
     @Override
     public boolean highlightPoint(int id) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (isValid(id) || id == -1) {
                 if (highlightedPoint != id) {
                     highlightedPoint = id;
@@ -37,13 +40,16 @@ public abstract class AnimationHighlight extends AnimationData implements Animat
                 return true;
             }
             return false;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // select / deselect point
     @Override
     public boolean selectPoint(int id) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (isValid(id) || id == -1) {
                 if (selectedPoint != id) {
                     selectedPoint = id;
@@ -52,29 +58,38 @@ public abstract class AnimationHighlight extends AnimationData implements Animat
                 return true;
             }
             return false;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // retrieve highlighted point
     @Override
     public int getHighlightedPoint() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return highlightedPoint;
+        } finally {
+            readLock.unlock();
         }
     }
 
     // retrieve selected point
     @Override
     public int getSelectedPoint() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return selectedPoint;
+        } finally {
+            readLock.unlock();
         }
     }
 
     // set the preview line
     @Override
     public final void setPreviewLine(int id1, int id2) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (previewLine[0] != id1 || previewLine[1] != id2) {
                 if ((isValid(id1) || id1 == -1) && (isValid(id2) || id2 == -1)) {
                     previewLine[0] = id1;
@@ -83,6 +98,8 @@ public abstract class AnimationHighlight extends AnimationData implements Animat
                     notifier.onAnimationSelectionChanged();
                 }
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -92,19 +109,24 @@ public abstract class AnimationHighlight extends AnimationData implements Animat
     boolean previewLineBufferValid = false;
     @Override
     public ExtendedVector[] getPreviewLine() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!previewLineBufferValid) {
-                if (isValid(previewLine[0]) && isValid(previewLine[1])) {
-                    previewLineBuffer = new ExtendedVector[] {
-                            getPoint(previewLine[0]),
-                            getPoint(previewLine[1])
-                    };
-                } else {
-                    previewLineBuffer = null;
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!previewLineBufferValid) {
+                    if (isValid(previewLine[0]) && isValid(previewLine[1])) {
+                        previewLineBuffer = new ExtendedVector[] {
+                                getPoint(previewLine[0]),
+                                getPoint(previewLine[1])
+                        };
+                    } else {
+                        previewLineBuffer = null;
+                    }
+                    previewLineBufferValid = true;
                 }
-                previewLineBufferValid = true;
+                return previewLineBuffer != null ? previewLineBuffer.clone() : null;
             }
-            return previewLineBuffer != null ? previewLineBuffer.clone() : null;
+        } finally {
+            readLock.unlock();
         }
     }
 }
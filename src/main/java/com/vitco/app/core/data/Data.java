@@ -1,13 +1,20 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.DataContainer;
-import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.core.data.container.DataSnapshot;
+import com.vitco.app.core.data.container.VsdJournal;
+import com.vitco.app.core.data.history.BasicActionIntent;
+import com.vitco.app.core.data.history.HistoryChangeListener;
+import com.vitco.app.core.data.history.VoxelActionIntent;
 import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.file.FileTools;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 
 /**
@@ -17,15 +24,21 @@ public final class Data extends VoxelHighlighting implements DataInterface {
 
     @Override
     public final void clearHistoryA() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerA.clear();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final void clearHistoryV() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerV.clear();
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -39,13 +52,127 @@ public final class Data extends VoxelHighlighting implements DataInterface {
     @Autowired(required=true)
     public final void setErrorHandler(ErrorHandlerInterface errorHandler) {
         this.errorHandler = errorHandler;
+        historyManagerA.setErrorHandler(errorHandler);
+        historyManagerV.setErrorHandler(errorHandler);
     }
 
     public Data() {
         super();
+        // append the changes to the journal
+        historyManagerV.addChangeListener(new HistoryChangeListener<VoxelActionIntent>() {
+            @Override
+            public final void onChange(VoxelActionIntent action) {
+                if (journal != null && !journalPaused) {
+                    if (action == null) {
+                        journal.append(dataContainer, null, true, true);
+                    } else {
+                        journal.append(dataContainer, action.effected(), action.effectsTexture(), false);
+                    }
+                }
+            }
+
+            @Override
+            public void onFrozenIntent(VoxelActionIntent actionIntent) {}
+
+            @Override
+            public void onFrozenApply() {}
+
+            @Override
+            public void onFrozenUnapply() {}
+        });
+        historyManagerA.addChangeListener(new HistoryChangeListener<BasicActionIntent>() {
+            @Override
+            public final void onChange(BasicActionIntent action) {
+                if (journal != null && !journalPaused) {
+                    journal.append(dataContainer, action == null ? null : new int[0][], false, true);
+                }
+            }
+
+            @Override
+            public void onFrozenIntent(BasicActionIntent actionIntent) {}
+
+            @Override
+            public void onFrozenApply() {}
+
+            @Override
+            public void onFrozenUnapply() {}
+        });
         freshStart();
     }
 
+    // the journal of the changes (autosave)
+    private VsdJournal journal = null;
+    // true while the data is replaced
+    private boolean journalPaused = false;
+
+    @Override
+    public final boolean startJournal(File directory) {
+        writeLock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+            journal = new VsdJournal(directory, VitcoSettings.JOURNAL_COMPACTION_SIZE, errorHandler);
+            if (!journal.start(dataContainer)) {
+                // the directory is used by another instance
+                journal.close();
+                journal = null;
+                return false;
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public final boolean recoverJournal(File directory) {
+        writeLock.lock();
+        try {
+            DataContainer recovered = VsdJournal.recover(directory, errorHandler);
+            if (recovered == null) {
+                return false;
+            }
+            journalPaused = true;
+            try {
+                clearHistoryA();
+                clearHistoryV();
+            } finally {
+                journalPaused = false;
+            }
+            dataContainer = recovered;
+            invalidateA();
+            invalidateV(null);
+            initialNotification();
+            // the recovered data is not saved
+            hasChanged = true;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public final void closeJournal() {
+        writeLock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // restart the journal after the data was replaced
+    private void restartJournal() {
+        journalPaused = false;
+        if (journal != null) {
+            journal.reset();
+        }
+    }
+
     // called when data structure is initialized
     private void initialNotification() {
         notifier.onAnimationDataChanged();
@@ -56,7 +183,9 @@ public final class Data extends VoxelHighlighting implements DataInterface {
 
     @Override
     public final void freshStart() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        journalPaused = true;
+        try {
             // reset
             dataContainer = new DataContainer();
             // create initial layer and select it
@@ -67,12 +196,17 @@ public final class Data extends VoxelHighlighting implements DataInterface {
             initialNotification();
             // file has not changed yet
             hasChanged = false;
+        } finally {
+            restartJournal();
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean loadFromFile(File file) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        journalPaused = true;
+        try {
             boolean result = false;
             // VSD file format
             DataContainer loaded = new DataContainer(file, errorHandler);
@@ -103,17 +237,47 @@ public final class Data extends VoxelHighlighting implements DataInterface {
                 hasChanged = false;
             }
             return result;
+        } finally {
+            restartJournal();
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean saveToFile(File file) {
-        synchronized (VitcoSettings.SYNC) {
-            boolean result = dataContainer.saveToVsdFile(file, errorHandler);
-            if (result) {
-                hasChanged = false;
+        return saveToFile(file, null);
+    }
+
+    @Override
+    public final boolean saveToFile(File file, ProgressDialog progressDialog) {
+        // only the snapshot is taken while holding the lock, the data
+        // can change while the file is written
+        DataContainer saved;
+        long savedChangeCount;
+        DataSnapshot snapshot;
+        readLock.lock();
+        try {
+            saved = dataContainer;
+            savedChangeCount = changeCount;
+            snapshot = dataContainer.snapshot();
+        } catch (IOException e) {
+            errorHandler.handle(e);
+            return false;
+        } finally {
+            readLock.unlock();
+        }
+        boolean result = snapshot.write(file, progressDialog, errorHandler);
+        if (result) {
+            writeLock.lock();
+            try {
+                // there are still unsaved changes if the data changed in the meantime
+                if (saved == dataContainer && savedChangeCount == changeCount) {
+                    hasChanged = false;
+                }
+            } finally {
+                writeLock.unlock();
             }
-            return result;
         }
+        return result;
     }
 }
@@ -0,0 +1,169 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.core.data.container.Voxel;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Stress test for concurrent data access (similar to the "/test voxel" console command).
+ */
+public class DataConcurrencyTest {
+
+    private final Data data = new Data();
+
+    // true while the writers are running
+    private volatile boolean writing = true;
+
+    // size of the area that voxels are toggled in
+    private static final int SIZE = 9;
+
+    // toggle a random voxel
+    private void toggle(Random rand) {
+        int[] pos = new int[] {rand.nextInt(SIZE) - SIZE/2, rand.nextInt(SIZE) - SIZE/2, rand.nextInt(SIZE) - SIZE/2};
+        Voxel voxel = data.searchVoxel(pos, false);
+        if (voxel == null) {
+            data.addVoxel(new Color(rand.nextInt()), null, pos);
+        } else {
+            data.removeVoxel(voxel.id);
+        }
+    }
+
+    // apply the changes to the known visible voxels
+    private static void update(HashMap<String, Voxel> known, Voxel[][] changes) {
+        if (changes[0] == null) {
+            known.clear();
+        } else {
+            for (Voxel removed : changes[0]) {
+                known.remove(removed.getPosAsString());
+            }
+        }
+        for (Voxel added : changes[1]) {
+            known.put(added.getPosAsString(), added);
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int writerCount = 2;
+        final int readerCount = 3;
+        final int toggleCount = 20000;
+        final ArrayList<Throwable> errors = new ArrayList<Throwable>();
+        final ArrayList<HashMap<String, Voxel>> known = new ArrayList<HashMap<String, Voxel>>();
+
+        ArrayList<Thread> writers = new ArrayList<Thread>();
+        for (int i = 0; i < writerCount; i++) {
+            final int seed = i;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random rand = new Random(seed);
+                        for (int j = 0; j < toggleCount; j++) {
+                            toggle(rand);
+                            if (j % 1000 == 0) {
+                                data.undoV();
+                                data.redoV();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        ArrayList<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < readerCount; i++) {
+            final String requestId = "reader_" + i;
+            final HashMap<String, Voxel> visible = new HashMap<String, Voxel>();
+            known.add(visible);
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random rand = new Random(requestId.hashCode());
+                        while (writing) {
+                            update(visible, data.getNewVisibleLayerVoxel(requestId));
+                            for (Voxel voxel : data.getVisibleLayerVoxel()) {
+                                assert voxel != null;
+                            }
+                            data.getNewSideVoxel(requestId, rand.nextInt(3), rand.nextInt(SIZE) - SIZE/2);
+                            data.getLayerVoxels(data.getSelectedLayer());
+                            data.searchVoxel(new int[] {rand.nextInt(SIZE) - SIZE/2, 0, 0}, false);
+                            data.anyVoxelSelected();
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        long time = System.currentTimeMillis();
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing = false;
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        System.out.println("Concurrent access test finished in " + (System.currentTimeMillis() - time) + " ms");
+
+        for (Throwable e : errors) {
+            e.printStackTrace();
+        }
+        assert errors.isEmpty();
+
+        // the state is consistent
+        Voxel[] voxels = data.getLayerVoxels(data.getSelectedLayer());
+        HashSet<String> positions = new HashSet<String>();
+        for (Voxel voxel : voxels) {
+            assert positions.add(voxel.getPosAsString());
+            assert voxel.equals(data.searchVoxel(voxel.getPosAsInt(), false));
+        }
+        assert data.getVisibleLayerVoxel().length == voxels.length;
+        // the incremental updates of every reader result in the same voxels
+        for (int i = 0; i < readerCount; i++) {
+            HashMap<String, Voxel> visible = known.get(i);
+            update(visible, data.getNewVisibleLayerVoxel("reader_" + i));
+            assert visible.keySet().equals(positions);
+        }
+    }
+
+    // changing one data instance does not block another one (e.g. the batch converter)
+    @Test
+    public void testSeparateLocks() throws Exception {
+        final Data other = new Data();
+        final boolean[] added = new boolean[1];
+        data.getLock().writeLock().lock();
+        try {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    added[0] = other.addVoxel(Color.RED, null, new int[] {0, 0, 0}) != -1;
+                }
+            };
+            thread.start();
+            thread.join(10000);
+            assert added[0];
+        } finally {
+            data.getLock().writeLock().unlock();
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.vitco.app.core.data;
 
+import com.vitco.app.util.components.progressbar.ProgressDialog;
+
 import java.io.File;
 
 /**
@@ -10,6 +12,9 @@ public interface DataInterface {
     boolean loadFromFile(File file);
     // stores all data to file
     boolean saveToFile(File file);
+    // stores all data to file (the file is written without blocking the data,
+    // the progress dialog can be null)
+    boolean saveToFile(File file, ProgressDialog progressDialog);
     // delete all history
     void clearHistoryA();
     void clearHistoryV();
@@ -18,4 +23,14 @@ public interface DataInterface {
 
     // erase everything and start fresh
     void freshStart();
+
+    // journal the changes to the given directory (autosave), returns false
+    // if the directory is used by another instance
+    boolean startJournal(File directory);
+
+    // restore the data from a journal that was left behind (e.g. after a crash)
+    boolean recoverJournal(File directory);
+
+    // stop journaling and delete the journal
+    void closeJournal();
 }
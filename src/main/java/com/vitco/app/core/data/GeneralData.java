@@ -2,7 +2,6 @@ package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.DataContainer;
 import com.vitco.app.core.data.notification.DataChangeAdapter;
-import com.vitco.app.settings.VitcoSettings;
 
 /**
  * Manages everything that has to do with general data
@@ -16,32 +15,42 @@ public class GeneralData extends ListenerData implements GeneralDataInterface {
 
     // true if the data has changed since last save
     protected boolean hasChanged = false;
+    // counts the changes (to know if the data changed while saving)
+    protected long changeCount = 0;
 
     public GeneralData() {
         this.addDataChangeListener(new DataChangeAdapter() {
             @Override
             public void onVoxelDataChanged() {
                 hasChanged = true;
+                changeCount++;
             }
 
             @Override
             public void onAnimationDataChanged() {
                 hasChanged = true;
+                changeCount++;
             }
         });
     }
 
     @Override
     public boolean hasChanged() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return hasChanged;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public void resetHasChanged() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             hasChanged = false;
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -2,7 +2,8 @@ package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.notification.DataChangeListener;
 import com.vitco.app.core.data.notification.NotificationService;
-import com.vitco.app.settings.VitcoSettings;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Abstract class that defines methods add Data Change Listeners.
@@ -10,17 +11,36 @@ import com.vitco.app.settings.VitcoSettings;
 public abstract class ListenerData implements ListenerDataInterface {
     protected final NotificationService notifier = new NotificationService();
 
+    // lock of this data instance (queries hold the read lock and may run concurrently,
+    // changes hold the write lock), note: the read lock can not be upgraded to the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    protected final Lock readLock = lock.readLock();
+    protected final Lock writeLock = lock.writeLock();
+    // guards the buffers that are (re)computed by queries
+    protected final Object bufferSync = new Object();
+
+    @Override
+    public final ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
     @Override
     public final void addDataChangeListener(DataChangeListener dcl) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             notifier.add(dcl);
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final void removeDataChangeListener(DataChangeListener dcl) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             notifier.remove(dcl);
+        } finally {
+            writeLock.unlock();
         }
     }
 }
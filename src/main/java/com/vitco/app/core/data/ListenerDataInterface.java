@@ -2,12 +2,16 @@ package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.notification.DataChangeListener;
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Data Listener interface.
  *
  * Implements methods that allow setting of data change listeners.
  */
 public interface ListenerDataInterface {
+    // the lock of this data (to run several queries or changes as one)
+    ReentrantReadWriteLock getLock();
     // add a data change listener
     void addDataChangeListener(DataChangeListener dcl);
     // remove a data change listener
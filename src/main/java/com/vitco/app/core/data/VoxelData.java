@@ -1,37 +1,46 @@
 package com.vitco.app.core.data;
 
+import com.vitco.app.core.data.container.ChangeLog;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.data.container.VoxelColumns;
 import com.vitco.app.core.data.container.VoxelLayer;
 import com.vitco.app.core.data.history.HistoryChangeListener;
 import com.vitco.app.core.data.history.HistoryManager;
 import com.vitco.app.core.data.history.VoxelActionIntent;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.low.engine.Engine;
+import com.vitco.app.low.engine.VoxelVisitor;
 import com.vitco.app.settings.VitcoSettings;
 import com.vitco.app.util.graphic.GraphicTools;
-import com.vitco.app.util.misc.ArrayUtil;
 import com.vitco.app.util.misc.ColorTools;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
 import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 
 /**
  * Defines the voxel data interaction (layer, undo, etc)
  */
+// the intents are only serialized into the temporary history file (no versioning needed)
+@SuppressWarnings("serial")
 public abstract class VoxelData extends AnimationHighlight implements VoxelDataInterface {
 
     // constructor
     // contains the (history) listener event declaration for voxel and texture
     protected VoxelData() {
         super();
+        // old history is moved to disk when it gets too big
+        historyManagerV.setSpillContext(this);
+        historyManagerV.setMemoryBudget(VitcoSettings.HISTORY_MEMORY_BUDGET);
         // notify when the data changes
         historyManagerV.addChangeListener(new HistoryChangeListener<VoxelActionIntent>() {
             @Override
@@ -69,80 +78,117 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // holds the voxel positions that are currently selected (so we only notify
     // position where the selection state has actually changed!)
-    private final TIntHashSet currentSelectedVoxel = new TIntHashSet();
+    private final TLongHashSet currentSelectedVoxel = new TLongHashSet();
+
+    // the layer of the top most visible voxel for every position (over all layers), this
+    // is updated from the effected positions whenever the data changes
+    private final Engine<Integer> topVoxelIndex = new Engine<Integer>(true);
+    // false if the index needs to be rebuilt, this happens on first access (so
+    // that loading a file does not decode the layers)
+    private volatile boolean topVoxelIndexValid = true;
+
+    // find the layer of the top most visible voxel at a position (probes all layers)
+    private Integer findTopLayer(int[] pos) {
+        for (Integer layerId : dataContainer.layerOrder) {
+            VoxelLayer layer = dataContainer.layers.get(layerId);
+            if (layer.isVisible() && !layer.voxelPositionFree(pos)) {
+                return layerId;
+            }
+        }
+        return null;
+    }
+
+    // update the top voxel index (null means that everything is effected)
+    private void updateTopVoxelIndex(int[][] effected) {
+        if (effected == null) {
+            topVoxelIndex.clear();
+            topVoxelIndexValid = false;
+        } else if (topVoxelIndexValid) {
+            for (int[] pos : effected) {
+                topVoxelIndex.set(pos[0], pos[1], pos[2], findTopLayer(pos));
+            }
+        }
+    }
+
+    // get the top voxel index (rebuilds it if needed, the callers
+    // hold the read lock, so several threads can get here)
+    private Engine<Integer> getTopVoxelIndex() {
+        if (!topVoxelIndexValid) {
+            synchronized (topVoxelIndex) {
+                if (!topVoxelIndexValid) {
+                    buildTopVoxelIndex();
+                    topVoxelIndexValid = true;
+                }
+            }
+        }
+        return topVoxelIndex;
+    }
+
+    // fill the top voxel index from all visible layers
+    private void buildTopVoxelIndex() {
+        topVoxelIndex.clear();
+        for (Integer layerId : dataContainer.layerOrder) {
+            VoxelLayer layer = dataContainer.layers.get(layerId);
+            if (layer.isVisible()) {
+                layer.fillFree(topVoxelIndex, layerId);
+            }
+        }
+    }
+
+    // get the top most visible voxel at a position (or null)
+    private Voxel getTopVoxel(int x, int y, int z) {
+        Integer layerId = getTopVoxelIndex().get(x, y, z);
+        return layerId == null ? null : dataContainer.layers.get(layerId).search(x, y, z);
+    }
+
+    // visits the voxels of the top voxel index (the voxels are created from their layers)
+    private final class TopVoxelVisitor implements VoxelVisitor<Integer> {
+        private final VoxelVisitor<Voxel> visitor;
+
+        private TopVoxelVisitor(VoxelVisitor<Voxel> visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void visit(int x, int y, int z, Integer layerId) {
+            visitor.visit(x, y, z, dataContainer.layers.get(layerId).search(x, y, z));
+        }
+    }
 
     // invalidate cache
     protected final void invalidateV(int[][] effected) {
+        updateTopVoxelIndex(effected);
         if (effected != null) {
             // notification of changed visible voxels
-            for (TIntObjectHashMap<int[]> map : changedVisibleVoxel.values()) {
-                if (map != null) {
-                    for (int[] invalid : effected) {
-                        Integer key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
-                        if (!map.containsKey(key)) {
-                            map.put(key, invalid);
-                        }
-                    }
-                }
+            for (int[] invalid : effected) {
+                visibleChangeLog.add(LongCubeIndexer.getId(invalid[0], invalid[1], invalid[2]));
             }
 
             // notification of changed selected voxels
-            TIntObjectHashMap<int[]> invalidSelected = new TIntObjectHashMap<int[]>();
             for (int[] invalid : effected) {
                 Voxel voxel = searchVoxel(invalid, false);
                 if (voxel == null) {
-                    int key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
+                    long key = LongCubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
                     if (currentSelectedVoxel.remove(key)) {
-                        invalidSelected.put(key, invalid);
+                        selectedChangeLog.add(key);
                     }
                 } else {
-                    int key = voxel.posId;
+                    long key = voxel.posId;
                     if (voxel.isSelected()) {
                         if (currentSelectedVoxel.add(key)) {
-                            invalidSelected.put(key, invalid);
+                            selectedChangeLog.add(key);
                         }
                     } else {
                         if (currentSelectedVoxel.remove(key)) {
-                            invalidSelected.put(key, invalid);
-                        }
-                    }
-                }
-            }
-            for (TIntObjectHashMap<int[]> map : changedSelectedVoxel.values()) {
-                if (map != null) {
-                    map.putAll(invalidSelected);
-                }
-            }
-
-            // notification of changed visible voxel for this plane
-            for (TIntIterator it = changedVisibleVoxelPlane.keySet().iterator(); it.hasNext();) {
-                int side = it.next();
-                int missingSide = 1;
-                switch (side) {
-                    case 0: missingSide = 2; break;
-                    case 2: missingSide = 0; break;
-                    default: break;
-                }
-                for (String requestId : changedVisibleVoxelPlane.get(side).keySet()) {
-                    for (int[] invalid : effected) {
-                        // make sure this is set
-                        if (!changedVisibleVoxelPlane.get(side).get(requestId).containsKey(invalid[missingSide])) {
-                            changedVisibleVoxelPlane.get(side).get(requestId).put(
-                                    invalid[missingSide], new TIntObjectHashMap<int[]>());
-                        }
-                        // fill the details
-                        int key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
-                        if (!changedVisibleVoxelPlane.get(side).get(requestId).get(invalid[missingSide]).containsKey(key)) {
-                            changedVisibleVoxelPlane.get(side).get(requestId).get(invalid[missingSide]).put(key, invalid);
+                            selectedChangeLog.add(key);
                         }
                     }
                 }
             }
         } else {
             currentSelectedVoxel.clear();
-            changedSelectedVoxel.clear();
-            changedVisibleVoxel.clear();
-            changedVisibleVoxelPlane.clear();
+            selectedChangeLog.invalidate();
+            visibleChangeLog.invalidate();
         }
         layerBufferValid = false;
         layerNameBufferValid = false;
@@ -200,6 +246,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         private final Integer layerId;
         private Integer layerPosition;
         private String layerName;
+        private MassRemoveVoxelIntent removeIntent = null;
 
         protected DeleteLayerIntent(int layerId, boolean attach) {
             super(attach);
@@ -209,15 +256,10 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                // remember effected positions
-                effected = new int[dataContainer.layers.get(layerId).getVoxels().length][];
                 // remove all points in this layer
-                Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    historyManagerV.applyIntent(new RemoveVoxelIntent(voxel.id, true));
-                    effected[i] = voxel.getPosAsInt(); // store
-                }
+                removeIntent = new MassRemoveVoxelIntent(
+                        Voxel.convertVoxelsToIdArray(dataContainer.layers.get(layerId).getVoxels()), true);
+                historyManagerV.applyIntent(removeIntent);
                 // remember the position of this layer
                 layerPosition = dataContainer.layerOrder.indexOf(layerId);
                 // and the name
@@ -233,10 +275,10 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             dataContainer.layerOrder.add(layerPosition, layerId);
         }
 
-        private int[][] effected = null; // everything effected
         @Override
         public int[][] effected() {
-            return effected;
+            // everything effected
+            return removeIntent.effected();
         }
     }
 
@@ -384,35 +426,48 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // voxel intents
     private final class AddVoxelIntent extends VoxelActionIntent {
-        private final Voxel voxel;
+        private final int voxelId;
+        private final int[] pos;
+        private final Color color;
+        private final boolean selected;
+        private final int[] textureId;
+        private final int layerId;
 
         protected AddVoxelIntent(int voxelId, int[] pos, Color color, boolean selected,
                                  int[] textureId, int layerId, boolean attach) {
             super(attach);
-            voxel = new Voxel(voxelId, pos, color, selected, textureId, layerId);
+            this.voxelId = voxelId;
+            this.pos = pos.clone();
+            this.color = color;
+            this.selected = selected;
+            this.textureId = textureId;
+            this.layerId = layerId;
         }
 
         @Override
         protected void applyAction() {
-            dataContainer.voxels.put(voxel.id, voxel);
+            // a new instance is needed every time (the previous instance
+            // might still be referenced by a history record)
+            Voxel voxel = new Voxel(voxelId, pos, color, selected, textureId, layerId);
             dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.voxels.remove(voxel.id);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
             dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
         }
 
         @Override
         public int[][] effected() {
-            return new int[][]{voxel.getPosAsInt()};
+            return new int[][]{pos.clone()};
         }
     }
 
     private final class RemoveVoxelIntent extends VoxelActionIntent {
         private final int voxelId;
         private Voxel voxel;
+        private boolean selected;
 
         protected RemoveVoxelIntent(int voxelId, boolean attach) {
             super(attach);
@@ -421,16 +476,16 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
-            }
-            dataContainer.voxels.remove(voxel.id);
+            // the instance can change (e.g. when a mass removal is undone)
+            voxel = dataContainer.voxels.get(voxelId);
+            // the selection state is not serialized
+            selected = voxel.isSelected();
             dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.voxels.put(voxel.id, voxel);
+            voxel.setSelected(selected);
             dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
         }
 
@@ -444,7 +499,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         private final int voxelId;
         private final boolean selected;
         private boolean prevSelected;
-        private Voxel voxel;
+        private int[] pos;
 
         protected SelectVoxelIntent(int voxelId, boolean selected, boolean attach) {
             super(attach);
@@ -454,21 +509,23 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
+            Voxel voxel = dataContainer.voxels.get(voxelId);
             if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
                 prevSelected = voxel.isSelected();
+                pos = voxel.getPosAsInt();
             }
-            voxel.setSelected(selected);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelSelected(voxel, selected);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setSelected(prevSelected);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelSelected(voxel, prevSelected);
         }
 
         @Override
         public int[][] effected() {
-            return new int[][]{voxel.getPosAsInt()};
+            return new int[][]{pos.clone()};
         }
     }
 
@@ -515,13 +572,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     }
 
     private final class ColorVoxelIntent extends VoxelActionIntent {
-        private final Voxel voxel;
+        private final int voxelId;
         private final Color newColor;
         private final Color oldColor;
 
         protected ColorVoxelIntent(int voxelId, Color newColor, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            this.voxelId = voxelId;
             this.oldColor = voxel.getColor();
             this.newColor = newColor;
             this.effected = new int[][]{voxel.getPosAsInt()};
@@ -529,12 +587,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            voxel.setColor(newColor);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelColor(voxel, newColor);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setColor(oldColor);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelColor(voxel, oldColor);
         }
 
         private int[][] effected = null;
@@ -545,13 +605,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     }
 
     private final class ColorShiftVoxelIntent extends VoxelActionIntent {
-        private final Voxel voxel;
+        private final int voxelId;
         private final Color newColor;
         private final Color oldColor;
 
         protected ColorShiftVoxelIntent(int voxelId, float[] hsbOffset, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            this.voxelId = voxelId;
             this.oldColor = voxel.getColor();
             float[] currentHSB = ColorTools.colorToHSB(this.oldColor);
             this.newColor = ColorTools.hsbToColor(new float[] {
@@ -564,12 +625,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            voxel.setColor(newColor);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelColor(voxel, newColor);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setColor(oldColor);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelColor(voxel, oldColor);
         }
 
         private int[][] effected = null;
@@ -583,7 +646,6 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         private final int voxelId;
         private final int newAlpha;
         private int oldAlpha;
-        private Voxel voxel;
 
         protected AlphaVoxelIntent(int voxelId, int newAlpha, boolean attach) {
             super(attach);
@@ -593,8 +655,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
+            Voxel voxel = dataContainer.voxels.get(voxelId);
             if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
                 oldAlpha = voxel.getAlpha();
                 // what is effected
                 effected = new int[][]{voxel.getPosAsInt()};
@@ -604,6 +666,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void unapplyAction() {
+            Voxel voxel = dataContainer.voxels.get(voxelId);
             dataContainer.layers.get(voxel.getLayerId()).setVoxelAlpha(voxel, oldAlpha);
         }
 
@@ -616,6 +679,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     private final class ClearVoxelIntent extends VoxelActionIntent {
         private final int layerId;
+        private MassRemoveVoxelIntent removeIntent = null;
 
         protected ClearVoxelIntent(int layerId, boolean attach) {
             super(attach);
@@ -625,17 +689,10 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                ArrayList<int[]> effected = new ArrayList<int[]>();
-
                 // get all voxels and remove them
-                for (Voxel voxel : dataContainer.layers.get(layerId).getVoxels()) {
-                    effected.add(voxel.getPosAsInt());
-                    historyManagerV.applyIntent(new RemoveVoxelIntent(voxel.id, true));
-                }
-
-                // what is effected
-                this.effected = new int[effected.size()][];
-                effected.toArray(this.effected);
+                removeIntent = new MassRemoveVoxelIntent(
+                        Voxel.convertVoxelsToIdArray(dataContainer.layers.get(layerId).getVoxels()), true);
+                historyManagerV.applyIntent(removeIntent);
             }
         }
 
@@ -644,14 +701,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
         @Override
         public int[][] effected() {
-            return effected;
+            return removeIntent.effected();
         }
     }
 
     private final class MergeLayersIntent extends VoxelActionIntent {
+        private MassAddVoxelIntent addIntent = null;
 
         protected MergeLayersIntent(boolean attach) {
             super(attach);
@@ -660,27 +717,21 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                ArrayList<int[]> effected = new ArrayList<int[]>();
-
                 // create new layer
                 int mergedLayerId = getFreeLayerId();
                 historyManagerV.applyIntent(new CreateLayerIntent(mergedLayerId, "Merged", true));
 
-                // add the voxels to the new layer (top to bottom)
+                // collect the voxels for the new layer (top to bottom)
+                TopVoxelCollector collector = new TopVoxelCollector();
                 for (int layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) { // only visible
-                        Voxel[] voxels = getLayerVoxels(layerId); // get voxels
-                        for (Voxel voxel : voxels) {
-                            if (dataContainer.layers.get(mergedLayerId).voxelPositionFree(voxel)) { // add if this voxel does not exist
-                                effected.add(voxel.getPosAsInt());
-                                historyManagerV.applyIntent( // we <need> a new id for this voxel
-                                        new AddVoxelIntent(getFreeVoxelId(), voxel.getPosAsInt(),
-                                                voxel.getColor(), voxel.isSelected(), voxel.getTexture(), mergedLayerId, true)
-                                );
-                            }
-                        }
+                    VoxelLayer layer = dataContainer.layers.get(layerId);
+                    if (layer.isVisible() && layerId != mergedLayerId) { // only visible
+                        layer.forEach(collector);
                     }
                 }
+                // add the voxels (they get new ids)
+                addIntent = new MassAddVoxelIntent(collector.getVoxels(), mergedLayerId, true);
+                historyManagerV.applyIntent(addIntent);
 
                 // delete the visible layers (not the new one)
                 Integer[] layer = new Integer[dataContainer.layerOrder.size()];
@@ -693,10 +744,6 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
                 // select the new layer (only when created)
                 dataContainer.selectedLayer = mergedLayerId;
-
-                // what is effected
-                this.effected = new int[effected.size()][];
-                effected.toArray(this.effected);
             }
         }
 
@@ -705,10 +752,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
         @Override
         public int[][] effected() {
-            return effected;
+            return addIntent.effected();
         }
     }
 
@@ -746,11 +792,17 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public boolean effectsTexture() {
             return true;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getTextureByteSize(texture);
+        }
     }
 
     // texture intents
     private final class AddTextureGridIntent extends VoxelActionIntent {
-        private final BufferedImage texture;
+        // only needed for the first call
+        private transient BufferedImage texture;
 
         protected AddTextureGridIntent(BufferedImage texture, boolean attach) {
             super(attach);
@@ -769,6 +821,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                         );
                     }
                 }
+                texture = null;
             }
         }
 
@@ -824,6 +877,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public boolean effectsTexture() {
             return true;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getTextureByteSize(texture);
+        }
     }
 
     // clear the texture list, remove unused texture
@@ -902,6 +960,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public boolean effectsTexture() {
             return true;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getTextureByteSize(textureNew) + getTextureByteSize(textureOld);
+        }
     }
 
     // select texture in the texture list
@@ -939,13 +1002,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // texture a voxel with a given texture (id)
     private final class TextureVoxelIntent extends VoxelActionIntent {
-        private final Voxel voxel;
+        private final int voxelId;
         private final int[] oldVoxelTexture;
         private final int[] newVoxelTexture;
 
         protected TextureVoxelIntent(int voxelId, Integer voxelSide, int newTextureId, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            this.voxelId = voxelId;
             this.oldVoxelTexture = voxel.getTexture();
             if (newTextureId != -1) { // otherwise unset texture
                 if (oldVoxelTexture == null || voxelSide == null) {
@@ -966,12 +1030,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            voxel.setTexture(newVoxelTexture);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelTexture(voxel, newVoxelTexture);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setTexture(oldVoxelTexture);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelTexture(voxel, oldVoxelTexture);
         }
 
         private int[][] effected = null;
@@ -1018,28 +1084,36 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public int[][] effected() {
             return effected;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getByteSize(effected) + voxelIds.length * 20L;
+        }
     }
 
     // rotate voxel texture
     private final class RotateVoxelTextureIntent extends VoxelActionIntent  {
-        private final Voxel voxel;
+        private final int voxelId;
         private final int voxelSide;
 
         protected RotateVoxelTextureIntent(int voxelId, int voxelSide, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            this.voxelId = voxelId;
             this.voxelSide = voxelSide;
             effected = new int[][]{voxel.getPosAsInt()};
         }
 
         @Override
         protected void applyAction() {
-            voxel.rotate(voxelSide);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).rotateVoxel(voxel, voxelSide, false);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.rotateReverse(voxelSide);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).rotateVoxel(voxel, voxelSide, true);
         }
 
         private int[][] effected = null;
@@ -1051,24 +1125,27 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // flip voxel texture
     private final class FlipVoxelTextureIntent extends VoxelActionIntent  {
-        private final Voxel voxel;
+        private final int voxelId;
         private final int voxelSide;
 
         protected FlipVoxelTextureIntent(int voxelId, int voxelSide, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            this.voxelId = voxelId;
             this.voxelSide = voxelSide;
             effected = new int[][]{voxel.getPosAsInt()};
         }
 
         @Override
         protected void applyAction() {
-            voxel.flip(voxelSide);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).flipVoxel(voxel, voxelSide);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.flip(voxelSide);
+            Voxel voxel = dataContainer.voxels.get(voxelId);
+            dataContainer.layers.get(voxel.getLayerId()).flipVoxel(voxel, voxelSide);
         }
 
         private int[][] effected = null;
@@ -1082,29 +1159,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // move to new layer
     private final class MigrateIntent extends VoxelActionIntent {
-        private final Voxel[] voxels;
+        private Voxel[] voxels;
+        private MassRemoveVoxelIntent removeIntent = null;
 
         protected MigrateIntent(Voxel[] voxels, boolean attach) {
             super(attach);
             this.voxels = voxels;
         }
 
-        private Integer[] convertVoxelsToIdArray(Voxel[] voxels) {
-            // what is effected (there *should* not be duplicate positions
-            // as they are all moved to one new layer)
-            effected = new int[voxels.length][];
-            for (int i = 0; i < effected.length; i++) {
-                effected[i] = voxels[i].getPosAsInt();
-            }
-
-            Integer[] voxelIds = new Integer[voxels.length];
-            int i = 0;
-            for (Voxel voxel : voxels) {
-                voxelIds[i++] = voxel.id;
-            }
-            return voxelIds;
-        }
-
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
@@ -1112,12 +1174,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 int layerId = getFreeLayerId();
                 historyManagerV.applyIntent(new CreateLayerIntent(layerId, "Migrated", true));
                 // remove all voxels
-                historyManagerV.applyIntent(
-                        new MassRemoveVoxelIntent(convertVoxelsToIdArray(voxels), true));
+                removeIntent = new MassRemoveVoxelIntent(Voxel.convertVoxelsToIdArray(voxels), true);
+                historyManagerV.applyIntent(removeIntent);
                 // add all voxels to new layer
                 historyManagerV.applyIntent(new MassAddVoxelIntent(voxels, layerId, true));
                 // select the new layer
                 historyManagerV.applyIntent(new SelectLayerIntent(layerId, true));
+                // the voxels are stored by the attached intents
+                voxels = null;
             }
         }
 
@@ -1126,10 +1190,10 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
         @Override
         public int[][] effected() {
-            return effected;
+            // there *should* not be duplicate positions as they are all moved to one new layer
+            return removeIntent.effected();
         }
     }
 
@@ -1171,41 +1235,64 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public int[][] effected() {
             return effected;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getByteSize(effected) + voxelIds.length * 20L;
+        }
     }
 
     private final class MassRemoveVoxelIntent extends VoxelActionIntent {
-        private final Integer[] voxelIds;
+        private Integer[] voxelIds;
+        // the removed voxels (packed)
+        private VoxelColumns removed = null;
 
         protected MassRemoveVoxelIntent(Integer[] voxelIds, boolean attach) {
             super(attach);
-
-            // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
-            for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
-            }
-
             this.voxelIds = voxelIds;
         }
 
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
+                ArrayList<Voxel> removedVoxels = new ArrayList<Voxel>(voxelIds.length);
                 for (Integer id : voxelIds) {
-                    historyManagerV.applyIntent(new RemoveVoxelIntent(id, true));
+                    Voxel voxel = dataContainer.voxels.get(id);
+                    if (voxel != null) { // the ids might not be unique
+                        dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
+                        removedVoxels.add(voxel);
+                    }
+                }
+                Voxel[] voxels = new Voxel[removedVoxels.size()];
+                removedVoxels.toArray(voxels);
+                removed = VoxelColumns.pack(voxels);
+                voxelIds = null;
+            } else {
+                for (int i = 0, len = removed.size(); i < len; i++) {
+                    Voxel voxel = dataContainer.voxels.get(removed.getId(i));
+                    dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
                 }
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            // re-add in reverse order
+            Voxel[] voxels = removed.unpack();
+            for (int i = voxels.length - 1; i >= 0; i--) {
+                Voxel voxel = voxels[i];
+                dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+            }
         }
 
-        private int[][] effected = null;
         @Override
         public int[][] effected() {
-            return effected;
+            return removed.getPositions();
+        }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + removed.getByteSize();
         }
     }
 
@@ -1213,18 +1300,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // otherwise the provided layerid
     // the voxel id is never used (!)
     private final class MassAddVoxelIntent extends VoxelActionIntent {
-        private final Voxel[] voxels;
+        private Voxel[] voxels;
         private final Integer layerId;
+        // the added voxels (packed)
+        private VoxelColumns added = null;
 
         protected MassAddVoxelIntent(Voxel[] voxels, Integer layerId, boolean attach) {
             super(attach);
-
-            // what is effected (there could be duplicate positions here)
-            effected = new int[voxels.length][];
-            for (int i = 0; i < effected.length; i++) {
-                effected[i] = voxels[i].getPosAsInt();
-            }
-
             this.voxels = voxels;
             this.layerId = layerId;
         }
@@ -1233,23 +1315,41 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void applyAction() {
             if (isFirstCall()) {
                 boolean layerIdSet = layerId != null;
-                for (Voxel voxel : voxels) {
-                    historyManagerV.applyIntent(
-                            new AddVoxelIntent(getFreeVoxelId(), voxel.getPosAsInt(),
-                                    voxel.getColor(), voxel.isSelected(), voxel.getTexture(), layerIdSet ? layerId : voxel.getLayerId(), true));
+                Voxel[] addedVoxels = new Voxel[voxels.length];
+                for (int i = 0; i < voxels.length; i++) {
+                    Voxel voxel = voxels[i];
+                    Voxel newVoxel = new Voxel(getFreeVoxelId(), voxel.getPosAsInt(), voxel.getColor(),
+                            voxel.isSelected(), voxel.getTexture(), layerIdSet ? layerId : voxel.getLayerId());
+                    dataContainer.layers.get(newVoxel.getLayerId()).addVoxel(newVoxel);
+                    addedVoxels[i] = newVoxel;
+                }
+                added = VoxelColumns.pack(addedVoxels);
+                voxels = null;
+            } else {
+                for (Voxel voxel : added.unpack()) {
+                    dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
                 }
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            // remove in reverse order
+            for (int i = added.size() - 1; i >= 0; i--) {
+                Voxel voxel = dataContainer.voxels.get(added.getId(i));
+                dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
+            }
         }
 
-        private int[][] effected = null;
         @Override
         public int[][] effected() {
-            return effected;
+            // there could be duplicate positions here
+            return added.getPositions();
+        }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + added.getByteSize();
         }
     }
 
@@ -1289,6 +1389,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public int[][] effected() {
             return effected;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getByteSize(effected) + voxelIds.length * 20L;
+        }
     }
 
     private final class MassColorShiftVoxelIntent extends VoxelActionIntent  {
@@ -1327,24 +1432,33 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         public int[][] effected() {
             return effected;
         }
+
+        @Override
+        public long getByteSize() {
+            return super.getByteSize() + getByteSize(effected) + voxelIds.length * 20L;
+        }
     }
 
-    private final class MassMoveVoxelIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
-        private final int[] shift;
+    // moves voxels to new positions: the voxels are removed, existing voxels at the
+    // new positions are removed and the voxels are added again (move, rotate, mirror)
+    private abstract class RepositionVoxelIntent extends VoxelActionIntent  {
+        private Voxel[] voxels;
 
-        protected MassMoveVoxelIntent(Voxel[] voxels, int[] shift, boolean attach) {
+        protected RepositionVoxelIntent(Voxel[] voxels, boolean attach) {
             super(attach);
             this.voxels = voxels;
-            this.shift = shift;
         }
 
+        // called once before the new positions are computed
+        protected void prepare(Voxel[] voxels) {}
+
+        // compute the new position of a voxel (the position can be changed and returned)
+        protected abstract int[] getNewPosition(int[] pos);
+
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-
-                // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
+                prepare(voxels);
 
                 // generate the ids
                 Integer[] voxelIds = new Integer[voxels.length];
@@ -1352,28 +1466,34 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                     voxelIds[i] = voxels[i].id;
                 }
                 // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
+                removeIntent = new MassRemoveVoxelIntent(voxelIds, true);
+                historyManagerV.applyIntent(removeIntent);
 
                 // create new voxels (with new position) and delete
                 // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
+                Voxel[] movedVoxels = new Voxel[voxels.length];
+                TIntHashSet collisions = new TIntHashSet();
+                ArrayList<Integer> collisionIds = new ArrayList<Integer>();
                 for (int i = 0; i < voxels.length; i++) {
                     Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
-                    pos[0] -= shift[0];
-                    pos[1] -= shift[1];
-                    pos[2] -= shift[2];
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
+                    int[] pos = getNewPosition(voxel.getPosAsInt());
+                    movedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
+                    // existing voxels in this layer need to be removed
                     Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
+                    if (result != null && collisions.add(result.id)) {
+                        collisionIds.add(result.id);
                     }
                 }
-                // (re)add all the shifted voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
+                if (!collisionIds.isEmpty()) {
+                    Integer[] ids = new Integer[collisionIds.size()];
+                    collisionIds.toArray(ids);
+                    historyManagerV.applyIntent(new MassRemoveVoxelIntent(ids, true));
+                }
+                // (re)add all the moved voxels (null ~ the voxel layer id is used)
+                addIntent = new MassAddVoxelIntent(movedVoxels, null, true);
+                historyManagerV.applyIntent(addIntent);
+                // the voxels are stored by the attached intents
+                voxels = null;
             }
         }
 
@@ -1382,200 +1502,157 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
+        private MassRemoveVoxelIntent removeIntent = null;
+        private MassAddVoxelIntent addIntent = null;
         @Override
         public int[][] effected() {
-            return effected;
+            return mergeEffected(removeIntent, addIntent);
+        }
+    }
+
+    // helper - the center of the bounding box of voxels (voxels.length must not be zero)
+    private static float[] getCenter(Voxel[] voxels) {
+        int[] centerMin = voxels[0].getPosAsInt();
+        int[] centerMax = voxels[0].getPosAsInt();
+        for (Voxel voxel : voxels) {
+            centerMin[0] = Math.min(centerMin[0],voxel.x);
+            centerMin[1] = Math.min(centerMin[1],voxel.y);
+            centerMin[2] = Math.min(centerMin[2],voxel.z);
+            centerMax[0] = Math.max(centerMax[0],voxel.x);
+            centerMax[1] = Math.max(centerMax[1],voxel.y);
+            centerMax[2] = Math.max(centerMax[2],voxel.z);
+        }
+        return new float[] {
+                (centerMin[0]/(float)2 + centerMax[0]/(float)2),
+                (centerMin[1]/(float)2 + centerMax[1]/(float)2),
+                (centerMin[2]/(float)2 + centerMax[2]/(float)2)
+        };
+    }
+
+    private final class MassMoveVoxelIntent extends RepositionVoxelIntent  {
+        private final int[] shift;
+
+        protected MassMoveVoxelIntent(Voxel[] voxels, int[] shift, boolean attach) {
+            super(voxels, attach);
+            this.shift = shift;
+        }
+
+        @Override
+        protected int[] getNewPosition(int[] pos) {
+            pos[0] -= shift[0];
+            pos[1] -= shift[1];
+            pos[2] -= shift[2];
+            return pos;
         }
     }
 
     // rotate voxel around their center (but not the voxel "texture" itself)
-    private final class RotateVoxelCenterIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
+    private final class RotateVoxelCenterIntent extends RepositionVoxelIntent  {
         private final int axe;
         private final float angle;
 
         protected RotateVoxelCenterIntent(Voxel[] voxels, int axe, float angle, boolean attach) {
-            super(attach);
-            this.voxels = voxels;
+            super(voxels, attach);
             this.axe = axe;
             this.angle = angle;
         }
 
-        @Override
-        protected void applyAction() {
-            if (isFirstCall()) {
-
-                // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
-
-                // generate the ids and find center
-                int[] centerMin = null;
-                int[] centerMax = null;
-                Integer[] voxelIds = new Integer[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    voxelIds[i] = voxels[i].id;
-                    Voxel voxel = voxels[i];
-                    if (centerMin == null) {
-                        centerMin = voxel.getPosAsInt();
-                        centerMax = voxel.getPosAsInt();
-                    }
-                    centerMin[0] = Math.min(centerMin[0],voxel.x);
-                    centerMin[1] = Math.min(centerMin[1],voxel.y);
-                    centerMin[2] = Math.min(centerMin[2],voxel.z);
-                    centerMax[0] = Math.max(centerMax[0],voxel.x);
-                    centerMax[1] = Math.max(centerMax[1],voxel.y);
-                    centerMax[2] = Math.max(centerMax[2],voxel.z);
-                }
-                // calculate center - note: voxels.length must not be zero
-                assert centerMin != null;
-                float[] center = new float[] {
-                        (centerMin[0]/(float)2 + centerMax[0]/(float)2),
-                        (centerMin[1]/(float)2 + centerMax[1]/(float)2),
-                        (centerMin[2]/(float)2 + centerMax[2]/(float)2)
-                };
-
-                int rot1 = 0;
-                int rot2 = 2;
-                switch (axe) {
-                    case 2:
-                        rot1 = 0;
-                        rot2 = 1;
-                        break;
-                    case 1:
-                        rot1 = 0;
-                        rot2 = 2;
-                        break;
-                    case 0:
-                        rot1 = 1;
-                        rot2 = 2;
-                        break;
-                    default: break;
-                }
-
-                // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
+        private transient float[] center;
+        private transient int rot1;
+        private transient int rot2;
 
-                // create new voxels (with new position) and delete
-                // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
-
-                    // rotate the point around the center
-                    // todo check for duplicates (overlaps when rotating values other than 90, 180, 270)
-                    double[] pt = {pos[rot1], pos[rot2]};
-                    AffineTransform.getRotateInstance(Math.toRadians(angle), center[rot1], center[rot2])
-                            .transform(pt, 0, pt, 0, 1); // specifying to use this double[] to hold coords
-                    pos[rot1] = (int)Math.round(pt[0]);
-                    pos[rot2] = (int)Math.round(pt[1]);
-
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
-                    Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
-                    }
-                }
-                // (re)add all the rotated voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
+        @Override
+        protected void prepare(Voxel[] voxels) {
+            center = getCenter(voxels);
+            switch (axe) {
+                case 2:
+                    rot1 = 0;
+                    rot2 = 1;
+                    break;
+                case 0:
+                    rot1 = 1;
+                    rot2 = 2;
+                    break;
+                default:
+                    rot1 = 0;
+                    rot2 = 2;
+                    break;
             }
         }
 
         @Override
-        protected void unapplyAction() {
-            // nothing to do
-        }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
+        protected int[] getNewPosition(int[] pos) {
+            // rotate the point around the center
+            // todo check for duplicates (overlaps when rotating values other than 90, 180, 270)
+            double[] pt = {pos[rot1], pos[rot2]};
+            AffineTransform.getRotateInstance(Math.toRadians(angle), center[rot1], center[rot2])
+                    .transform(pt, 0, pt, 0, 1); // specifying to use this double[] to hold coords
+            pos[rot1] = (int)Math.round(pt[0]);
+            pos[rot2] = (int)Math.round(pt[1]);
+            return pos;
         }
     }
 
-    private final class MirrorVoxelIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
+    private final class MirrorVoxelIntent extends RepositionVoxelIntent  {
         private final int axe;
 
         protected MirrorVoxelIntent(Voxel[] voxels, int axe, boolean attach) {
-            super(attach);
-            this.voxels = voxels;
+            super(voxels, attach);
             this.axe = axe;
         }
 
+        private transient float[] center;
+
         @Override
-        protected void applyAction() {
-            if (isFirstCall()) {
+        protected void prepare(Voxel[] voxels) {
+            center = getCenter(voxels);
+        }
 
-                // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
+        @Override
+        protected int[] getNewPosition(int[] pos) {
+            // switch the point with the center
+            pos[axe] = Math.round(- pos[axe] + 2*center[axe]);
+            return pos;
+        }
+    }
 
-                // generate the ids and find center
-                int[] centerMin = null;
-                int[] centerMax = null;
-                Integer[] voxelIds = new Integer[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    voxelIds[i] = voxels[i].id;
-                    Voxel voxel = voxels[i];
-                    if (centerMin == null) {
-                        centerMin = voxel.getPosAsInt();
-                        centerMax = voxel.getPosAsInt();
-                    }
-                    centerMin[0] = Math.min(centerMin[0],voxel.x);
-                    centerMin[1] = Math.min(centerMin[1],voxel.y);
-                    centerMin[2] = Math.min(centerMin[2],voxel.z);
-                    centerMax[0] = Math.max(centerMax[0],voxel.x);
-                    centerMax[1] = Math.max(centerMax[1],voxel.y);
-                    centerMax[2] = Math.max(centerMax[2],voxel.z);
-                }
-                // calculate center - note: voxels.length must not be zero
-                assert centerMin != null;
-                float[] center = new float[] {
-                        (centerMin[0]/(float)2 + centerMax[0]/(float)2),
-                        (centerMin[1]/(float)2 + centerMax[1]/(float)2),
-                        (centerMin[2]/(float)2 + centerMax[2]/(float)2)
-                };
+    // collects voxels, only the first voxel for every position is kept
+    // (used to merge layers from top to bottom)
+    private static final class TopVoxelCollector implements VoxelVisitor<Voxel> {
+        private final TLongHashSet positions = new TLongHashSet();
+        private final ArrayList<Voxel> voxels = new ArrayList<Voxel>();
 
-                // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
+        @Override
+        public void visit(int x, int y, int z, Voxel voxel) {
+            if (positions.add(voxel.posId)) {
+                voxels.add(voxel);
+            }
+        }
 
-                // create new voxels (with new position) and delete
-                // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
+        public Voxel[] getVoxels() {
+            Voxel[] result = new Voxel[voxels.size()];
+            voxels.toArray(result);
+            return result;
+        }
+    }
 
-                    // switch the point with the center
-                    pos[axe] = Math.round(- pos[axe] + 2*center[axe]);
+    // collects voxels
+    private static final class VoxelCollector implements VoxelVisitor<Voxel> {
+        private final ArrayList<Voxel> voxels;
 
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
-                    Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
-                    }
-                }
-                // (re)add all the rotated voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
-            }
+        private VoxelCollector(int capacity) {
+            voxels = new ArrayList<Voxel>(capacity);
         }
 
         @Override
-        protected void unapplyAction() {
-            // nothing to do
+        public void visit(int x, int y, int z, Voxel voxel) {
+            voxels.add(voxel);
         }
 
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
+        public Voxel[] getVoxels() {
+            Voxel[] result = new Voxel[voxels.size()];
+            voxels.toArray(result);
+            return result;
         }
     }
 
@@ -1583,12 +1660,33 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // returns a free voxel id
     private int lastVoxel = -1;
     private int getFreeVoxelId() {
+        // skip the ids of layers that are not decoded yet
+        lastVoxel = Math.max(lastVoxel, dataContainer.getUnloadedMaxVoxelId());
         do {
             lastVoxel++;
         } while (dataContainer.voxels.containsKey(lastVoxel));
         return lastVoxel;
     }
 
+    // returns the first id of a range of free voxel ids (the ids are not
+    // reserved until they are used, see addVoxelsDirect)
+    private int getFreeVoxelIdRange(int count) {
+        // skip the ids of layers that are not decoded yet
+        int start = Math.max(lastVoxel, dataContainer.getUnloadedMaxVoxelId()) + 1;
+        // the range starts after the last used id in the range
+        for (int id = start; id < start + count; id++) {
+            if (dataContainer.voxels.containsKey(id)) {
+                start = id + 1;
+            }
+        }
+        return start;
+    }
+
+    // estimate the memory used by a texture
+    private static long getTextureByteSize(ImageIcon texture) {
+        return texture == null ? 0 : 64 + texture.getIconWidth() * texture.getIconHeight() * 4L;
+    }
+
     // returns a free layer id
     private int lastLayer = -1;
     private int getFreeLayerId() {
@@ -1613,49 +1711,84 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final int addVoxelDirect(Color color, int[] pos) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             int result = -1;
             VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
             if (layer != null && layer.voxelPositionFree(pos)) {
                 result = getFreeVoxelId();
                 Voxel voxel = new Voxel(result, pos, color, false, null, dataContainer.selectedLayer);
-                dataContainer.voxels.put(voxel.id, voxel);
                 dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+                updateTopVoxelIndex(new int[][] {voxel.getPosAsInt()});
             }
             return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public final int addVoxelsDirect(int layerId, int[] packed, int count) {
+        writeLock.lock();
+        try {
+            int result = 0;
+            VoxelLayer layer = dataContainer.layers.get(layerId);
+            if (layer != null && count > 0) {
+                layer.ensureCapacity(count);
+                int firstId = getFreeVoxelIdRange(count);
+                int[][] effected = new int[count][];
+                for (int i = 0, end = count * 4; i < end; i += 4) {
+                    if (layer.voxelPositionFree(packed[i], packed[i + 1], packed[i + 2])) {
+                        // the colors are opaque (as with addVoxelDirect)
+                        Voxel voxel = new Voxel(firstId + result, packed[i], packed[i + 1], packed[i + 2],
+                                0xFF000000 | packed[i + 3], layerId);
+                        layer.addVoxel(voxel);
+                        effected[result++] = new int[] {voxel.x, voxel.y, voxel.z};
+                    }
+                }
+                // single invalidation for all voxels
+                if (result > 0) {
+                    lastVoxel = firstId + result - 1;
+                    invalidateV(result == count ? effected : Arrays.copyOf(effected, result));
+                }
+            }
+            return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int addVoxel(Color color, int[] textureId, int[] pos) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             int result = -1;
             VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
-            if (layer != null && layer.getSize() < VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER && layer.voxelPositionFree(pos)) {
+            if (layer != null && layer.voxelPositionFree(pos)) {
                 result = getFreeVoxelId();
                 historyManagerV.applyIntent(new AddVoxelIntent(result, pos, color, false, textureId, dataContainer.selectedLayer, false));
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massAddVoxel(Voxel[] voxels) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
             if (layer != null) {
                 ArrayList<Voxel> validVoxel = new ArrayList<Voxel>();
-                HashSet<String> voxelPos = new HashSet<String>();
+                TLongHashSet voxelPos = new TLongHashSet();
                 for (Voxel voxel : voxels) {
-                    String posHash = voxel.getPosAsString();
-                    if (layer.voxelPositionFree(voxel)
-                            && !voxelPos.contains(posHash)) {
+                    if (layer.voxelPositionFree(voxel) && voxelPos.add(voxel.posId)) {
                         validVoxel.add(voxel);
-                        voxelPos.add(posHash);
                     }
                 }
-                if (validVoxel.size() > 0 && layer.getSize() + validVoxel.size() <= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
+                if (validVoxel.size() > 0) {
                     Voxel[] valid = new Voxel[validVoxel.size()];
                     validVoxel.toArray(valid);
                     historyManagerV.applyIntent(new MassAddVoxelIntent(valid, layer.id, false));
@@ -1663,24 +1796,30 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 }
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean removeVoxel(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId)) {
                 historyManagerV.applyIntent(new RemoveVoxelIntent(voxelId, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massRemoveVoxel(Integer[] voxelIds) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
                 if (dataContainer.voxels.containsKey(voxelId)) {
@@ -1695,12 +1834,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 return false;
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean moveVoxel(int voxelId, int[] newPos) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             Voxel voxel = dataContainer.voxels.get(voxelId);
             if (voxel != null) {
@@ -1708,78 +1850,96 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massMoveVoxel(Voxel[] voxel, int[] shift) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (voxel.length > 0 && (shift[0] != 0 || shift[1] != 0 || shift[2] != 0)) {
                 historyManagerV.applyIntent(new MassMoveVoxelIntent(voxel, shift.clone(), false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // rotate voxel around their center (but not the voxel "texture" itself)
     @Override
     public final boolean rotateVoxelCenter(Voxel[] voxel, int axe, float degree) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (voxel.length > 0 && degree/360 != 0 && axe <= 2 && axe >= 0) {
                 historyManagerV.applyIntent(new VoxelData.RotateVoxelCenterIntent(voxel, axe, degree, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean mirrorVoxel(Voxel[] voxel, int axe) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (voxel.length > 0 && axe <= 2 && axe >= 0) {
                 historyManagerV.applyIntent(new MirrorVoxelIntent(voxel, axe, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final Voxel getVoxel(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Voxel result = null;
             if (dataContainer.voxels.containsKey(voxelId)) {
                 result = dataContainer.voxels.get(voxelId);
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean setColor(int voxelId, Color color) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) &&
-                    (!dataContainer.voxels.get(voxelId).getColor().equals(color) ||
+                    (dataContainer.voxels.get(voxelId).getRGB() != color.getRGB() ||
                             dataContainer.voxels.get(voxelId).getTexture() != null)) {
                 historyManagerV.applyIntent(new ColorVoxelIntent(voxelId, color, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massSetColor(Integer[] voxelIds, Color color) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
                 Voxel voxel = dataContainer.voxels.get(voxelId);
-                if (voxel != null && !voxel.getColor().equals(color)) {
+                if (voxel != null && voxel.getRGB() != color.getRGB()) {
                     validVoxel.add(voxelId);
                 }
             }
@@ -1791,12 +1951,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 return false;
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massShiftColor(Integer[] voxelIds, float[] hsbOffset) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
                 Voxel voxel = dataContainer.voxels.get(voxelId);
@@ -1812,57 +1975,72 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 return false;
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final Color getColor(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Color result = null;
             if (dataContainer.voxels.containsKey(voxelId)) {
                 result = dataContainer.voxels.get(voxelId).getColor();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean setAlpha(int voxelId, int alpha) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).getAlpha() != alpha) {
                 historyManagerV.applyIntent(new AlphaVoxelIntent(voxelId, alpha, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int getAlpha(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = -1;
             if (dataContainer.voxels.containsKey(voxelId)) {
                 result = dataContainer.voxels.get(voxelId).getAlpha();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int getLayer(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = -1;
             if (dataContainer.voxels.containsKey(voxelId)) {
                 result = dataContainer.voxels.get(voxelId).getLayerId();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean clearV(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId)) {
                 if (dataContainer.layers.get(layerId).getSize() > 0) {
@@ -1871,19 +2049,25 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 }
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final Voxel searchVoxel(int[] pos, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.get(layerId).search(pos);
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel searchVoxel(int[] pos, boolean onlyCurrentLayer) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (onlyCurrentLayer) { // search only the current layers
                 VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
                 if (layer != null && layer.isVisible()) {
@@ -1892,17 +2076,32 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                         return result;
                     }
                 }
-            } else { // search all layers in correct order
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel result = dataContainer.layers.get(layerId).search(pos);
-                        if (result != null) {
-                            return result;
-                        }
-                    }
-                }
+            } else { // the top voxel of all layers
+                return getTopVoxel(pos[0], pos[1], pos[2]);
             }
             return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final void queryBox(int[] min, int[] max, boolean onlyCurrentLayer, VoxelVisitor<Voxel> visitor) {
+        readLock.lock();
+        try {
+            // make sure min and max are ordered
+            int[] from = new int[] {Math.min(min[0], max[0]), Math.min(min[1], max[1]), Math.min(min[2], max[2])};
+            int[] to = new int[] {Math.max(min[0], max[0]), Math.max(min[1], max[1]), Math.max(min[2], max[2])};
+            if (onlyCurrentLayer) { // search only the current layers
+                VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
+                if (layer != null && layer.isVisible()) {
+                    layer.forEachInBox(from, to, visitor);
+                }
+            } else { // the top voxel of all layers
+                getTopVoxelIndex().forEachInBox(from, to, new TopVoxelVisitor(visitor));
+            }
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -1911,80 +2110,98 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // select a voxel
     @Override
     public final boolean setVoxelSelected(int voxelId, boolean selected) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected() != selected) {
                 historyManagerV.applyIntent(new SelectVoxelIntent(voxelId, selected, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean isSelected(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected();
+        } finally {
+            readLock.unlock();
         }
     }
 
-    private final HashMap<String, TIntObjectHashMap<int[]>> changedSelectedVoxel = new HashMap<String, TIntObjectHashMap<int[]>>();
+    // changed selected positions and the version every consumer has seen
+    private final ChangeLog selectedChangeLog = new ChangeLog(VitcoSettings.CHANGE_LOG_BITS);
+    private final TObjectLongHashMap<String> selectedVersion = new TObjectLongHashMap<String>();
     @Override
     public final Voxel[][] getNewSelectedVoxel(String requestId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!changedSelectedVoxel.containsKey(requestId)) {
-                changedSelectedVoxel.put(requestId, null);
-            }
-            if (changedSelectedVoxel.get(requestId) == null) {
-                changedSelectedVoxel.put(requestId, new TIntObjectHashMap<int[]>());
-                return new Voxel[][] {null, getSelectedVoxels()};
-            } else {
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedSelectedVoxel.get(requestId).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null && voxel.isSelected()) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                long[] changes = selectedVersion.containsKey(requestId) ?
+                        selectedChangeLog.getChanges(selectedVersion.get(requestId)) : null;
+                selectedVersion.put(requestId, selectedChangeLog.getVersion());
+                if (changes == null) {
+                    return new Voxel[][] {null, getSelectedVoxels()};
+                } else {
+                    ArrayList<Voxel> removed = new ArrayList<Voxel>();
+                    ArrayList<Voxel> added = new ArrayList<Voxel>();
+                    for (long key : changes) {
+                        int[] pos = LongCubeIndexer.getPos(key);
+                        Voxel voxel = searchVoxel(pos, false);
+                        if (voxel != null && voxel.isSelected()) {
+                            added.add(voxel);
+                        } else {
+                            removed.add(new Voxel(-1, pos, null, false, null, -1));
+                        }
                     }
+                    Voxel[][] result = new Voxel[2][];
+                    result[0] = new Voxel[removed.size()];
+                    removed.toArray(result[0]);
+                    result[1] = new Voxel[added.size()];
+                    added.toArray(result[1]);
+                    return result;
                 }
-                Voxel[][] result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                changedSelectedVoxel.get(requestId).clear();
-                return result;
             }
+        } finally {
+            readLock.unlock();
         }
     }
 
     // get selected visible voxels
     @Override
     public final Voxel[] getSelectedVoxels() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!selectedVoxelBufferValid) {
-                // get all presented voxels
-                Voxel voxels[] = _getVisibleLayerVoxel();
-                // filter the selected
-                ArrayList<Voxel> selected = new ArrayList<Voxel>();
-                for (Voxel voxel : voxels) {
-                    if (voxel.isSelected()) {
-                        selected.add(voxel);
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!selectedVoxelBufferValid) {
+                    // get all presented voxels
+                    Voxel voxels[] = _getVisibleLayerVoxel();
+                    // filter the selected
+                    ArrayList<Voxel> selected = new ArrayList<Voxel>();
+                    for (Voxel voxel : voxels) {
+                        if (voxel.isSelected()) {
+                            selected.add(voxel);
+                        }
                     }
+                    selectedVoxelBuffer = new Voxel[selected.size()];
+                    selected.toArray(selectedVoxelBuffer);
+                    selectedVoxelBufferValid = true;
                 }
-                selectedVoxelBuffer = new Voxel[selected.size()];
-                selected.toArray(selectedVoxelBuffer);
-                selectedVoxelBufferValid = true;
+                return selectedVoxelBuffer.clone();
             }
-            return selectedVoxelBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean massSetVoxelSelected(Integer[] voxelIds, boolean selected) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (Integer voxelId : voxelIds) {
                 if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected() != selected) {
@@ -1999,18 +2216,23 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 return false;
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean migrateVoxels(Voxel[] voxels) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
-            if (voxels.length > 0 && voxels.length <= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
+            if (voxels.length > 0) {
                 historyManagerV.applyIntent(new MigrateIntent(voxels, false));
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -2022,233 +2244,259 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     int layerVoxelBufferLastLayer;
     @Override
     public final Voxel[] getLayerVoxels(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelBufferValid || layerVoxelBufferLastLayer != layerId) {
-                VoxelLayer layer = dataContainer.layers.get(layerId);
-                if (layer != null) {
-                    layerVoxelBuffer = layer.getVoxels();
-                } else {
-                    layerVoxelBuffer = new Voxel[0];
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerVoxelBufferValid || layerVoxelBufferLastLayer != layerId) {
+                    VoxelLayer layer = dataContainer.layers.get(layerId);
+                    if (layer != null) {
+                        layerVoxelBuffer = layer.getVoxels();
+                    } else {
+                        layerVoxelBuffer = new Voxel[0];
+                    }
+                    layerVoxelBufferValid = true;
+                    layerVoxelBufferLastLayer = layerId;
                 }
-                layerVoxelBufferValid = true;
-                layerVoxelBufferLastLayer = layerId;
+                return layerVoxelBuffer.clone();
             }
-            return layerVoxelBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     // get the new visible voxels, NOTE: if first element of array is null
     // this means that everything is erased
-    private final HashMap<String, TIntObjectHashMap<int[]>> changedVisibleVoxel = new HashMap<String, TIntObjectHashMap<int[]>>();
+    // changed visible positions and the version every consumer has seen
+    private final ChangeLog visibleChangeLog = new ChangeLog(VitcoSettings.CHANGE_LOG_BITS);
+    private final TObjectLongHashMap<String> visibleVersion = new TObjectLongHashMap<String>();
     @Override
     public final Voxel[][] getNewVisibleLayerVoxel(String requestId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!changedVisibleVoxel.containsKey(requestId)) {
-                changedVisibleVoxel.put(requestId, null);
-            }
-            if (changedVisibleVoxel.get(requestId) == null) {
-                changedVisibleVoxel.put(requestId, new TIntObjectHashMap<int[]>());
-                return new Voxel[][] {null, _getVisibleLayerVoxel()};
-            } else {
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedVisibleVoxel.get(requestId).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                long[] changes = visibleVersion.containsKey(requestId) ?
+                        visibleChangeLog.getChanges(visibleVersion.get(requestId)) : null;
+                visibleVersion.put(requestId, visibleChangeLog.getVersion());
+                if (changes == null) {
+                    return new Voxel[][] {null, _getVisibleLayerVoxel()};
+                } else {
+                    ArrayList<Voxel> removed = new ArrayList<Voxel>();
+                    ArrayList<Voxel> added = new ArrayList<Voxel>();
+                    for (long key : changes) {
+                        int[] pos = LongCubeIndexer.getPos(key);
+                        Voxel voxel = searchVoxel(pos, false);
+                        if (voxel != null) {
+                            added.add(voxel);
+                        } else {
+                            removed.add(new Voxel(-1, pos, null, false, null, -1));
+                        }
                     }
+                    Voxel[][] result = new Voxel[2][];
+                    result[0] = new Voxel[removed.size()];
+                    removed.toArray(result[0]);
+                    result[1] = new Voxel[added.size()];
+                    added.toArray(result[1]);
+                    return result;
                 }
-                Voxel[][] result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                changedVisibleVoxel.get(requestId).clear();
-                return result;
             }
+        } finally {
+            readLock.unlock();
         }
     }
 
-    // internal function, heavy!
+    // buffer of the visible voxels (read from the top voxel index)
     Voxel[] visibleLayerVoxelInternalBuffer = new Voxel[0];
     boolean visibleLayerVoxelInternalBufferValid = false;
-    private Voxel[] _getVisibleLayerVoxel() {
+    private void updateVisibleLayerVoxelBuffer() {
         if (!visibleLayerVoxelInternalBufferValid) {
-            VoxelLayer result = new VoxelLayer(-1, "tmp");
-            for (Integer layerId : dataContainer.layerOrder) {
-                if (dataContainer.layers.get(layerId).isVisible()) {
-                    Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
-                    for (Voxel voxel : voxels) {
-                        if (result.voxelPositionFree(voxel)) {
-                            result.addVoxel(voxel);
-                        }
-                    }
-                }
-            }
+            Engine<Integer> index = getTopVoxelIndex();
+            VoxelCollector result = new VoxelCollector(index.size());
+            index.forEach(new TopVoxelVisitor(result));
             visibleLayerVoxelInternalBuffer = result.getVoxels();
             visibleLayerVoxelInternalBufferValid = true;
         }
+    }
+
+    // internal function
+    private Voxel[] _getVisibleLayerVoxel() {
+        updateVisibleLayerVoxelBuffer();
         return visibleLayerVoxelInternalBuffer.clone();
     }
 
     // returns visible voxels
     @Override
     public final Voxel[] getVisibleLayerVoxel() {
-        synchronized (VitcoSettings.SYNC) {
-            updateVisVoxTreeInternal();
-            return visibleLayerVoxelBuffer;
-        }
-    }
-
-    // helper to update buffers for visible voxels
-    private Voxel[] visibleLayerVoxelBuffer = new Voxel[0];
-    private boolean anyVoxelsVisibleBuffer = false;
-    private final HashMap<String, Voxel> visVoxelList = new HashMap<String, Voxel>();
-    private void updateVisVoxTreeInternal() {
-        Voxel[][] newV = getNewVisibleLayerVoxel("___internal___visible_list");
-        if (newV[0] == null) {
-            visVoxelList.clear();
-        } else {
-            for (Voxel removed : newV[0]) {
-                visVoxelList.remove(removed.getPosAsString());
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                updateVisibleLayerVoxelBuffer();
+                return visibleLayerVoxelInternalBuffer;
             }
-        }
-        for (Voxel added : newV[1]) {
-            visVoxelList.put(added.getPosAsString(), added);
-        }
-        // update the buffer
-        if (newV[0]== null || newV[0].length > 0 || newV[1].length > 0) {
-            visibleLayerVoxelBuffer = new Voxel[visVoxelList.size()];
-            visVoxelList.values().toArray(visibleLayerVoxelBuffer);
-            anyVoxelsVisibleBuffer = visibleLayerVoxelBuffer.length > 0;
+        } finally {
+            readLock.unlock();
         }
     }
 
     // true iff any voxel are visible
     @Override
     public final boolean anyLayerVoxelVisible() {
-        synchronized (VitcoSettings.SYNC) {
-            updateVisVoxTreeInternal();
-            return anyVoxelsVisibleBuffer;
+        readLock.lock();
+        try {
+            if (!topVoxelIndexValid) {
+                // the layer sizes are known without decoding the layers
+                for (Integer layerId : dataContainer.layerOrder) {
+                    VoxelLayer layer = dataContainer.layers.get(layerId);
+                    if (layer.isVisible() && layer.getSize() > 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return topVoxelIndex.size() > 0;
+        } finally {
+            readLock.unlock();
         }
     }
 
     // true iff any voxel are selected
     @Override
     public final boolean anyVoxelSelected() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!selectedVoxelBufferValid) {
-                return getSelectedVoxels().length > 0;
-            } else {
-                return selectedVoxelBuffer.length > 0;
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!selectedVoxelBufferValid) {
+                    return getSelectedVoxels().length > 0;
+                } else {
+                    return selectedVoxelBuffer.length > 0;
+                }
             }
+        } finally {
+            readLock.unlock();
         }
     }
 
     // to invalidate the side view buffer
     @Override
     public final void invalidateSideViewBuffer(String requestId, Integer side, Integer plane) {
-        synchronized (VitcoSettings.SYNC) {
-            // make sure this plane is set
-            if (!changedVisibleVoxelPlane.containsKey(side)) {
-                changedVisibleVoxelPlane.put(side, new HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>());
-            }
-            // make sure the requestId is set
-            if (!changedVisibleVoxelPlane.get(side).containsKey(requestId)) {
-                changedVisibleVoxelPlane.get(side).put(requestId, new TIntObjectHashMap<TIntObjectHashMap<int[]>>());
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                // force complete refresh of this plane
+                TIntLongHashMap versions = sideVersion.get(requestId + "_" + side);
+                if (versions != null) {
+                    versions.remove(plane);
+                }
             }
-            // make sure this plane has no information stored (force complete refresh)
-            changedVisibleVoxelPlane.get(side).get(requestId).remove(plane);
+        } finally {
+            readLock.unlock();
         }
     }
 
-    // side -> requestId -> plane -> positions
-    private final TIntObjectHashMap<HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>> changedVisibleVoxelPlane
-            = new TIntObjectHashMap<HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>>();
+    // the version of the visible changes every side view consumer has seen (for every plane)
+    private final HashMap<String, TIntLongHashMap> sideVersion = new HashMap<String, TIntLongHashMap>();
     @Override
     public final Voxel[][] getNewSideVoxel(String requestId, Integer side, Integer plane) {
-        synchronized (VitcoSettings.SYNC) {
-            // default result (delete all + empty)
-            Voxel[][] result = new Voxel[][]{null, new Voxel[0]};
-            // make sure this plane is set
-            if (!changedVisibleVoxelPlane.containsKey(side)) {
-                changedVisibleVoxelPlane.put(side, new HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>());
-            }
-            // make sure the requestId is set
-            if (!changedVisibleVoxelPlane.get(side).containsKey(requestId)) {
-                changedVisibleVoxelPlane.get(side).put(requestId, new TIntObjectHashMap<TIntObjectHashMap<int[]>>());
-            }
-
-            if (changedVisibleVoxelPlane.get(side).get(requestId).get(plane) == null) {
-                // if the plane is null, fetch all data and set it no empty
-                switch (side) {
-                    case 0:
-                        result = new Voxel[][] {null, getVoxelsXY(plane)};
-                        break;
-                    case 1:
-                        result = new Voxel[][] {null, getVoxelsXZ(plane)};
-                        break;
-                    case 2:
-                        result = new Voxel[][] {null, getVoxelsYZ(plane)};
-                        break;
-                    default: break;
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                // default result (delete all + empty)
+                Voxel[][] result = new Voxel[][]{null, new Voxel[0]};
+                // make sure the requestId is set
+                String sideId = requestId + "_" + side;
+                TIntLongHashMap versions = sideVersion.get(sideId);
+                if (versions == null) {
+                    versions = new TIntLongHashMap();
+                    sideVersion.put(sideId, versions);
                 }
-                // reset
-                changedVisibleVoxelPlane.get(side).get(requestId).put(plane, new TIntObjectHashMap<int[]>());
-            } else {
-                // if there are changed positions, notify only those positions
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedVisibleVoxelPlane.get(side).get(requestId).get(plane).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
+
+                long[] changes = versions.containsKey(plane) ? visibleChangeLog.getChanges(versions.get(plane)) : null;
+                versions.put(plane, visibleChangeLog.getVersion());
+                if (changes == null) {
+                    // fetch all data of the plane
+                    switch (side) {
+                        case 0:
+                            result = new Voxel[][] {null, getVoxelsXY(plane)};
+                            break;
+                        case 1:
+                            result = new Voxel[][] {null, getVoxelsXZ(plane)};
+                            break;
+                        case 2:
+                            result = new Voxel[][] {null, getVoxelsYZ(plane)};
+                            break;
+                        default: break;
+                    }
+                } else {
+                    // if there are changed positions in this plane, notify only those positions
+                    ArrayList<Voxel> removed = new ArrayList<Voxel>();
+                    ArrayList<Voxel> added = new ArrayList<Voxel>();
+                    for (long key : changes) {
+                        int depth;
+                        switch (side) {
+                            case 0: depth = LongCubeIndexer.getZ(key); break;
+                            case 2: depth = LongCubeIndexer.getX(key); break;
+                            default: depth = LongCubeIndexer.getY(key); break;
+                        }
+                        if (depth != plane) {
+                            continue;
+                        }
+                        int[] pos = LongCubeIndexer.getPos(key);
+                        Voxel voxel = searchVoxel(pos, false);
+                        if (voxel != null) {
+                            added.add(voxel);
+                        } else {
+                            removed.add(new Voxel(-1, pos, null, false, null, -1));
+                        }
                     }
+                    result = new Voxel[2][];
+                    result[0] = new Voxel[removed.size()];
+                    removed.toArray(result[0]);
+                    result[1] = new Voxel[added.size()];
+                    added.toArray(result[1]);
                 }
-                result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                // these changes have now been forwarded
-                changedVisibleVoxelPlane.get(side).get(requestId).get(plane).clear();
-            }
-            // return the result
-            return result;
+                // return the result
+                return result;
+            }
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsXY(int z, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getZPlane(z);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsXZ(int y, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getYPlane(y);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsYZ(int x, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getXPlane(x);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2257,25 +2505,21 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelXYBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsXY(int z) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelXYBufferValid || z != lastVoxelXYBufferZValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getZPlane(z);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerVoxelXYBufferValid || z != lastVoxelXYBufferZValue) {
+
+                    VoxelCollector result = new VoxelCollector(16);
+                    getTopVoxelIndex().forEachInPlane(2, z, new TopVoxelVisitor(result));
+                    layerVoxelXYBuffer = result.getVoxels();
+                    layerVoxelXYBufferValid = true;
+                    lastVoxelXYBufferZValue = z;
                 }
-                layerVoxelXYBuffer = result.getVoxels();
-                layerVoxelXYBufferValid = true;
-                lastVoxelXYBufferZValue = z;
+                return layerVoxelXYBuffer.clone();
             }
-            return layerVoxelXYBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2284,25 +2528,21 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelXZBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsXZ(int y) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelXZBufferValid || y != lastVoxelXZBufferYValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getYPlane(y);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerVoxelXZBufferValid || y != lastVoxelXZBufferYValue) {
+
+                    VoxelCollector result = new VoxelCollector(16);
+                    getTopVoxelIndex().forEachInPlane(1, y, new TopVoxelVisitor(result));
+                    layerVoxelXZBuffer = result.getVoxels();
+                    layerVoxelXZBufferValid = true;
+                    lastVoxelXZBufferYValue = y;
                 }
-                layerVoxelXZBuffer = result.getVoxels();
-                layerVoxelXZBufferValid = true;
-                lastVoxelXZBufferYValue = y;
+                return layerVoxelXZBuffer.clone();
             }
-            return layerVoxelXZBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2311,36 +2551,35 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelYZBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsYZ(int x) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelYZBufferValid || x != lastVoxelYZBufferXValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getXPlane(x);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerVoxelYZBufferValid || x != lastVoxelYZBufferXValue) {
+
+                    VoxelCollector result = new VoxelCollector(16);
+                    getTopVoxelIndex().forEachInPlane(0, x, new TopVoxelVisitor(result));
+                    layerVoxelYZBuffer = result.getVoxels();
+                    layerVoxelYZBufferValid = true;
+                    lastVoxelYZBufferXValue = x;
                 }
-                layerVoxelYZBuffer = result.getVoxels();
-                layerVoxelYZBufferValid = true;
-                lastVoxelYZBufferXValue = x;
+                return layerVoxelYZBuffer.clone();
             }
-            return layerVoxelYZBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int getVoxelCount(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = 0;
             if (dataContainer.layers.containsKey(layerId)) {
                 result = dataContainer.layers.get(layerId).getSize();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2348,45 +2587,71 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final void undoV() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerV.unapply();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final void redoV() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             historyManagerV.apply();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public final long getHistoryByteSizeV() {
+        readLock.lock();
+        try {
+            return historyManagerV.getByteSize();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean canUndoV() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return historyManagerV.canUndo();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean canRedoV() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return historyManagerV.canRedo();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int createLayer(String layerName) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             int layerId = getFreeLayerId();
             historyManagerV.applyIntent(new CreateLayerIntent(layerId, layerName, false));
             notifier.onLayerStateChanged();
             return layerId;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public  final boolean deleteLayer(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId)) {
                 historyManagerV.applyIntent(new DeleteLayerIntent(layerId, false));
@@ -2394,12 +2659,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public  final boolean renameLayer(int layerId, String newName) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId) && !newName.equals(dataContainer.layers.get(layerId).getName())) {
                 historyManagerV.applyIntent(new RenameLayerIntent(layerId, newName, false));
@@ -2407,13 +2675,18 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final String getLayerName(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) ? dataContainer.layers.get(layerId).getName() : null;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2421,24 +2694,30 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     private String[] layerNameBuffer = new String[]{};
     @Override
     public final String[] getLayerNames() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerNameBufferValid) {
-                if (layerNameBuffer.length != dataContainer.layers.size()) {
-                    layerNameBuffer = new String[dataContainer.layers.size()];
-                }
-                int i = 0;
-                for (Integer layerId : dataContainer.layerOrder) {
-                    layerNameBuffer[i++] = getLayerName(layerId);
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerNameBufferValid) {
+                    if (layerNameBuffer.length != dataContainer.layers.size()) {
+                        layerNameBuffer = new String[dataContainer.layers.size()];
+                    }
+                    int i = 0;
+                    for (Integer layerId : dataContainer.layerOrder) {
+                        layerNameBuffer[i++] = getLayerName(layerId);
+                    }
+                    layerNameBufferValid = true;
                 }
-                layerNameBufferValid = true;
+                return layerNameBuffer.clone();
             }
-            return layerNameBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean selectLayer(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if ((dataContainer.layers.containsKey(layerId) || layerId == -1) && dataContainer.selectedLayer != layerId) {
                 historyManagerV.applyIntent(new SelectLayerIntent(layerId, false));
@@ -2446,12 +2725,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean selectLayerSoft(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if ((dataContainer.layers.containsKey(layerId) || layerId == -1) && dataContainer.selectedLayer != layerId) {
                 dataContainer.selectedLayer = layerId;
@@ -2460,14 +2742,19 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int getSelectedLayer() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             // make sure the selected layer is always valid
             return dataContainer.layers.containsKey(dataContainer.selectedLayer) ? dataContainer.selectedLayer : -1;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2475,21 +2762,27 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     private Integer[] layerBuffer = new Integer[]{};
     @Override
     public final Integer[] getLayers() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerBufferValid) {
-                if (layerBuffer.length != dataContainer.layers.size()) {
-                    layerBuffer = new Integer[dataContainer.layers.size()];
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!layerBufferValid) {
+                    if (layerBuffer.length != dataContainer.layers.size()) {
+                        layerBuffer = new Integer[dataContainer.layers.size()];
+                    }
+                    dataContainer.layerOrder.toArray(layerBuffer);
+                    layerBufferValid = true;
                 }
-                dataContainer.layerOrder.toArray(layerBuffer);
-                layerBufferValid = true;
+                return layerBuffer.clone();
             }
-            return layerBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean setVisible(int layerId, boolean b) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId) && dataContainer.layers.get(layerId).isVisible() != b) {
                 historyManagerV.applyIntent(new LayerVisibilityIntent(layerId, b, false));
@@ -2497,23 +2790,29 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean getLayerVisible(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId)) {
                 result = dataContainer.layers.get(layerId).isVisible();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean moveLayerUp(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (canMoveLayerUp(layerId)) {
                 historyManagerV.applyIntent(new MoveLayerIntent(layerId, true, false));
@@ -2521,12 +2820,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean moveLayerDown(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (canMoveLayerDown(layerId)) {
                 historyManagerV.applyIntent(new MoveLayerIntent(layerId, false, false));
@@ -2534,38 +2836,50 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean canMoveLayerUp(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) && dataContainer.layerOrder.lastIndexOf(layerId) > 0;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean canMoveLayerDown(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) && dataContainer.layerOrder.lastIndexOf(layerId) < dataContainer.layerOrder.size() - 1;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean mergeVisibleLayers() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (canMergeVisibleLayers()) {
                 historyManagerV.applyIntent(new MergeLayersIntent(false));
                 notifier.onLayerStateChanged();
                 return true;
             }
             return false;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean canMergeVisibleLayers() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             // if there are more than one visible layer
             int visibleLayers = 0;
             for (int layerId : dataContainer.layerOrder) {
@@ -2577,6 +2891,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 }
             }
             return false;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2584,7 +2900,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final void addTexture(BufferedImage image) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             // make sure that the graphic is a mutiple of 32
             int width = ((int)Math.ceil(image.getWidth() / 32f)) * 32;
             int height = ((int)Math.ceil(image.getHeight() / 32f)) * 32;
@@ -2597,16 +2914,19 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 texture = GraphicTools.deepCopy(image);
             }
             historyManagerV.applyIntent(new AddTextureGridIntent(texture, false));
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean removeTexture(int textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             // check that this texture is not used (return false if used)
-            for (Voxel voxel : dataContainer.voxels.values()) {
-                if (ArrayUtil.contains(voxel.getTexture(), textureId)) {
+            for (VoxelLayer layer : dataContainer.layers.values()) {
+                if (layer.getVoxelTextures().contains(textureId)) {
                     return false;
                 }
             }
@@ -2615,23 +2935,23 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean removeAllTexture() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.textures.size() > 0) {
 
                 // check which textures are not in use
                 ArrayList<Integer> unusedTextures = new ArrayList<Integer>(dataContainer.textures.keySet());
-                for (Voxel voxel : dataContainer.voxels.values()) {
-                    int[] textures = voxel.getTexture();
-                    if (textures != null) {
-                        for (Integer textureId : textures) {
-                            unusedTextures.remove(textureId);
-                        }
+                for (VoxelLayer layer : dataContainer.layers.values()) {
+                    for (int textureId : layer.getVoxelTextures().toArray()) {
+                        unusedTextures.remove(Integer.valueOf(textureId));
                     }
                 }
                 if (unusedTextures.size() > 0) {
@@ -2640,12 +2960,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 }
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean replaceTexture(int textureId, ImageIcon texture) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.textures.containsKey(textureId) &&
                     texture.getIconWidth() == 32 && texture.getIconHeight() == 32) {
@@ -2653,62 +2976,79 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final Integer[] getTextureList() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Integer[] result = new Integer[dataContainer.textures.size()];
             dataContainer.textures.keySet().toArray(result);
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final TIntHashSet getVoxelColorList() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             TIntHashSet result = new TIntHashSet();
             for (Integer layerId : getLayers()) {
                 result.addAll(dataContainer.layers.get(layerId).getVoxelColors());
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final ImageIcon getTexture(Integer textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Image internalImg = dataContainer.textures.get(textureId).getImage();
             BufferedImage result = new BufferedImage(
                     internalImg.getWidth(null), internalImg.getHeight(null),
                     BufferedImage.TYPE_INT_ARGB);
             result.getGraphics().drawImage(internalImg, 0, 0, null);
             return new ImageIcon(result);
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final String getTextureHash(Integer textureId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (dataContainer.textures.containsKey(textureId)) {
-                if (dataContainer.textures.get(textureId).getDescription() == null) {
-                    ImageIcon img = dataContainer.textures.get(textureId);
-                    BufferedImage bi = new BufferedImage(
-                            img.getIconWidth(),img.getIconHeight(),BufferedImage.TYPE_INT_RGB);
-                    bi.createGraphics().drawImage(img.getImage(),0,0,null);
-                    dataContainer.textures.get(textureId).setDescription(GraphicTools.getHash(bi));
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (dataContainer.textures.containsKey(textureId)) {
+                    if (dataContainer.textures.get(textureId).getDescription() == null) {
+                        ImageIcon img = dataContainer.textures.get(textureId);
+                        BufferedImage bi = new BufferedImage(
+                                img.getIconWidth(),img.getIconHeight(),BufferedImage.TYPE_INT_RGB);
+                        bi.createGraphics().drawImage(img.getImage(),0,0,null);
+                        dataContainer.textures.get(textureId).setDescription(GraphicTools.getHash(bi));
+                    }
+                    return dataContainer.textures.get(textureId).getDescription();
+                } else {
+                    return "";
                 }
-                return dataContainer.textures.get(textureId).getDescription();
-            } else {
-                return "";
             }
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final void selectTexture(int textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (textureId != -1 && dataContainer.textures.containsKey(textureId)) {
                 if (textureId != dataContainer.selectedTexture) {
                     historyManagerV.applyIntent(new SelectTextureIntent(textureId, false));
@@ -2718,33 +3058,42 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                     historyManagerV.applyIntent(new SelectTextureIntent(-1, false));
                 }
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final void selectTextureSoft(int textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (dataContainer.selectedTexture != textureId &&
                     (textureId == -1 || dataContainer.textures.containsKey(textureId))) {
                 dataContainer.selectedTexture = textureId;
                 notifier.onTextureDataChanged();
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int getSelectedTexture() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (!dataContainer.textures.containsKey(dataContainer.selectedTexture)) {
                 selectTextureSoft(-1);
             }
             return dataContainer.selectedTexture;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean setTexture(int voxelId, int voxelSide, int textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) &&
                     (dataContainer.voxels.get(voxelId).getTexture() == null ||
@@ -2753,12 +3102,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final boolean massSetTexture(Integer[] voxelIds, int textureId) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
                 if (dataContainer.voxels.containsKey(voxelId)) {
@@ -2773,24 +3125,30 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 return false;
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // get texture id of a voxel
     @Override
     public final int[] getVoxelTextureIds(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.voxels.containsKey(voxelId)) {
                 return dataContainer.voxels.get(voxelId).getTexture();
             }
             return null; // error
+        } finally {
+            readLock.unlock();
         }
     }
 
     // flip the texture of a voxel
     @Override
     public final boolean flipVoxelTexture(int voxelId, int voxelSide) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) &&
                     dataContainer.voxels.get(voxelId).getTexture() != null) {
@@ -2798,13 +3156,16 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     // rotate the texture of a voxel
     @Override
     public final boolean rotateVoxelTexture(int voxelId, int voxelSide) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.voxels.containsKey(voxelId) &&
                     dataContainer.voxels.get(voxelId).getTexture() != null) {
@@ -2812,6 +3173,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 result = true;
             }
             return result;
+        } finally {
+            writeLock.unlock();
         }
     }
 }
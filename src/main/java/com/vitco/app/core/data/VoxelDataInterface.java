@@ -1,6 +1,7 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.engine.VoxelVisitor;
 import gnu.trove.set.hash.TIntHashSet;
 
 import javax.swing.*;
@@ -14,6 +15,10 @@ public interface VoxelDataInterface {
     // adds a voxel directly to the container (no history entry is created!)
     // only to be used for back imports etc
     int addVoxelDirect(Color color, int[] pos);
+    // adds voxels directly to a layer (no history entry is created!), the voxels are
+    // packed as x, y, z, argb and occupied positions are skipped; returns the amount of added voxels
+    // only to be used for imports etc
+    int addVoxelsDirect(int layerId, int[] packed, int count);
     // adds a voxel to current layer and returns voxel id
     int addVoxel(Color color, int[] textureId, int[] pos);
     // deleted the voxel
@@ -39,6 +44,9 @@ public interface VoxelDataInterface {
     // returns a voxel if the current layer has a voxel at the position
     // layer needs to be visible
     Voxel searchVoxel(int[] pos, boolean onlyCurrentLayer);
+    // visit the voxels in a box (min and max are inclusive) that searchVoxel would
+    // return for these positions, note: the visitor must not change the data
+    void queryBox(int[] min, int[] max, boolean onlyCurrentLayer, VoxelVisitor<Voxel> visitor);
     // get all voxels in current layer
     Voxel[] getLayerVoxels(int layerId);
     // get changed voxels since last call
@@ -72,6 +80,8 @@ public interface VoxelDataInterface {
     boolean canUndoV();
     // return true if the last action can be redone (animation)
     boolean canRedoV();
+    // get the estimated memory (in bytes) used by the history that is kept in memory
+    long getHistoryByteSizeV();
 
 
     // add a layer
@@ -1,10 +1,15 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.engine.VoxelVisitor;
+import com.vitco.app.settings.VitcoSettings;
+import gnu.trove.set.hash.TIntHashSet;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.awt.*;
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Random;
@@ -79,18 +84,47 @@ public class VoxelDataTest {
         assert data.getVoxel(id1).z == 2;
     }
 
+    @Test
+    public void testRotateAndMirrorVoxel() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        data.selectLayer(lid1);
+        int id1 = data.addVoxel(Color.RED, null, new int[]{0,0,0});
+        int id2 = data.addVoxel(Color.GREEN, null, new int[]{2,0,0});
+        int id3 = data.addVoxel(Color.BLUE, null, new int[]{1,0,1});
+        // mirror the first two voxels (they swap positions)
+        assert data.mirrorVoxel(new Voxel[] {data.getVoxel(id1), data.getVoxel(id2)}, 0);
+        assert data.searchVoxel(new int[]{0,0,0}, false).getColor().equals(Color.GREEN);
+        assert data.searchVoxel(new int[]{2,0,0}, false).getColor().equals(Color.RED);
+        // rotate around the y axis (the rotated voxel replaces the blue voxel)
+        assert data.rotateVoxelCenter(new Voxel[] {
+                data.searchVoxel(new int[]{0,0,0}, false), data.searchVoxel(new int[]{2,0,0}, false)}, 1, 90);
+        assert data.getLayerVoxels(lid1).length == 2;
+        assert data.searchVoxel(new int[]{1,0,-1}, false) != null;
+        assert data.searchVoxel(new int[]{1,0,1}, false).id != id3;
+        // undo restores everything
+        data.undoV();
+        data.undoV();
+        assert data.getLayerVoxels(lid1).length == 3;
+        assert data.searchVoxel(new int[]{0,0,0}, false).getColor().equals(Color.RED);
+        assert data.searchVoxel(new int[]{1,0,1}, false).id == id3;
+        data.redoV();
+        data.redoV();
+        assert data.getLayerVoxels(lid1).length == 2;
+        assert data.searchVoxel(new int[]{0,0,0}, false) == null;
+    }
+
     @Test
     public void testColorVoxel() throws Exception {
         int lid1 = data.createLayer("layer1");
         data.selectLayer(lid1);
         int id1 = data.addVoxel(Color.RED, null, new int[] {0,0,0});
-        assert data.getColor(id1) == Color.RED;
+        assert data.getColor(id1).equals(Color.RED);
         data.setColor(id1, Color.GREEN);
-        assert data.getColor(id1) == Color.GREEN;
+        assert data.getColor(id1).equals(Color.GREEN);
         data.undoV();
-        assert data.getColor(id1) == Color.RED;
+        assert data.getColor(id1).equals(Color.RED);
         data.redoV();
-        assert data.getColor(id1) == Color.GREEN;
+        assert data.getColor(id1).equals(Color.GREEN);
 
     }
 
@@ -148,7 +182,7 @@ public class VoxelDataTest {
         assert data.getVoxel(id3) == null;
         Voxel[] voxel = data.getLayerVoxels(data.getSelectedLayer());
         assert voxel.length == 2;
-        assert (voxel[1].z == 2 && voxel[1].getColor() == Color.GREEN);
+        assert (voxel[1].z == 2 && voxel[1].getColor().equals(Color.GREEN));
     }
 
     @Test
@@ -165,8 +199,198 @@ public class VoxelDataTest {
         assert data.getVoxelsXY(2).length == 1;
     }
 
+    @Test
+    public void testQueryBox() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        int lid3 = data.createLayer("layer3");
+        Random rand = new Random(0);
+        for (int lid : new int[] {lid1, lid2, lid3}) {
+            data.selectLayer(lid);
+            for (int i = 0; i < 2000; i++) {
+                data.addVoxel(new Color(rand.nextInt()), null,
+                        new int[] {rand.nextInt(60) - 30, rand.nextInt(60) - 30, rand.nextInt(60) - 30});
+            }
+        }
+        data.setVisible(lid3, false);
+        data.selectLayer(lid2);
+        // the corners can be in any order
+        final int[] min = new int[] {-20, -40, 0};
+        final int[] max = new int[] {35, 10, -10};
+        for (final boolean onlyCurrentLayer : new boolean[] {false, true}) {
+            final ArrayList<Voxel> found = new ArrayList<Voxel>();
+            data.queryBox(min, max, onlyCurrentLayer, new VoxelVisitor<Voxel>() {
+                @Override
+                public void visit(int x, int y, int z, Voxel voxel) {
+                    assert voxel.equals(data.searchVoxel(new int[] {x, y, z}, onlyCurrentLayer));
+                    found.add(voxel);
+                }
+            });
+            int expected = 0;
+            for (int x = -20; x <= 35; x++) {
+                for (int y = -40; y <= 10; y++) {
+                    for (int z = -10; z <= 0; z++) {
+                        if (data.searchVoxel(new int[] {x, y, z}, onlyCurrentLayer) != null) {
+                            expected++;
+                        }
+                    }
+                }
+            }
+            assert expected > 0;
+            assert found.size() == expected;
+        }
+    }
+
+    // helper: the top voxel computed from the layers
+    private Voxel searchTopVoxel(int[] pos) {
+        for (int layerId : data.getLayers()) {
+            if (data.getLayerVisible(layerId)) {
+                Voxel voxel = data.searchVoxel(pos, layerId);
+                if (voxel != null) {
+                    return voxel;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testTopVoxelIndex() throws Exception {
+        Random rand = new Random(1);
+        for (int i = 0; i < 5; i++) {
+            data.createLayer("layer" + i);
+        }
+        for (int step = 0; step < 400; step++) {
+            Integer[] layers = data.getLayers();
+            int layerId = layers[rand.nextInt(layers.length)];
+            switch (rand.nextInt(8)) {
+                case 0: data.setVisible(layerId, !data.getLayerVisible(layerId)); break;
+                case 1: data.moveLayerUp(layerId); break;
+                case 2: data.moveLayerDown(layerId); break;
+                case 3: data.undoV(); break;
+                case 4:
+                    if (layers.length > 2) {
+                        data.deleteLayer(layerId);
+                    }
+                    break;
+                default:
+                    data.selectLayer(layerId);
+                    for (int j = 0; j < 10; j++) {
+                        int[] pos = new int[] {rand.nextInt(6), rand.nextInt(6), rand.nextInt(6)};
+                        Voxel voxel = data.searchVoxel(pos, true);
+                        if (voxel == null) {
+                            data.addVoxel(Color.RED, null, pos);
+                        } else {
+                            data.removeVoxel(voxel.id);
+                        }
+                    }
+                    break;
+            }
+            // compare with the layers
+            int visible = 0;
+            for (int x = 0; x < 6; x++) {
+                for (int y = 0; y < 6; y++) {
+                    for (int z = 0; z < 6; z++) {
+                        int[] pos = new int[] {x, y, z};
+                        Voxel voxel = searchTopVoxel(pos);
+                        assert voxel == null ? data.searchVoxel(pos, false) == null : voxel.equals(data.searchVoxel(pos, false));
+                        if (voxel != null) {
+                            visible++;
+                        }
+                    }
+                }
+            }
+            assert data.getVisibleLayerVoxel().length == visible;
+            assert data.anyLayerVoxelVisible() == (visible > 0);
+        }
+    }
+
+    @Test
+    public void testLazyTopVoxelIndex() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        for (int i = 0; i < 20; i++) {
+            data.selectLayer(i % 2 == 0 ? lid1 : lid2);
+            data.addVoxel(Color.RED, null, new int[] {i / 2, 0, 0});
+        }
+        File file = File.createTempFile("lazy", ".vsd");
+        file.deleteOnExit();
+        assert data.saveToFile(file);
+        Data loaded = new Data();
+        assert loaded.loadFromFile(file);
+
+        // loading does not decode the layers (decoding fails while the file is changed)
+        long length = file.length();
+        long modified = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean failed = false;
+        try {
+            raf.setLength(length + 1);
+            assert loaded.anyLayerVoxelVisible();
+            try {
+                loaded.getVisibleLayerVoxel();
+            } catch (IllegalStateException e) {
+                failed = true;
+            }
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+        assert failed;
+        assert file.setLastModified(modified);
+
+        // the index is built on first access
+        assert loaded.getVisibleLayerVoxel().length == 10;
+        for (int x = 0; x < 10; x++) {
+            int[] pos = new int[] {x, 0, 0};
+            assert loaded.searchVoxel(pos, false).getLayerId() == loaded.getLayers()[0];
+        }
+        assert file.delete();
+    }
+
     // tests for layers
 
+    @Test
+    public void testChangeFeed() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        data.selectLayer(lid1);
+        // the first request is a full refresh
+        assert data.getNewVisibleLayerVoxel("fast")[0] == null;
+        assert data.getNewVisibleLayerVoxel("slow")[0] == null;
+        assert data.getNewSideVoxel("side", 0, 0)[0] == null;
+
+        // consumers pull the changes at their own pace
+        int id1 = data.addVoxel(Color.RED, null, new int[] {0, 0, 0});
+        Voxel[][] changes = data.getNewVisibleLayerVoxel("fast");
+        assert changes[0].length == 0 && changes[1].length == 1 && changes[1][0].id == id1;
+        int id2 = data.addVoxel(Color.RED, null, new int[] {1, 0, 1});
+        changes = data.getNewVisibleLayerVoxel("fast");
+        assert changes[0].length == 0 && changes[1].length == 1 && changes[1][0].id == id2;
+        data.removeVoxel(id1);
+        changes = data.getNewVisibleLayerVoxel("slow");
+        assert changes[0].length == 1 && changes[0][0].x == 0 && changes[1].length == 1 && changes[1][0].id == id2;
+        assert data.getNewVisibleLayerVoxel("slow")[1].length == 0;
+
+        // only the changes of the requested plane are returned
+        changes = data.getNewSideVoxel("side", 0, 0);
+        assert changes[0].length == 1 && changes[1].length == 0;
+        data.invalidateSideViewBuffer("side", 0, 0);
+        assert data.getNewSideVoxel("side", 0, 0)[0] == null;
+
+        // a consumer that lagged behind the change log does a full refresh
+        int count = (1 << VitcoSettings.CHANGE_LOG_BITS) + 1;
+        Voxel[] voxels = new Voxel[count];
+        for (int i = 0; i < count; i++) {
+            voxels[i] = new Voxel(-1, new int[] {i % 1000, -1 - i / 1000, 5}, Color.BLUE, false, null, lid1);
+        }
+        assert data.massAddVoxel(voxels);
+        changes = data.getNewVisibleLayerVoxel("slow");
+        assert changes[0] == null && changes[1].length == count + 1;
+        data.undoV();
+        changes = data.getNewVisibleLayerVoxel("slow");
+        assert changes[0] == null && changes[1].length == 1;
+    }
+
     @Test
     public void testCreateDeleteLayer() throws Exception {
         int lid1 =data.createLayer("hello");
@@ -423,6 +647,168 @@ public class VoxelDataTest {
         // todo test undo/redo of this
     }
 
+    @Test
+    public void testMassAddRemoveHistory() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        data.selectLayer(lid1);
+        // mass add
+        Voxel[] voxels = new Voxel[50000];
+        for (int i = 0; i < voxels.length; i++) {
+            voxels[i] = new Voxel(-1, new int[] {i % 50, i / 2500, (i / 50) % 50}, Color.RED, false, null, lid1);
+        }
+        int historySize = data.historyManagerV.getHistory().size();
+        assert data.massAddVoxel(voxels);
+        // only one record is added to the history
+        assert data.historyManagerV.getHistory().size() == historySize + 1;
+        assert data.getLayerVoxels(lid1).length == voxels.length;
+
+        // change a voxel and remove everything
+        Voxel voxel = data.searchVoxel(new int[] {1, 2, 3}, false);
+        data.setAlpha(voxel.id, 10);
+        data.setVoxelSelected(voxel.id, true);
+        data.setColor(voxel.id, Color.BLUE);
+        assert data.massRemoveVoxel(Voxel.convertVoxelsToIdArray(data.getLayerVoxels(lid1)));
+        assert data.getLayerVoxels(lid1).length == 0;
+
+        // the voxel is restored with all attributes
+        data.undoV();
+        assert data.getLayerVoxels(lid1).length == voxels.length;
+        voxel = data.getVoxel(voxel.id);
+        assert voxel.getAlpha() == 10;
+        assert voxel.isSelected();
+        assert voxel.getColor().equals(Color.BLUE);
+        assert voxel.equals(data.searchVoxel(new int[] {1, 2, 3}, false));
+        // and changes still work with the restored voxel
+        data.undoV();
+        assert data.getVoxel(voxel.id).getColor().equals(Color.RED);
+        data.undoV();
+        data.undoV();
+        assert data.getVoxel(voxel.id).getAlpha() == -1;
+        data.undoV();
+        assert data.getLayerVoxels(lid1).length == 0;
+        while (data.canRedoV()) {
+            data.redoV();
+        }
+        assert data.getLayerVoxels(lid1).length == 0;
+        data.undoV();
+        assert data.getVoxel(voxel.id).getColor().equals(Color.BLUE);
+        assert data.getLayerVoxels(lid1).length == voxels.length;
+    }
+
+    @Test
+    public void testAddVoxelsDirect() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        data.selectLayer(lid1);
+        int existing = data.addVoxel(Color.RED, null, new int[] {0, 0, 0});
+        // the first position is occupied and the last one is a duplicate
+        int[] packed = new int[] {
+                0, 0, 0, Color.BLUE.getRGB(),
+                1, 0, 0, Color.GREEN.getRGB(),
+                2, -1, 5, 0x00123456,
+                1, 0, 0, Color.BLUE.getRGB()
+        };
+        int historySize = data.historyManagerV.getHistory().size();
+        assert data.addVoxelsDirect(lid1, packed, 4) == 2;
+        assert data.historyManagerV.getHistory().size() == historySize;
+        assert data.getLayerVoxels(lid1).length == 3;
+        assert data.searchVoxel(new int[] {0, 0, 0}, lid1).id == existing;
+        assert data.searchVoxel(new int[] {1, 0, 0}, lid1).getColor().equals(Color.GREEN);
+        // colors are opaque
+        assert data.searchVoxel(new int[] {2, -1, 5}, lid1).getColor().equals(new Color(0x123456));
+        assert data.searchVoxel(new int[] {2, -1, 5}, false) != null;
+        // only the given amount is added
+        assert data.addVoxelsDirect(lid2, packed, 1) == 1;
+        assert data.getLayerVoxels(lid2).length == 1;
+        assert data.addVoxelsDirect(-5, packed, 4) == 0;
+        // the ids are unique
+        TIntHashSet ids = new TIntHashSet();
+        for (Voxel voxel : data.getLayerVoxels(lid1)) {
+            assert ids.add(voxel.id);
+        }
+        for (Voxel voxel : data.getLayerVoxels(lid2)) {
+            assert ids.add(voxel.id);
+        }
+
+        // compare with adding one voxel at a time
+        int size = 100; // 1M voxel
+        packed = new int[size * size * size * 4];
+        int count = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    packed[count++] = x;
+                    packed[count++] = -y - 10;
+                    packed[count++] = z;
+                    packed[count++] = new Color(x * 2, y, z).getRGB();
+                }
+            }
+        }
+        int lid3 = data.createLayer("layer3");
+        data.selectLayer(lid3);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < count; i += 4) {
+            data.addVoxelDirect(new Color(packed[i + 3]), new int[] {packed[i], packed[i + 1], packed[i + 2]});
+        }
+        System.out.println("Single: " + (System.currentTimeMillis() - time) + " ms");
+        int lid4 = data.createLayer("layer4");
+        time = System.currentTimeMillis();
+        assert data.addVoxelsDirect(lid4, packed, count / 4) == count / 4;
+        System.out.println("Bulk: " + (System.currentTimeMillis() - time) + " ms");
+        assert data.getLayerVoxels(lid4).length == size * size * size;
+        assert data.getLayerVoxels(lid3).length == size * size * size;
+        for (Voxel voxel : data.getLayerVoxels(lid3)) {
+            assert ids.add(voxel.id);
+        }
+        for (Voxel voxel : data.getLayerVoxels(lid4)) {
+            assert ids.add(voxel.id);
+        }
+    }
+
+    @Test
+    public void testHistoryOnDisk() throws Exception {
+        // move all history (but the last action) to disk
+        data.historyManagerV.setMemoryBudget(0);
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        data.selectLayer(lid1);
+        Voxel[] voxels = new Voxel[20000];
+        for (int i = 0; i < voxels.length; i++) {
+            voxels[i] = new Voxel(-1, new int[] {i % 20, i / 400, (i / 20) % 20}, Color.RED, false, null, lid1);
+        }
+        assert data.massAddVoxel(voxels);
+        int id1 = data.searchVoxel(new int[] {1, 1, 1}, false).id;
+        data.setColor(id1, Color.BLUE);
+        data.setAlpha(id1, 5);
+        data.massMoveVoxel(data.getLayerVoxels(lid1), new int[] {0, -1, 0});
+        data.selectLayer(lid2);
+        data.addVoxel(Color.GREEN, null, new int[] {50, 50, 50});
+        data.mergeVisibleLayers();
+        assert data.historyManagerV.getSpilledByteSize() > 0;
+
+        // remember the result
+        Voxel[] result = data.getLayerVoxels(data.getSelectedLayer());
+        assert result.length == voxels.length + 1;
+        assert data.searchVoxel(new int[] {1, 2, 1}, false).getColor().equals(Color.BLUE);
+
+        // undo and redo everything
+        while (data.canUndoV()) {
+            data.undoV();
+        }
+        assert data.getLayers().length == 0;
+        assert data.historyManagerV.getSpilledByteSize() == 0;
+        while (data.canRedoV()) {
+            data.redoV();
+        }
+        assert data.getLayers().length == 1;
+        Voxel[] resultN = data.getLayerVoxels(data.getLayers()[0]);
+        assert resultN.length == result.length;
+        for (int i = 0; i < result.length; i++) {
+            assert result[i].equals(resultN[i]);
+            assert result[i].getColor().equals(resultN[i].getColor());
+        }
+    }
+
     // big final test
     @Test
     public void randomeMess() throws Exception {
@@ -561,7 +947,7 @@ public class VoxelDataTest {
                         int rem = rand.nextInt(voxels.length);
                         Color col = randCol();
                         data.setColor(voxels[rem].id, col);
-                        assert data.getVoxel(voxels[rem].id).getColor() == col;
+                        assert data.getVoxel(voxels[rem].id).getColor().equals(col);
                     }
                 }
             }
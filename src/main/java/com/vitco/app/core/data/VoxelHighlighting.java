@@ -1,6 +1,5 @@
 package com.vitco.app.core.data;
 
-import com.vitco.app.settings.VitcoSettings;
 
 import java.awt.*;
 import java.util.HashMap;
@@ -14,30 +13,39 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
 
     @Override
     public final void highlightVoxel(int[] pos) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (this.pos == null || pos == null || (this.pos[0] != pos[0] || this.pos[1] != pos[1] || this.pos[2] != pos[2])) {
                 if (this.pos != null || pos != null) {
                     this.pos = pos != null ? pos.clone() : null;
                     notifier.onVoxelHighlightingChanged();
                 }
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int[] getHighlightedVoxel() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return pos != null ? pos.clone() : null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final void removeVoxelHighlights() {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (pos != null) {
                 pos = null;
                 notifier.onVoxelHighlightingChanged();
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -48,7 +56,8 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
 
     @Override
     public final void setOutlineBox(String key, int[][] rect) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (rect == null || rect[0] == null || rect[1] == null) {
                 boxOutlines.remove(key);
             } else {
@@ -64,13 +73,18 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
             }
             boxOutlines.values().toArray(boxOutlinesArray);
             notifier.onOutlineBoxesChanged();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int[][][] getOutlineBoxes() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return boxOutlinesArray.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -80,16 +94,22 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
 
     @Override
     public Rectangle getSelectionRect() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return selectionRect;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setSelectionRect(Rectangle selectionRect) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             this.selectionRect = selectionRect;
             notifier.onSelectionRectChanged();
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -100,20 +120,26 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
 
     @Override
     public final void setVoxelSelectionShift(int x, int y, int z) {
-        synchronized (VitcoSettings.SYNC) {
+        writeLock.lock();
+        try {
             if (voxelSelectionShift[0] != x || voxelSelectionShift[1] != y || voxelSelectionShift[2] != z) {
                 voxelSelectionShift[0] = x;
                 voxelSelectionShift[1] = y;
                 voxelSelectionShift[2] = z;
                 notifier.onVoxelSelectionShiftChanged();
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
     public final int[] getVoxelSelectionShift() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return voxelSelectionShift.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 }
@@ -0,0 +1,59 @@
+package com.vitco.app.core.data.container;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Append-only log of changed positions (ring buffer of position keys).
+ *
+ * Every change gets a version number. Consumers remember the version they
+ * have seen and pull the changes since then at their own pace. If a consumer
+ * lagged behind the buffer (or everything changed) it needs a full refresh.
+ */
+public final class ChangeLog {
+
+    // the position keys (ring buffer)
+    private final long[] keys;
+    private final int mask;
+
+    // the next version (amount of changes added so far)
+    private long version = 0;
+    // the changes before this version are not known
+    private long validFrom = 0;
+
+    // create a log that remembers the last 2 ^ bits changes
+    public ChangeLog(int bits) {
+        keys = new long[1 << bits];
+        mask = keys.length - 1;
+    }
+
+    // add a changed position
+    public void add(long key) {
+        keys[(int) (version & mask)] = key;
+        version++;
+    }
+
+    // everything changed (all consumers need a full refresh)
+    public void invalidate() {
+        version++;
+        validFrom = version;
+    }
+
+    // the current version
+    public long getVersion() {
+        return version;
+    }
+
+    // the distinct positions that changed since a version or null
+    // if these changes are not known anymore (full refresh needed)
+    public long[] getChanges(long since) {
+        if (since < validFrom || version - since > keys.length) {
+            return null;
+        }
+        TLongHashSet result = new TLongHashSet();
+        for (long i = since; i < version; i++) {
+            result.add(keys[(int) (i & mask)]);
+        }
+        return result.toArray();
+    }
+
+}
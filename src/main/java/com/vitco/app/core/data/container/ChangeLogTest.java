@@ -0,0 +1,46 @@
+package com.vitco.app.core.data.container;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Test the versioned change log.
+ */
+public class ChangeLogTest {
+
+    @Test
+    public void testChanges() throws Exception {
+        ChangeLog log = new ChangeLog(3);
+        long start = log.getVersion();
+        assert log.getChanges(start).length == 0;
+
+        log.add(5);
+        log.add(7);
+        log.add(5);
+        long middle = log.getVersion();
+        log.add(9);
+        long[] changes = log.getChanges(start);
+        Arrays.sort(changes);
+        assert Arrays.equals(changes, new long[] {5, 7, 9});
+        assert Arrays.equals(log.getChanges(middle), new long[] {9});
+        assert log.getChanges(log.getVersion()).length == 0;
+
+        // consumers that lagged behind the buffer need a full refresh
+        for (int i = 0; i < 8; i++) {
+            log.add(i);
+        }
+        assert log.getChanges(start) == null;
+        assert log.getChanges(middle) == null;
+        assert log.getChanges(log.getVersion() - 8).length == 8;
+
+        // everything changed
+        long version = log.getVersion();
+        log.invalidate();
+        assert log.getChanges(version) == null;
+        version = log.getVersion();
+        log.add(1);
+        assert Arrays.equals(log.getChanges(version), new long[] {1});
+    }
+
+}
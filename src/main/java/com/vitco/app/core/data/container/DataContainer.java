@@ -30,8 +30,8 @@ public final class DataContainer implements Serializable {
     public final HashMap<Integer, VoxelLayer> layers;
     // order of the layers
     public final ArrayList<Integer> layerOrder;
-    // holds all voxels (maps id to voxel)
-    public final HashMap<Integer, Voxel> voxels;
+    // finds the voxels by id (the voxels are stored by the layers)
+    public final LazyVoxelMap voxels;
 
     // ####################### DATA (Animation)
     // holds the points
@@ -53,7 +53,7 @@ public final class DataContainer implements Serializable {
         this(null, null);
     }
 
-    private static final class TmpData {
+    static final class TmpData {
         boolean result = false;
         // ############# create temporary to read from file
         HashMap<Integer, ImageIcon> textures = new HashMap<Integer, ImageIcon>();
@@ -62,7 +62,7 @@ public final class DataContainer implements Serializable {
         int selectedLayer = -1;
         HashMap<Integer, VoxelLayer> layers = new HashMap<Integer, VoxelLayer>();
         ArrayList<Integer> layerOrder = new ArrayList<Integer>();
-        HashMap<Integer, Voxel> voxels = new HashMap<Integer, Voxel>();
+        LazyVoxelMap voxels = null;
         // ####################### DATA (Animation)
         HashMap<Integer, ExtendedVector> points = new HashMap<Integer, ExtendedVector>();
         HashMap<String, ExtendedLine> lines = new HashMap<String, ExtendedLine>();
@@ -77,7 +77,16 @@ public final class DataContainer implements Serializable {
 
         final TmpData tmpData = new TmpData();
 
-        if (file != null && file.exists()) {
+        if (file != null && file.exists() && VsdFile.isVsdFile(file)) {
+            try {
+                VsdFile.read(file, tmpData);
+                tmpData.result = true;
+            } catch (IOException e) {
+                errorHandler.handle(e);
+            } catch (RuntimeException e) {
+                errorHandler.handle(e);
+            }
+        } else if (file != null && file.exists()) { // legacy format
             try {
                 new AutoFileCloser() {
                     @Override protected void doWork() throws Throwable {
@@ -101,7 +110,8 @@ public final class DataContainer implements Serializable {
                                     } else if (token.equals("#layerOrder#")) {
                                         tmpData.layerOrder = (ArrayList<Integer>) input.readObject();
                                     } else if (token.equals("#voxels#")) {
-                                        tmpData.voxels = (HashMap<Integer, Voxel>) input.readObject();
+                                        // the voxels are part of the layers
+                                        input.readObject();
                                     } else if (token.equals("#points#")) {
                                         tmpData.points = (HashMap<Integer, ExtendedVector>) input.readObject();
                                     } else if (token.equals("#lines#")) {
@@ -132,7 +142,7 @@ public final class DataContainer implements Serializable {
         this.selectedLayer = tmpData.selectedLayer;
         this.layers = tmpData.layers;
         this.layerOrder = tmpData.layerOrder;
-        this.voxels = tmpData.voxels;
+        this.voxels = tmpData.voxels != null ? tmpData.voxels : new LazyVoxelMap(layers);
         // ####################### DATA (Animation)
         this.points = tmpData.points;
         this.lines = tmpData.lines;
@@ -143,8 +153,37 @@ public final class DataContainer implements Serializable {
         hasLoaded = tmpData.result;
     }
 
+    // decode everything that is still on disk
+    final void loadAll() {
+        voxels.loadAll();
+        if (textures instanceof LazyTextureMap) {
+            ((LazyTextureMap) textures).loadAll();
+        }
+    }
+
+    // the largest voxel id of the layers that are still on disk (or -1)
+    public final int getUnloadedMaxVoxelId() {
+        return voxels.getPendingMaxId();
+    }
+
+    // capture the current state for saving (this is fast, the snapshot can be
+    // written while this data container changes)
+    public final DataSnapshot snapshot() throws IOException {
+        return new DataSnapshot(this);
+    }
+
     // save to file function
-    public final boolean saveToVsdFile(final File file, ErrorHandlerInterface errorHandler) {
+    public final boolean saveToVsdFile(File file, ErrorHandlerInterface errorHandler) {
+        try {
+            return snapshot().write(file, null, errorHandler);
+        } catch (IOException e) {
+            errorHandler.handle(e);
+        }
+        return false;
+    }
+
+    // save to file function (legacy format)
+    final boolean saveToLegacyVsdFile(final File file, ErrorHandlerInterface errorHandler) {
         final boolean[] result = {false};
         try {
             new AutoFileCloser() {
@@ -175,9 +214,15 @@ public final class DataContainer implements Serializable {
                         output.writeUTF("#layerOrder#");
                         output.writeObject(layerOrder);
                     }
-                    if (voxels != null) {
+                    if (layers != null) {
+                        HashMap<Integer, Voxel> voxelMap = new HashMap<Integer, Voxel>();
+                        for (VoxelLayer layer : layers.values()) {
+                            for (Voxel voxel : layer.getVoxels()) {
+                                voxelMap.put(voxel.id, voxel);
+                            }
+                        }
                         output.writeUTF("#voxels#");
-                        output.writeObject(voxels);
+                        output.writeObject(voxelMap);
                     }
                     if (points != null) {
                         output.writeUTF("#points#");
@@ -0,0 +1,127 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * An immutable view of a data container that can be written to file
+ * while the data container is changed (e.g. from a background thread).
+ *
+ * Taking a snapshot is O(layers): the layers are shared with the data container
+ * and the content of a layer is only encoded for the snapshot before it changes
+ * for the first time (or when the snapshot is written).
+ */
+public final class DataSnapshot {
+
+    // encoded meta and animation data (small)
+    final byte[] meta;
+    final byte[] animation;
+    // the layers (in the order they are written)
+    final ArrayList<LayerSnapshot> layers = new ArrayList<LayerSnapshot>();
+    // the textures (textures that are still on disk are copied as they are)
+    final HashMap<Integer, ImageIcon> textures = new HashMap<Integer, ImageIcon>();
+    final HashMap<Integer, VsdFile.Block> rawTextures = new HashMap<Integer, VsdFile.Block>();
+
+    // capture the current state (the data container must not change while this runs)
+    DataSnapshot(DataContainer data) throws IOException {
+        meta = VsdFile.writeMeta(data);
+        animation = VsdFile.writeAnimation(data);
+        ArrayList<Integer> layerIds = new ArrayList<Integer>(data.layerOrder);
+        for (Integer layerId : data.layers.keySet()) {
+            if (!layerIds.contains(layerId)) {
+                layerIds.add(layerId);
+            }
+        }
+        for (Integer layerId : layerIds) {
+            VoxelLayer layer = data.layers.get(layerId);
+            if (layer != null) {
+                layers.add(new LayerSnapshot(layer));
+            }
+        }
+        if (data.textures instanceof LazyTextureMap) {
+            ((LazyTextureMap) data.textures).snapshot(textures, rawTextures);
+        } else if (data.textures != null) {
+            textures.putAll(data.textures);
+        }
+    }
+
+    // the total amount of voxels
+    final long getVoxelCount() {
+        long result = 0;
+        for (LayerSnapshot layer : layers) {
+            result += layer.size;
+        }
+        return result;
+    }
+
+    // write this snapshot to file (the progress dialog can be null)
+    public final boolean write(File file, ProgressDialog progressDialog, ErrorHandlerInterface errorHandler) {
+        try {
+            VsdFile.write(this, file, progressDialog);
+            return true;
+        } catch (IOException e) {
+            errorHandler.handle(e);
+        } catch (RuntimeException e) {
+            errorHandler.handle(e);
+        } finally {
+            // the layers do not need to be kept for this snapshot anymore
+            for (LayerSnapshot layer : layers) {
+                layer.release();
+            }
+        }
+        return false;
+    }
+
+    // the state of a layer when the snapshot was taken
+    static final class LayerSnapshot {
+        private final VoxelLayer layer;
+        final int id;
+        final String name;
+        final boolean visible;
+        final int size;
+        // the encoded voxels (or the voxels on disk, these do not change)
+        private byte[] voxels = null;
+        private final VsdFile.PendingLayer pending;
+
+        private LayerSnapshot(VoxelLayer layer) {
+            this.layer = layer;
+            this.id = layer.id;
+            this.name = layer.getName();
+            this.visible = layer.isVisible();
+            this.size = layer.getSize();
+            this.pending = layer.getPending();
+            if (pending == null) {
+                layer.share(this);
+            }
+        }
+
+        // encode the voxels (called before the layer changes)
+        final synchronized void capture() {
+            if (pending == null && voxels == null) {
+                voxels = VsdFile.writeVoxels(layer);
+                layer.unshare(this);
+            }
+        }
+
+        // get the encoded voxels
+        final synchronized byte[] getVoxels() {
+            if (pending != null) {
+                return pending.getVoxels();
+            }
+            capture();
+            return voxels;
+        }
+
+        // the layer is not needed anymore
+        private synchronized void release() {
+            layer.unshare(this);
+            voxels = null;
+        }
+    }
+}
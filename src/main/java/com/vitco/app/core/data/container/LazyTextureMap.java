@@ -0,0 +1,126 @@
+package com.vitco.app.core.data.container;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps texture ids to textures, the textures are decoded on first access.
+ *
+ * The ids of all textures are known from the start. Decoding can happen from
+ * several reading threads, so it is synchronized on this map.
+ */
+final class LazyTextureMap extends HashMap<Integer, ImageIcon> {
+    private static final long serialVersionUID = 1L;
+
+    // the (png) textures that are still on disk
+    private final HashMap<Integer, VsdFile.Block> pending = new HashMap<Integer, VsdFile.Block>();
+    private volatile boolean hasPending = false;
+
+    // register a texture that is still on disk
+    synchronized void addPending(Integer textureId, VsdFile.Block block) {
+        pending.put(textureId, block);
+        super.put(textureId, null);
+        hasPending = true;
+    }
+
+    // true if the texture is not decoded yet
+    synchronized boolean isOnDisk(Integer textureId) {
+        return pending.containsKey(textureId);
+    }
+
+    // copy the textures (the textures that are still on disk are not decoded)
+    synchronized void snapshot(Map<Integer, ImageIcon> textures, Map<Integer, VsdFile.Block> rawTextures) {
+        for (Integer textureId : super.keySet()) {
+            VsdFile.Block block = pending.get(textureId);
+            if (block != null) {
+                rawTextures.put(textureId, block);
+            } else {
+                textures.put(textureId, super.get(textureId));
+            }
+        }
+    }
+
+    // decode a texture (no-op if this already happened)
+    private synchronized void load(Object key) {
+        VsdFile.Block block = pending.remove(key);
+        if (block != null) {
+            super.put((Integer) key, VsdFile.readTexture(block));
+            hasPending = !pending.isEmpty();
+        }
+    }
+
+    // decode all textures
+    synchronized void loadAll() {
+        for (Integer textureId : new ArrayList<Integer>(pending.keySet())) {
+            load(textureId);
+        }
+    }
+
+    @Override
+    public ImageIcon get(Object key) {
+        if (hasPending) {
+            synchronized (this) {
+                load(key);
+                return super.get(key);
+            }
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public ImageIcon put(Integer key, ImageIcon value) {
+        if (hasPending) {
+            // the texture on disk is replaced
+            synchronized (this) {
+                pending.remove(key);
+                hasPending = !pending.isEmpty();
+            }
+        }
+        return super.put(key, value);
+    }
+
+    @Override
+    public ImageIcon remove(Object key) {
+        if (hasPending) {
+            load(key);
+        }
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            pending.clear();
+            hasPending = false;
+        }
+        super.clear();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        loadAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Collection<ImageIcon> values() {
+        loadAll();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, ImageIcon>> entrySet() {
+        loadAll();
+        return super.entrySet();
+    }
+
+    // serialize as a plain map (legacy format)
+    private Object writeReplace() {
+        loadAll();
+        return new HashMap<Integer, ImageIcon>(this);
+    }
+}
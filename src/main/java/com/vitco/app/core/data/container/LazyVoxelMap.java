@@ -0,0 +1,95 @@
+package com.vitco.app.core.data.container;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Maps voxel ids to voxels. The voxels are stored by the layers (this map only
+ * finds the layer that contains an id), the layers that are still on disk are
+ * decoded when one of their ids is requested.
+ *
+ * Decoding can happen from several reading threads, so it is synchronized
+ * on this map.
+ */
+public final class LazyVoxelMap {
+
+    // the layers that contain the voxels
+    private final HashMap<Integer, VoxelLayer> layers;
+
+    // the layers that are still on disk
+    private final ArrayList<VsdFile.PendingLayer> pending = new ArrayList<VsdFile.PendingLayer>();
+
+    LazyVoxelMap(HashMap<Integer, VoxelLayer> layers) {
+        this.layers = layers;
+    }
+
+    // register a layer that is still on disk
+    synchronized void addPending(VsdFile.PendingLayer layer) {
+        pending.add(layer);
+    }
+
+    // decode a layer (no-op if this already happened)
+    synchronized void load(VsdFile.PendingLayer layer) {
+        // the layer stays pending if it can not be read
+        if (pending.contains(layer)) {
+            layer.decode();
+            pending.remove(layer);
+        }
+    }
+
+    // decode all layers
+    synchronized void loadAll() {
+        while (!pending.isEmpty()) {
+            load(pending.get(0));
+        }
+    }
+
+    // the largest voxel id of the layers that are still on disk (or -1)
+    synchronized int getPendingMaxId() {
+        int result = -1;
+        for (VsdFile.PendingLayer layer : pending) {
+            result = Math.max(result, layer.maxId);
+        }
+        return result;
+    }
+
+    // find the layer that contains a voxel id (or null), only the layers
+    // on disk that could contain the id are decoded
+    private VoxelLayer getLayer(int id) {
+        for (VoxelLayer layer : layers.values()) {
+            VsdFile.PendingLayer pending = layer.getPending();
+            if (pending != null && (id < pending.minId || id > pending.maxId)) {
+                continue;
+            }
+            if (layer.containsVoxel(id)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    // get a voxel (a new instance, or null)
+    public Voxel get(int id) {
+        VoxelLayer layer = getLayer(id);
+        return layer == null ? null : layer.getVoxel(id);
+    }
+
+    // true if a voxel with this id exists
+    public boolean containsKey(int id) {
+        return getLayer(id) != null;
+    }
+
+    // the amount of voxels
+    public int size() {
+        int result = 0;
+        for (VoxelLayer layer : layers.values()) {
+            result += layer.getSize();
+        }
+        return result;
+    }
+
+    // true if there are no voxels
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
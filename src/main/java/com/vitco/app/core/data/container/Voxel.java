@@ -1,32 +1,47 @@
 package com.vitco.app.core.data.container;
 
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 
 import java.awt.*;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 
 /**
  * A Voxel instance, only getter are available (!)
+ *
+ * The layers do not keep voxel instances, a voxel is created on demand from the
+ * packed record of its layer (the layer keeps the selection as well).
  */
 public final class Voxel implements Serializable {
     private static final long serialVersionUID = 1L;
-    private final int[] posI;
-    private transient String posS = null;
+
+    // the serialized form (legacy files) is kept
+    private static final ObjectStreamField[] serialPersistentFields = new ObjectStreamField[] {
+            new ObjectStreamField("posI", int[].class),
+            new ObjectStreamField("id", int.class),
+            new ObjectStreamField("color", Color.class),
+            new ObjectStreamField("alpha", int.class),
+            new ObjectStreamField("layerId", int.class),
+            new ObjectStreamField("textureIds", int[].class),
+            new ObjectStreamField("sideRotation", int[].class),
+            new ObjectStreamField("sideFlip", boolean[].class)
+    };
+
     // make final when legacy support is removed
     public transient final int x;
     public transient final int y;
     public transient final int z;
-    public transient final int posId; // position id
-    public final int id; // id
-    private Color color; // color of voxel
-    private int alpha = -1; // alpha of this voxel
-    private final int layerId; // the id of the layer this voxel lives in
-    private int[] textureIds = null; // get the texture ids of this voxel (for all sides)
-
-    private int[] sideRotation = null;
-    private boolean[] sideFlip = null;
+    public transient final long posId; // position id
+    public transient final int id; // id
+    private transient int rgb; // color of voxel (argb)
+    private transient final int layerId; // the id of the layer this voxel lives in
+    // alpha, texture, rotation and flip (null if nothing is set)
+    private transient Attributes attributes = null;
 
     public static Integer[] convertVoxelsToIdArray(Voxel[] voxels) {
         Integer[] voxelIds = new Integer[voxels.length];
@@ -39,42 +54,90 @@ public final class Voxel implements Serializable {
     // constructor (with texture)
     public Voxel(int id, int[] pos, Color color, boolean selected, int[] textureIds, int layerId) {
         this.id = id;
-        this.color = color;
+        this.rgb = color == null ? 0 : color.getRGB(); // placeholders (e.g. for removals) have no color
         this.layerId = layerId;
-        this.textureIds = textureIds == null ? null : textureIds.clone();
+        this.attributes = Attributes.get(-1, textureIds, null, null);
         this.selected = selected;
-        posI = pos.clone();
-        posS = posI[0] + "_" + posI[1] + "_" + posI[2];
         // load the public values for fast access
         x = pos[0];
         y = pos[1];
         z = pos[2];
         // define position id
-        posId = CubeIndexer.getId(posI[0], posI[1], posI[2]);
+        posId = LongCubeIndexer.getId(x, y, z);
+    }
+
+    // constructor (argb color, e.g. when reading from file)
+    public Voxel(int id, int x, int y, int z, int rgb, int layerId) {
+        this.id = id;
+        this.rgb = rgb;
+        this.layerId = layerId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        posId = LongCubeIndexer.getId(x, y, z);
+    }
+
+    // constructor (from the packed record of a layer)
+    Voxel(int id, long posId, int rgb, Attributes attributes, boolean selected, int layerId) {
+        this.id = id;
+        this.rgb = rgb;
+        this.layerId = layerId;
+        this.attributes = attributes;
+        this.selected = selected;
+        this.posId = posId;
+        x = LongCubeIndexer.getX(posId);
+        y = LongCubeIndexer.getY(posId);
+        z = LongCubeIndexer.getZ(posId);
+    }
+
+    // the alpha, texture, rotation and flip of this voxel (null if nothing is set)
+    final Attributes getAttributes() {
+        return attributes;
+    }
+
+    // restore texture, rotation and flip (e.g. when reading from file)
+    final void setTextureAttributes(int[] textureIds, int[] sideRotation, boolean[] sideFlip) {
+        attributes = Attributes.get(getAlpha(), textureIds, sideRotation, sideFlip);
+    }
+
+    // write the legacy form
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("posI", new int[] {x, y, z});
+        fields.put("id", id);
+        fields.put("color", getColor());
+        fields.put("alpha", getAlpha());
+        fields.put("layerId", layerId);
+        fields.put("textureIds", getTexture());
+        fields.put("sideRotation", getRotation());
+        fields.put("sideFlip", getFlip());
+        out.writeFields();
+    }
+
+    // helper to set a final field after de-serialization
+    private void setFinal(String name, int value) throws NoSuchFieldException, IllegalAccessException {
+        Field f = Voxel.class.getDeclaredField(name);
+        f.setAccessible(true);
+        f.setInt(this, value);
     }
 
     // called after deserialization
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        in.defaultReadObject();
-        // build the string representation when loading from file
-        if (posS == null) {
-            posS = posI[0] + "_" + posI[1] + "_" + posI[2];
-        }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        int[] posI = (int[]) fields.get("posI", null);
+        rgb = ((Color) fields.get("color", null)).getRGB();
+        attributes = Attributes.get(fields.get("alpha", -1), (int[]) fields.get("textureIds", null),
+                (int[]) fields.get("sideRotation", null), (boolean[]) fields.get("sideFlip", null));
         // read the transient final values after de-serialization
         try {
-            Field f = this.getClass().getDeclaredField("x");
-            f.setAccessible(true);
-            f.set(this, posI[0]);
-            f = this.getClass().getDeclaredField("y");
-            f.setAccessible(true);
-            f.set(this, posI[1]);
-            f = this.getClass().getDeclaredField("z");
-            f.setAccessible(true);
-            f.set(this, posI[2]);
-
-            f = this.getClass().getDeclaredField("posId");
+            setFinal("id", fields.get("id", 0));
+            setFinal("layerId", fields.get("layerId", 0));
+            setFinal("x", posI[0]);
+            setFinal("y", posI[1]);
+            setFinal("z", posI[2]);
+            Field f = Voxel.class.getDeclaredField("posId");
             f.setAccessible(true);
-            f.set(this, CubeIndexer.getId(posI[0], posI[1], posI[2]));
+            f.setLong(this, LongCubeIndexer.getId(posI[0], posI[1], posI[2]));
         } catch (NoSuchFieldException e) {
             // should never happen
             e.printStackTrace();
@@ -86,65 +149,88 @@ public final class Voxel implements Serializable {
 
     // retrieve position
     public final int[] getPosAsInt() {
-        return posI.clone();
+        return new int[] {x, y, z};
     }
     public final String getPosAsString() {
-        return posS;
+        return x + "_" + y + "_" + z;
     }
 
     // set the color of this voxel
     public final void setColor(Color color) {
-        this.color = color;
+        this.rgb = color.getRGB();
     }
 
-    // get the color of this voxel
+    // shared color instances (a model has usually only a few colors, so
+    // most calls of getColor() do not need to create a new instance)
+    private static final Color[] colorCache = new Color[4096];
+
+    // get the color of this voxel (use getRGB() in loops)
     public final Color getColor() {
+        int slot = (rgb ^ (rgb >>> 12) ^ (rgb >>> 24)) & 4095;
+        Color color = colorCache[slot];
+        if (color == null || color.getRGB() != rgb) {
+            color = new Color(rgb, true);
+            colorCache[slot] = color;
+        }
         return color;
     }
 
+    // get the color of this voxel (argb)
+    public final int getRGB() {
+        return rgb;
+    }
+
     // rotate this voxel
     public final void rotate(Integer side) {
+        int[] sideRotation = getRotation();
         if (sideRotation == null) {
             sideRotation = new int[6];
         }
         sideRotation[side] = (sideRotation[side] + 1)%4;
+        attributes = Attributes.get(getAlpha(), getTexture(), sideRotation, getFlip());
     }
 
     // rotate this voxel (reverse)
     public final void rotateReverse(Integer side) {
+        int[] sideRotation = getRotation();
         if (sideRotation == null) {
             sideRotation = new int[6];
         }
         sideRotation[side] = (sideRotation[side] + 3)%4;
+        attributes = Attributes.get(getAlpha(), getTexture(), sideRotation, getFlip());
     }
 
     // get the rotation of this voxel
     public final int[] getRotation() {
-        return sideRotation == null ? null : sideRotation.clone();
+        return attributes == null || attributes.sideRotation == null ? null : attributes.sideRotation.clone();
     }
 
     // set the flip of this voxel
     public final void flip(Integer side) {
+        boolean[] sideFlip = getFlip();
         if (sideFlip == null) {
             sideFlip = new boolean[6];
         }
         sideFlip[side] = !sideFlip[side];
+        attributes = Attributes.get(getAlpha(), getTexture(), getRotation(), sideFlip);
     }
 
     // get the flip of this voxel
     public final boolean[] getFlip() {
-        return sideFlip == null ? null : sideFlip.clone();
+        return attributes == null || attributes.sideFlip == null ? null : attributes.sideFlip.clone();
+    }
+
+    // restore rotation and flip (e.g. when a voxel is created from a history record)
+    final void setRotationAndFlip(int[] sideRotation, boolean[] sideFlip) {
+        attributes = Attributes.get(getAlpha(), getTexture(), sideRotation, sideFlip);
     }
 
     // set the texture of this voxel
     public final boolean setTexture(int[] textureIds) {
         if (textureIds == null || textureIds.length == 6) {
-            this.textureIds = textureIds == null ? null : textureIds.clone();
             // cancel rotation/flipping
-            if (textureIds == null) {
-                sideRotation = null;
-                sideFlip = null;
-            }
+            attributes = textureIds == null ? Attributes.get(getAlpha(), null, null, null) :
+                    Attributes.get(getAlpha(), textureIds, getRotation(), getFlip());
             return true;
         }
         return false;
@@ -152,17 +238,17 @@ public final class Voxel implements Serializable {
 
     // get the texture of this voxel
     public final int[] getTexture() {
-        return textureIds == null ? null : textureIds.clone();
+        return attributes == null || attributes.textureIds == null ? null : attributes.textureIds.clone();
     }
 
     // set the alpha of this voxel
     public final void setAlpha(int alpha) {
-        this.alpha = alpha;
+        attributes = Attributes.get(alpha, getTexture(), getRotation(), getFlip());
     }
 
     // get the color of this voxel
     public final int getAlpha() {
-        return alpha;
+        return attributes == null ? -1 : attributes.alpha;
     }
 
     // get the layerId of this voxel
@@ -170,8 +256,28 @@ public final class Voxel implements Serializable {
         return layerId;
     }
 
+    // voxels are equal if they are the same voxel (same id, position and layer), the
+    // instance can change (e.g. when a removal is undone)
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Voxel)) {
+            return false;
+        }
+        Voxel voxel = (Voxel) o;
+        return id == voxel.id && layerId == voxel.layerId && x == voxel.x && y == voxel.y && z == voxel.z;
+    }
+
+    @Override
+    public final int hashCode() {
+        return 31 * id + (int) (posId ^ (posId >>> 32));
+    }
+
     // ===================================
-    // for this object instance only
+    // for this object instance only (the layer keeps the selection
+    // of the voxels it contains)
     private transient boolean selected = false;
 
     public final boolean isSelected() {
@@ -182,4 +288,66 @@ public final class Voxel implements Serializable {
         selected = b;
     }
 
+    // ===================================
+
+    // alpha, texture, rotation and flip of a voxel (a value type, the layers
+    // keep a palette of the different instances)
+    static final class Attributes {
+        final int alpha;
+        private final int[] textureIds;
+        private final int[] sideRotation;
+        private final boolean[] sideFlip;
+        private final int hash;
+
+        private Attributes(int alpha, int[] textureIds, int[] sideRotation, boolean[] sideFlip) {
+            this.alpha = alpha;
+            this.textureIds = textureIds == null ? null : textureIds.clone();
+            this.sideRotation = sideRotation == null ? null : sideRotation.clone();
+            this.sideFlip = sideFlip == null ? null : sideFlip.clone();
+            hash = 31 * (31 * (31 * alpha + Arrays.hashCode(textureIds)) + Arrays.hashCode(sideRotation)) +
+                    Arrays.hashCode(sideFlip);
+        }
+
+        // create an instance (null if nothing is set)
+        static Attributes get(int alpha, int[] textureIds, int[] sideRotation, boolean[] sideFlip) {
+            if (alpha == -1 && textureIds == null && sideRotation == null && sideFlip == null) {
+                return null;
+            }
+            return new Attributes(alpha, textureIds, sideRotation, sideFlip);
+        }
+
+        // the texture ids (not a copy, or null)
+        int[] getTexture() {
+            return textureIds;
+        }
+
+        // the side rotation (not a copy, or null)
+        int[] getRotation() {
+            return sideRotation;
+        }
+
+        // the side flip (not a copy, or null)
+        boolean[] getFlip() {
+            return sideFlip;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Attributes)) {
+                return false;
+            }
+            Attributes other = (Attributes) o;
+            return hash == other.hash && alpha == other.alpha && Arrays.equals(textureIds, other.textureIds) &&
+                    Arrays.equals(sideRotation, other.sideRotation) && Arrays.equals(sideFlip, other.sideFlip);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
 }
@@ -0,0 +1,147 @@
+package com.vitco.app.core.data.container;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.awt.*;
+import java.io.Serializable;
+
+/**
+ * Packed (columnar) copy of many voxels, e.g. for history records.
+ *
+ * Only primitive arrays are stored per voxel, voxel instances are
+ * created again when they are needed.
+ */
+public final class VoxelColumns implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // the voxel ids
+    private final int[] ids;
+    // the layer ids
+    private final int[] layerIds;
+    // the positions (x, y, z for every voxel)
+    private final int[] positions;
+    // the colors (argb)
+    private final int[] colors;
+    // the selection state (null if nothing is selected)
+    private final boolean[] selected;
+    // the alpha values (null if no alpha is set)
+    private final int[] alphas;
+    // texture information (null if no voxel is textured)
+    private final int[][] textures;
+    private final int[][] rotations;
+    private final boolean[][] flips;
+
+    private VoxelColumns(int size, boolean anySelected, boolean anyAlpha, boolean anyTexture) {
+        ids = new int[size];
+        layerIds = new int[size];
+        positions = new int[size * 3];
+        colors = new int[size];
+        selected = anySelected ? new boolean[size] : null;
+        alphas = anyAlpha ? new int[size] : null;
+        textures = anyTexture ? new int[size][] : null;
+        rotations = anyTexture ? new int[size][] : null;
+        flips = anyTexture ? new boolean[size][] : null;
+    }
+
+    // pack voxels
+    public static VoxelColumns pack(Voxel[] voxels) {
+        boolean anySelected = false;
+        boolean anyAlpha = false;
+        boolean anyTexture = false;
+        for (Voxel voxel : voxels) {
+            anySelected |= voxel.isSelected();
+            anyAlpha |= voxel.getAlpha() != -1;
+            anyTexture |= voxel.getTexture() != null || voxel.getRotation() != null || voxel.getFlip() != null;
+        }
+        VoxelColumns result = new VoxelColumns(voxels.length, anySelected, anyAlpha, anyTexture);
+        for (int i = 0; i < voxels.length; i++) {
+            Voxel voxel = voxels[i];
+            result.ids[i] = voxel.id;
+            result.layerIds[i] = voxel.getLayerId();
+            result.positions[i * 3] = voxel.x;
+            result.positions[i * 3 + 1] = voxel.y;
+            result.positions[i * 3 + 2] = voxel.z;
+            result.colors[i] = voxel.getRGB();
+            if (anySelected) {
+                result.selected[i] = voxel.isSelected();
+            }
+            if (anyAlpha) {
+                result.alphas[i] = voxel.getAlpha();
+            }
+            if (anyTexture) {
+                result.textures[i] = voxel.getTexture();
+                result.rotations[i] = voxel.getRotation();
+                result.flips[i] = voxel.getFlip();
+            }
+        }
+        return result;
+    }
+
+    // the amount of voxels
+    public int size() {
+        return ids.length;
+    }
+
+    // get the id of a voxel
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    // get the layer id of a voxel
+    public int getLayerId(int i) {
+        return layerIds[i];
+    }
+
+    // get all positions (e.g. to notify what is effected)
+    public int[][] getPositions() {
+        int[][] result = new int[ids.length][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new int[] {positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]};
+        }
+        return result;
+    }
+
+    // create all voxels again
+    public Voxel[] unpack() {
+        Voxel[] result = new Voxel[ids.length];
+        // share the color instances
+        TIntObjectHashMap<Color> colorCache = new TIntObjectHashMap<Color>();
+        int[] pos = new int[3];
+        for (int i = 0; i < result.length; i++) {
+            Color color = colorCache.get(colors[i]);
+            if (color == null) {
+                color = new Color(colors[i], true);
+                colorCache.put(colors[i], color);
+            }
+            System.arraycopy(positions, i * 3, pos, 0, 3);
+            Voxel voxel = new Voxel(ids[i], pos, color, selected != null && selected[i],
+                    textures == null ? null : textures[i], layerIds[i]);
+            if (alphas != null) {
+                voxel.setAlpha(alphas[i]);
+            }
+            if (textures != null) {
+                voxel.setRotationAndFlip(rotations[i], flips[i]);
+            }
+            result[i] = voxel;
+        }
+        return result;
+    }
+
+    // estimate the memory used by this record
+    public long getByteSize() {
+        long result = 64 + ids.length * 24L;
+        if (selected != null) {
+            result += selected.length;
+        }
+        if (alphas != null) {
+            result += alphas.length * 4L;
+        }
+        if (textures != null) {
+            result += textures.length * 24L;
+            for (int i = 0; i < textures.length; i++) {
+                result += (textures[i] == null ? 0 : 40) + (rotations[i] == null ? 0 : 40) + (flips[i] == null ? 0 : 24);
+            }
+        }
+        return result;
+    }
+}
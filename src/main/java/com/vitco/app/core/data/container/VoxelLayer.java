@@ -1,225 +1,681 @@
 package com.vitco.app.core.data.container;
 
-import com.vitco.app.low.CubeIndexer;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.low.engine.Engine;
+import com.vitco.app.low.engine.VoxelVisitor;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.awt.*;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A layer that contains voxels.
  *
- * Does not check for duplicates on insertion!
+ * Does not check for duplicates on insertion! A voxel can only
+ * be part of one layer at a time.
+ *
+ * The voxels are stored as packed records (position, id, argb and an index into a palette
+ * of the different alpha and texture attributes). Voxel instances are only created when
+ * they are requested, a voxel is identified by its position in this layer.
  */
 public final class VoxelLayer implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    // list of all voxels
-    private final ArrayList<Voxel> voxelList = new ArrayList<Voxel>();
-    // string "index"
-    private transient TIntObjectHashMap<Voxel> index = new TIntObjectHashMap<Voxel>();
-    // side index
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideX = new TIntObjectHashMap<HashSet<Voxel>>();
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideY = new TIntObjectHashMap<HashSet<Voxel>>();
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideZ = new TIntObjectHashMap<HashSet<Voxel>>();
+    // the serialized form (legacy files) is kept
+    private static final ObjectStreamField[] serialPersistentFields = new ObjectStreamField[] {
+            new ObjectStreamField("voxelList", ArrayList.class),
+            new ObjectStreamField("id", int.class),
+            new ObjectStreamField("layerName", String.class),
+            new ObjectStreamField("visible", boolean.class)
+    };
+
+    // the bit of a record that marks a selected voxel (the other bits are the palette index)
+    private static final int SELECTED = 1 << 31;
+
+    // the records (the last record is moved into the slot of a removed record)
+    private transient long[] positions;
+    private transient int[] ids;
+    private transient int[] colors;
+    private transient int[] flags;
+    private transient int count;
+
+    // hash tables (linear probing) that map the position and the id of a voxel
+    // to its slot, they only store "slot + 1" and read the key from the record
+    private transient int[] slotByPos;
+    private transient int[] slotById;
+    private transient int tableBits;
+
+    // the different alpha and texture attributes (index zero means "nothing set")
+    private transient ArrayList<Voxel.Attributes> palette;
+    private transient int[] paletteUse;
+    private transient TObjectIntHashMap<Voxel.Attributes> paletteIndex;
+    private transient TIntArrayList freeEntries;
+
+    // amount of voxels per plane (x, y and z)
+    private transient TIntIntHashMap[] planeSize;
 
     public final int id;
     private String layerName; // layerName of layer
     private boolean visible = true;
 
+    // the voxels if they are still on disk (decoded on first access)
+    private transient volatile VsdFile.PendingLayer pending = null;
+    // the snapshot that still needs the current voxels of this layer
+    private transient AtomicReference<DataSnapshot.LayerSnapshot> snapshot;
+
     // constructor
     public VoxelLayer(int id, String layerName) {
         this.id = id;
         this.layerName = layerName;
+        init();
     }
 
-    // helper to add voxel to index
-    private void indexVoxel(Voxel voxel) {
-        index.put(voxel.posId, voxel);
+    // create the (empty) storage
+    private void init() {
+        positions = new long[8];
+        ids = new int[8];
+        colors = new int[8];
+        flags = new int[8];
+        count = 0;
+        tableBits = 4;
+        slotByPos = new int[1 << tableBits];
+        slotById = new int[1 << tableBits];
+        palette = new ArrayList<Voxel.Attributes>();
+        palette.add(null);
+        paletteUse = new int[4];
+        paletteIndex = new TObjectIntHashMap<Voxel.Attributes>();
+        freeEntries = new TIntArrayList();
+        planeSize = new TIntIntHashMap[] {
+                new TIntIntHashMap(), new TIntIntHashMap(), new TIntIntHashMap()
+        };
+        snapshot = new AtomicReference<DataSnapshot.LayerSnapshot>();
+    }
+
+    // set the voxels that are still on disk
+    final void setPending(VsdFile.PendingLayer pending) {
+        this.pending = pending;
+    }
 
-        // side x
-        HashSet<Voxel> planeX = sideX.get(voxel.x);
-        if (planeX == null) {
-            planeX = new HashSet<Voxel>();
-            sideX.put(voxel.x, planeX);
+    // the voxels that are still on disk (or null)
+    final VsdFile.PendingLayer getPending() {
+        return pending;
+    }
+
+    // keep the current voxels for a snapshot (they are encoded before they change)
+    final void share(DataSnapshot.LayerSnapshot snapshot) {
+        DataSnapshot.LayerSnapshot previous = this.snapshot.getAndSet(snapshot);
+        if (previous != null) {
+            previous.capture();
         }
-        planeX.add(voxel);
-        // side y
-        HashSet<Voxel> planeY = sideY.get(voxel.y);
-        if (planeY == null) {
-            planeY = new HashSet<Voxel>();
-            sideY.put(voxel.y, planeY);
+    }
+
+    // the snapshot does not need the voxels of this layer anymore
+    final void unshare(DataSnapshot.LayerSnapshot snapshot) {
+        this.snapshot.compareAndSet(snapshot, null);
+    }
+
+    // called before the voxels change
+    private void beforeChange() {
+        DataSnapshot.LayerSnapshot snapshot = this.snapshot.get();
+        if (snapshot != null) {
+            snapshot.capture();
         }
-        planeY.add(voxel);
-        // side z
-        HashSet<Voxel> planeZ = sideZ.get(voxel.z);
-        if (planeZ == null) {
-            planeZ = new HashSet<Voxel>();
-            sideZ.put(voxel.z, planeZ);
+    }
+
+    // true if the voxels are not decoded yet
+    final boolean isOnDisk() {
+        return pending != null;
+    }
+
+    // decode the voxels if they are still on disk
+    private void load() {
+        VsdFile.PendingLayer pending = this.pending;
+        if (pending != null) {
+            pending.load();
         }
-        planeZ.add(voxel);
     }
 
-    private boolean unindexVoxel(Voxel voxel) {
-        boolean result = true;
+    // ------------------------------
+    // records and hash tables
+
+    // the home index of a position in the tables
+    private int hashPos(long posId) {
+        return (int) ((posId * 0x9E3779B97F4A7C15L) >>> (64 - tableBits));
+    }
+
+    // the home index of an id in the tables
+    private int hashId(int voxelId) {
+        return (voxelId * 0x9E3779B9) >>> (32 - tableBits);
+    }
 
-        if (null == index.remove(voxel.posId)) {
-            result = false;
+    // the table index that refers to a position (or -1)
+    private int findPos(long posId) {
+        int mask = slotByPos.length - 1;
+        for (int i = hashPos(posId); slotByPos[i] != 0; i = (i + 1) & mask) {
+            if (positions[slotByPos[i] - 1] == posId) {
+                return i;
+            }
         }
+        return -1;
+    }
 
-        // side x
-        HashSet<Voxel> planeX = sideX.get(voxel.x);
-        if (planeX != null) {
-            planeX.remove(voxel);
-            if (planeX.isEmpty()) {
-                sideX.remove(voxel.x);
+    // the table index that refers to an id (or -1)
+    private int findId(int voxelId) {
+        int mask = slotById.length - 1;
+        for (int i = hashId(voxelId); slotById[i] != 0; i = (i + 1) & mask) {
+            if (ids[slotById[i] - 1] == voxelId) {
+                return i;
             }
-        } else {
-            result = false; // should never happen
-        }
-        // side y
-        HashSet<Voxel> planeY = sideY.get(voxel.y);
-        if (planeY != null) {
-            planeY.remove(voxel);
-            if (planeY.isEmpty()) {
-                sideY.remove(voxel.y);
+        }
+        return -1;
+    }
+
+    // the slot of the voxel at a position (or -1)
+    private int getSlot(long posId) {
+        int index = findPos(posId);
+        return index == -1 ? -1 : slotByPos[index] - 1;
+    }
+
+    // the slot of a voxel of this layer (or -1)
+    private int getSlot(Voxel voxel) {
+        int slot = getSlot(voxel.posId);
+        return slot != -1 && ids[slot] == voxel.id ? slot : -1;
+    }
+
+    // add a slot to the tables
+    private void index(int slot) {
+        int mask = slotByPos.length - 1;
+        int i = hashPos(positions[slot]);
+        while (slotByPos[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slotByPos[i] = slot + 1;
+        i = hashId(ids[slot]);
+        while (slotById[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slotById[i] = slot + 1;
+    }
+
+    // clear a table entry, the following entries are moved up so that no probe sequence is broken
+    private void unindex(int[] table, int index, boolean byPos) {
+        int mask = table.length - 1;
+        int free = index;
+        for (int i = (index + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            int home = byPos ? hashPos(positions[slot]) : hashId(ids[slot]);
+            // the entry can move if the free index is between its home and its index
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                table[free] = table[i];
+                free = i;
             }
-        } else {
-            result = false; // should never happen
-        }
-        // side z
-        HashSet<Voxel> planeZ = sideZ.get(voxel.z);
-        if (planeZ != null) {
-            planeZ.remove(voxel);
-            if (planeZ.isEmpty()) {
-                sideZ.remove(voxel.z);
+        }
+        table[free] = 0;
+    }
+
+    // make sure that the records and the tables can hold this many voxels
+    private void reserve(int size) {
+        if (size > positions.length) {
+            int capacity = Math.max(size, positions.length + (positions.length >> 1));
+            positions = Arrays.copyOf(positions, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        // the tables are at most 3/4 full
+        int bits = tableBits;
+        while (size > (3 << bits) >> 2) {
+            bits++;
+        }
+        if (bits != tableBits) {
+            tableBits = bits;
+            slotByPos = new int[1 << bits];
+            slotById = new int[1 << bits];
+            for (int slot = 0; slot < count; slot++) {
+                index(slot);
             }
-        } else {
-            result = false; // should never happen
         }
+    }
 
-        return result;
+    // obtain the palette index of attributes (the use count is increased)
+    private int acquire(Voxel.Attributes attributes) {
+        if (attributes == null) {
+            return 0;
+        }
+        int index = paletteIndex.get(attributes);
+        if (index == 0) {
+            if (!freeEntries.isEmpty()) {
+                index = freeEntries.removeAt(freeEntries.size() - 1);
+                palette.set(index, attributes);
+            } else {
+                index = palette.size();
+                palette.add(attributes);
+                if (index == paletteUse.length) {
+                    paletteUse = Arrays.copyOf(paletteUse, index * 2);
+                }
+            }
+            paletteIndex.put(attributes, index);
+        }
+        paletteUse[index]++;
+        return index;
     }
 
-    public final Voxel[] getXPlane(int plane) {
-        HashSet<Voxel> planeX = sideX.get(plane);
-        if (planeX != null) {
-            Voxel[] result = new Voxel[planeX.size()];
-            planeX.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
+    // decrease the use count of a palette index
+    private void release(int index) {
+        if (index != 0 && --paletteUse[index] == 0) {
+            paletteIndex.remove(palette.get(index));
+            palette.set(index, null);
+            freeEntries.add(index);
         }
     }
 
-    public final Voxel[] getYPlane(int plane) {
-        HashSet<Voxel> planeY = sideY.get(plane);
-        if (planeY != null) {
-            Voxel[] result = new Voxel[planeY.size()];
-            planeY.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
+    // create the voxel of a slot
+    private Voxel createVoxel(int slot) {
+        int flag = flags[slot];
+        return new Voxel(ids[slot], positions[slot], colors[slot], palette.get(flag & ~SELECTED),
+                (flag & SELECTED) != 0, id);
+    }
+
+    // store the color, the attributes and the selection of a voxel
+    private void store(Voxel voxel) {
+        int slot = getSlot(voxel);
+        if (slot != -1) {
+            int previous = flags[slot] & ~SELECTED;
+            colors[slot] = voxel.getRGB();
+            flags[slot] = acquire(voxel.getAttributes()) | (voxel.isSelected() ? SELECTED : 0);
+            release(previous);
         }
     }
 
-    public final Voxel[] getZPlane(int plane) {
-        HashSet<Voxel> planeZ = sideZ.get(plane);
-        if (planeZ != null) {
-            Voxel[] result = new Voxel[planeZ.size()];
-            planeZ.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
+    // ------------------------------
+
+    // helper to update the plane sizes
+    private void updatePlaneSize(int x, int y, int z, int change) {
+        if (planeSize[0].adjustOrPutValue(x, change, change) == 0) {
+            planeSize[0].remove(x);
+        }
+        if (planeSize[1].adjustOrPutValue(y, change, change) == 0) {
+            planeSize[1].remove(y);
+        }
+        if (planeSize[2].adjustOrPutValue(z, change, change) == 0) {
+            planeSize[2].remove(z);
         }
     }
 
-    // called after deserialization
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        in.defaultReadObject();
-        // build the indices when loading from file
-        if (sideX == null) {
-            sideX = new TIntObjectHashMap<HashSet<Voxel>>();
+    // get the amount of voxels in a plane (axis 0 = x, 1 = y, 2 = z)
+    public final int getPlaneSize(int axis, int plane) {
+        load();
+        return planeSize[axis].get(plane);
+    }
+
+    // visit all voxels in a plane without copying (axis 0 = x, 1 = y, 2 = z)
+    public final void forEachInPlane(int axis, int plane, VoxelVisitor<Voxel> visitor) {
+        load();
+        if (planeSize[axis].containsKey(plane)) {
+            int[] min = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            int[] max = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+            min[axis] = plane;
+            max[axis] = plane;
+            forEachInBox(min, max, visitor);
         }
-        if (sideY == null) {
-            sideY = new TIntObjectHashMap<HashSet<Voxel>>();
+    }
+
+    // visit all voxels in a box without copying (min and max are inclusive)
+    public final void forEachInBox(int[] min, int[] max, VoxelVisitor<Voxel> visitor) {
+        load();
+        if (count == 0) {
+            return;
+        }
+        // limit the box to the planes that contain voxels
+        int[] from = new int[3];
+        int[] to = new int[3];
+        long volume = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            int[] planes = planeSize[axis].keys();
+            from[axis] = Integer.MAX_VALUE;
+            to[axis] = Integer.MIN_VALUE;
+            for (int plane : planes) {
+                from[axis] = Math.min(from[axis], plane);
+                to[axis] = Math.max(to[axis], plane);
+            }
+            from[axis] = Math.max(from[axis], min[axis]);
+            to[axis] = Math.min(to[axis], max[axis]);
+            if (from[axis] > to[axis]) {
+                return;
+            }
+            volume *= to[axis] - from[axis] + 1L;
+        }
+        if (volume < count) {
+            // probe the positions of the box
+            for (int x = from[0]; x <= to[0]; x++) {
+                for (int y = from[1]; y <= to[1]; y++) {
+                    for (int z = from[2]; z <= to[2]; z++) {
+                        int slot = getSlot(LongCubeIndexer.getId(x, y, z));
+                        if (slot != -1) {
+                            visitor.visit(x, y, z, createVoxel(slot));
+                        }
+                    }
+                }
+            }
+        } else {
+            // check all records
+            for (int slot = 0; slot < count; slot++) {
+                long posId = positions[slot];
+                int x = LongCubeIndexer.getX(posId);
+                int y = LongCubeIndexer.getY(posId);
+                int z = LongCubeIndexer.getZ(posId);
+                if (x >= from[0] && x <= to[0] && y >= from[1] && y <= to[1] && z >= from[2] && z <= to[2]) {
+                    visitor.visit(x, y, z, createVoxel(slot));
+                }
+            }
         }
-        if (sideZ == null) {
-            sideZ = new TIntObjectHashMap<HashSet<Voxel>>();
+    }
+
+    // helper to collect the voxels of a plane (axis 0 = x, 1 = y, 2 = z)
+    private Voxel[] getPlane(int axis, int plane) {
+        final Voxel[] result = new Voxel[getPlaneSize(axis, plane)];
+        if (result.length > 0) {
+            forEachInPlane(axis, plane, new VoxelVisitor<Voxel>() {
+                private int i = 0;
+                @Override
+                public void visit(int x, int y, int z, Voxel voxel) {
+                    result[i++] = voxel;
+                }
+            });
         }
-        if (index == null) {
-            index = new TIntObjectHashMap<Voxel>();
+        return result;
+    }
+
+    public final Voxel[] getXPlane(int plane) {
+        return getPlane(0, plane);
+    }
+
+    public final Voxel[] getYPlane(int plane) {
+        return getPlane(1, plane);
+    }
+
+    public final Voxel[] getZPlane(int plane) {
+        return getPlane(2, plane);
+    }
+
+    // write the legacy form
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("voxelList", new ArrayList<Voxel>(Arrays.asList(getVoxels())));
+        fields.put("id", id);
+        fields.put("layerName", layerName);
+        fields.put("visible", visible);
+        out.writeFields();
+    }
+
+    // called after deserialization
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        layerName = (String) fields.get("layerName", null);
+        visible = fields.get("visible", true);
+        // read the final id after de-serialization
+        try {
+            Field f = VoxelLayer.class.getDeclaredField("id");
+            f.setAccessible(true);
+            f.setInt(this, fields.get("id", 0));
+        } catch (NoSuchFieldException e) {
+            // should never happen
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            // should never happen
+            e.printStackTrace();
         }
+        // build the records when loading from file
+        init();
+        ArrayList<Voxel> voxelList = (ArrayList<Voxel>) fields.get("voxelList", null);
+        ensureCapacity(voxelList.size());
         for (Voxel voxel : voxelList) {
-            indexVoxel(voxel);
+            addLoadedVoxel(voxel);
         }
     }
 
     public Voxel search(int[] pos) {
-        return index.get(CubeIndexer.getId(pos[0], pos[1], pos[2]));
+        return search(pos[0], pos[1], pos[2]);
     }
 
     // search position by using another voxel as reference
     public Voxel search(Voxel voxel) {
-        return index.get(voxel.posId);
+        return search(voxel.x, voxel.y, voxel.z);
+    }
+
+    // search a position (without allocating a position array)
+    public Voxel search(int x, int y, int z) {
+        load();
+        int slot = getSlot(LongCubeIndexer.getId(x, y, z));
+        return slot == -1 ? null : createVoxel(slot);
+    }
+
+    // get a voxel of this layer by id (or null)
+    final Voxel getVoxel(int voxelId) {
+        load();
+        int index = findId(voxelId);
+        return index == -1 ? null : createVoxel(slotById[index] - 1);
+    }
+
+    // true if this layer contains a voxel with this id
+    final boolean containsVoxel(int voxelId) {
+        load();
+        return findId(voxelId) != -1;
     }
 
     public int getSize() {
-        return voxelList.size();
+        VsdFile.PendingLayer pending = this.pending;
+        return pending != null ? pending.size : count;
     }
 
     // check if a position already contains a voxel
     public boolean voxelPositionFree(int[] pos) {
-        return !index.containsKey(CubeIndexer.getId(pos[0], pos[1], pos[2]));
+        return voxelPositionFree(pos[0], pos[1], pos[2]);
     }
 
     // check position by using another voxel
     public boolean voxelPositionFree(Voxel voxel) {
-        return !index.containsKey(voxel.posId);
+        load();
+        return getSlot(voxel.posId) == -1;
+    }
+
+    // check a position (without allocating a position array)
+    public boolean voxelPositionFree(int x, int y, int z) {
+        load();
+        return getSlot(LongCubeIndexer.getId(x, y, z)) == -1;
+    }
+
+    // prepare the layer for many new voxels
+    public final void ensureCapacity(int count) {
+        reserve(this.count + count);
     }
 
     // add a voxel iff that position is not already occupied
     public void addVoxel(Voxel voxel) {
-        assert voxelPositionFree(voxel);
-        indexVoxel(voxel);
-        voxelList.add(voxel);
+        load();
+        beforeChange();
+        addLoadedVoxel(voxel);
+    }
+
+    // add a voxel that is decoded from file
+    final void addLoadedVoxel(Voxel voxel) {
+        assert getSlot(voxel.posId) == -1;
+        reserve(count + 1);
+        int slot = count++;
+        positions[slot] = voxel.posId;
+        ids[slot] = voxel.id;
+        colors[slot] = voxel.getRGB();
+        flags[slot] = acquire(voxel.getAttributes()) | (voxel.isSelected() ? SELECTED : 0);
+        index(slot);
+        updatePlaneSize(voxel.x, voxel.y, voxel.z, 1);
     }
 
     // set the color of a voxel
     public final void setVoxelColor(Voxel voxel, Color color) {
+        beforeChange();
         voxel.setColor(color);
+        store(voxel);
     }
 
     // set the alpha of a voxel
     public final void setVoxelAlpha(Voxel voxel, int alpha) {
+        beforeChange();
         voxel.setAlpha(alpha);
+        store(voxel);
+    }
+
+    // set the texture of a voxel
+    public final void setVoxelTexture(Voxel voxel, int[] textureIds) {
+        beforeChange();
+        voxel.setTexture(textureIds);
+        store(voxel);
+    }
+
+    // rotate a side of a voxel
+    public final void rotateVoxel(Voxel voxel, int side, boolean reverse) {
+        beforeChange();
+        if (reverse) {
+            voxel.rotateReverse(side);
+        } else {
+            voxel.rotate(side);
+        }
+        store(voxel);
+    }
+
+    // flip a side of a voxel
+    public final void flipVoxel(Voxel voxel, int side) {
+        beforeChange();
+        voxel.flip(side);
+        store(voxel);
+    }
+
+    // select a voxel (the selection is not saved, so a snapshot does not need the voxels)
+    public final void setVoxelSelected(Voxel voxel, boolean selected) {
+        voxel.setSelected(selected);
+        store(voxel);
     }
 
-    // remove a voxel
+    // remove a voxel (the last record is moved into the free slot)
     public final boolean removeVoxel(Voxel voxel) {
-        return voxelList.remove(voxel) && unindexVoxel(voxel);
+        load();
+        int slot = getSlot(voxel);
+        if (slot == -1) {
+            return false;
+        }
+        beforeChange();
+        release(flags[slot] & ~SELECTED);
+        unindex(slotByPos, findPos(voxel.posId), true);
+        unindex(slotById, findId(voxel.id), false);
+        int last = --count;
+        if (slot != last) {
+            // the table entries of the last record point to the free slot
+            slotByPos[findPos(positions[last])] = slot + 1;
+            slotById[findId(ids[last])] = slot + 1;
+            positions[slot] = positions[last];
+            ids[slot] = ids[last];
+            colors[slot] = colors[last];
+            flags[slot] = flags[last];
+        }
+        updatePlaneSize(voxel.x, voxel.y, voxel.z, -1);
+        return true;
+    }
+
+    // visit all voxels of this layer without copying
+    public final void forEach(VoxelVisitor<Voxel> visitor) {
+        load();
+        for (int slot = 0; slot < count; slot++) {
+            Voxel voxel = createVoxel(slot);
+            visitor.visit(voxel.x, voxel.y, voxel.z, voxel);
+        }
+    }
+
+    // set a value for every position of this layer that is still free in the target
+    // (e.g. to find the top most layer at every position)
+    public final <T> void fillFree(Engine<T> target, T value) {
+        load();
+        for (int slot = 0; slot < count; slot++) {
+            long posId = positions[slot];
+            int x = LongCubeIndexer.getX(posId);
+            int y = LongCubeIndexer.getY(posId);
+            int z = LongCubeIndexer.getZ(posId);
+            if (target.get(x, y, z) == null) {
+                target.set(x, y, z, value);
+            }
+        }
     }
 
     // get all voxels of this layer
     public final Voxel[] getVoxels() {
-        Voxel[] result = new Voxel[voxelList.size()];
-        voxelList.toArray(result);
+        load();
+        Voxel[] result = new Voxel[count];
+        for (int slot = 0; slot < count; slot++) {
+            result[slot] = createVoxel(slot);
+        }
         return result;
     }
 
     // get all voxel colors of this layer
     public final TIntHashSet getVoxelColors() {
+        load();
         TIntHashSet result = new TIntHashSet();
-        for (Voxel voxel : voxelList) {
-            result.add(voxel.getColor().getRGB());
+        for (int slot = 0; slot < count; slot++) {
+            result.add(colors[slot]);
+        }
+        return result;
+    }
+
+    // get the ids of all textures that are used by the voxels of this layer
+    public final TIntHashSet getVoxelTextures() {
+        load();
+        TIntHashSet result = new TIntHashSet();
+        for (Voxel.Attributes attributes : palette) {
+            if (attributes != null && attributes.getTexture() != null) {
+                result.addAll(attributes.getTexture());
+            }
         }
         return result;
     }
 
+    // ------------------------------
+    // direct access to the records (e.g. for encoding)
+
+    // the amount of records (the slots are [0, count))
+    final int getRecordCount() {
+        load();
+        return count;
+    }
+
+    final long getRecordPosition(int slot) {
+        return positions[slot];
+    }
+
+    final int getRecordId(int slot) {
+        return ids[slot];
+    }
+
+    final int getRecordColor(int slot) {
+        return colors[slot];
+    }
+
+    // the alpha and texture attributes of a record (or null)
+    final Voxel.Attributes getRecordAttributes(int slot) {
+        return palette.get(flags[slot] & ~SELECTED);
+    }
+
+    // ------------------------------
+
     // set the name of this layer
     public final void setName(String layerName) {
         this.layerName = layerName;
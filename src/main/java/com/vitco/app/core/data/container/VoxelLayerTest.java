@@ -0,0 +1,185 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.low.engine.VoxelVisitor;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Test the voxel layer storage.
+ */
+public class VoxelLayerTest {
+
+    // helper - the time (ns) to remove voxels in random order from a layer with size^3 voxels
+    private static long getRemoveTime(int size, int removeCount) {
+        VoxelLayer layer = new VoxelLayer(0, "layer");
+        ArrayList<Voxel> voxels = new ArrayList<Voxel>();
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    Voxel voxel = new Voxel(id++, new int[] {x - size/2, y, z - size/2}, Color.RED, false, null, 0);
+                    layer.addVoxel(voxel);
+                    voxels.add(voxel);
+                }
+            }
+        }
+        Collections.shuffle(voxels, new Random(0));
+        long time = System.nanoTime();
+        for (int i = 0; i < removeCount; i++) {
+            layer.removeVoxel(voxels.get(i));
+        }
+        return System.nanoTime() - time;
+    }
+
+    // the time of a removal does not depend on the size of the layer
+    // (a removal that is linear in the layer size would take ~15 times longer)
+    @Test
+    public void testMassRemoveTime() throws Exception {
+        int removeCount = 30000;
+        // warm up
+        getRemoveTime(40, removeCount);
+        long small = Long.MAX_VALUE;
+        long large = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            small = Math.min(small, getRemoveTime(40, removeCount)); // 64k voxel
+            large = Math.min(large, getRemoveTime(100, removeCount)); // 1M voxel
+        }
+        System.out.println(String.format("Removed %d voxels in %d ms (64k layer) and %d ms (1M layer)",
+                removeCount, small / 1000000, large / 1000000));
+        assert large < small * 5 : large + " " + small;
+    }
+
+    @Test
+    public void testMassRemove() throws Exception {
+        VoxelLayer layer = new VoxelLayer(0, "layer");
+        int size = 100; // 1M voxel
+        ArrayList<Voxel> voxels = new ArrayList<Voxel>();
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    Voxel voxel = new Voxel(id++, new int[] {x - size/2, y, z - size/2}, Color.RED, false, null, 0);
+                    layer.addVoxel(voxel);
+                    voxels.add(voxel);
+                }
+            }
+        }
+        assert layer.getSize() == size * size * size;
+
+        // remove 100k voxels in random order
+        Collections.shuffle(voxels, new Random(0));
+        int removeCount = 100000;
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < removeCount; i++) {
+            assert layer.removeVoxel(voxels.get(i));
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println("Removed " + removeCount + " voxels in " + time + " ms");
+
+        // removing twice is not possible
+        assert !layer.removeVoxel(voxels.get(0));
+
+        // check the state
+        assert layer.getSize() == size * size * size - removeCount;
+        HashSet<Voxel> removed = new HashSet<Voxel>(voxels.subList(0, removeCount));
+        for (Voxel voxel : layer.getVoxels()) {
+            assert !removed.contains(voxel);
+            assert voxel.equals(layer.search(voxel));
+        }
+        for (Voxel voxel : removed) {
+            assert layer.voxelPositionFree(voxel);
+        }
+
+        // check the planes
+        for (int axis = 0; axis < 3; axis++) {
+            int total = 0;
+            for (int plane = -size; plane < size; plane++) {
+                final int[] count = new int[1];
+                layer.forEachInPlane(axis, plane, new VoxelVisitor<Voxel>() {
+                    @Override
+                    public void visit(int x, int y, int z, Voxel value) {
+                        count[0]++;
+                    }
+                });
+                assert count[0] == layer.getPlaneSize(axis, plane);
+                total += count[0];
+            }
+            assert total == layer.getSize();
+        }
+        assert layer.getZPlane(0).length == layer.getPlaneSize(2, 0);
+
+        // remove the rest
+        for (int i = removeCount; i < voxels.size(); i++) {
+            assert layer.removeVoxel(voxels.get(i));
+        }
+        assert layer.getSize() == 0;
+        assert layer.getYPlane(0).length == 0;
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        VoxelLayer layer = new VoxelLayer(3, "layer");
+        Voxel textured = new Voxel(1, new int[] {1, -2, 3}, new Color(10, 20, 30), false, new int[] {1, 2, 3, 4, 5, 6}, 3);
+        textured.rotate(2);
+        textured.flip(4);
+        textured.setAlpha(100);
+        layer.addVoxel(textured);
+        layer.addVoxel(new Voxel(2, new int[] {1000000, 0, -1000000}, Color.RED, false, null, 3));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(layer);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        VoxelLayer loaded = (VoxelLayer) in.readObject();
+        in.close();
+
+        assert loaded.getSize() == 2;
+        Voxel voxel = loaded.search(new int[] {1, -2, 3});
+        assert voxel.equals(textured);
+        assert voxel.getColor().equals(new Color(10, 20, 30));
+        assert voxel.getAlpha() == 100;
+        assert voxel.getLayerId() == 3;
+        assert Arrays.equals(voxel.getTexture(), new int[] {1, 2, 3, 4, 5, 6});
+        assert Arrays.equals(voxel.getRotation(), new int[] {0, 0, 1, 0, 0, 0});
+        assert Arrays.equals(voxel.getFlip(), new boolean[] {false, false, false, false, true, false});
+        voxel = loaded.search(new int[] {1000000, 0, -1000000});
+        assert voxel.id == 2 && voxel.getRGB() == Color.RED.getRGB() && voxel.getTexture() == null;
+    }
+
+    // the memory needed for a layer with a million voxels (the bound has a large margin, a
+    // voxel used to need ~240 bytes before the compact representation and ~90 bytes while
+    // the layer kept a voxel instance per position, the packed records need ~42 bytes)
+    @Test
+    public void testMemory() throws Exception {
+        int size = 100; // 1M voxel
+        System.gc();
+        long memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        VoxelLayer layer = new VoxelLayer(0, "layer");
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    layer.addVoxel(new Voxel(id++, new int[] {x, y, z}, new Color(x, y, z), false, null, 0));
+                }
+            }
+        }
+        System.gc();
+        memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - memory;
+        float bytesPerVoxel = memory / (float) layer.getSize();
+        System.out.println("Layer with " + layer.getSize() + " voxels: " + bytesPerVoxel + " bytes per voxel");
+        assert layer.getSize() == size * size * size;
+        assert bytesPerVoxel < 80 : bytesPerVoxel;
+    }
+
+}
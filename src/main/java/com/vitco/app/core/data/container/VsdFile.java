@@ -0,0 +1,861 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
+import com.vitco.app.util.misc.AutoFileCloser;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary project format (version 2).
+ *
+ * The file starts with a header index (name, offset and length of every block).
+ * Every layer is one block of compressed columns (ids, positions, colors, alpha
+ * and texture attributes), textures are stored as png blobs.
+ *
+ * Only the header index, the meta data, the animation data and the layer headers are
+ * read when a file is opened. The voxels of a layer and the textures are read (with a
+ * positional read of their block) and decoded on first access. The file is only open
+ * while something is read, the blocks that are still needed are read into memory before
+ * the file is replaced or deleted (see release()).
+ */
+final class VsdFile {
+
+    // identifies the format ("VSD2")
+    static final int MAGIC = 0x56534432;
+    static final int VERSION = 2;
+
+    // block names
+    private static final String META = "meta";
+    private static final String ANIMATION = "animation";
+    private static final String LAYER = "layer_";
+    private static final String TEXTURE = "texture_";
+
+    // check if a file uses this format
+    static boolean isVsdFile(final File file) {
+        if (file.length() < 8) {
+            return false;
+        }
+        final boolean[] result = {false};
+        try {
+            new AutoFileCloser() {
+                @Override
+                protected void doWork() throws Throwable {
+                    DataInputStream in = autoClose(new DataInputStream(new FileInputStream(file)));
+                    result[0] = in.readInt() == MAGIC;
+                }
+            };
+        } catch (RuntimeException e) {
+            return false;
+        }
+        return result[0];
+    }
+
+    // ==================
+    // columns
+
+    // compress a column (the bytes of all values are grouped by significance)
+    private static byte[] packColumn(int[] values, boolean delta) {
+        int n = values.length;
+        byte[] raw = new byte[n * 4];
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            int value = delta ? values[i] - last : values[i];
+            last = values[i];
+            raw[i] = (byte) (value >>> 24);
+            raw[n + i] = (byte) (value >>> 16);
+            raw[2 * n + i] = (byte) (value >>> 8);
+            raw[3 * n + i] = (byte) value;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(n + 64);
+        byte[] buffer = new byte[65536];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void writeColumn(DataOutputStream out, int[] values, boolean delta) throws IOException {
+        byte[] packed = packColumn(values, delta);
+        out.writeInt(packed.length);
+        out.write(packed);
+    }
+
+    // decompress a column
+    private static int[] readColumn(DataInputStream in, int count, boolean delta) throws IOException {
+        byte[] packed = new byte[in.readInt()];
+        in.readFully(packed);
+        byte[] raw = new byte[count * 4];
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        try {
+            int read = 0;
+            while (read < raw.length) {
+                int length = inflater.inflate(raw, read, raw.length - read);
+                if (length == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += length;
+            }
+            if (read != raw.length) {
+                throw new IOException("Invalid column in vsd file.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        int[] result = new int[count];
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            int value = ((raw[i] & 0xFF) << 24) | ((raw[count + i] & 0xFF) << 16) |
+                    ((raw[2 * count + i] & 0xFF) << 8) | (raw[3 * count + i] & 0xFF);
+            result[i] = delta ? last + value : value;
+            last = result[i];
+        }
+        return result;
+    }
+
+    // ==================
+    // blocks
+
+    // encode the voxels of a layer (id range and columns)
+    static byte[] writeVoxels(VoxelLayer layer) {
+        try {
+            return encodeVoxels(layer);
+        } catch (IOException e) {
+            // should never happen (in memory)
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodeVoxels(VoxelLayer layer) throws IOException {
+        int n = layer.getRecordCount();
+        int[] ids = new int[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] zs = new int[n];
+        int[] colors = new int[n];
+        int[] alphas = new int[n];
+        int[] attributes = new int[n];
+        int minId = Integer.MAX_VALUE;
+        int maxId = -1;
+        boolean anyAlpha = false;
+        // distinct texture attributes (index zero means "none"), the alpha is not part of them
+        LinkedHashMap<String, Voxel.Attributes> attributeTable = new LinkedHashMap<String, Voxel.Attributes>();
+        HashMap<String, Integer> attributeIndex = new HashMap<String, Integer>();
+        HashMap<Voxel.Attributes, Integer> paletteIndex = new HashMap<Voxel.Attributes, Integer>();
+        for (int i = 0; i < n; i++) {
+            int id = layer.getRecordId(i);
+            ids[i] = id;
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+            long posId = layer.getRecordPosition(i);
+            xs[i] = LongCubeIndexer.getX(posId);
+            ys[i] = LongCubeIndexer.getY(posId);
+            zs[i] = LongCubeIndexer.getZ(posId);
+            colors[i] = layer.getRecordColor(i);
+            Voxel.Attributes attribute = layer.getRecordAttributes(i);
+            alphas[i] = attribute == null ? -1 : attribute.alpha;
+            anyAlpha |= alphas[i] != -1;
+            if (attribute != null && (attribute.getTexture() != null ||
+                    attribute.getRotation() != null || attribute.getFlip() != null)) {
+                Integer index = paletteIndex.get(attribute);
+                if (index == null) {
+                    String key = Arrays.toString(attribute.getTexture()) +
+                            Arrays.toString(attribute.getRotation()) + Arrays.toString(attribute.getFlip());
+                    index = attributeIndex.get(key);
+                    if (index == null) {
+                        index = attributeTable.size() + 1;
+                        attributeTable.put(key, attribute);
+                        attributeIndex.put(key, index);
+                    }
+                    paletteIndex.put(attribute, index);
+                }
+                attributes[i] = index;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(minId);
+        out.writeInt(maxId);
+        writeColumn(out, ids, true);
+        writeColumn(out, xs, true);
+        writeColumn(out, ys, true);
+        writeColumn(out, zs, true);
+        writeColumn(out, colors, false);
+        out.writeBoolean(anyAlpha);
+        if (anyAlpha) {
+            writeColumn(out, alphas, false);
+        }
+        out.writeInt(attributeTable.size());
+        for (Voxel.Attributes attribute : attributeTable.values()) {
+            writeInts(out, attribute.getTexture());
+            writeInts(out, attribute.getRotation());
+            boolean[] flip = attribute.getFlip();
+            out.writeBoolean(flip != null);
+            if (flip != null) {
+                for (boolean b : flip) {
+                    out.writeBoolean(b);
+                }
+            }
+        }
+        if (!attributeTable.isEmpty()) {
+            writeColumn(out, attributes, false);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    // the header of a layer block (followed by the encoded voxels)
+    private static byte[] writeLayerHeader(DataSnapshot.LayerSnapshot layer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(layer.id);
+        out.writeUTF(layer.name);
+        out.writeBoolean(layer.visible);
+        out.writeInt(layer.size);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeBoolean(values != null);
+        if (values != null) {
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int[] result = new int[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readInt();
+        }
+        return result;
+    }
+
+    // read the header of a layer (the voxels stay on disk)
+    private static VoxelLayer readLayer(FileChannel channel, Block block, LazyVoxelMap voxelMap) throws IOException {
+        // the header length depends on the length of the name
+        ByteBuffer header = block.read(channel, 0, Math.min(block.length, 6));
+        int headerLength = 6 + (header.getShort(4) & 0xFFFF) + 5;
+        // read the header and the id range of the voxels
+        header = block.read(channel, 0, Math.min(block.length, headerLength + 8));
+        DataInputStream in = new DataInputStream(new BlockInput(header));
+        VoxelLayer layer = new VoxelLayer(in.readInt(), in.readUTF());
+        layer.setVisible(in.readBoolean());
+        int n = in.readInt();
+        if (n > 0) {
+            PendingLayer pending = new PendingLayer(block.slice(headerLength), layer, n,
+                    in.readInt(), in.readInt(), voxelMap);
+            layer.setPending(pending);
+            voxelMap.addPending(pending);
+        }
+        return layer;
+    }
+
+    // the voxels of a layer that are still on disk
+    static final class PendingLayer {
+        private final Block voxels;
+        private final VoxelLayer layer;
+        final int size;
+        final int minId;
+        final int maxId;
+        private final LazyVoxelMap voxelMap;
+
+        private PendingLayer(Block voxels, VoxelLayer layer, int size, int minId, int maxId, LazyVoxelMap voxelMap) {
+            this.voxels = voxels;
+            this.layer = layer;
+            this.size = size;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.voxelMap = voxelMap;
+        }
+
+        // decode the voxels (no-op if this already happened)
+        final void load() {
+            voxelMap.load(this);
+        }
+
+        // the encoded voxels (as they are stored on disk)
+        final byte[] getVoxels() {
+            ByteBuffer buffer = voxels.read();
+            byte[] result = new byte[buffer.remaining()];
+            buffer.get(result);
+            return result;
+        }
+
+        // add the voxels to the layer (called by the voxel map)
+        final void decode() {
+            try {
+                ByteBuffer buffer = voxels.read();
+                buffer.position(8); // skip the id range
+                readVoxels(new DataInputStream(new BlockInput(buffer)), layer, size);
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid layer in vsd file.", e);
+            }
+            layer.setPending(null);
+        }
+    }
+
+    // decode voxels that were encoded with writeVoxels() into a layer
+    static void readVoxels(byte[] encoded, VoxelLayer layer, int n) throws IOException {
+        // skip the id range
+        readVoxels(new DataInputStream(new ByteArrayInputStream(encoded, 8, encoded.length - 8)), layer, n);
+    }
+
+    // read the voxels of a layer
+    private static void readVoxels(DataInputStream in, VoxelLayer layer, int n) throws IOException {
+        int[] ids = readColumn(in, n, true);
+        int[] xs = readColumn(in, n, true);
+        int[] ys = readColumn(in, n, true);
+        int[] zs = readColumn(in, n, true);
+        int[] colors = readColumn(in, n, false);
+        int[] alphas = in.readBoolean() ? readColumn(in, n, false) : null;
+        int attributeCount = in.readInt();
+        int[][] textures = new int[attributeCount + 1][];
+        int[][] rotations = new int[attributeCount + 1][];
+        boolean[][] flips = new boolean[attributeCount + 1][];
+        for (int i = 1; i <= attributeCount; i++) {
+            textures[i] = readInts(in);
+            rotations[i] = readInts(in);
+            if (in.readBoolean()) {
+                flips[i] = new boolean[6];
+                for (int j = 0; j < 6; j++) {
+                    flips[i][j] = in.readBoolean();
+                }
+            }
+        }
+        int[] attributes = attributeCount > 0 ? readColumn(in, n, false) : null;
+
+        layer.ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            Voxel voxel = new Voxel(ids[i], xs[i], ys[i], zs[i], colors[i], layer.id);
+            if (alphas != null) {
+                voxel.setAlpha(alphas[i]);
+            }
+            if (attributes != null && attributes[i] != 0) {
+                int index = attributes[i];
+                voxel.setTextureAttributes(textures[index], rotations[index], flips[index]);
+            }
+            layer.addLoadedVoxel(voxel);
+        }
+    }
+
+    // write general information
+    static byte[] writeMeta(DataContainer data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(data.selectedTexture);
+        out.writeInt(data.selectedLayer);
+        out.writeInt(data.activeFrame);
+        out.writeInt(data.layerOrder.size());
+        for (Integer layerId : data.layerOrder) {
+            out.writeInt(layerId);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static void readMeta(DataInputStream in, DataContainer.TmpData target) throws IOException {
+        target.selectedTexture = in.readInt();
+        target.selectedLayer = in.readInt();
+        target.activeFrame = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.layerOrder.add(in.readInt());
+        }
+    }
+
+    private static void writePoint(DataOutputStream out, ExtendedVector point) throws IOException {
+        out.writeInt(point.id);
+        out.writeFloat(point.x);
+        out.writeFloat(point.y);
+        out.writeFloat(point.z);
+    }
+
+    private static ExtendedVector readPoint(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        return new ExtendedVector(in.readFloat(), in.readFloat(), in.readFloat(), id);
+    }
+
+    // write the points, lines and frames
+    static byte[] writeAnimation(DataContainer data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(data.points.size());
+        for (ExtendedVector point : data.points.values()) {
+            writePoint(out, point);
+        }
+        out.writeInt(data.lines.size());
+        for (ExtendedLine line : data.lines.values()) {
+            out.writeInt(line.point1);
+            out.writeInt(line.point2);
+        }
+        out.writeInt(data.frames.size());
+        for (Map.Entry<Integer, Frame> entry : data.frames.entrySet()) {
+            Frame frame = entry.getValue();
+            out.writeInt(entry.getKey());
+            out.writeUTF(frame.getName());
+            Integer[] pointIds = frame.getPoints();
+            out.writeInt(pointIds.length);
+            for (Integer pointId : pointIds) {
+                out.writeInt(pointId);
+                writePoint(out, frame.getPoint(pointId));
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static void readAnimation(DataInputStream in, DataContainer.TmpData target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ExtendedVector point = readPoint(in);
+            target.points.put(point.id, point);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ExtendedLine line = new ExtendedLine(in.readInt(), in.readInt());
+            target.lines.put(line.point1 + "_" + line.point2, line);
+            // the lines of every point are derived
+            for (int pointId : new int[] {line.point1, line.point2}) {
+                ArrayList<ExtendedLine> lines = target.pointsToLines.get(pointId);
+                if (lines == null) {
+                    lines = new ArrayList<ExtendedLine>();
+                    target.pointsToLines.put(pointId, lines);
+                }
+                lines.add(line);
+            }
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int frameId = in.readInt();
+            Frame frame = new Frame(in.readUTF());
+            int pointCount = in.readInt();
+            for (int j = 0; j < pointCount; j++) {
+                int pointId = in.readInt();
+                frame.setPoint(pointId, readPoint(in));
+            }
+            target.frames.put(frameId, frame);
+        }
+    }
+
+    // convert a texture to png
+    static byte[] writeTexture(ImageIcon texture) throws IOException {
+        BufferedImage image = new BufferedImage(texture.getIconWidth(), texture.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.drawImage(texture.getImage(), 0, 0, null);
+        g2.dispose();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    // read a texture
+    static ImageIcon readTexture(ByteBuffer block) {
+        try {
+            return new ImageIcon(ImageIO.read(new BlockInput(block.duplicate())));
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid texture in vsd file.", e);
+        }
+    }
+
+    // read a texture that is still on disk
+    static ImageIcon readTexture(Block block) {
+        return readTexture(block.read());
+    }
+
+    // ==================
+
+    // write a snapshot to file (the progress dialog can be null)
+    static void write(final DataSnapshot snapshot, final File file, final ProgressDialog progressDialog) throws IOException {
+        // the block names (the header index has a fixed size per block)
+        final ArrayList<String> names = new ArrayList<String>();
+        names.add(META);
+        for (DataSnapshot.LayerSnapshot layer : snapshot.layers) {
+            names.add(LAYER + layer.id);
+        }
+        for (Integer textureId : snapshot.textures.keySet()) {
+            names.add(TEXTURE + textureId);
+        }
+        for (Integer textureId : snapshot.rawTextures.keySet()) {
+            names.add(TEXTURE + textureId);
+        }
+        names.add(ANIMATION);
+
+        // write to a temporary file first, so the old file stays intact
+        // until the new one is complete
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final long[] offsets = new long[names.size() + 1];
+        if (progressDialog != null) {
+            progressDialog.setActivity("Saving File...", false);
+        }
+        new AutoFileCloser() {
+            @Override
+            protected void doWork() throws Throwable {
+                FileChannel channel = autoClose(new RandomAccessFile(tmpFile, "rw")).getChannel();
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(writeHeader(names, offsets)));
+                offsets[0] = channel.position();
+                int block = 0;
+                channel.write(ByteBuffer.wrap(snapshot.meta));
+                offsets[++block] = channel.position();
+                // the layers (progress is measured in voxels)
+                long total = Math.max(1, snapshot.getVoxelCount());
+                long done = 0;
+                for (DataSnapshot.LayerSnapshot layer : snapshot.layers) {
+                    channel.write(ByteBuffer.wrap(writeLayerHeader(layer)));
+                    channel.write(ByteBuffer.wrap(layer.getVoxels()));
+                    offsets[++block] = channel.position();
+                    done += layer.size;
+                    if (progressDialog != null) {
+                        progressDialog.setProgress(done * 90f / total);
+                    }
+                }
+                for (ImageIcon texture : snapshot.textures.values()) {
+                    channel.write(ByteBuffer.wrap(writeTexture(texture)));
+                    offsets[++block] = channel.position();
+                }
+                for (Block texture : snapshot.rawTextures.values()) {
+                    channel.write(texture.read());
+                    offsets[++block] = channel.position();
+                }
+                channel.write(ByteBuffer.wrap(snapshot.animation));
+                offsets[++block] = channel.position();
+                // write the real header index
+                channel.write(ByteBuffer.wrap(writeHeader(names, offsets)), 0);
+                // make sure everything is on disk before the old file is replaced
+                channel.force(true);
+            }
+        };
+        // the loaded data might still need blocks of the old file
+        release(file);
+        try {
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                tmpFile.deleteOnExit();
+            }
+        }
+        if (progressDialog != null) {
+            progressDialog.setProgress(100);
+        }
+    }
+
+    // the header index (offsets[i] is the start of block i, offsets[i + 1] the end)
+    private static byte[] writeHeader(ArrayList<String> names, long[] offsets) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            out.writeUTF(names.get(i));
+            out.writeLong(offsets[i]);
+            out.writeInt((int) (offsets[i + 1] - offsets[i]));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    // read the file into the data container (voxels and textures are loaded lazily)
+    static void read(final File file, final DataContainer.TmpData target) throws IOException {
+        final Source source = Source.open(file);
+        try {
+            new AutoFileCloser() {
+                @Override
+                protected void doWork() throws Throwable {
+                    FileChannel channel = autoClose(new RandomAccessFile(file, "r")).getChannel();
+                    readBlocks(channel, source, target);
+                }
+            };
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // read the header index and the blocks that are not loaded lazily
+    private static void readBlocks(FileChannel channel, Source source, DataContainer.TmpData target) throws IOException {
+        // the first block starts right after the header index
+        ByteBuffer data = source.read(channel, 0, (int) Math.min(source.size, 1024));
+        if (data.getInt() != MAGIC || data.getInt() > VERSION) {
+            throw new IOException("Unsupported vsd file.");
+        }
+        int count = data.getInt();
+        if (count > 0) {
+            DataInputStream first = new DataInputStream(new BlockInput(data.duplicate()));
+            first.readUTF();
+            long headerLength = first.readLong();
+            if (headerLength > data.limit()) {
+                if (headerLength > source.size) {
+                    throw new IOException("Invalid vsd file.");
+                }
+                data = source.read(channel, 0, (int) headerLength);
+                data.position(12);
+            }
+        }
+        // read the header index
+        DataInputStream header = new DataInputStream(new BlockInput(data));
+        LinkedHashMap<String, long[]> index = new LinkedHashMap<String, long[]>();
+        for (int i = 0; i < count; i++) {
+            index.put(header.readUTF(), new long[] {header.readLong(), header.readInt()});
+        }
+        // read the blocks
+        LazyVoxelMap voxels = new LazyVoxelMap(target.layers);
+        LazyTextureMap textures = new LazyTextureMap();
+        for (Map.Entry<String, long[]> entry : index.entrySet()) {
+            String name = entry.getKey();
+            long offset = entry.getValue()[0];
+            int length = (int) entry.getValue()[1];
+            if (offset < 0 || length < 0 || offset + length > source.size) {
+                throw new IOException("Invalid block in vsd file.");
+            }
+            Block block = new Block(source, offset, length);
+            if (name.equals(META)) {
+                readMeta(new DataInputStream(new BlockInput(block.read(channel, 0, length))), target);
+            } else if (name.equals(ANIMATION)) {
+                readAnimation(new DataInputStream(new BlockInput(block.read(channel, 0, length))), target);
+            } else if (name.startsWith(LAYER)) {
+                VoxelLayer layer = readLayer(channel, block, voxels);
+                target.layers.put(layer.id, layer);
+            } else if (name.startsWith(TEXTURE)) {
+                textures.addPending(Integer.valueOf(name.substring(TEXTURE.length())), block);
+            }
+        }
+        target.voxels = voxels;
+        target.textures = textures;
+    }
+
+    // the files that blocks are read from
+    private static final ArrayList<WeakReference<Source>> sources = new ArrayList<WeakReference<Source>>();
+
+    // read the blocks that are still needed from a file into memory, this is
+    // called before the file is replaced or deleted
+    static void release(File file) throws IOException {
+        File key = Source.getKey(file);
+        ArrayList<Source> released = new ArrayList<Source>();
+        synchronized (sources) {
+            for (WeakReference<Source> reference : sources) {
+                Source source = reference.get();
+                if (source != null && source.file.equals(key)) {
+                    released.add(source);
+                }
+            }
+        }
+        for (Source source : released) {
+            source.detach();
+        }
+    }
+
+    // a file that blocks are read from (it is only open while a block is read)
+    private static final class Source {
+        private final File file;
+        // used to notice if the file was changed by something else
+        private final long size;
+        private final long lastModified;
+        // the blocks that might still be read
+        private final ArrayList<WeakReference<Block>> blocks = new ArrayList<WeakReference<Block>>();
+        // true once the file is not read anymore
+        private boolean detached = false;
+
+        private Source(File file) {
+            this.file = file;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        private static File getKey(File file) {
+            try {
+                return file.getCanonicalFile();
+            } catch (IOException e) {
+                return file.getAbsoluteFile();
+            }
+        }
+
+        // create a source and remember it (until it is not referenced anymore)
+        static Source open(File file) {
+            Source source = new Source(getKey(file));
+            synchronized (sources) {
+                Iterator<WeakReference<Source>> iterator = sources.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().get() == null) {
+                        iterator.remove();
+                    }
+                }
+                sources.add(new WeakReference<Source>(source));
+            }
+            return source;
+        }
+
+        synchronized void add(Block block) {
+            blocks.add(new WeakReference<Block>(block));
+        }
+
+        // read from the file (the file is opened if the channel is null)
+        synchronized ByteBuffer read(FileChannel channel, final long offset, int length) throws IOException {
+            if (detached) {
+                throw new IOException("The vsd file was released.");
+            }
+            if (file.length() != size || file.lastModified() != lastModified) {
+                throw new IOException("The vsd file was changed since it was opened.");
+            }
+            final ByteBuffer result = ByteBuffer.allocate(length);
+            if (channel != null) {
+                readFully(channel, result, offset);
+            } else {
+                try {
+                    new AutoFileCloser() {
+                        @Override
+                        protected void doWork() throws Throwable {
+                            readFully(autoClose(new RandomAccessFile(file, "r")).getChannel(), result, offset);
+                        }
+                    };
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            result.flip();
+            return result;
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new EOFException("Unexpected end of vsd file.");
+                }
+            }
+        }
+
+        // read the blocks that are still referenced into memory
+        synchronized void detach() throws IOException {
+            if (!detached) {
+                for (WeakReference<Block> reference : blocks) {
+                    Block block = reference.get();
+                    if (block != null) {
+                        block.content = read(null, block.offset, block.length);
+                    }
+                }
+                blocks.clear();
+                detached = true;
+            }
+        }
+    }
+
+    // a block of a file, it is read when it is needed
+    static final class Block {
+        private final Source source;
+        private final long offset;
+        final int length;
+        // the content (once the file is released)
+        private ByteBuffer content = null;
+
+        private Block(Source source, long offset, int length) {
+            this.source = source;
+            this.offset = offset;
+            this.length = length;
+            source.add(this);
+        }
+
+        // the part of this block that starts at the offset
+        Block slice(int offset) {
+            return new Block(source, this.offset + offset, length - offset);
+        }
+
+        // read a part of this block (with a channel of the file that is already open)
+        private ByteBuffer read(FileChannel channel, int offset, int length) throws IOException {
+            synchronized (source) {
+                if (content != null) {
+                    ByteBuffer result = content.duplicate();
+                    result.position(offset);
+                    result.limit(offset + length);
+                    return result.slice();
+                }
+                return source.read(channel, this.offset + offset, length);
+            }
+        }
+
+        // read this block
+        ByteBuffer read() {
+            try {
+                return read(null, 0, length);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the vsd file.", e);
+            }
+        }
+    }
+
+    // read from a block
+    private static final class BlockInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BlockInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
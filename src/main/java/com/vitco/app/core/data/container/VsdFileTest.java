@@ -0,0 +1,320 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.layout.content.console.ConsoleInterface;
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.manager.lang.LangSelectorInterface;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the binary project format (and compare it with the legacy format).
+ */
+public class VsdFileTest {
+
+    // error handler that fails the test
+    static final ErrorHandlerInterface errorHandler = new ErrorHandlerInterface() {
+        @Override
+        public void handle(Throwable e) {
+            throw new AssertionError(e);
+        }
+        @Override
+        public void setLangSelector(LangSelectorInterface langSelector) {}
+        @Override
+        public void setDebugReportUrl(String debugReportUrl) {}
+        @Override
+        public void setConsole(ConsoleInterface console) {}
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            handle(e);
+        }
+    };
+
+    // helper
+    static void addLayer(DataContainer data, VoxelLayer layer) {
+        data.layers.put(layer.id, layer);
+        data.layerOrder.add(layer.id);
+    }
+
+    // helper
+    static void addVoxel(DataContainer data, Voxel voxel) {
+        data.layers.get(voxel.getLayerId()).addVoxel(voxel);
+    }
+
+    // check that two containers hold the same data
+    static void compare(DataContainer a, DataContainer b) {
+        assert a.selectedLayer == b.selectedLayer;
+        assert a.selectedTexture == b.selectedTexture;
+        assert a.activeFrame == b.activeFrame;
+        assert a.layerOrder.equals(b.layerOrder);
+        assert a.voxels.size() == b.voxels.size();
+        for (VoxelLayer layer : a.layers.values()) {
+            VoxelLayer other = b.layers.get(layer.id);
+            assert other.getName().equals(layer.getName());
+            assert other.isVisible() == layer.isVisible();
+            assert other.getSize() == layer.getSize();
+            for (Voxel voxel : layer.getVoxels()) {
+                Voxel loaded = other.search(voxel);
+                assert loaded.equals(voxel);
+                assert b.voxels.get(voxel.id).equals(loaded);
+                assert loaded.getRGB() == voxel.getRGB();
+                assert loaded.getAlpha() == voxel.getAlpha();
+                assert Arrays.equals(loaded.getTexture(), voxel.getTexture());
+                assert Arrays.equals(loaded.getRotation(), voxel.getRotation());
+                assert Arrays.equals(loaded.getFlip(), voxel.getFlip());
+            }
+        }
+        assert a.textures.keySet().equals(b.textures.keySet());
+        for (Integer textureId : a.textures.keySet()) {
+            assert a.textures.get(textureId).getIconWidth() == b.textures.get(textureId).getIconWidth();
+        }
+        assert a.points.equals(b.points);
+        assert a.lines.keySet().equals(b.lines.keySet());
+        for (Integer pointId : a.pointsToLines.keySet()) {
+            assert a.pointsToLines.get(pointId).size() == b.pointsToLines.get(pointId).size();
+        }
+        assert a.frames.size() == b.frames.size();
+        for (Integer frameId : a.frames.keySet()) {
+            Frame frame = a.frames.get(frameId);
+            Frame other = b.frames.get(frameId);
+            assert frame.getName().equals(other.getName());
+            for (Integer pointId : frame.getPoints()) {
+                assert frame.getPoint(pointId).equals(other.getPoint(pointId));
+            }
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        DataContainer data = new DataContainer();
+        addLayer(data, new VoxelLayer(1, "first"));
+        VoxelLayer hidden = new VoxelLayer(4, "hidden");
+        hidden.setVisible(false);
+        addLayer(data, hidden);
+        data.selectedLayer = 4;
+        Random rand = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            Voxel voxel = new Voxel(i * 3, new int[] {i % 10, -i / 10, (i % 2) * 1000000 - 5},
+                    new Color(rand.nextInt()), false, i % 5 == 0 ? new int[] {1, 2, 3, 4, 5, i % 3} : null, i % 4 == 0 ? 4 : 1);
+            if (i % 10 == 0) {
+                voxel.rotate(i % 6);
+                voxel.flip(1);
+            }
+            if (i % 13 == 0) {
+                voxel.setAlpha(i % 256);
+            }
+            addVoxel(data, voxel);
+        }
+        BufferedImage texture = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        texture.setRGB(3, 4, Color.RED.getRGB());
+        data.textures.put(7, new ImageIcon(texture));
+        data.selectedTexture = 7;
+        data.points.put(1, new ExtendedVector(1, 2, 3, 1));
+        data.points.put(2, new ExtendedVector(-1, 0.5f, 3, 2));
+        ExtendedLine line = new ExtendedLine(1, 2);
+        data.lines.put("1_2", line);
+        data.pointsToLines.put(1, new ArrayList<ExtendedLine>(Arrays.asList(line)));
+        data.pointsToLines.put(2, new ArrayList<ExtendedLine>(Arrays.asList(line)));
+        Frame frame = new Frame("frame");
+        frame.setPoint(1, new ExtendedVector(5, 5, 5, 1));
+        data.frames.put(3, frame);
+        data.activeFrame = 3;
+
+        File file = File.createTempFile("test", ".vsd");
+        file.deleteOnExit();
+        assert data.saveToVsdFile(file, errorHandler);
+        assert VsdFile.isVsdFile(file);
+        DataContainer loaded = new DataContainer(file, errorHandler);
+        assert loaded.hasLoaded;
+        compare(data, loaded);
+        assert ((BufferedImage) loaded.textures.get(7).getImage()).getRGB(3, 4) == Color.RED.getRGB();
+
+        // the legacy format can still be read
+        assert data.saveToLegacyVsdFile(file, errorHandler);
+        assert !VsdFile.isVsdFile(file);
+        loaded = new DataContainer(file, errorHandler);
+        assert loaded.hasLoaded;
+        compare(data, loaded);
+        assert file.delete();
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        DataContainer data = new DataContainer();
+        addLayer(data, new VoxelLayer(1, "visible"));
+        VoxelLayer hidden = new VoxelLayer(2, "hidden");
+        hidden.setVisible(false);
+        addLayer(data, hidden);
+        data.layers.put(3, new VoxelLayer(3, "not ordered"));
+        for (int i = 0; i < 30; i++) {
+            addVoxel(data, new Voxel(i, new int[] {i, 0, 0}, Color.RED, false, null, i / 10 + 1));
+        }
+        data.textures.put(5, new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+
+        File file = File.createTempFile("lazy", ".vsd");
+        file.deleteOnExit();
+        assert data.saveToVsdFile(file, errorHandler);
+        DataContainer loaded = new DataContainer(file, errorHandler);
+        // nothing is decoded yet
+        for (VoxelLayer layer : loaded.layers.values()) {
+            assert layer.isOnDisk();
+            assert layer.getSize() == 10;
+        }
+        assert loaded.voxels.size() == 30;
+        assert loaded.getUnloadedMaxVoxelId() == 29;
+        LazyTextureMap textures = (LazyTextureMap) loaded.textures;
+        assert textures.containsKey(5) && textures.size() == 1;
+        assert textures.isOnDisk(5);
+
+        // layers are decoded on first access
+        assert loaded.voxels.get(15).getLayerId() == 2;
+        assert !loaded.layers.get(2).isOnDisk();
+        assert loaded.layers.get(1).isOnDisk() && loaded.layers.get(3).isOnDisk();
+        assert loaded.getUnloadedMaxVoxelId() == 29;
+        assert loaded.layers.get(1).search(new int[] {3, 0, 0}).id == 3;
+        assert !loaded.layers.get(1).isOnDisk();
+        assert loaded.voxels.get(100) == null;
+        assert loaded.layers.get(3).isOnDisk();
+        assert loaded.textures.get(5).getIconWidth() == 32;
+        assert !textures.isOnDisk(5);
+
+        // overwrite the loaded file (without decoding what is still on disk)
+        assert loaded.saveToVsdFile(file, errorHandler);
+        assert loaded.layers.get(3).isOnDisk();
+        compare(data, new DataContainer(file, errorHandler));
+        // the loaded data does not depend on the file
+        assert file.delete();
+        compare(data, loaded);
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+        DataContainer data = new DataContainer();
+        addLayer(data, new VoxelLayer(1, "first"));
+        addLayer(data, new VoxelLayer(2, "second"));
+        for (int i = 0; i < 20; i++) {
+            addVoxel(data, new Voxel(i, new int[] {i, 0, 0}, Color.RED, false, null, i % 2 + 1));
+        }
+        File file = File.createTempFile("changed", ".vsd");
+        file.deleteOnExit();
+        assert data.saveToVsdFile(file, errorHandler);
+        DataContainer loaded = new DataContainer(file, errorHandler);
+        assert loaded.layers.get(1).isOnDisk() && loaded.layers.get(2).isOnDisk();
+
+        // released blocks are read from memory
+        loaded.layers.get(1).getVoxels();
+        VsdFile.release(file);
+        assert file.delete();
+        assert loaded.layers.get(2).isOnDisk();
+        compare(data, loaded);
+
+        // a file that is changed by something else is not read
+        assert data.saveToVsdFile(file, errorHandler);
+        loaded = new DataContainer(file, errorHandler);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() + 1);
+        } finally {
+            raf.close();
+        }
+        boolean failed = false;
+        try {
+            loaded.layers.get(1).getVoxels();
+        } catch (IllegalStateException e) {
+            failed = true;
+        }
+        assert failed;
+        assert file.delete();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        DataContainer data = new DataContainer();
+        addLayer(data, new VoxelLayer(1, "first"));
+        addLayer(data, new VoxelLayer(2, "second"));
+        for (int i = 0; i < 100; i++) {
+            addVoxel(data, new Voxel(i, new int[] {i, i % 3, 0}, Color.BLUE, false,
+                    i % 10 == 0 ? new int[] {1, 1, 1, 1, 1, 1} : null, i % 2 + 1));
+        }
+        data.textures.put(1, new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+        File expectedFile = File.createTempFile("expected", ".vsd");
+        expectedFile.deleteOnExit();
+        assert data.saveToVsdFile(expectedFile, errorHandler);
+        DataContainer expected = new DataContainer(expectedFile, errorHandler);
+
+        DataSnapshot snapshot = data.snapshot();
+        // change everything
+        VoxelLayer first = data.layers.get(1);
+        first.setName("renamed");
+        first.setVisible(false);
+        first.setVoxelColor(data.voxels.get(0), Color.RED);
+        first.setVoxelTexture(data.voxels.get(10), null);
+        first.rotateVoxel(data.voxels.get(20), 2, false);
+        first.flipVoxel(data.voxels.get(30), 1);
+        first.setVoxelAlpha(data.voxels.get(40), 100);
+        first.removeVoxel(data.voxels.get(50));
+        addVoxel(data, new Voxel(100, new int[] {0, 5, 5}, Color.GREEN, false, null, 2));
+        data.layerOrder.remove(Integer.valueOf(1));
+        data.layers.remove(1);
+        data.textures.remove(1);
+        data.selectedLayer = 2;
+
+        File file = File.createTempFile("snapshot", ".vsd");
+        file.deleteOnExit();
+        assert snapshot.write(file, null, errorHandler);
+        compare(expected, new DataContainer(file, errorHandler));
+        // a new snapshot contains the changes
+        assert data.saveToVsdFile(file, errorHandler);
+        compare(data, new DataContainer(file, errorHandler));
+        assert file.delete();
+        assert expectedFile.delete();
+    }
+
+    // compare the speed and size with the legacy format
+    @Test
+    public void benchmark() throws Exception {
+        DataContainer data = new DataContainer();
+        addLayer(data, new VoxelLayer(0, "layer"));
+        int size = 100; // 1M voxel
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    addVoxel(data, new Voxel(id++, new int[] {x, -y, z}, new Color(x * 2, y, z), false, null, 0));
+                }
+            }
+        }
+        File file = File.createTempFile("benchmark", ".vsd");
+        file.deleteOnExit();
+        for (int run = 0; run < 2; run++) {
+            for (boolean legacy : new boolean[] {true, false}) {
+                long time = System.currentTimeMillis();
+                DataSnapshot snapshot = legacy ? null : data.snapshot();
+                long snapshotTime = System.currentTimeMillis() - time;
+                assert legacy ? data.saveToLegacyVsdFile(file, errorHandler) : snapshot.write(file, null, errorHandler);
+                long saveTime = System.currentTimeMillis() - time;
+                System.gc();
+                long memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+                time = System.currentTimeMillis();
+                DataContainer loaded = new DataContainer(file, errorHandler);
+                long openTime = System.currentTimeMillis() - time;
+                loaded.loadAll();
+                long loadTime = System.currentTimeMillis() - time;
+                assert loaded.voxels.size() == size * size * size;
+                System.gc();
+                memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - memory;
+                System.out.println((legacy ? "Legacy" : "VSD v2") + ": " + snapshotTime + " ms snapshot, " + saveTime + " ms save, " + openTime +
+                        " ms open, " + loadTime + " ms load, " + file.length() / 1024 + " kb file, " + memory / (1024 * 1024) + " mb heap");
+            }
+        }
+        assert file.delete();
+    }
+
+}
@@ -0,0 +1,642 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import gnu.trove.set.hash.TLongHashSet;
+
+import javax.swing.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes to a data container (autosave).
+ *
+ * The journal consists of a base snapshot ("base_n.vsd") and the records that were
+ * appended since then ("journal_n.bin"). A record holds the state after an edit: the
+ * layer table, the meta data and the voxels at the effected positions (and the layers
+ * and textures that were replaced or the animation data if they changed). So the cost
+ * of a record scales with the size of the edit and not with the size of the project.
+ * When the records get too large they are folded into a new base snapshot.
+ *
+ * All files are written in order on a background thread. A journal that is left
+ * behind (e.g. after a crash) can be replayed on startup.
+ */
+public final class VsdJournal {
+
+    // file names
+    private static final String BASE = "base_";
+    private static final String BASE_SUFFIX = ".vsd";
+    private static final String JOURNAL = "journal_";
+    private static final String JOURNAL_SUFFIX = ".bin";
+    // held while the journal is written (so that another instance does not recover it)
+    private static final String LOCK = "journal.lock";
+
+    private final File directory;
+    private final long compactionSize;
+    private final ErrorHandlerInterface errorHandler;
+
+    // writes the files (in order)
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Journal Writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // the current generation and the bytes appended to it
+    private int generation = -1;
+    private long journalSize = 0;
+    // the journal file of the current generation (only used by the writer)
+    private RandomAccessFile journalOut = null;
+    // the lock of the directory
+    private FileChannel lockChannel = null;
+    private FileLock lock = null;
+    // true if the base needs to be written before the next record
+    private boolean baseOutdated = false;
+
+    // the layer and texture instances that are stored in the journal (only used
+    // by the calling thread), so a record only needs to contain the replaced ones
+    private final HashMap<Integer, VoxelLayer> writtenLayers = new HashMap<Integer, VoxelLayer>();
+    private final HashMap<Integer, ImageIcon> writtenTextures = new HashMap<Integer, ImageIcon>();
+
+    // constructor (the journal is folded into a new base after compactionSize bytes)
+    public VsdJournal(File directory, long compactionSize, ErrorHandlerInterface errorHandler) {
+        this.directory = directory;
+        this.compactionSize = compactionSize;
+        this.errorHandler = errorHandler;
+    }
+
+    // ==================
+    // writing
+
+    // start a new journal from the current state (an old journal is discarded),
+    // returns false if the directory is used by another instance
+    public final boolean start(DataContainer data) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            errorHandler.handle(new IOException("Unable to create " + directory));
+            return false;
+        }
+        try {
+            lockChannel = new RandomAccessFile(new File(directory, LOCK), "rw").getChannel();
+            lock = lockChannel.tryLock();
+        } catch (IOException e) {
+            errorHandler.handle(e);
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            releaseLock();
+            return false;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeJournalFile();
+                deleteFiles(Integer.MAX_VALUE);
+            }
+        });
+        generation = -1;
+        compact(data);
+        return true;
+    }
+
+    // discard the journal after the data was replaced (e.g. loaded from file),
+    // the new base is only written when the data is changed
+    public final void reset() {
+        if (lock == null) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeJournalFile();
+                deleteFiles(Integer.MAX_VALUE);
+            }
+        });
+        journalSize = 0;
+        baseOutdated = true;
+    }
+
+    // append the state after an edit (null means that layers were added or removed,
+    // the layers that are new to the journal are then written as a whole)
+    public final void append(DataContainer data, int[][] effected, boolean textures, boolean animation) {
+        if (lock == null) {
+            return;
+        }
+        if (baseOutdated) {
+            // the new base contains this edit
+            compact(data);
+            return;
+        }
+        final byte[] record;
+        try {
+            record = writeRecord(data, effected, textures, animation);
+        } catch (IOException e) {
+            errorHandler.handle(e);
+            return;
+        }
+        journalSize += record.length;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendRecord(record);
+            }
+        });
+        if (journalSize > compactionSize) {
+            compact(data);
+        }
+    }
+
+    // fold the journal into a new base snapshot
+    public final void compact(DataContainer data) {
+        if (lock == null) {
+            return;
+        }
+        final DataSnapshot snapshot;
+        try {
+            snapshot = data.snapshot();
+        } catch (IOException e) {
+            errorHandler.handle(e);
+            return;
+        }
+        final int newGeneration = ++generation;
+        journalSize = 0;
+        baseOutdated = false;
+        // the textures that are not decoded are in the base as they are
+        writtenLayers.clear();
+        writtenLayers.putAll(data.layers);
+        writtenTextures.clear();
+        for (Integer textureId : data.textures.keySet()) {
+            if (!isEncoded(data, textureId)) {
+                writtenTextures.put(textureId, data.textures.get(textureId));
+            }
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                // the following records belong to the new base
+                closeJournalFile();
+                try {
+                    journalOut = new RandomAccessFile(getJournalFile(directory, newGeneration), "rw");
+                    journalOut.setLength(0);
+                } catch (IOException e) {
+                    errorHandler.handle(e);
+                }
+                // the older files are only removed when the new base is complete
+                if (snapshot.write(getBaseFile(directory, newGeneration), null, errorHandler)) {
+                    deleteFiles(newGeneration);
+                }
+            }
+        });
+    }
+
+    // wait until everything is written
+    public final void flush() {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {}
+            }).get();
+        } catch (Exception e) {
+            errorHandler.handle(e);
+        }
+    }
+
+    // stop journaling and delete the journal (e.g. when the data was saved or discarded)
+    public final void close() {
+        if (lock != null) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeJournalFile();
+                    deleteFiles(Integer.MAX_VALUE);
+                }
+            });
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseLock();
+    }
+
+    private void releaseLock() {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            errorHandler.handle(e);
+        }
+        lock = null;
+        lockChannel = null;
+    }
+
+    // append a record to the journal file (with length and checksum, so that
+    // a record that was not written completely can be detected)
+    private void appendRecord(byte[] record) {
+        if (journalOut == null) {
+            return;
+        }
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            ByteBuffer frame = ByteBuffer.allocate(record.length + 8);
+            frame.putInt(record.length);
+            frame.putInt((int) crc.getValue());
+            frame.put(record);
+            journalOut.seek(journalOut.length());
+            journalOut.write(frame.array());
+            journalOut.getFD().sync();
+        } catch (IOException e) {
+            errorHandler.handle(e);
+        }
+    }
+
+    private void closeJournalFile() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException e) {
+                errorHandler.handle(e);
+            }
+            journalOut = null;
+        }
+    }
+
+    // delete the files of all generations before the given one
+    private void deleteFiles(int before) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int fileGeneration = getGeneration(file);
+                if (fileGeneration != -1 && fileGeneration < before) {
+                    try {
+                        // the recovered data might still read from an old base
+                        VsdFile.release(file);
+                    } catch (IOException e) {
+                        errorHandler.handle(e);
+                        continue;
+                    }
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+        }
+    }
+
+    // true if a texture is not decoded yet
+    private static boolean isEncoded(DataContainer data, Integer textureId) {
+        return data.textures instanceof LazyTextureMap && ((LazyTextureMap) data.textures).isOnDisk(textureId);
+    }
+
+    // encode the state after an edit
+    private byte[] writeRecord(DataContainer data, int[][] effected, boolean textures, boolean animation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // meta data and layer table (small)
+        byte[] meta = VsdFile.writeMeta(data);
+        out.writeInt(meta.length);
+        out.write(meta);
+        out.writeInt(data.layers.size());
+        for (VoxelLayer layer : data.layers.values()) {
+            out.writeInt(layer.id);
+            out.writeUTF(layer.getName());
+            out.writeBoolean(layer.isVisible());
+            // a layer that is new to the journal (e.g. a deleted layer that is restored)
+            boolean whole = effected == null && writtenLayers.get(layer.id) != layer;
+            out.writeBoolean(whole);
+            if (whole) {
+                byte[] encoded = VsdFile.writeVoxels(layer);
+                out.writeInt(layer.getSize());
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        }
+        // the voxels at the effected positions (in all layers)
+        TLongHashSet seen = new TLongHashSet();
+        ArrayList<int[]> positions = new ArrayList<int[]>();
+        for (int[] pos : effected == null ? new int[0][] : effected) {
+            if (seen.add(LongCubeIndexer.getId(pos[0], pos[1], pos[2]))) {
+                positions.add(pos);
+            }
+        }
+        out.writeInt(positions.size());
+        ArrayList<Voxel> voxels = new ArrayList<Voxel>();
+        for (int[] pos : positions) {
+            voxels.clear();
+            for (VoxelLayer layer : data.layers.values()) {
+                Voxel voxel = layer.search(pos);
+                if (voxel != null) {
+                    voxels.add(voxel);
+                }
+            }
+            out.writeInt(pos[0]);
+            out.writeInt(pos[1]);
+            out.writeInt(pos[2]);
+            out.writeInt(voxels.size());
+            for (Voxel voxel : voxels) {
+                out.writeInt(voxel.id);
+                out.writeInt(voxel.getLayerId());
+                out.writeInt(voxel.getRGB());
+                out.writeInt(voxel.getAlpha());
+                VsdFile.writeInts(out, voxel.getTexture());
+                VsdFile.writeInts(out, voxel.getRotation());
+                boolean[] flip = voxel.getFlip();
+                out.writeBoolean(flip != null);
+                if (flip != null) {
+                    for (boolean b : flip) {
+                        out.writeBoolean(b);
+                    }
+                }
+            }
+        }
+        // the texture ids (only the textures that changed are encoded)
+        HashMap<Integer, ImageIcon> changedTextures = new HashMap<Integer, ImageIcon>();
+        out.writeBoolean(textures);
+        if (textures) {
+            out.writeInt(data.textures.size());
+            for (Integer textureId : data.textures.keySet()) {
+                ImageIcon texture = isEncoded(data, textureId) ? null : data.textures.get(textureId);
+                boolean changed = texture != null && writtenTextures.get(textureId) != texture;
+                out.writeInt(textureId);
+                out.writeBoolean(changed);
+                if (changed) {
+                    byte[] png = VsdFile.writeTexture(texture);
+                    out.writeInt(png.length);
+                    out.write(png);
+                    changedTextures.put(textureId, texture);
+                }
+            }
+        }
+        // the animation data
+        out.writeBoolean(animation);
+        if (animation) {
+            byte[] block = VsdFile.writeAnimation(data);
+            out.writeInt(block.length);
+            out.write(block);
+        }
+        out.close();
+        // the record is complete
+        writtenLayers.clear();
+        writtenLayers.putAll(data.layers);
+        if (textures) {
+            writtenTextures.keySet().retainAll(data.textures.keySet());
+            writtenTextures.putAll(changedTextures);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ==================
+    // recovery
+
+    // the generation of a journal file (or -1)
+    private static int getGeneration(File file) {
+        String name = file.getName();
+        String number = null;
+        if (name.startsWith(BASE) && name.endsWith(BASE_SUFFIX)) {
+            number = name.substring(BASE.length(), name.length() - BASE_SUFFIX.length());
+        } else if (name.startsWith(JOURNAL) && name.endsWith(JOURNAL_SUFFIX)) {
+            number = name.substring(JOURNAL.length(), name.length() - JOURNAL_SUFFIX.length());
+        }
+        try {
+            return number == null ? -1 : Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static File getBaseFile(File directory, int generation) {
+        return new File(directory, BASE + generation + BASE_SUFFIX);
+    }
+
+    private static File getJournalFile(File directory, int generation) {
+        return new File(directory, JOURNAL + generation + JOURNAL_SUFFIX);
+    }
+
+    // the newest complete base (or -1)
+    private static int getBaseGeneration(File directory) {
+        int result = -1;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(BASE)) {
+                    result = Math.max(result, getGeneration(file));
+                }
+            }
+        }
+        return result;
+    }
+
+    // true if a journal was left behind (e.g. after a crash), a journal
+    // that is still written by another instance is ignored
+    public static boolean hasRecovery(File directory) {
+        if (getBaseGeneration(directory) == -1) {
+            return false;
+        }
+        File lockFile = new File(directory, LOCK);
+        if (!lockFile.exists()) {
+            return true;
+        }
+        try {
+            FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    return false;
+                }
+                lock.release();
+                return true;
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    // restore the data from a journal that was left behind (null if this is not possible)
+    public static DataContainer recover(File directory, ErrorHandlerInterface errorHandler) {
+        int baseGeneration = getBaseGeneration(directory);
+        if (baseGeneration == -1) {
+            return null;
+        }
+        DataContainer data = new DataContainer(getBaseFile(directory, baseGeneration), errorHandler);
+        if (!data.hasLoaded) {
+            return null;
+        }
+        // the files might be removed while the data is used
+        data.loadAll();
+        // replay the records of this and all newer generations
+        int maxGeneration = baseGeneration;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                maxGeneration = Math.max(maxGeneration, getGeneration(file));
+            }
+        }
+        for (int i = baseGeneration; i <= maxGeneration; i++) {
+            File journal = getJournalFile(directory, i);
+            if (journal.exists()) {
+                try {
+                    replay(journal, data);
+                } catch (IOException e) {
+                    errorHandler.handle(e);
+                }
+            }
+        }
+        return data;
+    }
+
+    // apply all complete records of a journal file
+    private static void replay(final File journal, final DataContainer data) throws IOException {
+        final byte[] content = new byte[(int) journal.length()];
+        new com.vitco.app.util.misc.AutoFileCloser() {
+            @Override
+            protected void doWork() throws Throwable {
+                DataInputStream in = autoClose(new DataInputStream(new FileInputStream(journal)));
+                in.readFully(content);
+            }
+        };
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break; // the last record was not written completely
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            readRecord(new DataInputStream(new ByteArrayInputStream(content, buffer.position(), length)), data);
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    // apply a record
+    private static void readRecord(DataInputStream in, DataContainer data) throws IOException {
+        // meta data
+        byte[] meta = new byte[in.readInt()];
+        in.readFully(meta);
+        DataContainer.TmpData tmp = new DataContainer.TmpData();
+        VsdFile.readMeta(new DataInputStream(new ByteArrayInputStream(meta)), tmp);
+        data.selectedTexture = tmp.selectedTexture;
+        data.selectedLayer = tmp.selectedLayer;
+        data.activeFrame = tmp.activeFrame;
+        data.layerOrder.clear();
+        data.layerOrder.addAll(tmp.layerOrder);
+        // layer table
+        LinkedHashMap<Integer, VoxelLayer> layers = new LinkedHashMap<Integer, VoxelLayer>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int layerId = in.readInt();
+            VoxelLayer layer = data.layers.get(layerId);
+            String name = in.readUTF();
+            boolean visible = in.readBoolean();
+            if (in.readBoolean()) {
+                // the layer is replaced as a whole
+                int size = in.readInt();
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+                layer = new VoxelLayer(layerId, name);
+                VsdFile.readVoxels(encoded, layer, size);
+            } else if (layer == null) {
+                layer = new VoxelLayer(layerId, "");
+            }
+            layer.setName(name);
+            layer.setVisible(visible);
+            layers.put(layerId, layer);
+        }
+        data.layers.clear();
+        data.layers.putAll(layers);
+        // the voxels at the effected positions
+        count = in.readInt();
+        int[] pos = new int[3];
+        for (int i = 0; i < count; i++) {
+            pos[0] = in.readInt();
+            pos[1] = in.readInt();
+            pos[2] = in.readInt();
+            for (VoxelLayer layer : data.layers.values()) {
+                Voxel voxel = layer.search(pos);
+                if (voxel != null) {
+                    layer.removeVoxel(voxel);
+                }
+            }
+            int voxelCount = in.readInt();
+            for (int j = 0; j < voxelCount; j++) {
+                int id = in.readInt();
+                int layerId = in.readInt();
+                Voxel voxel = new Voxel(id, pos[0], pos[1], pos[2], in.readInt(), layerId);
+                voxel.setAlpha(in.readInt());
+                int[] texture = VsdFile.readInts(in);
+                int[] rotation = VsdFile.readInts(in);
+                boolean[] flip = null;
+                if (in.readBoolean()) {
+                    flip = new boolean[6];
+                    for (int k = 0; k < 6; k++) {
+                        flip[k] = in.readBoolean();
+                    }
+                }
+                voxel.setTextureAttributes(texture, rotation, flip);
+                data.layers.get(layerId).addVoxel(voxel);
+            }
+        }
+        // textures (the unchanged textures are kept)
+        if (in.readBoolean()) {
+            HashMap<Integer, ImageIcon> textures = new HashMap<Integer, ImageIcon>();
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int textureId = in.readInt();
+                if (in.readBoolean()) {
+                    byte[] png = new byte[in.readInt()];
+                    in.readFully(png);
+                    textures.put(textureId, VsdFile.readTexture(ByteBuffer.wrap(png)));
+                } else if (data.textures.containsKey(textureId)) {
+                    textures.put(textureId, data.textures.get(textureId));
+                } else {
+                    throw new IOException("Invalid record in journal.");
+                }
+            }
+            data.textures.clear();
+            data.textures.putAll(textures);
+        }
+        // animation data
+        if (in.readBoolean()) {
+            byte[] block = new byte[in.readInt()];
+            in.readFully(block);
+            tmp = new DataContainer.TmpData();
+            VsdFile.readAnimation(new DataInputStream(new ByteArrayInputStream(block)), tmp);
+            data.points.clear();
+            data.points.putAll(tmp.points);
+            data.lines.clear();
+            data.lines.putAll(tmp.lines);
+            data.pointsToLines.clear();
+            data.pointsToLines.putAll(tmp.pointsToLines);
+            data.frames.clear();
+            data.frames.putAll(tmp.frames);
+        }
+    }
+}
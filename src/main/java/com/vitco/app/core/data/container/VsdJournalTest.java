@@ -0,0 +1,295 @@
+package com.vitco.app.core.data.container;
+
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Test the autosave journal (records, compaction and recovery).
+ */
+public class VsdJournalTest {
+
+    // helper
+    private static File createDirectory() throws Exception {
+        File directory = Files.createTempDirectory("journal").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    // helper
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assert file.delete();
+            }
+        }
+        assert directory.delete();
+    }
+
+    // helper
+    private static DataContainer createData() {
+        DataContainer data = new DataContainer();
+        VsdFileTest.addLayer(data, new VoxelLayer(1, "first"));
+        VsdFileTest.addLayer(data, new VoxelLayer(2, "second"));
+        for (int i = 0; i < 100; i++) {
+            VsdFileTest.addVoxel(data, new Voxel(i, new int[] {i % 10, i / 10, 0}, Color.BLUE, false, null, i % 2 + 1));
+        }
+        data.selectedLayer = 1;
+        return data;
+    }
+
+    @Test
+    public void testAppendAndRecover() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        journal.flush();
+        // the journal is in use
+        assert !VsdJournal.hasRecovery(directory);
+
+        // add, remove and change voxels
+        Voxel added = new Voxel(100, new int[] {0, 0, 5}, Color.RED, false, null, 2);
+        VsdFileTest.addVoxel(data, added);
+        journal.append(data, new int[][] {added.getPosAsInt()}, false, false);
+        Voxel removed = data.voxels.get(5);
+        data.layers.get(removed.getLayerId()).removeVoxel(removed);
+        Voxel changed = data.voxels.get(6);
+        data.layers.get(changed.getLayerId()).setVoxelColor(changed, Color.GREEN);
+        data.layers.get(changed.getLayerId()).setVoxelTexture(changed, new int[] {3, 3, 3, 3, 3, 3});
+        data.layers.get(changed.getLayerId()).rotateVoxel(changed, 2, false);
+        journal.append(data, new int[][] {removed.getPosAsInt(), changed.getPosAsInt(), changed.getPosAsInt()}, false, false);
+        // move a voxel to another layer
+        Voxel moved = data.voxels.get(7);
+        data.layers.get(moved.getLayerId()).removeVoxel(moved);
+        moved = new Voxel(moved.id, moved.getPosAsInt(), moved.getColor(), false, null, 1);
+        VsdFileTest.addVoxel(data, moved);
+        journal.append(data, new int[][] {moved.getPosAsInt()}, false, false);
+        // layers and meta data
+        data.layers.get(1).setName("renamed");
+        data.layers.get(2).setVisible(false);
+        VsdFileTest.addLayer(data, new VoxelLayer(3, "third"));
+        data.selectedLayer = 3;
+        journal.append(data, new int[0][], false, false);
+        VoxelLayer second = data.layers.get(2);
+        data.layers.remove(2);
+        data.layerOrder.remove(Integer.valueOf(2));
+        journal.append(data, new int[0][], false, false);
+        // textures and animation
+        data.textures.put(3, new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+        data.selectedTexture = 3;
+        journal.append(data, new int[0][], true, false);
+        data.points.put(1, new ExtendedVector(1, 2, 3, 1));
+        journal.append(data, new int[0][], false, true);
+        journal.flush();
+
+        // replay the journal (as after a crash)
+        DataContainer recovered = VsdJournal.recover(directory, VsdFileTest.errorHandler);
+        assert recovered != null;
+        VsdFileTest.compare(data, recovered);
+
+        // the journal is removed when it is closed
+        journal.close();
+        assert !VsdJournal.hasRecovery(directory);
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        // compact after every record
+        VsdJournal journal = new VsdJournal(directory, 1, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        for (int i = 0; i < 10; i++) {
+            Voxel voxel = new Voxel(100 + i, new int[] {i, 0, 1}, Color.RED, false, null, 1);
+            VsdFileTest.addVoxel(data, voxel);
+            journal.append(data, new int[][] {voxel.getPosAsInt()}, false, false);
+        }
+        // everything changed
+        data.layers.get(2).setVisible(false);
+        journal.append(data, null, false, false);
+        journal.flush();
+        // only the newest base is kept
+        assert countFiles(directory, "base_") == 1;
+        VsdFileTest.compare(data, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        journal.close();
+        deleteDirectory(directory);
+    }
+
+    // helper
+    private static int countFiles(File directory, String prefix) {
+        int result = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(prefix)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testLayerRecords() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        // delete a layer
+        VoxelLayer second = data.layers.remove(2);
+        data.layerOrder.remove(Integer.valueOf(2));
+        journal.append(data, null, false, false);
+        journal.flush();
+        VsdFileTest.compare(data, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        // and restore it
+        VsdFileTest.addLayer(data, second);
+        journal.append(data, null, false, false);
+        journal.flush();
+        VsdFileTest.compare(data, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        // no new base was written
+        assert countFiles(directory, "base_") == 1 && new File(directory, "base_0.vsd").exists();
+        journal.close();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testTextureRecords() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        Random rand = new Random(1);
+        BufferedImage noise = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                noise.setRGB(x, y, rand.nextInt());
+            }
+        }
+        data.textures.put(1, new ImageIcon(noise));
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        journal.flush();
+        File journalFile = new File(directory, "journal_0.bin");
+        // only the new texture is written
+        data.textures.put(2, new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+        journal.append(data, new int[0][], true, false);
+        journal.flush();
+        long size = journalFile.length();
+        assert size < 1000 : size;
+        // a replaced texture is written again
+        data.textures.put(2, new ImageIcon(noise));
+        journal.append(data, new int[0][], true, false);
+        journal.flush();
+        assert journalFile.length() - size > 10000;
+        // removed textures
+        data.textures.remove(1);
+        journal.append(data, new int[0][], true, false);
+        journal.flush();
+        VsdFileTest.compare(data, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        journal.close();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        // e.g. a file was loaded, the base is only written on the next change
+        data = createData();
+        journal.reset();
+        journal.flush();
+        assert countFiles(directory, "base_") == 0;
+        Voxel voxel = new Voxel(100, new int[] {0, 0, 1}, Color.RED, false, null, 1);
+        VsdFileTest.addVoxel(data, voxel);
+        journal.append(data, new int[][] {voxel.getPosAsInt()}, false, false);
+        journal.flush();
+        assert countFiles(directory, "base_") == 1;
+        VsdFileTest.compare(data, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        journal.close();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+        File directory = createDirectory();
+        DataContainer data = createData();
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        assert journal.start(data);
+        Voxel first = new Voxel(100, new int[] {0, 0, 1}, Color.RED, false, null, 1);
+        VsdFileTest.addVoxel(data, first);
+        journal.append(data, new int[][] {first.getPosAsInt()}, false, false);
+        journal.flush();
+        DataContainer expected = VsdJournal.recover(directory, VsdFileTest.errorHandler);
+        VsdFileTest.compare(data, expected);
+        Voxel second = new Voxel(101, new int[] {0, 0, 2}, Color.RED, false, null, 1);
+        VsdFileTest.addVoxel(data, second);
+        journal.append(data, new int[][] {second.getPosAsInt()}, false, false);
+        journal.flush();
+
+        // the last record is damaged
+        File journalFile = new File(directory, "journal_0.bin");
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        file.seek(file.length() - 1);
+        int last = file.read();
+        file.seek(file.length() - 1);
+        file.write(last ^ 0x55);
+        file.close();
+        VsdFileTest.compare(expected, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+
+        // the last record was not written completely
+        file = new RandomAccessFile(journalFile, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+        VsdFileTest.compare(expected, VsdJournal.recover(directory, VsdFileTest.errorHandler));
+        journal.close();
+        deleteDirectory(directory);
+    }
+
+    // the cost of a record (compared to saving everything)
+    @Test
+    public void benchmark() throws Exception {
+        DataContainer data = new DataContainer();
+        VsdFileTest.addLayer(data, new VoxelLayer(0, "layer"));
+        int size = 100; // 1M voxel
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    VsdFileTest.addVoxel(data, new Voxel(id++, new int[] {x, -y, z}, new Color(x * 2, y, z), false, null, 0));
+                }
+            }
+        }
+        File directory = createDirectory();
+        VsdJournal journal = new VsdJournal(directory, Long.MAX_VALUE, VsdFileTest.errorHandler);
+        long time = System.currentTimeMillis();
+        assert journal.start(data);
+        journal.flush();
+        System.out.println("Base: " + (System.currentTimeMillis() - time) + " ms");
+
+        int records = 1000;
+        time = System.currentTimeMillis();
+        for (int i = 0; i < records; i++) {
+            Voxel voxel = data.voxels.get(i);
+            data.layers.get(0).setVoxelColor(voxel, new Color(i));
+            journal.append(data, new int[][] {voxel.getPosAsInt()}, false, false);
+        }
+        long encoded = System.currentTimeMillis() - time;
+        journal.flush();
+        System.out.println("Records: " + encoded + " ms to encode, " +
+                (System.currentTimeMillis() - time) + " ms to write " + records + " records (" +
+                new File(directory, "journal_0.bin").length() + " bytes)");
+
+        time = System.currentTimeMillis();
+        DataContainer recovered = VsdJournal.recover(directory, VsdFileTest.errorHandler);
+        System.out.println("Recovery: " + (System.currentTimeMillis() - time) + " ms");
+        assert recovered.voxels.get(records - 1).getRGB() == new Color(records - 1).getRGB();
+        journal.close();
+        deleteDirectory(directory);
+    }
+}
@@ -1,9 +1,14 @@
 package com.vitco.app.core.data.history;
 
+import java.io.Serializable;
+
 /**
  * Base intent that allows to specify actions further.
+ *
+ * Intents are serializable, so that old history can be moved to disk.
  */
-public abstract class BasicActionIntent {
+public abstract class BasicActionIntent implements Serializable {
+    private static final long serialVersionUID = 1L;
     // true if this is the first time apply is called
     private boolean first_call = true;
     // true if this intent is attached to surrounding intents
@@ -30,6 +35,11 @@ public abstract class BasicActionIntent {
         unapplyAction();
     }
 
+    // estimate the memory used by this intent (after it was applied)
+    public long getByteSize() {
+        return 64;
+    }
+
     // action to be defined by child class
     protected abstract void applyAction();
 
@@ -1,9 +1,16 @@
 package com.vitco.app.core.data.history;
 
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
 import java.util.ArrayList;
 
 /**
  * Manages BasicActionIntents. History manager.
+ *
+ * When the history needs more memory than the memory budget allows, the oldest
+ * history segments are moved to a temporary file and loaded again on (deep) undo.
  */
 public class HistoryManager<T extends BasicActionIntent> {
 
@@ -11,10 +18,226 @@ public class HistoryManager<T extends BasicActionIntent> {
     private int historyPosition = -1;
     private ArrayList<T> history = new ArrayList<T>();
 
+    // ------------------------------
+    // memory budget
+
+    // the estimated size of every history entry (zero if the entry is on disk)
+    private TLongArrayList entrySize = new TLongArrayList();
+    // the estimated size of the history that is in memory
+    private long byteSize = 0;
+    // the maximum size of the history that is kept in memory
+    private long memoryBudget = Long.MAX_VALUE;
+    // the minimum size of a segment that is moved to disk
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    // the history entries [0, spilledCount) are on disk (their list entry is null)
+    private int spilledCount = 0;
+    // the segments on disk (first entry, file offset, byte length), the last segment is the newest
+    private final ArrayList<long[]> spilledSegments = new ArrayList<long[]>();
+    private File spillFile = null;
+    private RandomAccessFile spillData = null;
+    // set when writing to disk failed (the history is then kept in memory)
+    private boolean spillFailed = false;
+    // the object that the intents belong to (it is not written to disk)
+    private Object spillContext = null;
+
+    // var & setter (reports problems with the history on disk)
+    private ErrorHandlerInterface errorHandler = null;
+    public final void setErrorHandler(ErrorHandlerInterface errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    // helper - report an exception
+    private void handle(Throwable e) {
+        if (errorHandler != null) {
+            errorHandler.handle(e);
+        } else {
+            e.printStackTrace();
+        }
+    }
+
+    // set the maximum size (estimated, in bytes) of the history that is kept in memory
+    public final void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        enforceMemoryBudget();
+    }
+
+    public final long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    // the estimated size (in bytes) of the history that is kept in memory
+    public final long getByteSize() {
+        return byteSize;
+    }
+
+    // the size (in bytes) of the history that is stored on disk
+    public final long getSpilledByteSize() {
+        if (spilledSegments.isEmpty()) {
+            return 0;
+        }
+        long[] last = spilledSegments.get(spilledSegments.size() - 1);
+        return last[1] + last[2];
+    }
+
+    // set the object that all intents belong to (e.g. the outer class of the intents),
+    // this object is not written to disk
+    public final void setSpillContext(Object spillContext) {
+        this.spillContext = spillContext;
+    }
+
+    // placeholder for the spill context
+    private static final class SpillContextToken implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+    private static final SpillContextToken SPILL_CONTEXT_TOKEN = new SpillContextToken();
+
+    private final class SpillOutputStream extends ObjectOutputStream {
+        private SpillOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj != null && obj == spillContext ? SPILL_CONTEXT_TOKEN : obj;
+        }
+    }
+
+    private final class SpillInputStream extends ObjectInputStream {
+        private SpillInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            return obj instanceof SpillContextToken ? spillContext : obj;
+        }
+    }
+
+    // move the oldest history segments to disk until the budget is met
+    private void enforceMemoryBudget() {
+        while (byteSize > memoryBudget && !spillFailed) {
+            // find the segment (a segment always ends with a main intent and
+            // the current intent is never moved to disk)
+            long needed = Math.max(byteSize - memoryBudget, MIN_SEGMENT_SIZE);
+            long segmentSize = 0;
+            int end = -1;
+            for (int i = spilledCount; i < historyPosition; i++) {
+                segmentSize += entrySize.get(i);
+                if (!history.get(i).attach) {
+                    end = i + 1;
+                    if (segmentSize >= needed) {
+                        break;
+                    }
+                }
+            }
+            if (end == -1) {
+                return;
+            }
+            spill(end);
+        }
+    }
+
+    // move the history entries [spilledCount, end) to disk
+    private void spill(int end) {
+        try {
+            ArrayList<T> segment = new ArrayList<T>(history.subList(spilledCount, end));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new SpillOutputStream(bytes);
+            out.writeObject(segment);
+            out.close();
+            if (spillData == null) {
+                spillFile = File.createTempFile("vitco_history", ".tmp");
+                spillFile.deleteOnExit();
+                spillData = new RandomAccessFile(spillFile, "rw");
+            }
+            long offset = getSpilledByteSize();
+            spillData.seek(offset);
+            spillData.write(bytes.toByteArray());
+            spilledSegments.add(new long[] {spilledCount, offset, bytes.size()});
+        } catch (IOException e) {
+            // keep the history in memory
+            handle(e);
+            spillFailed = true;
+            return;
+        }
+        for (int i = spilledCount; i < end; i++) {
+            history.set(i, null);
+            byteSize -= entrySize.get(i);
+            entrySize.set(i, 0);
+        }
+        spilledCount = end;
+    }
+
+    // load the newest segment from disk
+    @SuppressWarnings("unchecked")
+    private void unspill() {
+        long[] segment = spilledSegments.remove(spilledSegments.size() - 1);
+        int start = (int) segment[0];
+        try {
+            byte[] bytes = new byte[(int) segment[2]];
+            spillData.seek(segment[1]);
+            spillData.readFully(bytes);
+            spillData.setLength(segment[1]);
+            ObjectInputStream in = new SpillInputStream(new ByteArrayInputStream(bytes));
+            ArrayList<T> entries = (ArrayList<T>) in.readObject();
+            in.close();
+            for (int i = 0; i < entries.size(); i++) {
+                T entry = entries.get(i);
+                history.set(start + i, entry);
+                entrySize.set(start + i, entry.getByteSize());
+                byteSize += entrySize.get(start + i);
+            }
+            spilledCount = start;
+        } catch (IOException e) {
+            dropSpilledHistory(e);
+        } catch (ClassNotFoundException e) {
+            dropSpilledHistory(e);
+        }
+    }
+
+    // the history on disk can not be loaded, so it is discarded
+    private void dropSpilledHistory(Exception cause) {
+        int count = spilledCount;
+        // tell the user (the error stream is shown in the console)
+        System.err.println("Error: The oldest " + count + " undo steps could not be loaded from disk and are discarded.");
+        handle(cause);
+        history.subList(0, count).clear();
+        entrySize.remove(0, count);
+        historyPosition -= count;
+        spilledCount = 0;
+        resetSpill();
+    }
+
+    // discard the history on disk
+    private void resetSpill() {
+        spilledCount = 0;
+        spilledSegments.clear();
+        spillFailed = false;
+        if (spillData != null) {
+            try {
+                spillData.close();
+            } catch (IOException e) {
+                handle(e);
+            }
+            spillData = null;
+            //noinspection ResultOfMethodCallIgnored
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    // ------------------------------
+
     public void clear() {
         if (frozen) {return;}
         historyPosition = -1;
         history = new ArrayList<T>();
+        entrySize = new TLongArrayList();
+        byteSize = 0;
+        resetSpill();
         // invalidate the cache
         notifyListener(null);
     }
@@ -27,6 +250,7 @@ public class HistoryManager<T extends BasicActionIntent> {
         return !frozen && (history.size() > historyPosition + 1);
     }
 
+    // note: entries that are stored on disk are null
     public ArrayList<T> getHistory() {
         return new ArrayList<T>(history);
     }
@@ -37,11 +261,21 @@ public class HistoryManager<T extends BasicActionIntent> {
 
     public final void setHistory(ArrayList<T> history) {
         if (frozen) {return;}
+        resetSpill();
         this.history = new ArrayList<T>(history);
+        entrySize = new TLongArrayList(history.size());
+        byteSize = 0;
+        for (T entry : history) {
+            entrySize.add(entry.getByteSize());
+            byteSize += entry.getByteSize();
+        }
     }
 
     public final void setHistoryPosition(int historyPosition) {
         if (frozen) {return;}
+        while (historyPosition < spilledCount - 1) {
+            unspill();
+        }
         this.historyPosition = historyPosition;
     }
 
@@ -59,18 +293,27 @@ public class HistoryManager<T extends BasicActionIntent> {
             return;
         }
         // delete all "re-dos"
-        while (history.size() > historyPosition + 1) {
-            history.remove(historyPosition + 1);
+        if (history.size() > historyPosition + 1) {
+            for (int i = historyPosition + 1; i < history.size(); i++) {
+                byteSize -= entrySize.get(i);
+            }
+            history.subList(historyPosition + 1, history.size()).clear();
+            entrySize.remove(historyPosition + 1, entrySize.size() - historyPosition - 1);
         }
         // apply the intent
         actionIntent.apply();
         historyPosition++;
         // and add it to the history
         history.add(actionIntent);
+        long size = actionIntent.getByteSize();
+        entrySize.add(size);
+        byteSize += size;
         // invalidate the cache if the intent is not attached
         // (for the main intent)
         if (!actionIntent.attach) {
             notifyListener(actionIntent);
+            // only move complete intents to disk
+            enforceMemoryBudget();
         }
     }
 
@@ -103,6 +346,10 @@ public class HistoryManager<T extends BasicActionIntent> {
             }
             return;
         }
+        if (historyPosition > -1 && historyPosition < spilledCount) {
+            // load the history from disk
+            unspill();
+        }
         if (historyPosition > -1) { // we can still undo
             T mainAction = history.get(historyPosition);
             _unapply();
@@ -116,7 +363,8 @@ public class HistoryManager<T extends BasicActionIntent> {
             history.get(historyPosition).unapply(); // undo action
             historyPosition--; // move one "down"
             // make sure the attached histories are applied
-            while (historyPosition > -1 && history.get(historyPosition).attach) {
+            // (a segment on disk always ends with a main intent)
+            while (historyPosition >= spilledCount && historyPosition > -1 && history.get(historyPosition).attach) {
                 history.get(historyPosition).unapply(); // undo action
                 historyPosition--; // move one "down"
             }
@@ -141,7 +389,7 @@ public class HistoryManager<T extends BasicActionIntent> {
     public final void debug() {
         System.out.println(Math.max(history.size()-50,0) == 0 ? "=================" : "[...]");
         for (int c = Math.max(history.size()-50,0), len = history.size()-1; c < len; c++) {
-            System.out.println(history.get(c) + " @ " + history.get(c).attach + (c == historyPosition-1 ? " XXX " : ""));
+            System.out.println(history.get(c) + " @ " + (history.get(c) == null ? "on disk" : history.get(c).attach) + (c == historyPosition-1 ? " XXX " : ""));
         }
         System.out.println("=================");
     }
@@ -0,0 +1,157 @@
+package com.vitco.app.core.data.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Test the history manager (with a memory budget).
+ */
+public class HistoryManagerTest {
+
+    // the intents belong to this object (which is not serializable)
+    @SuppressWarnings("serial")
+    private static final class State {
+        private final HistoryManager<BasicActionIntent> historyManager = new HistoryManager<BasicActionIntent>();
+        private final ArrayList<Integer> values = new ArrayList<Integer>();
+
+        private State() {
+            historyManager.setSpillContext(this);
+        }
+
+        private final class AddIntent extends BasicActionIntent {
+            private final int value;
+            private final byte[] payload = new byte[10000];
+
+            private AddIntent(int value, boolean attach) {
+                super(attach);
+                this.value = value;
+            }
+
+            @Override
+            protected void applyAction() {
+                values.add(value);
+            }
+
+            @Override
+            protected void unapplyAction() {
+                assert values.remove(values.size() - 1) == value;
+            }
+
+            @Override
+            public long getByteSize() {
+                return super.getByteSize() + payload.length;
+            }
+        }
+
+        private final class AddGroupIntent extends BasicActionIntent {
+            private final int value;
+
+            private AddGroupIntent(int value, boolean attach) {
+                super(attach);
+                this.value = value;
+            }
+
+            @Override
+            protected void applyAction() {
+                if (isFirstCall()) {
+                    for (int i = 0; i < 3; i++) {
+                        historyManager.applyIntent(new AddIntent(value * 3 + i, true));
+                    }
+                }
+            }
+
+            @Override
+            protected void unapplyAction() {
+                // nothing to do
+            }
+        }
+    }
+
+    // helper
+    private static boolean check(State state, int groups) {
+        if (state.values.size() != groups * 3) {
+            return false;
+        }
+        for (int i = 0; i < state.values.size(); i++) {
+            if (state.values.get(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        State state = new State();
+        HistoryManager<BasicActionIntent> historyManager = state.historyManager;
+        long budget = 2 * 1024 * 1024;
+        historyManager.setMemoryBudget(budget);
+
+        int groups = 500;
+        for (int i = 0; i < groups; i++) {
+            historyManager.applyIntent(state.new AddGroupIntent(i, false));
+            assert historyManager.getByteSize() <= budget;
+        }
+        assert check(state, groups);
+        // most of the history is on disk
+        assert historyManager.getSpilledByteSize() > 0;
+        assert historyManager.getByteSize() < groups * 30000L / 2;
+
+        // undo everything
+        for (int i = groups - 1; i >= 0; i--) {
+            assert historyManager.canUndo();
+            historyManager.unapply();
+            assert check(state, i);
+        }
+        assert !historyManager.canUndo();
+        assert historyManager.getSpilledByteSize() == 0;
+
+        // redo everything
+        for (int i = 1; i <= groups; i++) {
+            historyManager.apply();
+            assert check(state, i);
+        }
+        assert !historyManager.canRedo();
+
+        // undo some and apply something new (the budget is enforced again)
+        for (int i = 0; i < 250; i++) {
+            historyManager.unapply();
+        }
+        historyManager.applyIntent(state.new AddGroupIntent(250, false));
+        assert check(state, 251);
+        assert !historyManager.canRedo();
+        assert historyManager.getByteSize() <= budget;
+        assert historyManager.getSpilledByteSize() > 0;
+        historyManager.unapply();
+        historyManager.unapply();
+        assert check(state, 249);
+
+        // everything is discarded
+        historyManager.clear();
+        assert historyManager.getByteSize() == 0;
+        assert historyManager.getSpilledByteSize() == 0;
+        assert !historyManager.canUndo();
+    }
+
+    @Test
+    public void testUnbounded() throws Exception {
+        State state = new State();
+        HistoryManager<BasicActionIntent> historyManager = state.historyManager;
+        for (int i = 0; i < 100; i++) {
+            historyManager.applyIntent(state.new AddGroupIntent(i, false));
+        }
+        assert historyManager.getSpilledByteSize() == 0;
+        assert historyManager.getByteSize() == 100 * (64 + 3 * (64 + 10000));
+        // a smaller budget moves history to disk
+        historyManager.setMemoryBudget(0);
+        assert historyManager.getSpilledByteSize() > 0;
+        // only the last entry is kept in memory
+        assert historyManager.getByteSize() == 64 + 3 * (64 + 10000);
+        for (int i = 99; i >= 0; i--) {
+            historyManager.unapply();
+            assert check(state, i);
+        }
+    }
+
+}
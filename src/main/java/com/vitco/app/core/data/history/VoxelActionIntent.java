@@ -4,6 +4,8 @@ package com.vitco.app.core.data.history;
  * Basic action intent for Voxels
  */
 public abstract class VoxelActionIntent extends BasicActionIntent {
+    private static final long serialVersionUID = 1L;
+
     protected VoxelActionIntent(boolean attach) {
         super(attach);
     }
@@ -15,4 +17,27 @@ public abstract class VoxelActionIntent extends BasicActionIntent {
     public boolean effectsTexture() {
         return false;
     }
+
+    // combine the effected positions of several (attached) intents
+    // (there could be duplicate positions in the result)
+    protected static int[][] mergeEffected(VoxelActionIntent... intents) {
+        int length = 0;
+        int[][][] parts = new int[intents.length][][];
+        for (int i = 0; i < intents.length; i++) {
+            parts[i] = intents[i].effected();
+            length += parts[i].length;
+        }
+        int[][] result = new int[length][];
+        int offset = 0;
+        for (int[][] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    // estimate the memory used by stored positions
+    protected static long getByteSize(int[][] positions) {
+        return positions == null ? 0 : 16 + positions.length * 36L;
+    }
 }
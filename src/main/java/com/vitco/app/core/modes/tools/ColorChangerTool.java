@@ -2,6 +2,7 @@ package com.vitco.app.core.modes.tools;
 
 import com.vitco.app.core.container.DrawContainer;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.engine.VoxelVisitor;
 import com.vitco.app.util.misc.ColorTools;
 
 import java.awt.*;
@@ -143,21 +144,14 @@ public class ColorChangerTool extends AbstractVoxelTool {
     protected void shiftRelease(MouseEvent e) {
         // use the voxels to select the new color
         if (lastVoxelPos != null && initialVoxelPos != null) {
-            ArrayList<Integer> list = new ArrayList<Integer>();
-            for (int x = Math.min(initialVoxelPos[0], lastVoxelPos[0]),
-                         maxx = Math.max(initialVoxelPos[0], lastVoxelPos[0]); x <= maxx; x++ ) {
-                for (int y = Math.min(initialVoxelPos[1], lastVoxelPos[1]),
-                             maxy = Math.max(initialVoxelPos[1], lastVoxelPos[1]); y <= maxy; y++ ) {
-                    for (int z = Math.min(initialVoxelPos[2], lastVoxelPos[2]),
-                                 maxz = Math.max(initialVoxelPos[2], lastVoxelPos[2]); z <= maxz; z++ ) {
-                        // depending on mouse3 state we only search current layer
-                        Voxel voxel = data.searchVoxel(new int[]{x,y,z}, mouse3down);
-                        if (voxel != null) {
-                            list.add(voxel.id);
-                        }
-                    }
+            final ArrayList<Integer> list = new ArrayList<Integer>();
+            // depending on mouse3 state we only search current layer
+            data.queryBox(initialVoxelPos, lastVoxelPos, mouse3down, new VoxelVisitor<Voxel>() {
+                @Override
+                public void visit(int x, int y, int z, Voxel voxel) {
+                    list.add(voxel.id);
                 }
-            }
+            });
             // store in array
             Integer[] voxels = new Integer[list.size()];
             list.toArray(voxels);
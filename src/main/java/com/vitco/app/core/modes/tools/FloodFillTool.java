@@ -31,7 +31,7 @@ public class FloodFillTool extends AbstractVoxelTool {
             String strPos = node[0] + "_" + node[1] + "_" + node[2];
             if (!result.containsKey(strPos)) {
                 Voxel voxel = data.searchVoxel(node, currentLayer);
-                if (voxel != null && voxel.getColor().equals(color) && voxel.getTexture() == null) {
+                if (voxel != null && voxel.getRGB() == color.getRGB() && voxel.getTexture() == null) {
                     // add to result list
                     result.put(strPos, voxel.id);
                     if (side != 2) {
@@ -105,7 +105,7 @@ public class FloodFillTool extends AbstractVoxelTool {
         }
         ArrayList<Integer> result = new ArrayList<Integer>();
         for (Voxel voxel : voxels) {
-            if (voxel.getColor().equals(color) && (!prune || voxel.getLayerId() == getCurrentLayer())) {
+            if (voxel.getRGB() == color.getRGB() && (!prune || voxel.getLayerId() == getCurrentLayer())) {
                 result.add(voxel.id);
             }
         }
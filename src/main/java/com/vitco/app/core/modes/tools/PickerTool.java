@@ -2,10 +2,12 @@ package com.vitco.app.core.modes.tools;
 
 import com.vitco.app.core.container.DrawContainer;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.engine.VoxelVisitor;
 import com.vitco.app.util.misc.ColorTools;
 
 import java.awt.*;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.HashSet;
 
 /**
@@ -106,24 +108,23 @@ public class PickerTool extends AbstractVoxelTool {
         if (lastVoxelPos != null && initialVoxelPos != null) {
             int r = 0, g = 0, b = 0, count = 0;
             HashSet<Integer> colors = new HashSet<Integer>();
-            for (int x = Math.min(initialVoxelPos[0], lastVoxelPos[0]),
-                         maxx = Math.max(initialVoxelPos[0], lastVoxelPos[0]); x <= maxx; x++ ) {
-                for (int y = Math.min(initialVoxelPos[1], lastVoxelPos[1]),
-                             maxy = Math.max(initialVoxelPos[1], lastVoxelPos[1]); y <= maxy; y++ ) {
-                    for (int z = Math.min(initialVoxelPos[2], lastVoxelPos[2]),
-                                 maxz = Math.max(initialVoxelPos[2], lastVoxelPos[2]); z <= maxz; z++ ) {
-                        // depending on mouse3 state we only search current layer
-                        Voxel voxel = data.searchVoxel(new int[]{x,y,z}, false);
-                        if (voxel != null && voxel.getTexture() == null) {
-                            // right click (mouse3) only considers unique colors
-                            Color color = voxel.getColor();
-                            if (!mouse3down || colors.add(color.getRGB())) {
-                                r += color.getRed();
-                                g += color.getGreen();
-                                b += color.getBlue();
-                                count++;
-                            }
-                        }
+            // collect the voxels
+            final ArrayList<Voxel> voxels = new ArrayList<Voxel>();
+            data.queryBox(initialVoxelPos, lastVoxelPos, false, new VoxelVisitor<Voxel>() {
+                @Override
+                public void visit(int x, int y, int z, Voxel voxel) {
+                    voxels.add(voxel);
+                }
+            });
+            for (Voxel voxel : voxels) {
+                if (voxel.getTexture() == null) {
+                    // right click (mouse3) only considers unique colors
+                    Color color = voxel.getColor();
+                    if (!mouse3down || colors.add(color.getRGB())) {
+                        r += color.getRed();
+                        g += color.getGreen();
+                        b += color.getBlue();
+                        count++;
                     }
                 }
             }
@@ -9,11 +9,20 @@ import com.vitco.app.low.triangulate.Grid2TriPolyFast;
 import com.vitco.app.low.triangulate.util.Grid2PolyHelper;
 import com.vitco.app.settings.VitcoSettings;
 import com.vitco.app.util.graphic.SharedImageFactory;
+import com.vitco.app.util.misc.WorkerPool;
+import gnu.trove.iterator.TLongByteIterator;
+import gnu.trove.map.hash.TLongByteHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
 import org.poly2tri.Poly2Tri;
 import org.poly2tri.triangulation.delaunay.DelaunayTriangle;
 
-import java.awt.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This is a world wrapper that provides easy voxel interaction
@@ -88,7 +97,7 @@ public class CWorld extends AbstractCWorld {
     // used to retrieve which world objects belong to which side (0-5, i.e. direction)
     private final HashMap<Integer, Integer> worldId2Side = new HashMap<Integer, Integer>();
     // stores side/plane/area combination to object world id
-    private final HashMap<String, Integer> plane2WorldId = new HashMap<String, Integer>();
+    private final TLongIntHashMap plane2WorldId = new TLongIntHashMap();
 
     // enable/disable the border on all objects in the world (main view)
     private boolean hasBorder = true;
@@ -100,157 +109,175 @@ public class CWorld extends AbstractCWorld {
         }
     }
 
-    // the maximum amount of areas that are drawn in one call
-    private final static int maxAreaDraw = 10;
+    // ====================================
+
+    // triangulates the changed areas (shared by all worlds)
+    private static final ExecutorService triangulationPool = WorkerPool.create(
+            "Triangulation Worker", VitcoSettings.TRIANGULATION_THREADS);
+
+    // the triangles of an area and the rect that contains all faces
+    private static final class Triangulation {
+        private final ArrayList<DelaunayTriangle> tris;
+        private final int min1;
+        private final int min2;
+        private final int w;
+        private final int h;
+
+        private Triangulation(ArrayList<DelaunayTriangle> tris, int min1, int min2, int w, int h) {
+            this.tris = tris;
+            this.min1 = min1;
+            this.min2 = min2;
+            this.w = w;
+            this.h = h;
+        }
+    }
+
+    // triangulate the faces of an area (2D positions as x1, y1, x2, y2, ...)
+    private static Triangulation triangulate(int[] positions) {
+        // determine size of rect that contains all voxel faces
+        int min1 = positions[0];
+        int max1 = positions[0];
+        int min2 = positions[1];
+        int max2 = positions[1];
+        for (int i = 2; i < positions.length; i += 2) {
+            min1 = Math.min(min1, positions[i]);
+            max1 = Math.max(max1, positions[i]);
+            min2 = Math.min(min2, positions[i + 1]);
+            max2 = Math.max(max2, positions[i + 1]);
+        }
+        int w = max1 - min1 + 1;
+        int h = max2 - min2 + 1;
+
+        boolean[][] data = new boolean[w][h];
+        for (int i = 0; i < positions.length; i += 2) {
+            data[positions[i] - min1][positions[i + 1] - min2] = true;
+        }
+        ArrayList<DelaunayTriangle> tris = new ArrayList<DelaunayTriangle>();
+        tris.addAll(Grid2TriPolyFast.triangulate(Grid2PolyHelper.convert(data)));
+        return new Triangulation(tris, min1, min2, w, h);
+    }
+
+    // the areas that are triangulated at the moment (in the order they were submitted)
+    private final LinkedHashMap<Long, Future<Triangulation>> pendingAreas = new LinkedHashMap<Long, Future<Triangulation>>();
+
+    // the amount of areas that can still be changed in this refresh
+    private int commitsLeft = 0;
+
+    // remove an object from the world
+    private void removeWorldObject(Integer objId) {
+        // only remove texture in non-wireframe world
+        if (!simpleMode) {
+            BorderObject3D obj = (BorderObject3D) getObject(objId);
+            // remove other information
+            removeObject(objId);
+            obj.freeTexture();
+        } else {
+            // remove other information
+            removeObject(objId);
+        }
+        worldId2Side.remove(objId);
+    }
 
     // handle all planes (in one direction, determined by side)
     // returns true iff all areas are handled
     private boolean handleOrientedPlane(int orientation) {
         int axis = orientation/2;
         // processed entries are cleaned here in this function (!)
-        HashMap<Integer, HashMap<Point, Boolean>> outdatedPlanes = voxelManager.getInvalidPlanes(orientation);
-
-        int progressCounter = 0;
-
-        for (Iterator<Map.Entry<Integer, HashMap<Point, Boolean>>> planeIterator = outdatedPlanes.entrySet().iterator(); planeIterator.hasNext() && progressCounter < maxAreaDraw;) {
-            Map.Entry<Integer, HashMap<Point, Boolean>> entry = planeIterator.next();
-            Integer outdatedPlane = entry.getKey();
-            HashMap<Point, Boolean> outdatedAreas = entry.getValue();
-
-            // loop over all outdated areas
-            for (Iterator<Map.Entry<Point,Boolean>> areaIterator = outdatedAreas.entrySet().iterator(); areaIterator.hasNext() && progressCounter < maxAreaDraw; progressCounter++) {
-                Map.Entry<Point,Boolean> outdatedAreaEntry = areaIterator.next();
-                Point outdatedArea = outdatedAreaEntry.getKey();
-                Boolean fullRefresh = outdatedAreaEntry.getValue();
-                // id for this particular area
-                String areaKey = orientation + "_" + outdatedPlane + "_" + outdatedArea.x + "_" + outdatedArea.y;
-
-                if (fullRefresh) { // full refresh (recreate triangulation)
-                    // handle the triangle building
-                    Collection<Voxel> faceList = voxelManager.getFaces(orientation, outdatedPlane, outdatedArea);
-                    if (faceList != null) {
-                        // this should never happen as the faceManager deletes unused faceLists
-                        assert !faceList.isEmpty();
-                        // determine size of rect that contains all voxel faces
-                        boolean first = true;
-                        int min1 = 0;
-                        int max1 = 0;
-                        int min2 = 0;
-                        int max2 = 0;
-                        for (Voxel face : faceList) {
-                            int[] pos2D = VoxelManager.convert3D2D(face, axis);
-                            if (first) {
-                                min1 = pos2D[0];
-                                max1 = pos2D[0];
-                                min2 = pos2D[1];
-                                max2 = pos2D[1];
-                                first = false;
-                            } else {
-                                min1 = Math.min(min1,pos2D[0]);
-                                max1 = Math.max(max1, pos2D[0]);
-                                min2 = Math.min(min2,pos2D[1]);
-                                max2 = Math.max(max2, pos2D[1]);
-                            }
-                        }
-                        int w = max1 - min1 + 1;
-                        int h = max2 - min2 + 1;
-
-                        // --------------
-                        ArrayList<DelaunayTriangle> tris = new ArrayList<DelaunayTriangle>();
-                        boolean[][] data = new boolean[w][h];
-                        for (Voxel face : faceList) {
-                            int[] pos2D = VoxelManager.convert3D2D(face, axis);
-                            data[pos2D[0] - min1][pos2D[1] - min2] = true;
-//                            // consider textured faces separately (needed?)
-//                            if (face.getTexture() == null) {
-//                                data[pos2D[0] - min1][pos2D[1] - min2] = true;
-//                            } else {
-//                                int pX = pos2D[0] - min1;
-//                                int pY = pos2D[1] - min2;
-//                                // add the textured faces separately
-//                                tris.add(new DelaunayTriangle(new PolygonPoint(pX, pY), new PolygonPoint(pX + 1, pY), new PolygonPoint(pX, pY + 1)));
-//                                tris.add(new DelaunayTriangle(new PolygonPoint(pX + 1, pY), new PolygonPoint(pX + 1, pY + 1), new PolygonPoint(pX, pY + 1)));
-//                            }
-                        }
-                        tris.addAll(Grid2TriPolyFast.triangulate(Grid2PolyHelper.convert(data)));
-//                        tris.addAll(Grid2TriGreedyOptimal.triangulate(data));
-                        // --------------
-                        // todo: remove
-//                        // build image to compute triangle overlay
-//                        TiledImage src = SharedImageFactory.getTiledImage(w, h);
-//                        for (Voxel face : faceList) {
-//                            int[] pos2D = VoxelManager.convert3D2D(face, axis);
-//                            src.setSample(pos2D[0] - min1, pos2D[1] - min2, 0, 1);
-//                        }
-//                        // triangulate the image
-//                        ArrayList<DelaunayTriangle> tris = Grid2Tri.triangulate(Grid2Tri.doVectorize(src));
-//                        // reset image
-//                        for (Voxel face : faceList) {
-//                            int[] pos2D = VoxelManager.convert3D2D(face, axis);
-//                            src.setSample(pos2D[0] - min1, pos2D[1] - min2, 0, 0);
-//                        }
-//                        // --------------
-
-                        // build the plane
-                        BorderObject3D box = new BorderObject3D(
-                                tris, faceList,
-                                min1, min2, w, h, orientation, axis,
-                                outdatedPlane, simpleMode, side, culling,
-                                hasBorder, hullManager
-                        );
-                        // remove old version of this side (if exists)
-                        Integer oldId = plane2WorldId.get(areaKey);
-                        if (oldId != null) {
-                            // only remove texture in non-wireframe world
-                            if (!simpleMode) {
-                                BorderObject3D obj = (BorderObject3D) getObject(oldId);
-                                // remove other information
-                                removeObject(oldId);
-                                obj.freeTexture();
-                            } else {
-                                // remove other information
-                                removeObject(oldId);
-                            }
-                            worldId2Side.remove(oldId);
-                        }
-                        // add new plane
-                        int newWorldId = addObject(box);
-                        plane2WorldId.put(areaKey, newWorldId);
-                        worldId2Side.put(newWorldId, orientation);
-                    } else {
-                        // remove old version of this side (if exists)
-                        Integer oldId = plane2WorldId.remove(areaKey);
-                        if (oldId != null) {
-                            // only remove texture in non-wireframe world
-                            if (!simpleMode) {
-                                BorderObject3D obj = (BorderObject3D) getObject(oldId);
-                                // remove other information
-                                removeObject(oldId);
-                                obj.freeTexture();
-                            } else {
-                                // remove other information
-                                removeObject(oldId);
-                            }
-                            worldId2Side.remove(oldId);
-                        }
+        TLongByteHashMap outdatedAreas = voxelManager.getInvalidAreas(orientation);
+
+        // loop over all outdated areas
+        for (TLongByteIterator areaIterator = outdatedAreas.iterator(); areaIterator.hasNext();) {
+            areaIterator.advance();
+            // id for this particular area
+            long areaKey = areaIterator.key();
+
+            if (areaIterator.value() == VoxelManager.FULL_REFRESH) { // full refresh (recreate triangulation)
+                // a pending triangulation of this area is outdated
+                Future<Triangulation> pending = pendingAreas.remove(areaKey);
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+                Collection<Voxel> faceList = voxelManager.getFaces(areaKey);
+                if (faceList != null) {
+                    // this should never happen as the faceManager deletes unused faceLists
+                    assert !faceList.isEmpty();
+                    // the triangulation uses a copy of the face positions (the faces can change in the meantime)
+                    final int[] positions = new int[faceList.size() * 2];
+                    int i = 0;
+                    for (Voxel face : faceList) {
+                        int[] pos2D = VoxelManager.convert3D2D(face, axis);
+                        positions[i++] = pos2D[0];
+                        positions[i++] = pos2D[1];
                     }
-                } else if (!simpleMode) {
-                    // only do texture refresh (soft)
-                    Integer objId = plane2WorldId.get(areaKey);
-                    if (objId != null) {
-                        ((BorderObject3D) getObject(objId)).refreshTextureInterpolation();
+                    pendingAreas.put(areaKey, triangulationPool.submit(new Callable<Triangulation>() {
+                        @Override
+                        public Triangulation call() throws Exception {
+                            return triangulate(positions);
+                        }
+                    }));
+                } else {
+                    // remove old version of this side (if exists)
+                    if (plane2WorldId.containsKey(areaKey)) {
+                        removeWorldObject(plane2WorldId.remove(areaKey));
                     }
                 }
-                // this area was processed
-                areaIterator.remove();
+            } else if (!simpleMode && !pendingAreas.containsKey(areaKey)) {
+                // only do texture refresh (soft), this counts towards the areas of this refresh
+                if (commitsLeft <= 0) {
+                    continue;
+                }
+                commitsLeft--;
+                if (plane2WorldId.containsKey(areaKey)) {
+                    ((BorderObject3D) getObject(plane2WorldId.get(areaKey))).refreshTextureInterpolation();
+                }
+            }
+            // this area was processed
+            areaIterator.remove();
+        }
+        return outdatedAreas.isEmpty();
+    }
+
+    // add the triangulated areas to the world (up to the amount of areas for this refresh)
+    private void commitAreas() {
+        for (Iterator<Map.Entry<Long, Future<Triangulation>>> it = pendingAreas.entrySet().iterator(); it.hasNext() && commitsLeft > 0;) {
+            Map.Entry<Long, Future<Triangulation>> entry = it.next();
+            Future<Triangulation> pending = entry.getValue();
+            if (!pending.isDone()) {
+                continue;
             }
-            // clear this plane entry if all areas are processed
-            if (outdatedAreas.isEmpty()) {
-                planeIterator.remove();
+            it.remove();
+            commitsLeft--;
+            Triangulation triangulation;
+            try {
+                triangulation = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
             }
+            long areaKey = entry.getKey();
+            int orientation = VoxelManager.getOrientation(areaKey);
+            // the faces did not change since they were triangulated (or the area would not be pending)
+            Collection<Voxel> faceList = voxelManager.getFaces(areaKey);
+
+            // build the plane
+            BorderObject3D box = new BorderObject3D(
+                    triangulation.tris, faceList,
+                    triangulation.min1, triangulation.min2, triangulation.w, triangulation.h,
+                    orientation, orientation/2,
+                    VoxelManager.getPlane(areaKey), simpleMode, side, culling,
+                    hasBorder, hullManager
+            );
+            // remove old version of this side (if exists)
+            if (plane2WorldId.containsKey(areaKey)) {
+                removeWorldObject(plane2WorldId.get(areaKey));
+            }
+            // add new plane
+            int newWorldId = addObject(box);
+            plane2WorldId.put(areaKey, newWorldId);
+            worldId2Side.put(newWorldId, orientation);
         }
-        //faceManager.clearInvalidAreas(orientation);
-        return progressCounter < maxAreaDraw;
     }
 
     // refresh world (partially) - returns true if fully refreshed
@@ -258,26 +285,22 @@ public class CWorld extends AbstractCWorld {
     public boolean refreshWorld() {
         // if this counter is six, the world is ready
         int ready = 0;
+        commitsLeft = VitcoSettings.MAX_AREA_COMMITS;
 
         // clear the voxel manager if necessary (needs to be done in sync!)
         if (worldNeedsClear) {
             worldNeedsClear = false;
             // clear the voxel manager
             voxelManager.clear();
+            // the pending triangulations are no longer needed
+            for (Future<Triangulation> pending : pendingAreas.values()) {
+                pending.cancel(false);
+            }
+            pendingAreas.clear();
             // remove world objects
-            for (Integer objId : worldId2Side.keySet()) {
-                // only remove texture in non-wireframe world
-                if (!simpleMode) {
-                    BorderObject3D obj = (BorderObject3D) getObject(objId);
-                    // remove other information
-                    removeObject(objId);
-                    obj.freeTexture();
-                } else {
-                    // remove other information
-                    removeObject(objId);
-                }
+            for (Integer objId : new ArrayList<Integer>(worldId2Side.keySet())) {
+                removeWorldObject(objId);
             }
-            worldId2Side.clear();
             plane2WorldId.clear();
         }
 
@@ -307,7 +330,24 @@ public class CWorld extends AbstractCWorld {
             }
         }
 
-        return ready == 6;
+        // add the finished triangulations
+        int before = commitsLeft;
+        commitAreas();
+        if (commitsLeft == before && !pendingAreas.isEmpty()) {
+            // nothing was finished yet, wait a bit (instead of returning right away)
+            try {
+                pendingAreas.values().iterator().next().get(VitcoSettings.TRIANGULATION_WAIT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // thrown when the area is committed
+            } catch (TimeoutException ignored) {
+                // try again with the next refresh
+            }
+            commitAreas();
+        }
+
+        return ready == 6 && pendingAreas.isEmpty();
 
     }
 
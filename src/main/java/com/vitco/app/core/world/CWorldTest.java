@@ -0,0 +1,106 @@
+package com.vitco.app.core.world;
+
+import com.threed.jpct.Object3D;
+import com.vitco.app.core.data.container.Voxel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Random;
+
+/**
+ * Test that the world is built correctly from the (parallel) triangulated areas.
+ */
+public class CWorldTest {
+
+    // helper - refresh until the world is complete, returns the amount of refreshes
+    private static int refresh(CWorld world) {
+        int count = 1;
+        while (!world.refreshWorld()) {
+            count++;
+        }
+        return count;
+    }
+
+    // helper - the amount of triangles in the world
+    private static int getTriangleCount(CWorld world) {
+        int count = 0;
+        for (Enumeration<?> objects = world.getObjects(); objects.hasMoreElements(); ) {
+            count += ((Object3D) objects.nextElement()).getMesh().getTriangleCount();
+        }
+        return count;
+    }
+
+    // helper - a block of voxels with random holes
+    private static ArrayList<Voxel> createVoxels(int size, long seed) {
+        Random rand = new Random(seed);
+        ArrayList<Voxel> result = new ArrayList<Voxel>();
+        int id = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    if (rand.nextInt(4) != 0) {
+                        result.add(new Voxel(id++, x, -y, z, 0xFF000000 | rand.nextInt(), 0));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testIncrementalRefresh() throws Exception {
+        for (boolean simpleMode : new boolean[] {true, false}) {
+            ArrayList<Voxel> voxels = createVoxels(24, 1);
+            CWorld world = new CWorld(true, -1, simpleMode);
+            for (Voxel voxel : voxels) {
+                world.updateVoxel(voxel);
+            }
+            refresh(world);
+            // remove some voxels and change others (several times before the refresh)
+            for (int i = 0; i < voxels.size(); i += 7) {
+                world.clearPosition(voxels.get(i));
+            }
+            world.refreshWorld();
+            ArrayList<Voxel> remaining = new ArrayList<Voxel>();
+            for (int i = 0; i < voxels.size(); i++) {
+                if (i % 7 != 0 && i % 5 != 0) {
+                    remaining.add(voxels.get(i));
+                } else if (i % 5 == 0) {
+                    world.clearPosition(voxels.get(i));
+                }
+            }
+            refresh(world);
+
+            // the same as building the world from scratch
+            CWorld expected = new CWorld(true, -1, simpleMode);
+            for (Voxel voxel : remaining) {
+                expected.updateVoxel(voxel);
+            }
+            refresh(expected);
+            assert world.getSize() == expected.getSize();
+            assert getTriangleCount(world) == getTriangleCount(expected);
+
+            // clearing removes everything
+            world.clear();
+            refresh(world);
+            assert world.getSize() == 0;
+        }
+    }
+
+    // the time to build the main view after a large paste
+    @Test
+    public void benchmark() throws Exception {
+        ArrayList<Voxel> voxels = createVoxels(40, 2);
+        for (int run = 0; run < 2; run++) {
+            CWorld world = new CWorld(true, -1, true);
+            long time = System.currentTimeMillis();
+            for (Voxel voxel : voxels) {
+                world.updateVoxel(voxel);
+            }
+            int refreshes = refresh(world);
+            System.out.println("Refreshed " + world.getSize() + " areas in " + refreshes + " refreshes, " +
+                    (System.currentTimeMillis() - time) + " ms");
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Allows access to certain features of JPCT (e.g. textures)
@@ -18,6 +19,11 @@ import java.util.HashMap;
 public final class WorldManager {
     private final static TextureManager textureManager = TextureManager.getInstance();
 
+    // jPCT is not thread safe (the texture manager and the config are static), but the views
+    // refresh and render in parallel. Renders share the read lock, texture and config changes
+    // hold the write lock
+    public static final ReentrantReadWriteLock JPCT_LOCK = new ReentrantReadWriteLock();
+
     // -------------------------------
     // Manage efficient textures (they are updated without huge amount of data allocation)
 
@@ -58,36 +64,46 @@ public final class WorldManager {
 
     // load a texture to the world (from image)
     public static void loadEfficientTexture(String name, BufferedImage image, boolean useAlpha) {
-        // check if we can replace
-        Texture texture = !containsTexture(name) ? null : textureManager.getTexture(name);
-        if (texture == null ||
-                texture.getWidth() != image.getWidth() ||
-                texture.getHeight() != image.getHeight()) {
-            if (texture != null) {
-                // remove old
-                effectList.remove(texture);
+        JPCT_LOCK.writeLock().lock();
+        try {
+            // check if we can replace
+            Texture texture = !containsTexture(name) ? null : textureManager.getTexture(name);
+            if (texture == null ||
+                    texture.getWidth() != image.getWidth() ||
+                    texture.getHeight() != image.getHeight()) {
+                if (texture != null) {
+                    // remove old
+                    effectList.remove(texture);
+                }
+                // create texture with effect
+                texture = new Texture(image, useAlpha);
+                Effect effect = new Effect();
+                texture.setEffect(effect);
+                effectList.put(texture,effect);
+                // load the texture
+                loadTexture(name, texture);
+            } else {
+                Effect effect = effectList.get(texture);
+                effect.setImage(image);
             }
-            // create texture with effect
-            texture = new Texture(image, useAlpha);
-            Effect effect = new Effect();
-            texture.setEffect(effect);
-            effectList.put(texture,effect);
-            // load the texture
-            loadTexture(name, texture);
-        } else {
-            Effect effect = effectList.get(texture);
-            effect.setImage(image);
+        } finally {
+            JPCT_LOCK.writeLock().unlock();
         }
     }
 
     public static boolean removeEfficientTexture(String name) {
-        if (containsTexture(name)) {
-            effectList.remove(textureManager.getTexture(name));
-            // remove the texture
-            textureManager.removeTexture(name);
-            return true;
+        JPCT_LOCK.writeLock().lock();
+        try {
+            if (containsTexture(name)) {
+                effectList.remove(textureManager.getTexture(name));
+                // remove the texture
+                textureManager.removeTexture(name);
+                return true;
+            }
+            return false;
+        } finally {
+            JPCT_LOCK.writeLock().unlock();
         }
-        return false;
     }
 
     // ------------------------------
@@ -126,10 +142,15 @@ public final class WorldManager {
     }
 
     public static void loadTexture(String name, Texture texture) {
-        if (textureManager.containsTexture(name)) {
-            textureManager.replaceTexture(name, texture);
-        } else {
-            textureManager.addTexture(name, texture);
+        JPCT_LOCK.writeLock().lock();
+        try {
+            if (textureManager.containsTexture(name)) {
+                textureManager.replaceTexture(name, texture);
+            } else {
+                textureManager.addTexture(name, texture);
+            }
+        } finally {
+            JPCT_LOCK.writeLock().unlock();
         }
     }
 
@@ -142,20 +163,35 @@ public final class WorldManager {
     }
 
     public static boolean containsTexture(String name) {
-        return textureManager.containsTexture(name);
+        JPCT_LOCK.readLock().lock();
+        try {
+            return textureManager.containsTexture(name);
+        } finally {
+            JPCT_LOCK.readLock().unlock();
+        }
     }
 
     public static boolean removeTexture(String name) {
-        if (containsTexture(name)) {
-            // remove the texture
-            textureManager.removeTexture(name);
-            return true;
+        JPCT_LOCK.writeLock().lock();
+        try {
+            if (containsTexture(name)) {
+                // remove the texture
+                textureManager.removeTexture(name);
+                return true;
+            }
+            return false;
+        } finally {
+            JPCT_LOCK.writeLock().unlock();
         }
-        return false;
     }
 
     public static int getTextureId(String name) {
-        return textureManager.getTextureID(name);
+        JPCT_LOCK.readLock().lock();
+        try {
+            return textureManager.getTextureID(name);
+        } finally {
+            JPCT_LOCK.readLock().unlock();
+        }
     }
 
     // ---------------------------
@@ -66,7 +66,7 @@ public class TextureObject implements Serializable {
                 g2.setColor(face.getColor());
                 g2.fillRect((x + 1 + offsetx)*32, (y + 1 + offsety)*32, 32, 32);
             } else {
-                textureImage.setRGB(x + 1 + offsetx, y + 1 + offsety, face.getColor().getRGB());
+                textureImage.setRGB(x + 1 + offsetx, y + 1 + offsety, face.getRGB());
             }
         }
     }
@@ -78,18 +78,35 @@ public class TextureObject implements Serializable {
 
     // sets the current texture unused
     private void setCurrentTextureUnused() {
-        int count = textureCount.get(textureName);
-        if (count == 1) {
-            WorldManager.removeEfficientTexture(textureName);
-            textureCount.remove(textureName);
-        } else {
-            textureCount.put(textureName, count - 1);
+        WorldManager.JPCT_LOCK.writeLock().lock();
+        try {
+            int count = textureCount.get(textureName);
+            if (count == 1) {
+                WorldManager.removeEfficientTexture(textureName);
+                textureCount.remove(textureName);
+            } else {
+                textureCount.put(textureName, count - 1);
+            }
+        } finally {
+            WorldManager.JPCT_LOCK.writeLock().unlock();
         }
     }
 
     // generates a texture
     // the seen points are stored in the seen hashmap
     public final void refreshTexture(HashSet<Point> seenTrianglePoints, BorderObject3D obj) {
+        // the shared images, the texture counts and the jPCT textures are used
+        // by the worlds of all views (and the views are refreshed in parallel)
+        WorldManager.JPCT_LOCK.writeLock().lock();
+        try {
+            _refreshTexture(seenTrianglePoints, obj);
+        } finally {
+            WorldManager.JPCT_LOCK.writeLock().unlock();
+        }
+    }
+
+    // generates a texture (not synchronized)
+    private void _refreshTexture(HashSet<Point> seenTrianglePoints, BorderObject3D obj) {
         // create black image
         BufferedImage textureImage = SharedImageFactory.getBufferedImage(textureSizeX, textureSizeY);
         Graphics2D g2 = (Graphics2D) textureImage.getGraphics();
@@ -188,7 +205,7 @@ public class TextureObject implements Serializable {
                 }
             } else {
                 // set the pixel
-                textureImage.setRGB(x + 1, y + 1, face.getColor().getRGB());
+                textureImage.setRGB(x + 1, y + 1, face.getRGB());
             }
 
             if (!isTexture) {
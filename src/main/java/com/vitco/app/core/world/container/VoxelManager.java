@@ -1,15 +1,16 @@
 package com.vitco.app.core.world.container;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManager;
 import com.vitco.app.settings.VitcoSettings;
 import com.vitco.app.util.misc.IntegerTools;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongByteHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 
-import java.awt.*;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 
 /**
  * Manages face data structure.
@@ -18,6 +19,9 @@ import java.util.HashMap;
  * - invalidation, querying of invalid areas
  *
  * Note: Areas are automatically invalidated when the corresponding faces are changed
+ *
+ * Note: An area is identified by a long key (orientation, plane and area position) and a face
+ * in an area by an int key (2D position), so changing a face does not create any objects.
  */
 public class VoxelManager implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -31,44 +35,78 @@ public class VoxelManager implements Serializable {
         this.side = side;
         // initialize data structure (all six orientations)
         for (int i = 0; i < 6; i++) {
-            orientationList.add(new HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>>());
-            changedAreas.add(new HashMap<Integer, HashMap<Point, Boolean>>());
+            changedAreas[i] = new TLongByteHashMap();
         }
     }
 
-    // helper to convert 2D position to area id
-    public static Point getAreaId(int[] pos) {
+    // -----------------------
+    // keys
+
+    // helper to convert a 2D position to an area position
+    public static int getAreaPos(int pos) {
         // this uses efficient integer division that rounds down
-        return new Point(
-                IntegerTools.ifloordiv2(pos[0] + VitcoSettings.TRI_GRID_OFFSET, VitcoSettings.TRI_GRID_SIZE),
-                IntegerTools.ifloordiv2(pos[1] + VitcoSettings.TRI_GRID_OFFSET, VitcoSettings.TRI_GRID_SIZE));
+        return IntegerTools.ifloordiv2(pos + VitcoSettings.TRI_GRID_OFFSET, VitcoSettings.TRI_GRID_SIZE);
+    }
+
+    // the key of an area (orientation, plane and area position are packed)
+    public static long getAreaKey(int orientation, int plane, int areaX, int areaY) {
+        return ((long) orientation << 48) | ((long) (plane & 0xFFFF) << 32) |
+                ((long) (areaX & 0xFFFF) << 16) | (long) (areaY & 0xFFFF);
+    }
+
+    // get the orientation from an area key
+    public static int getOrientation(long areaKey) {
+        return (int) (areaKey >>> 48);
+    }
+
+    // get the plane from an area key
+    public static int getPlane(long areaKey) {
+        return (short) (areaKey >>> 32);
     }
 
+    // get the area x position from an area key
+    public static int getAreaX(long areaKey) {
+        return (short) (areaKey >>> 16);
+    }
+
+    // get the area y position from an area key
+    public static int getAreaY(long areaKey) {
+        return (short) areaKey;
+    }
+
+    // the key of a face in an area (2D position)
+    private static int getFaceKey(int x, int y) {
+        return (x << 16) | (y & 0xFFFF);
+    }
+
+    // the direction to all neighbouring positions (x and y)
+    private static final int[] NEIGHBOUR_X = new int[] {1, 0, -1, 0, 1, -1, 1, -1};
+    private static final int[] NEIGHBOUR_Y = new int[] {0, 1, 0, -1, -1, 1, 1, -1};
+
     // helper to correctly invalidate area ids
-    public void invalidAreaIds(int[] pos2D, int plane, int axis, int orientation, int[] pos3D) {
-        Point coreAreaId = getAreaId(pos2D);
+    private void invalidAreaIds(int x, int y, int plane, int axis, int orientation) {
+        int areaX = getAreaPos(x);
+        int areaY = getAreaPos(y);
 
         // invalid the area that the changed voxel was in
-        invalidate(orientation, plane, coreAreaId, true);
+        invalidate(getAreaKey(orientation, plane, areaX, areaY), true);
 
         // only invalidate neighbouring areas if main view
         if (side == -1) {
-            int[][] toCheck = new int[][] {
-                    new int[] {1, 0},
-                    new int[] {0, 1},
-                    new int[] {-1, 0},
-                    new int[] {0, -1},
-                    new int[] {1, -1},
-                    new int[] {-1, 1},
-                    new int[] {1, 1},
-                    new int[] {-1, -1},
-            };
-            for (int[] dir : toCheck) {
-                Point areaId = getAreaId(new int[]{pos2D[0] + dir[0], pos2D[1] + dir[1]});
-                if (!coreAreaId.equals(areaId)) {
-                    int[] newPos = convert2D3D(pos2D[0] + dir[0], pos2D[1] + dir[1], pos3D[axis], axis);
-                    if (hullManager.containsBorder(new short[] {(short) newPos[0], (short) newPos[1], (short) newPos[2]}, orientation)) {
-                        invalidate(orientation, plane, areaId, false);
+            for (int i = 0; i < 8; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                int nAreaX = getAreaPos(nx);
+                int nAreaY = getAreaPos(ny);
+                if (nAreaX != areaX || nAreaY != areaY) {
+                    long posId;
+                    switch (axis) {
+                        case 0: posId = LongCubeIndexer.getId(plane, nx, ny); break;
+                        case 1: posId = LongCubeIndexer.getId(nx, plane, ny); break;
+                        default: posId = LongCubeIndexer.getId(nx, ny, plane); break;
+                    }
+                    if (hullManager.containsBorder(posId, orientation)) {
+                        invalidate(getAreaKey(orientation, plane, nAreaX, nAreaY), false);
                     }
                 }
             }
@@ -97,6 +135,16 @@ public class VoxelManager implements Serializable {
         return result;
     }
 
+    // get the 2D x position of this voxel for the axis
+    private static int get2DX(Voxel voxel, int axis) {
+        return axis == 0 ? voxel.y : voxel.x;
+    }
+
+    // get the 2D y position of this voxel for the axis
+    private static int get2DY(Voxel voxel, int axis) {
+        return axis == 2 ? voxel.y : voxel.z;
+    }
+
     // get the plane this voxel is in for the axis
     private static int getPlane(Voxel voxel, int axis) {
         switch (axis) {
@@ -108,60 +156,47 @@ public class VoxelManager implements Serializable {
 
     // clear this data structure
     public void clear() {
+        faces.clear();
         for (int i = 0; i < 6; i++) {
-            orientationList.get(i).clear();
-            changedAreas.get(i).clear();
+            changedAreas[i].clear();
         }
     }
 
     // -----------------------
     // area invalidation
 
-    // keeps track of the areas that need updating
-    private final ArrayList<HashMap<Integer, HashMap<Point, Boolean>>> changedAreas = new ArrayList<HashMap<Integer, HashMap<Point, Boolean>>>();
+    // refresh states of the changed areas
+    public static final byte SOFT_REFRESH = 1;
+    public static final byte FULL_REFRESH = 2;
+
+    // keeps track of the areas that need updating (area key -> refresh state)
+    private final TLongByteHashMap[] changedAreas = new TLongByteHashMap[6];
 
     // mark an area as changed
-    public final void invalidate(Integer orientation, Integer plane, Point areaId, boolean fullRefresh) {
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, Boolean>> planeList = changedAreas.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, Boolean> areaList = planeList.get(plane);
-        if (areaList == null) {
-            areaList = new HashMap<Point, Boolean>();
-            planeList.put(plane, areaList);
-        }
-        // promote refresh state correctly
-        Boolean currentRefresh = areaList.get(areaId);
-        if (currentRefresh == null) {
-            areaList.put(areaId, fullRefresh);
-        } else {
-            if (!currentRefresh && fullRefresh) {
-                areaList.put(areaId, true);
-            }
+    public final void invalidate(long areaKey, boolean fullRefresh) {
+        TLongByteHashMap areaList = changedAreas[getOrientation(areaKey)];
+        // promote refresh state correctly (no entry is zero)
+        byte refresh = fullRefresh ? FULL_REFRESH : SOFT_REFRESH;
+        if (areaList.get(areaKey) < refresh) {
+            areaList.put(areaKey, refresh);
         }
     }
 
     // check if an area is marked as changed
-    public final boolean isInvalid(Integer orientation, Integer plane, Point areaId) {
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, Boolean>> planeList = changedAreas.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, Boolean> areaList = planeList.get(plane);
-        // check if area is contained
-        return areaList != null && areaList.containsKey(areaId);
+    public final boolean isInvalid(long areaKey) {
+        return changedAreas[getOrientation(areaKey)].containsKey(areaKey);
     }
 
     // get all the invalid areas for a plane
-    public final void clearInvalidAreas(Integer orientation) {
-        changedAreas.get(orientation).clear();
+    public final void clearInvalidAreas(int orientation) {
+        changedAreas[orientation].clear();
     }
 
-    // get all the invalid planes for an orientation
-    // Note: You can remove areas manually, just make sure empty entries
-    // are deleted in both hashmaps
+    // get all the invalid areas for an orientation (area key -> refresh state)
+    // Note: You can remove areas manually (e.g. with the iterator)
     // Note: An alternative is to call clearInvalidAreas(orientation)
-    public final HashMap<Integer, HashMap<Point, Boolean>> getInvalidPlanes(Integer orientation) {
-        return changedAreas.get(orientation);
+    public final TLongByteHashMap getInvalidAreas(int orientation) {
+        return changedAreas[orientation];
     }
 
     // -----------------------
@@ -169,109 +204,63 @@ public class VoxelManager implements Serializable {
 
     // holds all the face information
     // Structure is as following
-    // orientation -> plane -> area -> face
-    private final ArrayList<HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>>> orientationList =
-            new ArrayList<HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>>>();
+    // area key (orientation, plane, area) -> face key (2D position) -> face
+    private final TLongObjectHashMap<TIntObjectHashMap<Voxel>> faces = new TLongObjectHashMap<TIntObjectHashMap<Voxel>>();
 
     // add a face to this data structure
     // (returns true if no overwrite of existing face occurred)
-    public final boolean addFace(Integer orientation, Voxel voxel) {
+    public final boolean addFace(int orientation, Voxel voxel) {
         // determine the area id
         int axis = orientation/2;
-        int[] pos2D = convert3D2D(voxel, axis);
+        int x = get2DX(voxel, axis);
+        int y = get2DY(voxel, axis);
         int plane = getPlane(voxel, axis);
-        Point areaId = getAreaId(pos2D);
         // invalidate
-        invalidAreaIds(pos2D, plane, axis, orientation, voxel.getPosAsInt());
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>> planeList = orientationList.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, HashMap<String, Voxel>> areaList = planeList.get(plane);
-        // will contain the correct face list that we need to add the face to
-        HashMap<String, Voxel> faceList;
-        if (areaList == null) {
-            // create area and face list if the area list does not exist yet
-            areaList = new HashMap<Point, HashMap<String, Voxel>>();
-            planeList.put(plane, areaList);
-            faceList = new HashMap<String, Voxel>();
-            areaList.put(areaId, faceList);
-        } else {
-            faceList = areaList.get(areaId);
-            if (faceList == null) {
-                // create face list
-                faceList = new HashMap<String, Voxel>();
-                areaList.put(areaId, faceList);
-            }
+        invalidAreaIds(x, y, plane, axis, orientation);
+        // get the face list that we need to add the face to
+        long areaKey = getAreaKey(orientation, plane, getAreaPos(x), getAreaPos(y));
+        TIntObjectHashMap<Voxel> faceList = faces.get(areaKey);
+        if (faceList == null) {
+            faceList = new TIntObjectHashMap<Voxel>();
+            faces.put(areaKey, faceList);
         }
         // add the face to this data structure
-        return faceList.put(pos2D[0] + "_" + pos2D[1], voxel) == null;
+        return faceList.put(getFaceKey(x, y), voxel) == null;
     }
 
     // remove a face from this data structure (return true if successfully removed)
-    public final boolean removeFace(Integer orientation, Voxel voxel) {
+    public final boolean removeFace(int orientation, Voxel voxel) {
         // determine the area id
         int axis = orientation/2;
-        int[] pos2D = convert3D2D(voxel, axis);
+        int x = get2DX(voxel, axis);
+        int y = get2DY(voxel, axis);
         int plane = getPlane(voxel, axis);
-        Point areaId = getAreaId(pos2D);
         // invalidate
-        invalidAreaIds(pos2D, plane, axis, orientation, voxel.getPosAsInt());
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>> planeList = orientationList.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, HashMap<String, Voxel>> areaList = planeList.get(plane);
-        if (areaList != null) {
-            // get the face list that we expect our face to be in
-            HashMap<String, Voxel> faceList = areaList.get(areaId);
-            if (faceList != null) {
-                if (faceList.remove(pos2D[0] + "_" + pos2D[1]) != null) {
-                    // cleanup the empty lists
-                    if (faceList.isEmpty()) {
-                        areaList.remove(areaId);
-                        if (areaList.isEmpty()) {
-                            planeList.remove(plane);
-                        }
-                    }
-                    // remove was successful
-                    return true;
-                }
+        invalidAreaIds(x, y, plane, axis, orientation);
+        // get the face list that we expect our face to be in
+        long areaKey = getAreaKey(orientation, plane, getAreaPos(x), getAreaPos(y));
+        TIntObjectHashMap<Voxel> faceList = faces.get(areaKey);
+        if (faceList != null && faceList.remove(getFaceKey(x, y)) != null) {
+            // cleanup the empty lists
+            if (faceList.isEmpty()) {
+                faces.remove(areaKey);
             }
+            // remove was successful
+            return true;
         }
         return false;
     }
 
     // get a face from this data structure (returns null if not found)
-    public final Voxel getFace(Integer orientation, Integer plane, int[] facePos) {
-        // determine area id
-        Point areaId = getAreaId(facePos);
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>> planeList = orientationList.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, HashMap<String, Voxel>> areaList = planeList.get(plane);
-        if (areaList != null) {
-            // get the face list that we expect our face to be in
-            HashMap<String, Voxel> faceList = areaList.get(areaId);
-            if (faceList != null) {
-                return faceList.get(facePos[0] + "_" + facePos[1]);
-            }
-        }
-        return null;
+    public final Voxel getFace(int orientation, int plane, int[] facePos) {
+        TIntObjectHashMap<Voxel> faceList = faces.get(
+                getAreaKey(orientation, plane, getAreaPos(facePos[0]), getAreaPos(facePos[1])));
+        return faceList == null ? null : faceList.get(getFaceKey(facePos[0], facePos[1]));
     }
 
     // expose a list of faces in a particular area (is expected not to be changed!)
-    public final Collection<Voxel> getFaces(int orientation, Integer plane, Point areaId) {
-        // get the correct plane list for the orientation
-        HashMap<Integer, HashMap<Point, HashMap<String, Voxel>>> planeList = orientationList.get(orientation);
-        // get the correct area list for this plane
-        HashMap<Point, HashMap<String, Voxel>> areaList = planeList.get(plane);
-        if (areaList != null) {
-            HashMap<String, Voxel> faces = areaList.get(areaId);
-            if (faces != null) {
-                return faces.values();
-            }
-        }
-        return null;
+    public final Collection<Voxel> getFaces(long areaKey) {
+        TIntObjectHashMap<Voxel> faceList = faces.get(areaKey);
+        return faceList == null ? null : faceList.valueCollection();
     }
 }
-
-
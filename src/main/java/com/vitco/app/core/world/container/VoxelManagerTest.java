@@ -0,0 +1,136 @@
+package com.vitco.app.core.world.container;
+
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.hull.HullManagerExt;
+import gnu.trove.iterator.TLongByteIterator;
+import gnu.trove.map.hash.TLongByteHashMap;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Test the face store and the area invalidation of the voxel manager.
+ */
+public class VoxelManagerTest {
+
+    @Test
+    public void testAreaKey() throws Exception {
+        Random rand = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int orientation = rand.nextInt(6);
+            int plane = rand.nextInt(65536) - 32768;
+            int areaX = rand.nextInt(65536) - 32768;
+            int areaY = rand.nextInt(65536) - 32768;
+            long key = VoxelManager.getAreaKey(orientation, plane, areaX, areaY);
+            assert VoxelManager.getOrientation(key) == orientation;
+            assert VoxelManager.getPlane(key) == plane;
+            assert VoxelManager.getAreaX(key) == areaX;
+            assert VoxelManager.getAreaY(key) == areaY;
+        }
+        // the grid rounds down (also for negative positions)
+        assert VoxelManager.getAreaPos(-7) == -1;
+        assert VoxelManager.getAreaPos(-6) == 0;
+        assert VoxelManager.getAreaPos(6) == 0;
+        assert VoxelManager.getAreaPos(7) == 1;
+    }
+
+    @Test
+    public void testFaces() throws Exception {
+        VoxelManager voxelManager = new VoxelManager(new HullManagerExt<Voxel>(), -1);
+        Voxel first = new Voxel(0, -20, 3, 5, 0xFFFF0000, 0);
+        Voxel second = new Voxel(1, -21, 3, 5, 0xFF00FF00, 0);
+        // orientation 4 and 5 (z axis) use x and y as 2D position
+        assert voxelManager.addFace(4, first);
+        assert voxelManager.addFace(4, second);
+        assert !voxelManager.addFace(4, first);
+        assert voxelManager.getFace(4, 5, new int[] {-20, 3}) == first;
+        assert voxelManager.getFace(4, 5, new int[] {-21, 3}) == second;
+        assert voxelManager.getFace(5, 5, new int[] {-20, 3}) == null;
+        assert voxelManager.getFace(4, 6, new int[] {-20, 3}) == null;
+
+        // both faces are in the same area and the area is invalid
+        long areaKey = VoxelManager.getAreaKey(4, 5, VoxelManager.getAreaPos(-20), VoxelManager.getAreaPos(3));
+        Collection<Voxel> faces = voxelManager.getFaces(areaKey);
+        assert faces.size() == 2 && faces.contains(first) && faces.contains(second);
+        TLongByteHashMap invalid = voxelManager.getInvalidAreas(4);
+        assert invalid.size() == 1 && invalid.get(areaKey) == VoxelManager.FULL_REFRESH;
+        assert voxelManager.isInvalid(areaKey);
+        voxelManager.clearInvalidAreas(4);
+        assert !voxelManager.isInvalid(areaKey);
+
+        // removing the last face removes the area
+        assert voxelManager.removeFace(4, first);
+        assert !voxelManager.removeFace(4, first);
+        assert voxelManager.getFaces(areaKey).size() == 1;
+        assert voxelManager.removeFace(4, second);
+        assert voxelManager.getFaces(areaKey) == null;
+        assert voxelManager.isInvalid(areaKey);
+
+        // a soft refresh does not downgrade a full refresh
+        voxelManager.invalidate(areaKey, false);
+        assert voxelManager.getInvalidAreas(4).get(areaKey) == VoxelManager.FULL_REFRESH;
+        voxelManager.clear();
+        voxelManager.invalidate(areaKey, false);
+        assert voxelManager.getInvalidAreas(4).get(areaKey) == VoxelManager.SOFT_REFRESH;
+        voxelManager.invalidate(areaKey, true);
+        assert voxelManager.getInvalidAreas(4).get(areaKey) == VoxelManager.FULL_REFRESH;
+    }
+
+    @Test
+    public void testNeighbourInvalidation() throws Exception {
+        HullManagerExt<Voxel> hullManager = new HullManagerExt<Voxel>();
+        // two voxel next to each other, but in different areas (area border between 6 and 7)
+        Voxel left = new Voxel(0, 6, 0, 0, 0xFFFF0000, 0);
+        Voxel right = new Voxel(1, 7, 0, 0, 0xFFFF0000, 0);
+        hullManager.update(left.posId, left);
+        hullManager.update(right.posId, right);
+        VoxelManager voxelManager = new VoxelManager(hullManager, -1);
+        for (Voxel voxel : hullManager.getHullAdditions(4)) {
+            voxelManager.addFace(4, voxel);
+        }
+        voxelManager.clearInvalidAreas(4);
+        // changing the left face soft-refreshes the neighbouring area (for the texture interpolation)
+        voxelManager.removeFace(4, left);
+        TLongByteHashMap invalid = voxelManager.getInvalidAreas(4);
+        assert invalid.get(VoxelManager.getAreaKey(4, 0, 0, 0)) == VoxelManager.FULL_REFRESH;
+        assert invalid.get(VoxelManager.getAreaKey(4, 0, 1, 0)) == VoxelManager.SOFT_REFRESH;
+        // the side views only refresh the area of the face
+        VoxelManager sideView = new VoxelManager(hullManager, 0);
+        sideView.addFace(4, left);
+        assert sideView.getInvalidAreas(4).size() == 1;
+        // the areas can be processed with the iterator
+        for (TLongByteIterator it = invalid.iterator(); it.hasNext(); ) {
+            it.advance();
+            it.remove();
+        }
+        assert invalid.isEmpty();
+    }
+
+    // adding and removing faces as when drawing
+    @Test
+    public void benchmark() throws Exception {
+        int size = 200;
+        Voxel[] voxels = new Voxel[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                voxels[x * size + y] = new Voxel(x * size + y, x - size / 2, y - size / 2, 0, 0xFF000000, 0);
+            }
+        }
+        VoxelManager voxelManager = new VoxelManager(new HullManagerExt<Voxel>(), -1);
+        for (int run = 0; run < 3; run++) {
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 5; i++) {
+                for (Voxel voxel : voxels) {
+                    voxelManager.addFace(4, voxel);
+                }
+                for (Voxel voxel : voxels) {
+                    voxelManager.removeFace(4, voxel);
+                }
+                voxelManager.clearInvalidAreas(4);
+            }
+            System.out.println("Add and remove " + (voxels.length * 5) + " faces: " +
+                    (System.currentTimeMillis() - time) + " ms");
+        }
+    }
+}
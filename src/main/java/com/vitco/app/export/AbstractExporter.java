@@ -43,7 +43,7 @@ public abstract class AbstractExporter extends ProgressReporter {
 
         // retrieve information
         for (Voxel voxel : data.getVisibleLayerVoxel()) {
-            colors.add(voxel.getColor().getRGB());
+            colors.add(voxel.getRGB());
             min[0] = Math.min(voxel.x, min[0]);
             min[1] = Math.min(voxel.y, min[1]);
             min[2] = Math.min(voxel.z, min[2]);
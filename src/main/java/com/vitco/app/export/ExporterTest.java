@@ -6,7 +6,6 @@ import com.vitco.app.importer.VoxImporter;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import org.junit.Test;
 
-import java.awt.*;
 import java.io.File;
 
 /**
@@ -31,10 +30,7 @@ public class ExporterTest {
             int layerId = data.createLayer(layer.name);
             data.selectLayer(layerId);
             data.setVisible(layerId, layer.isVisible());
-            for (int[] vox; layer.hasNext();) {
-                vox = layer.next();
-                data.addVoxelDirect(new Color(vox[3]),new int[] {vox[0], vox[1], vox[2]});
-            }
+            data.addVoxelsDirect(layerId, layer.getVoxels(), layer.size());
         }
 
         VoxVoxLapExporter exporter = new VoxVoxLapExporter(new File(output_file), data, new ProgressDialog(null), null);
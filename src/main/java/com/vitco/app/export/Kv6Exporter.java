@@ -4,14 +4,14 @@ import com.vitco.app.core.data.Data;
 import com.vitco.app.core.data.container.Voxel;
 import com.vitco.app.export.dataStatic.Kv6Static;
 import com.vitco.app.layout.content.console.ConsoleInterface;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManager;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.misc.ByteHelper;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.hash.TIntShortHashMap;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongShortHashMap;
 import gnu.trove.map.hash.TShortIntHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.awt.*;
 import java.io.File;
@@ -35,16 +35,26 @@ public class Kv6Exporter extends AbstractExporter {
         useWeightedCenter = flag;
     }
 
+    // circle shift operands for the 64 bit position ids
+    private static final long[] circleShifts = new long[Kv6Static.circleValues.length];
+    static {
+        for (int i = 0; i < circleShifts.length; i++) {
+            int[] circeValue = Kv6Static.circleValues[i];
+            circleShifts[i] = LongCubeIndexer.getShiftOperand(circeValue[1], circeValue[2], circeValue[3]);
+        }
+    }
+
     // helper to get direction (lighting bit)
-    private static byte getDirectionByte(int voxPosId, HullManager<String> hullManager) {
+    private static byte getDirectionByte(long voxPosId, HullManager<String> hullManager) {
 
         // the offsets (direction)
         int ox = 0, oy = 0, oz = 0;
 
         // loop over precomputed circle values
-        for (int[] circeValue : Kv6Static.circleValues) {
+        for (int i = 0; i < circleShifts.length; i++) {
+            int[] circeValue = Kv6Static.circleValues[i];
             // check if voxel position is set
-            if (hullManager.contains(voxPosId + circeValue[0])) {
+            if (hullManager.contains(voxPosId + circleShifts[i])) {
                 // add the offset (this voxel adds to the direction)
                 ox += circeValue[1];
                 oy += circeValue[2];
@@ -106,13 +116,13 @@ public class Kv6Exporter extends AbstractExporter {
         for (Voxel voxel : data.getVisibleLayerVoxel()) {
             hullManager.update(voxel.posId, null);
         }
-        TIntHashSet visibleVoxel = hullManager.getVisibleVoxelsIds();
+        TLongHashSet visibleVoxel = hullManager.getVisibleVoxelsIds();
         int voxelCount = visibleVoxel.size();
         short[][] voxels = new short[visibleVoxel.size()][];
-        TIntIterator iter = visibleVoxel.iterator();
+        TLongIterator iter = visibleVoxel.iterator();
         int i = 0;
         while (iter.hasNext() && i < voxelCount) {
-            voxels[i] = CubeIndexer.getPos(iter.next());
+            voxels[i] = LongCubeIndexer.getShortPos(iter.next());
             i++;
         }
 
@@ -153,7 +163,7 @@ public class Kv6Exporter extends AbstractExporter {
             // write z pos
             fileOut.writeShortRev((short) (voxPos[1] - min[1]));
             // write visible faces
-            int voxPosId = CubeIndexer.getId(voxPos);
+            long voxPosId = LongCubeIndexer.getId(voxPos);
             byte visibleFaces = 0;
             for (int j = 0; j < 6; j++) {
                 if (hullManager.containsBorder(voxPosId, j)) {
@@ -188,12 +198,12 @@ public class Kv6Exporter extends AbstractExporter {
 
         // collect the offsets
         TShortIntHashMap xMap = new TShortIntHashMap();
-        TIntShortHashMap xyMap = new TIntShortHashMap();
+        TLongShortHashMap xyMap = new TLongShortHashMap();
         for (short[] voxel : voxels) {
             short shiftedVal = (short) (voxel[0] - min[0]);
             xMap.put(shiftedVal, xMap.get(shiftedVal)+1);
 
-            int id = CubeIndexer.getId(voxel[0] - min[0], voxel[2] - min[2], 0);
+            long id = LongCubeIndexer.getId(voxel[0] - min[0], voxel[2] - min[2], 0);
             xyMap.put(id, (short) (xyMap.get(id)+1));
         }
 
@@ -205,7 +215,7 @@ public class Kv6Exporter extends AbstractExporter {
         // write the zyoffset
         for (int x = 0; x < size[0]; x++) {
             for (int y = size[2] - 1; y >= 0; y--) {
-                fileOut.writeShortRev(xyMap.get(CubeIndexer.getId(x, y, 0)));
+                fileOut.writeShortRev(xyMap.get(LongCubeIndexer.getId(x, y, 0)));
             }
         }
 
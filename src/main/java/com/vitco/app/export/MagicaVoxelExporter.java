@@ -84,7 +84,7 @@ public class MagicaVoxelExporter extends AbstractExporter {
             final int vx = -(voxel.x - max[0]);
             final int vy = -(voxel.y - max[1]);
             final int vz = voxel.z - min[2];
-            final int colorId = colorPalette.get(voxel.getColor().getRGB()) + 1;
+            final int colorId = colorPalette.get(voxel.getRGB()) + 1;
 
             fileOut.writeByte((byte)vx);
             fileOut.writeByte((byte)vz);
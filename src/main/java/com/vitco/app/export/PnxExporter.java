@@ -6,8 +6,8 @@ import com.vitco.app.layout.content.console.ConsoleInterface;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.file.FileOut;
 import com.vitco.app.util.graphic.GraphicTools;
+import com.vitco.app.util.graphic.PngEncoder;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -95,8 +95,7 @@ public class PnxExporter extends AbstractExporter {
             for (int x = max[0]; x > min[0] - 1; x--) {
                 BufferedImage img = new BufferedImage(size[1], size[2], BufferedImage.TYPE_INT_ARGB);
                 for (Voxel voxel : data.getVoxelsYZ(x, layerId)) {
-                    Color color = voxel.getColor();
-                    img.setRGB(voxel.y - min[1], voxel.z - min[2], color.getRGB());
+                    img.setRGB(voxel.y - min[1], voxel.z - min[2], voxel.getRGB());
                 }
                 // hash and store if necessary
                 String md5 = GraphicTools.getHash(img);
@@ -109,13 +108,22 @@ public class PnxExporter extends AbstractExporter {
         }
 
         // write images
-        int count = imageOrder.size();
-        int currentCount = 0;
+        final int count = imageOrder.size();
         fileOut.writeIntRev(count);
-        for (String md5 : imageOrder) {
-            setProgress((currentCount / (float) count) * 100);
-            fileOut.writeImageCompressed(images.get(md5));
-            currentCount++;
+        // encoded in parallel
+        BufferedImage[] toEncode = new BufferedImage[count];
+        for (int i = 0; i < count; i++) {
+            toEncode[i] = images.get(imageOrder.get(i));
+        }
+        setProgress(0);
+        byte[][] encodedImages = PngEncoder.encode(toEncode, true, new PngEncoder.EncodeListener() {
+            @Override
+            public void onEncoded(int index) {
+                setProgress(((index + 1) / (float) count) * 100);
+            }
+        });
+        for (byte[] encoded : encodedImages) {
+            fileOut.writeImageData(encoded);
         }
 
         // write data cache
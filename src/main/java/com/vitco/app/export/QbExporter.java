@@ -133,7 +133,7 @@ public class QbExporter extends AbstractExporter {
                                     visible = ByteHelper.setBit(visible, this.useRightHandedZAxisOrientation ? 1 : 6);
                                 }
                             }
-                            newColor = voxel.getColor().getRGB();
+                            newColor = voxel.getRGB();
                             newColor = ((this.useVisMaskEncoding ? visible : 0xFF) << 24) | (newColor & 0x000000FF) << 16 | (newColor & 0x0000FF00) | (newColor & 0x00FF0000) >> 16;
                         }
 
@@ -2,7 +2,6 @@ package com.vitco.app.export.collada;
 
 import com.vitco.app.export.generic.ExportDataManager;
 import com.vitco.app.export.generic.container.TexTriangleManager;
-import com.vitco.app.export.generic.container.TriTexture;
 import com.vitco.app.export.generic.container.TriTextureManager;
 import com.vitco.app.layout.content.console.ConsoleInterface;
 import com.vitco.app.manager.error.ErrorHandlerInterface;
@@ -10,16 +9,17 @@ import com.vitco.app.settings.VitcoSettings;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.components.progressbar.ProgressReporter;
 import com.vitco.app.util.file.FileTools;
+import com.vitco.app.util.graphic.PngEncoder;
 import com.vitco.app.util.misc.DateTools;
 import com.vitco.app.util.xml.XmlFile;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
 
@@ -441,16 +441,24 @@ public class ColladaFileExporter extends ProgressReporter {
                 textureIds.add(textureId[0]);
             }
         }
-        // write files to disk
+        // encode the textures in parallel
         TriTextureManager triTextureManager = exportDataManager.getTextureManager();
+        int[] ids = textureIds.toArray();
+        BufferedImage[] images = new BufferedImage[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            images[i] = triTextureManager.getTexture(ids[i]).getImage();
+        }
+        // write files to disk
         try {
-            for (TIntIterator it = textureIds.iterator(); it.hasNext(); ) {
-                int textureId = it.next();
-                TriTexture texture = triTextureManager.getTexture(textureId);
-                BufferedImage textureImage = texture.getImage();
-                ImageIO.write(textureImage, "png", new File(
-                        FileTools.ensureTrailingSeparator(folder.getAbsolutePath()) + texturePrefix + textureId+ ".png"
-                        ));
+            byte[][] encoded = PngEncoder.encode(images, false);
+            for (int i = 0; i < ids.length; i++) {
+                FileOutputStream out = new FileOutputStream(
+                        FileTools.ensureTrailingSeparator(folder.getAbsolutePath()) + texturePrefix + ids[i] + ".png");
+                try {
+                    out.write(encoded[i]);
+                } finally {
+                    out.close();
+                }
             }
             return true;
         } catch (IOException e) {
@@ -231,7 +231,7 @@ public class ExportDataManager extends ProgressReporter {
                             Voxel obj1 = hullManager.get(pos1);
                             Voxel obj2 = hullManager.get(pos2);
                             if ((obj1 == null) != (obj2 == null) || (
-                                triangulateByColor && obj1 != null && obj1.getColor().getRGB() != obj2.getColor().getRGB()
+                                triangulateByColor && obj1 != null && obj1.getRGB() != obj2.getRGB()
                             )) {
                                 // the "in between" point needs to be used for triangle generation
                                 list.add(outline[i]);
@@ -244,7 +244,7 @@ public class ExportDataManager extends ProgressReporter {
                                 obj1 = hullManager.get(pos1);
                                 obj2 = hullManager.get(pos2);
                                 if ((obj1 == null) != (obj2 == null) || (
-                                    obj1 != null && obj1.getColor().getRGB() != obj2.getColor().getRGB()
+                                    obj1 != null && obj1.getRGB() != obj2.getRGB()
                                 )) {
                                     // the "in between" point needs to be used for triangle generation
                                     list.add(outline[i]);
@@ -267,7 +267,7 @@ public class ExportDataManager extends ProgressReporter {
                             Voxel obj1 = hullManager.get(pos1);
                             Voxel obj2 = hullManager.get(pos2);
                             if ((obj1 == null) != (obj2 == null) || (
-                                triangulateByColor && obj1 != null && obj1.getColor().getRGB() != obj2.getColor().getRGB()
+                                triangulateByColor && obj1 != null && obj1.getRGB() != obj2.getRGB()
                             )) {
                                 // the "in between" point needs to be used for triangle generation
                                 list.add(x);
@@ -280,7 +280,7 @@ public class ExportDataManager extends ProgressReporter {
                                 obj1 = hullManager.get(pos1);
                                 obj2 = hullManager.get(pos2);
                                 if ((obj1 == null) != (obj2 == null) || (
-                                    obj1 != null && obj1.getColor().getRGB() != obj2.getColor().getRGB()
+                                    obj1 != null && obj1.getRGB() != obj2.getRGB()
                                 )) {
                                     // the "in between" point needs to be used for triangle generation
                                     list.add(x);
@@ -332,7 +332,7 @@ public class ExportDataManager extends ProgressReporter {
                     }
 
                     // if we use textures we use "0" as placeholder for all colors
-                    plane.put(border, triangulateByColor ? hullManager.get(border).getColor().getRGB() : 0);
+                    plane.put(border, triangulateByColor ? hullManager.get(border).getRGB() : 0);
                 }
 
                 // select the corresponding ids for the orientation
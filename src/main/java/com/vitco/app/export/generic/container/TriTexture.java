@@ -624,7 +624,7 @@ public class TriTexture {
                 texels.put(p, voxel);
             }
             // add the pixel
-            pixels.put(p, new int[] {x, y, voxel.getColor().getRGB()});
+            pixels.put(p, new int[] {x, y, voxel.getRGB()});
         }
 
         if (exportTexturedVoxels && texels.size() > 0) {
@@ -1,12 +1,11 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.ByteBufferIn;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
  * Importer contract for (all?) voxel formats
@@ -24,39 +23,49 @@ public abstract class AbstractImporter {
     // contains a layer object
     public final static class Layer {
         public final String name;
-        // contains the voxel that were read
-        private ArrayList<int[]> voxel = new ArrayList<int[]>();
+        // contains the voxel that were read (packed as x, y, z, color)
+        private int[] voxel = new int[256];
+        private int size = 0;
         // constructor
         private Layer(String name) {
             this.name = name;
         }
 
-        // for sanity testing
-        private final HashSet<String> known = new HashSet<String>();
-
         private void addVoxel(int x, int y, int z, int color) {
-            voxel.add(new int[]{x,y,z,color});
-            // for sanity testing
-            assert known.add(x+"_"+y+"_"+z);
+            int i = size * 4;
+            if (i == voxel.length) {
+                voxel = Arrays.copyOf(voxel, i * 2);
+            }
+            voxel[i] = x;
+            voxel[i + 1] = y;
+            voxel[i + 2] = z;
+            voxel[i + 3] = color;
+            size++;
         }
 
         // ----
 
         public final boolean isEmpty() {
-            return voxel.isEmpty();
+            return size == 0;
         }
 
-        int i = 0;
-        public final int[] next() {
-            return voxel.get(i++);
+        // the amount of voxel in this layer
+        public final int size() {
+            return size;
         }
 
-        public final boolean hasNext() {
-            return i < voxel.size();
+        // the voxel packed as x, y, z, color (only the first 4 * size() values are used)
+        public final int[] getVoxels() {
+            return voxel;
         }
 
-        public final void reset() {
-            i = 0;
+        // move all voxel of this layer
+        public final void translate(int dx, int dy, int dz) {
+            for (int i = 0, end = size * 4; i < end; i += 4) {
+                voxel[i] += dx;
+                voxel[i + 1] += dy;
+                voxel[i + 2] += dz;
+            }
         }
 
         private boolean visible = true;
@@ -159,8 +168,9 @@ public abstract class AbstractImporter {
     public AbstractImporter(File file, String layerName) throws IOException {
         activeLayer = new Layer(layerName);
         layerList.add(activeLayer);
-        FileIn fileIn = new FileIn(file);
-        RandomAccessFileIn raf = new RandomAccessFileIn(file, "r");
+        // both readers share the file content, but have their own position
+        ByteBufferIn fileIn = new ByteBufferIn(file);
+        ByteBufferIn raf = fileIn.duplicate();
         try {
             hasLoaded = read(fileIn, raf);
         } finally {
@@ -170,5 +180,5 @@ public abstract class AbstractImporter {
     }
 
     // read file - returns true if file has loaded correctly
-    protected abstract boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException;
+    protected abstract boolean read(ByteBufferIn fileIn, ByteBufferIn raf) throws IOException;
 }
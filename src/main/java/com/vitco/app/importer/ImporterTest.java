@@ -4,8 +4,13 @@ import com.vitco.app.util.file.FileTools;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Extensive test for voxel data.
@@ -49,4 +54,142 @@ public class ImporterTest {
         }
     }
 
+    // write a temporary file
+    private static File writeFile(String ext, byte[] content) throws IOException {
+        File file = File.createTempFile("import", "." + ext);
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    // the packed voxels of a layer
+    private static int[] getVoxels(AbstractImporter.Layer layer) {
+        return Arrays.copyOf(layer.getVoxels(), layer.size() * 4);
+    }
+
+    @Test
+    public void testMagicaVoxel() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("VOX ".getBytes("ASCII")).putInt(150);
+        buffer.put("MAIN".getBytes("ASCII")).putInt(0).putInt(12 + 4 + 2 * 4);
+        buffer.put("XYZI".getBytes("ASCII")).putInt(4 + 2 * 4).putInt(0).putInt(2);
+        // x, y, z, color index
+        buffer.put(new byte[] {1, 2, 3, 1});
+        buffer.put(new byte[] {(byte) 200, 0, 5, (byte) 255});
+        File file = writeFile("vox", Arrays.copyOf(buffer.array(), buffer.position()));
+        VoxImporter importer = new VoxImporter(file, "Import");
+        assert importer.hasLoaded();
+        assert importer.getVoxelCount() == 2;
+        AbstractImporter.Layer layer = importer.getVoxel().get(0);
+        assert Arrays.equals(getVoxels(layer), new int[] {-1, -3, 2, VoxImporter.voxColors[0], -200, -5, 0, VoxImporter.voxColors[254]});
+        assert Arrays.equals(importer.getLowest(), new int[] {-200, -5, 0});
+        assert Arrays.equals(importer.getHighest(), new int[] {-1, -3, 2});
+        layer.translate(1, 2, 3);
+        assert Arrays.equals(getVoxels(layer), new int[] {0, -1, 5, VoxImporter.voxColors[0], -199, -3, 3, VoxImporter.voxColors[254]});
+        assert file.delete();
+    }
+
+    @Test
+    public void testKv6() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x6c78764b).putInt(1).putInt(1).putInt(10);
+        buffer.putFloat(0).putFloat(0).putFloat(0);
+        // two voxel of one column (not ordered), the voxel in between are filled in
+        buffer.putInt(2);
+        buffer.put(new byte[] {3, 2, 1, 0}).putShort((short) 5).put(new byte[] {0, 0});
+        buffer.put(new byte[] {6, 5, 4, 0}).putShort((short) 2).put(new byte[] {0, 0});
+        buffer.putInt(2).putShort((short) 2);
+        File file = writeFile("kv6", Arrays.copyOf(buffer.array(), buffer.position()));
+        Kv6Importer importer = new Kv6Importer(file, "Import");
+        assert importer.hasLoaded();
+        AbstractImporter.Layer layer = importer.getVoxel().get(0);
+        int first = 0xFF010203;
+        int second = 0xFF040506;
+        assert Arrays.equals(getVoxels(layer), new int[] {
+                0, 5, 0, first,
+                0, 2, 0, second,
+                0, 3, 0, first,
+                0, 4, 0, first
+        });
+        assert file.delete();
+    }
+
+    @Test
+    public void testVoxGame() throws Exception {
+        // text grid (visibility and color per cell)
+        File file = writeFile("vox", "2 1 1\n\n1 1 0.5 0 0 0 0 0 ".getBytes("ASCII"));
+        VoxImporter importer = new VoxImporter(file, "Import");
+        assert importer.hasLoaded();
+        assert importer.getVoxelCount() == 1;
+        assert Arrays.equals(getVoxels(importer.getVoxel().get(0)), new int[] {0, 0, 0, 0xFFFF8000});
+        assert file.delete();
+        // invalid color
+        file = writeFile("vox", "1 1 1\n\n1 2 0 0 ".getBytes("ASCII"));
+        assert !new VoxImporter(file, "Import").hasLoaded();
+        assert file.delete();
+    }
+
+    // import speed for large files
+    @Test
+    public void benchmark() throws Exception {
+        // qb file (uncompressed, 128^3 voxel)
+        int size = 128;
+        ByteBuffer buffer = ByteBuffer.allocate(100 + size * size * size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(257).putInt(0).putInt(1).putInt(0).putInt(0).putInt(1);
+        buffer.put((byte) 4).put("test".getBytes("ASCII"));
+        buffer.putInt(size).putInt(size).putInt(size).putInt(0).putInt(0).putInt(0);
+        for (int i = 0, count = size * size * size; i < count; i++) {
+            buffer.putInt(i | 0xFF000000);
+        }
+        File qbFile = writeFile("qb", Arrays.copyOf(buffer.array(), buffer.position()));
+
+        // kv6 file (256^2 columns with 32 voxel each)
+        int columns = 256;
+        int height = 32;
+        buffer = ByteBuffer.allocate(100 + columns * columns * (height * 8 + 2) + columns * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x6c78764b).putInt(columns).putInt(columns).putInt(height);
+        buffer.putFloat(0).putFloat(0).putFloat(0);
+        buffer.putInt(columns * columns * height);
+        for (int i = 0, count = columns * columns * height; i < count; i++) {
+            buffer.putInt(i).putShort((short) (i % height)).put((byte) 63).put((byte) 0);
+        }
+        for (int x = 0; x < columns; x++) {
+            buffer.putInt(columns * height);
+        }
+        for (int i = 0, count = columns * columns; i < count; i++) {
+            buffer.putShort((short) height);
+        }
+        File kv6File = writeFile("kv6", Arrays.copyOf(buffer.array(), buffer.position()));
+
+        // vox-game.com text file (100^3 cells, half of them visible)
+        int cells = 100;
+        StringBuilder text = new StringBuilder().append(cells).append(' ').append(cells).append(' ').append(cells).append("\n\n");
+        for (int i = 0, count = cells * cells * cells; i < count; i++) {
+            text.append(i % 2).append(' ').append((i % 256) / 255f).append(" 0.5 ").append((i % 7) / 7f).append(' ');
+        }
+        File voxFile = writeFile("vox", text.toString().getBytes("ASCII"));
+
+        for (int run = 0; run < 2; run++) {
+            long time = System.currentTimeMillis();
+            AbstractImporter importer = new QbImporter(qbFile, "Import");
+            assert importer.hasLoaded() && importer.getVoxelCount() == size * size * size;
+            System.out.println("Qb (" + (qbFile.length() / 1024) + " kb): " + (System.currentTimeMillis() - time) + " ms");
+            time = System.currentTimeMillis();
+            importer = new Kv6Importer(kv6File, "Import");
+            assert importer.hasLoaded() && importer.getVoxelCount() == columns * columns * height;
+            System.out.println("Kv6 (" + (kv6File.length() / 1024) + " kb): " + (System.currentTimeMillis() - time) + " ms");
+            time = System.currentTimeMillis();
+            importer = new VoxImporter(voxFile, "Import");
+            assert importer.hasLoaded() && importer.getVoxelCount() == cells * cells * cells / 2;
+            System.out.println("Vox text (" + (voxFile.length() / 1024) + " kb): " + (System.currentTimeMillis() - time) + " ms");
+        }
+        assert qbFile.delete();
+        assert kv6File.delete();
+        assert voxFile.delete();
+    }
 }
@@ -1,15 +1,9 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.ByteBufferIn;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 
 /**
  * Kv6 importer
@@ -24,7 +18,7 @@ public class Kv6Importer extends AbstractImporter {
     // ---------
 
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(ByteBufferIn fileIn, ByteBufferIn raf) throws IOException {
         // check that this is a valid file (header correct)
         if (fileIn.readIntRev() != 0x6c78764b) {
             return false;
@@ -44,10 +38,15 @@ public class Kv6Importer extends AbstractImporter {
         int cz = Math.round(fileIn.readFloatRev());
 
         // read the amount of voxel that have a visible side
-        long count = fileIn.readIntRev();
+        int count = fileIn.readIntRev();
+        if (count < 0) {
+            return false;
+        }
 
-        // voxel info list (we don't know yet where they are in the world)
-        ArrayList<int[]> voxel = new ArrayList<int[]>();
+        // voxel info (we don't know yet where they are in the world)
+        int[] zpos = new int[count];
+        int[] colors = new int[count];
+        int[] visfaces = new int[count];
 
         // read the colors and some other data
         for (int c = 0; c < count; c++) {
@@ -56,24 +55,11 @@ public class Kv6Importer extends AbstractImporter {
             int g = fileIn.readByteUnsigned();
             int r = fileIn.readByteUnsigned();
             fileIn.readByteUnsigned(); //int l = fileIn.readByteUnsigned();
-            Color color = new Color(r, g, b);
+            colors[c] = 0xFF000000 | (r << 16) | (g << 8) | b;
             // -----------
-            int zpos = fileIn.readShortRevUnsigned();
-            int visfaces = fileIn.readByteUnsigned();
+            zpos[c] = fileIn.readShortRevUnsigned();
+            visfaces[c] = fileIn.readByteUnsigned();
             fileIn.readByteUnsigned(); //int lightDir = fileIn.readByteUnsigned();
-//            System.out.println(
-//                    r + " " + g + " " + b + " (" + lightDir + ") @ " +
-//                    (ByteHelper.isBitSet((byte) visfaces, 0) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 1) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 2) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 3) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 4) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 5) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 6) ? "1" : "0") +
-//                    (ByteHelper.isBitSet((byte) visfaces, 7) ? "1" : "0")
-//            );
-
-            voxel.add(new int[]{zpos, color.getRGB(), visfaces});
         }
 
         int sumxoffset = 0;
@@ -82,53 +68,53 @@ public class Kv6Importer extends AbstractImporter {
         // read the xoffset
         for (int x = 0; x < sx; x++) {
             int xoff = fileIn.readIntRev();
-//            System.out.println(xoff);
             sumxoffset += xoff;
         }
         // read the xyoffset
-        Integer lastZ = null;
         int c = 0;
         int invisibleVoxel = 0;
-        ArrayList<int[]> addedVoxelList = new ArrayList<int[]>();
+        // the voxel of the current column (ordered by z)
+        int[] column = new int[16];
         for (int x = 0; x < sx; x++) {
             for (int y = 0; y < sy; y++) {
                 int xyoff = fileIn.readShortRevUnsigned();
                 sumxyoffset += xyoff;
-                // create list first, order it and then check which voxel are missing (testing)
-                for (int newC = c + xyoff; c < newC; c++) {
-                    int[] vox = voxel.remove(0); // alternative "voxel.get(c)"
-                    addedVoxelList.add(vox);
-//                    System.out.println("A:" + x + " " + y + " " + vox[0]);
-                    addVoxel(x - cx, vox[0] - cz, -y + cy, vox[1]);
+                if (c + xyoff > count) {
+                    return false;
+                }
+                if (xyoff > column.length) {
+                    column = new int[Math.max(xyoff, column.length * 2)];
+                }
+                // create list first, order it and then check which voxel are missing
+                for (int i = 0; i < xyoff; i++, c++) {
+                    addVoxel(x - cx, zpos[c] - cz, -y + cy, colors[c]);
                     // some files don't count invisible voxel, so we need to track them
                     // for the sanity check
-                    if (vox[2] == 0) {
+                    if (visfaces[c] == 0) {
                         invisibleVoxel++;
                     }
-                }
-                Collections.sort(addedVoxelList, new Comparator<int[]>() {
-                    @Override
-                    public int compare(int[] o1, int[] o2) {
-                        return (int)Math.signum(o1[0] - o2[0]);
+                    // insertion sort (the voxel are usually ordered already)
+                    int j = i;
+                    for (; j > 0 && zpos[column[j - 1]] > zpos[c]; j--) {
+                        column[j] = column[j - 1];
                     }
-                });
-                for (int[] vox : addedVoxelList) {
+                    column[j] = c;
+                }
+                int lastZ = -1;
+                for (int i = 0; i < xyoff; i++) {
+                    int vox = column[i];
                     // fill in voxels "in between"
-                    BigInteger bigInteger = BigInteger.valueOf(vox[2]);
-                    if (lastZ != null && !bigInteger.testBit(4)) {
-                        for (int i = lastZ + 1; i < vox[0]; i++) {
-//                            System.out.println("E:" + x + " " + y + " " + i);
-                            addVoxel(x - cx, i - cz, -y + cy, vox[1]);
+                    if (lastZ != -1 && (visfaces[vox] & 16) == 0) {
+                        for (int z = lastZ + 1; z < zpos[vox]; z++) {
+                            addVoxel(x - cx, z - cz, -y + cy, colors[vox]);
                         }
                     }
-                    if (!bigInteger.testBit(5)) {
-                        lastZ = vox[0];
+                    if ((visfaces[vox] & 32) == 0) {
+                        lastZ = zpos[vox];
                     } else {
-                        lastZ = null;
+                        lastZ = -1;
                     }
                 }
-                lastZ = null;
-                addedVoxelList.clear();
             }
         }
 
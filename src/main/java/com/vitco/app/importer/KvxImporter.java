@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.ByteBufferIn;
 
 import java.awt.*;
 import java.io.File;
@@ -18,7 +17,7 @@ public class KvxImporter extends AbstractImporter {
     }
 
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(ByteBufferIn fileIn, ByteBufferIn raf) throws IOException {
         fileIn.readIntRev(); //int numbytes = fileIn.readIntRev();
 
         // read the dimensions
@@ -1,15 +1,13 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
+import com.vitco.app.util.file.ByteBufferIn;
 import com.vitco.app.util.file.FileTools;
-import com.vitco.app.util.file.RandomAccessFileIn;
 import com.vitco.app.util.misc.NumberTools;
+import gnu.trove.list.array.TIntArrayList;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
 
 public class VoxImporter extends AbstractImporter {
 
@@ -18,7 +16,7 @@ public class VoxImporter extends AbstractImporter {
         super(file, name);
     }
 
-    private static final int[] voxColors = new int[] {
+    static final int[] voxColors = new int[] {
             -1, -52, -103, -154, -205, -256, -13057, -13108, -13159, -13210, -13261, -13312, -26113, -26164, -26215, -26266,
             -26317, -26368, -39169, -39220, -39271, -39322, -39373, -39424, -52225, -52276, -52327, -52378, -52429, -52480, -65281,
             -65332, -65383, -65434, -65485, -65536, -3342337, -3342388, -3342439, -3342490, -3342541, -3342592, -3355393, -3355444,
@@ -45,7 +43,7 @@ public class VoxImporter extends AbstractImporter {
 
     // read file - returns true if file has loaded correctly
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(ByteBufferIn fileIn, ByteBufferIn raf) throws IOException {
 
         // check magic number
         byte[] check = new byte[4];
@@ -111,10 +109,10 @@ public class VoxImporter extends AbstractImporter {
                                     if (voxImporter.hasLoaded()) {
                                         for (Layer layer : voxImporter.getVoxel()) {
                                             addLayer(layer.name);
-                                            for (int[] vox; layer.hasNext();) {
-                                                vox = layer.next();
+                                            int[] vox = layer.getVoxels();
+                                            for (int i = 0, end = layer.size() * 4; i < end; i += 4) {
                                                 // no need to rotate this (already rotated)
-                                                addVoxel(vox[0] - Math.round(offx), vox[1] - Math.round(offy), vox[2] + Math.round(offz), vox[3]);
+                                                addVoxel(vox[i] - Math.round(offx), vox[i + 1] - Math.round(offy), vox[i + 2] + Math.round(offz), vox[i + 3]);
                                             }
                                         }
                                     }
@@ -136,12 +134,16 @@ public class VoxImporter extends AbstractImporter {
                 for (int y = 0; y < sy; y++) {
                     for (int x = 0; x < sx; x++) {
                         for (int z = 0; z < sz; z++) {
-                            int visible = NumberTools.parseInt(fileIn.readSpaceString(), 0);
-                            int r = Math.round(NumberTools.parseFloat(fileIn.readSpaceString(), 0f) * 255);
-                            int g = Math.round(NumberTools.parseFloat(fileIn.readSpaceString(), 0f) * 255);
-                            int b = Math.round(NumberTools.parseFloat(fileIn.readSpaceString(), 0f) * 255);
+                            // parsed directly from the buffer (no strings are created)
+                            int visible = fileIn.readSpaceInt(0);
+                            int r = Math.round(fileIn.readSpaceFloat(0f) * 255);
+                            int g = Math.round(fileIn.readSpaceFloat(0f) * 255);
+                            int b = Math.round(fileIn.readSpaceFloat(0f) * 255);
                             if (visible == 1) {
-                                addVoxel(-x,-y,z, new Color(r,g,b).getRGB());
+                                if (((r | g | b) & ~0xFF) != 0) {
+                                    return false; // invalid color
+                                }
+                                addVoxel(-x,-y,z, 0xFF000000 | (r << 16) | (g << 8) | b);
                             }
                         }
                     }
@@ -208,7 +210,7 @@ public class VoxImporter extends AbstractImporter {
             return false;
         }
 
-        ArrayList<Integer> voxels = new ArrayList<Integer>();
+        TIntArrayList voxels = new TIntArrayList();
         int[] palette = voxColors;
 
         for (int i = 0; i < totalChildrenSize;) {
@@ -250,11 +252,10 @@ public class VoxImporter extends AbstractImporter {
             i += 12 + chunkSize;
         }
 
-        ByteBuffer buf = ByteBuffer.allocate(4);
-        for (Integer voxel : voxels) {
-            buf.position(0);
-            buf.putInt(voxel);
-            addVoxel(-(buf.get(0) & 0xFF), -(buf.get(2) & 0xFF), buf.get(1) & 0xFF, palette[(buf.get(3) & 0xFF) - 1]);
+        // the voxels are stored as x, y, z, color index (one byte each)
+        for (int j = 0, size = voxels.size(); j < size; j++) {
+            int voxel = voxels.getQuick(j);
+            addVoxel(-(voxel >>> 24), -((voxel >>> 8) & 0xFF), (voxel >>> 16) & 0xFF, palette[(voxel & 0xFF) - 1]);
         }
 
         return true;
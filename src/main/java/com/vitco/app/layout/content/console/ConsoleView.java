@@ -318,6 +318,7 @@ public class ConsoleView extends ViewPrototype implements ConsoleViewInterface {
         consoleAction.put("/shader", "toggle_shader_enabled");
         consoleAction.put("/check deadlock", "check_for_deadlock_toggle");
         consoleAction.put("/study holes", "study_holes_print_info");
+        consoleAction.put("/history", "history_memory_information");
         consoleAction.put("/help", "display_console_commands");
 
         actionManager.registerAction("display_console_commands", new AbstractAction() {
@@ -331,6 +332,15 @@ public class ConsoleView extends ViewPrototype implements ConsoleViewInterface {
             }
         });
 
+        // print the memory used by the undo history
+        actionManager.registerAction("history_memory_information", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                console.addLine("History memory: " + (data.getHistoryByteSizeV() / 1024) + " kb (budget: " +
+                        (VitcoSettings.HISTORY_MEMORY_BUDGET / 1024) + " kb)");
+            }
+        });
+
         // check current content for holes and print info
         actionManager.registerAction("study_holes_print_info", new AbstractAction() {
             @Override
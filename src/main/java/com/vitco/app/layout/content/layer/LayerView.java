@@ -259,7 +259,8 @@ public class LayerView extends ViewPrototype implements LayerViewInterface {
 
         // update now
         synchronized (thisInstance) {
-            synchronized (VitcoSettings.SYNC) {
+            data.getLock().readLock().lock();
+            try {
                 selectedLayer = data.getSelectedLayer();
                 layers = data.getLayers();
                 layerCount = layers.length;
@@ -270,6 +271,8 @@ public class LayerView extends ViewPrototype implements LayerViewInterface {
                     layerVoxelCounts[i] =  data.getVoxelCount(layers[i]);
                     layerVisibilities[i] =  data.getLayerVisible(layers[i]);
                 }
+            } finally {
+                data.getLock().readLock().unlock();
             }
         }
         // update table when data changes
@@ -277,7 +280,8 @@ public class LayerView extends ViewPrototype implements LayerViewInterface {
 
             private void refresh(final int msDelay) {
                 synchronized (thisInstance) {
-                    synchronized (VitcoSettings.SYNC) {
+                    data.getLock().readLock().lock();
+                    try {
                         selectedLayer = data.getSelectedLayer();
                         layers = data.getLayers();
                         layerCount = layers.length;
@@ -288,6 +292,8 @@ public class LayerView extends ViewPrototype implements LayerViewInterface {
                             layerVoxelCounts[i] =  data.getVoxelCount(layers[i]);
                             layerVisibilities[i] =  data.getLayerVisible(layers[i]);
                         }
+                    } finally {
+                        data.getLock().readLock().unlock();
                     }
                 }
                 // refresh this group
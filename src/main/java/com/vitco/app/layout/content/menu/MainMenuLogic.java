@@ -4,14 +4,16 @@ import com.jidesoft.action.DefaultDockableBarDockableHolder;
 import com.sun.imageio.plugins.gif.GIFImageReader;
 import com.sun.imageio.plugins.gif.GIFImageReaderSpi;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.data.container.VsdJournal;
 import com.vitco.app.export.*;
 import com.vitco.app.export.collada.ColladaExportWrapper;
 import com.vitco.app.export.generic.ExportDataManager;
 import com.vitco.app.importer.*;
 import com.vitco.app.layout.content.mainview.MainView;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManagerExt;
 import com.vitco.app.manager.action.types.StateActionPrototype;
+import com.vitco.app.manager.pref.Preferences;
 import com.vitco.app.settings.VitcoSettings;
 import com.vitco.app.util.components.dialog.UserInputDialog;
 import com.vitco.app.util.components.dialog.UserInputDialogListener;
@@ -77,9 +79,54 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
     // import file chooser
     private final CFileDialog fc_import = new CFileDialog();
 
-    // save file prompt (and overwrite prompt): true iff save was successful
-    private boolean handleSaveDialog(Frame frame) {
-        boolean result = false;
+    // only one save writes at a time
+    private final Object saveLock = new Object();
+
+    // save the data in the background and show the progress: true iff save was successful
+    private boolean saveToFile(Frame frame, final File file) {
+        final boolean[] result = {false};
+        final ProgressDialog progressDialog = new ProgressDialog(frame);
+        // the dialog blocks until the file is written
+        progressDialog.start(new ProgressWorker() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                synchronized (saveLock) {
+                    result[0] = data.saveToFile(file, progressDialog);
+                }
+                return null;
+            }
+        });
+        return result[0];
+    }
+
+    // save the data in the background and show the progress, the user can keep
+    // working while the file is written (the changes from then on stay unsaved)
+    private void saveToFileInBackground(Frame frame, final File file, final boolean rememberLocation) {
+        final ProgressDialog progressDialog = new ProgressDialog(frame, false);
+        progressDialog.start(new ProgressWorker() {
+            private boolean result = false;
+
+            @Override
+            protected Object doInBackground() throws Exception {
+                synchronized (saveLock) {
+                    result = data.saveToFile(file, progressDialog);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (!result) {
+                    console.addLine(langSelector.getString("error_on_file_save"));
+                } else if (rememberLocation) {
+                    setSaveLocation(file.getPath());
+                }
+            }
+        });
+    }
+
+    // save file prompt (and overwrite prompt): the file to save to or null
+    private File querySaveFile(Frame frame) {
         File saveTo = fc_vsd.saveFile(frame);
         if (saveTo != null) {
             // make sure filename ends with *.vsd
@@ -90,11 +137,21 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                             dir + " " + langSelector.getString("replace_file_query"),
                             langSelector.getString("replace_file_query_title"),
                             JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
-                // save file and remember it
-                result = data.saveToFile(saveTo);
-                if (result) {
-                    setSaveLocation(dir);
-                }
+                return saveTo;
+            }
+        }
+        return null;
+    }
+
+    // save file prompt (and overwrite prompt): true iff save was successful
+    private boolean handleSaveDialog(Frame frame) {
+        boolean result = false;
+        File saveTo = querySaveFile(frame);
+        if (saveTo != null) {
+            // save file and remember it
+            result = saveToFile(frame, saveTo);
+            if (result) {
+                setSaveLocation(saveTo.getPath());
             }
         }
         return result;
@@ -111,7 +168,7 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                 case JOptionPane.YES_OPTION: // save changes
                     if (hasSaveLocation()) { // we already know where to save (ok)
                         File file = getSaveLocation();
-                        result = data.saveToFile(file);
+                        result = saveToFile(frame, file);
                     } else { // we dont know where
                         if (handleSaveDialog(frame)) {
                             result = true;
@@ -136,60 +193,35 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
     private void importImage(BufferedImage img) {
         int width = img.getWidth();
         int height = img.getHeight();
-        boolean stop = false;
-        int voxelCount = 1;
-        for (int y=height-1; y >= 0 && !stop; y--) {
-            for (int x = 0; x < width && !stop; x++) {
+        int[] packed = new int[width * height * 4];
+        int count = 0;
+        for (int y=height-1; y >= 0; y--) {
+            for (int x = 0; x < width; x++) {
                 int rgb = img.getRGB(x,y);
-                int alpha = (rgb & 0xff000000) >> 24;
-                int  red = (rgb & 0x00ff0000) >> 16;
-                int  green = (rgb & 0x0000ff00) >> 8;
-                int  blue = rgb & 0x000000ff;
-                if (alpha != 0) {
-                    data.addVoxelDirect(new Color(red, green, blue), new int[]{
-                            x - img.getWidth() / 2,
-                            y + Math.round(VitcoSettings.VOXEL_GROUND_DISTANCE / VitcoSettings.VOXEL_SIZE) - img.getHeight(),
-                            0
-                    });
-                    if (voxelCount >= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
-                        stop = true;
-                        console.addLine(
-                                langSelector.getString("import_voxel_limit_reached_pre") + " " +
-                                        VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER +
-                                        " " + langSelector.getString("import_voxel_limit_reached_post"));
-                    }
-                    voxelCount++;
+                if ((rgb & 0xff000000) != 0) {
+                    packed[count++] = x - width / 2;
+                    packed[count++] = y + Math.round(VitcoSettings.VOXEL_GROUND_DISTANCE / VitcoSettings.VOXEL_SIZE) - height;
+                    packed[count++] = 0;
+                    packed[count++] = rgb;
                 }
             }
         }
+        data.addVoxelsDirect(data.getSelectedLayer(), packed, count / 4);
     }
 
     // import helper for voxel file
     private void importVoxelData(AbstractImporter importer, boolean shiftToCenter) {
         if (importer.hasLoaded()) {
-            if (shiftToCenter) {
-                int[] center = importer.getWeightedCenter();
-                int[] highest = importer.getHighest();
-                for (AbstractImporter.Layer layer : importer.getVoxel()) {
-                    int layerId = data.createLayer(layer.name);
-                    data.selectLayer(layerId);
-                    data.setVisible(layerId, layer.isVisible());
-                    for (int[] vox; layer.hasNext();) {
-                        vox = layer.next();
-                        data.addVoxelDirect(new Color(vox[3]),
-                                new int[] {vox[0] - center[0], vox[1] - highest[1], vox[2] - center[2]});
-                    }
-                }
-            } else {
-                for (AbstractImporter.Layer layer : importer.getVoxel()) {
-                    int layerId = data.createLayer(layer.name);
-                    data.selectLayer(layerId);
-                    data.setVisible(layerId, layer.isVisible());
-                    for (int[] vox; layer.hasNext();) {
-                        vox = layer.next();
-                        data.addVoxelDirect(new Color(vox[3]),new int[] {vox[0], vox[1], vox[2]});
-                    }
+            int[] center = importer.getWeightedCenter();
+            int[] highest = importer.getHighest();
+            for (AbstractImporter.Layer layer : importer.getVoxel()) {
+                int layerId = data.createLayer(layer.name);
+                data.selectLayer(layerId);
+                data.setVisible(layerId, layer.isVisible());
+                if (shiftToCenter) {
+                    layer.translate(-center[0], -highest[1], -center[2]);
                 }
+                data.addVoxelsDirect(layerId, layer.getVoxels(), layer.size());
             }
         }
     }
@@ -202,6 +234,24 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         setSaveLocation(file.getPath()); // remember load location
     }
 
+    // start the autosave journal (asks to recover a journal that was left behind),
+    // returns true if changes were recovered
+    public final boolean startAutosave() {
+        File directory = new File(Preferences.getUserDataDirectory() + "autosave");
+        boolean recovered = false;
+        if (VsdJournal.hasRecovery(directory) &&
+                JOptionPane.showConfirmDialog(null,
+                        langSelector.getString("recover_autosave_query"),
+                        langSelector.getString("recover_autosave_title"),
+                        JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+            recovered = data.recoverJournal(directory);
+        }
+        if (!data.startJournal(directory)) {
+            console.addLine(langSelector.getString("autosave_unavailable"));
+        }
+        return recovered;
+    }
+
     public final void registerLogic(final Frame frame) {
         // initialize the filter
         fc_vsd.addFileType("vsd", "PS4k File");
@@ -210,7 +260,11 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         actionManager.registerAction("save_file_action", new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                handleSaveDialog(frame);
+                File saveTo = querySaveFile(frame);
+                if (saveTo != null) {
+                    // save file and remember it
+                    saveToFileInBackground(frame, saveTo, true);
+                }
             }
         });
 
@@ -390,12 +444,7 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                             //errorHandler.handle(e1);
                         }
 
-                        // force a refresh of the data (redraw)
-                        // todo: do this properly
-                        int layerId = data.getSelectedLayer();
-                        boolean vis = data.getLayerVisible(layerId);
-                        data.setVisible(layerId, !vis);
-                        data.setVisible(layerId, vis);
+                        // the imported voxels can not be undone
                         data.clearHistoryV();
                     }
                 }
@@ -524,6 +573,12 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         // add "render" export
         FieldSet imageRenderer = new FieldSet("image_renderer", "Render (*.png)");
         imageRenderer.addComponent(new LabelModule("Select Export Options:"));
+        imageRenderer.addComponent(new ComboBoxModule("size", new String[][] {
+                new String[] {"view", "Size of the Main View"},
+                new String[] {"4096", "4096 x 4096 (Tiled)"},
+                new String[] {"8192", "8192 x 8192 (Tiled)"},
+                new String[] {"16384", "16384 x 16384 (Tiled)"}
+        }, 0));
         TextInputModule depthMapFileName = new TextInputModule("depth_map", "Name (Depth Render):", "depth", true);
         depthMapFileName.setEnabledLookup("export_type=image_renderer&image_renderer.render_depth=true");
         depthMapFileName.setVisibleLookup("export_type=image_renderer");
@@ -714,18 +769,35 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                         // create progress dialog
                         final ProgressDialog progressDialog = new ProgressDialog(frame);
 
+                        // the size of a tiled render (null to use the size of the main view)
+                        final Integer finalSize = dialog.is("image_renderer.size=view") ? null :
+                                Integer.valueOf(dialog.getValue("image_renderer.size"));
+
                         final File finalExportDepthMapTo = exportDepthMapTo;
                         final boolean finalExportDepthMap = exportDepthMap;
                         progressDialog.start(new ProgressWorker() {
                             @Override
                             protected Object doInBackground() throws Exception {
                                 // export color render (image)
-                                progressDialog.setActivity("Writing Render...", true);
-                                BufferedImage image = mainView.getImage();
-                                try {
-                                    ImageIO.write(image,"png", exportRenderTo);
-                                } catch (IOException e) {
-                                    errorHandler.handle(e);
+                                if (finalSize == null) {
+                                    progressDialog.setActivity("Writing Render...", true);
+                                    BufferedImage image = mainView.getImage();
+                                    try {
+                                        ImageIO.write(image,"png", exportRenderTo);
+                                    } catch (IOException e) {
+                                        errorHandler.handle(e);
+                                    }
+                                } else {
+                                    // render in strips (the image does not fit in memory)
+                                    progressDialog.setActivity("Writing Render...", false);
+                                    OutputStream out = new BufferedOutputStream(new FileOutputStream(exportRenderTo));
+                                    try {
+                                        mainView.writeImage(out, finalSize, finalSize, progressDialog);
+                                    } catch (IOException e) {
+                                        errorHandler.handle(e);
+                                    } finally {
+                                        out.close();
+                                    }
                                 }
                                 // export depth map
                                 if (finalExportDepthMap) {
@@ -1174,7 +1246,7 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
             public void actionPerformed(ActionEvent e) {
                 if (hasSaveLocation()) { // make sure we can save
                     File file = getSaveLocation();
-                    data.saveToFile(file);
+                    saveToFileInBackground(frame, file, false);
                 } else {
                     actionManager.getAction("save_file_action").actionPerformed(e);
                 }
@@ -1212,6 +1284,11 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
             @Override
             public void actionPerformed(final ActionEvent e) {
                 if (checkUnsavedChanges(frame)) {
+                    // let a save that runs in the background finish writing
+                    synchronized (saveLock) {
+                        // the changes are saved or discarded
+                        data.closeJournal();
+                    }
                     // fire closing action
                     actionManager.performWhenActionIsReady("program_closing_event", new Runnable() {
                         @Override
@@ -1252,7 +1329,8 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         actionManager.registerAction("fill_voxels_action", new StateActionPrototype() {
             @Override
             public void action(ActionEvent actionEvent) {
-                synchronized (VitcoSettings.SYNC) {
+                data.getLock().writeLock().lock();
+                try {
                     // compute the hull manager
                     HullManagerExt<String> hullManager = new HullManagerExt<String>();
                     for (Voxel voxel : data.getVisibleLayerVoxel()) {
@@ -1260,15 +1338,17 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                     }
                     hullManager.computeExterior();
                     // fetch the empty interior
-                    int[] emptyInterior = hullManager.getEmptyInterior();
+                    long[] emptyInterior = hullManager.getEmptyInterior();
                     // create and add the missing voxels
                     Voxel[] voxels = new Voxel[emptyInterior.length];
                     Color color = ColorTools.hsbToColor((float[]) preferences.loadObject("currently_used_color"));
                     for (int i = 0; i < emptyInterior.length; i++) {
-                        short[] pos = CubeIndexer.getPos(emptyInterior[i]);
-                        voxels[i] = new Voxel(-1, new int[]{pos[0], pos[1], pos[2]}, color, false, null, data.getSelectedLayer());
+                        int[] pos = LongCubeIndexer.getPos(emptyInterior[i]);
+                        voxels[i] = new Voxel(-1, pos, color, false, null, data.getSelectedLayer());
                     }
                     data.massAddVoxel(voxels);
+                } finally {
+                    data.getLock().writeLock().unlock();
                 }
             }
 
@@ -1281,7 +1361,8 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         actionManager.registerAction("hollow_voxels_action", new StateActionPrototype() {
             @Override
             public void action(ActionEvent actionEvent) {
-                synchronized (VitcoSettings.SYNC) {
+                data.getLock().writeLock().lock();
+                try {
                     // compute the hull manager
                     HullManagerExt<String> hullManager = new HullManagerExt<String>();
                     for (Voxel voxel : data.getVisibleLayerVoxel()) {
@@ -1289,17 +1370,18 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                     }
                     hullManager.computeExterior();
                     // fetch the filled interior
-                    int[] filledInterior = hullManager.getFilledInterior();
+                    long[] filledInterior = hullManager.getFilledInterior();
                     // search for the interior voxels and remove
                     Integer[] voxelIds = new Integer[filledInterior.length];
                     // todo: This will only remove the top voxel, change it so that it removes all voxels in all layers at this position
                     for (int i = 0; i < filledInterior.length; i++) {
-                        short[] pos = CubeIndexer.getPos(filledInterior[i]);
-                        Voxel voxel = data.searchVoxel(new int[]{pos[0], pos[1], pos[2]}, false);
+                        Voxel voxel = data.searchVoxel(LongCubeIndexer.getPos(filledInterior[i]), false);
                         assert voxel != null;
                         voxelIds[i] = voxel.id;
                     }
                     data.massRemoveVoxel(voxelIds);
+                } finally {
+                    data.getLock().writeLock().unlock();
                 }
             }
 
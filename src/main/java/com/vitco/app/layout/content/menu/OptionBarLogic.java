@@ -74,7 +74,7 @@ public class OptionBarLogic extends MenuLogicPrototype implements MenuLogicInter
                                         added.getColor(), false,
                                         added.getTexture(),  added.getLayerId()));
                             } else if (voxel.getLayerId() == added.getLayerId()
-                                    && voxel.getColor() != added.getColor()) {
+                                    && voxel.getRGB() != added.getRGB()) {
                                 Color color = added.getColor();
                                 HashSet<Integer> voxelIds = toRecolor.get(color);
                                 if (voxelIds == null) {
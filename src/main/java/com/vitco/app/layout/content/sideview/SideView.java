@@ -10,6 +10,7 @@ import com.vitco.app.low.hull.HullManager;
 import com.vitco.app.manager.async.AsyncAction;
 import com.vitco.app.manager.pref.PrefChangeListener;
 import com.vitco.app.settings.VitcoSettings;
+import gnu.trove.set.hash.TLongHashSet;
 
 import javax.swing.*;
 import java.awt.*;
@@ -20,7 +21,6 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 
 /**
  * Creates one side view instance (one perspective) and the specific user interaction.
@@ -142,7 +142,7 @@ public class SideView extends EngineInteractionPrototype implements SideViewInte
     // list of known voxel
     // Note: Not really necessary, but might save some trouble in the future
     // when selection and deselection of a voxel occurs withing the same frame
-    private final HashSet<String> liveVoxel = new HashSet<String>();
+    private final TLongHashSet liveVoxel = new TLongHashSet();
 
     @Override
     protected Voxel[][] getChangedSelectedVoxels() {
@@ -175,7 +175,7 @@ public class SideView extends EngineInteractionPrototype implements SideViewInte
                 Integer count = selectedCountAtPos.get(strId);
                 if (count != null) {
                     count -= 1;
-                    if (liveVoxel.remove(remove.getPosAsString())) {
+                    if (liveVoxel.remove(remove.posId)) {
                         if (count == 0) {
                             selectedCountAtPos.remove(strId);
                             toRemove.add(selectedAtPos.remove(strId));
@@ -208,7 +208,7 @@ public class SideView extends EngineInteractionPrototype implements SideViewInte
                 default: break;
             }
             Integer count = selectedCountAtPos.get(strId);
-            if (liveVoxel.add(added.getPosAsString())) {
+            if (liveVoxel.add(added.posId)) {
                 if (count == null) {
                     selectedCountAtPos.put(strId, 1);
                     Voxel voxel = new Voxel(-1, pos, added.getColor(), false, null, 0);
@@ -250,7 +250,7 @@ public class ColorPaletteLinkage extends FrameLinkagePrototype {
             public void actionPerformed(ActionEvent e) {
                 HashSet<Integer> colors = new HashSet<Integer>();
                 for (Voxel voxel : data.getSelectedVoxels()) {
-                    colors.add(voxel.getColor().getRGB());
+                    colors.add(voxel.getRGB());
                 }
                 for (Color color : colorPaletteChooser.getColors().values()) {
                     colors.remove(color.getRGB());
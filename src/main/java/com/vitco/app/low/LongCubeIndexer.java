@@ -0,0 +1,94 @@
+package com.vitco.app.low;
+
+/**
+ * Indexes a 2097152 ^ 3 cube (21 bits per axis).
+ *
+ * Defines mappings X x Y x Z -> Long and reverse. This is the 64 bit version of the
+ * CubeIndexer (which is limited to a 1600 ^ 3 cube).
+ *
+ * Lookups of these keys in hash maps are up to 2x slower than with the int keys: the key
+ * array is twice as large and the map hashes a key as (low word ^ high word), so z
+ * neighbours are far apart in the table. The fields need to stay continuous (the steps
+ * are added to ids), so this is the accepted cost of the larger world. The voxel reads
+ * mostly go through the chunks of the Engine and only look up the chunk id.
+ */
+public final class LongCubeIndexer {
+
+    // bits per axis
+    public static final int bits = 21;
+    private static final long mask = (1L << bits) - 1;
+
+    // dimension/radius
+    public static final int width = 1 << bits;
+    public static final int radius = width / 2;
+
+    // values to add to an id to move by one (x right, y up, z into background)
+    public static final long stepX = 1L;
+    public static final long stepZ = 1L << bits;
+    public static final long stepY = 1L << (2 * bits);
+
+    // compute the 1d representation for the position (x right, y up, z into background)
+    public static long getId(int x, int y, int z) {
+        return (x + radius) + (z + radius) * stepZ + (y + radius) * stepY;
+    }
+
+    // compute the 1d representation for the position (x right, y up, z into background)
+    public static long getId(short[] pos) {
+        return getId(pos[0], pos[1], pos[2]);
+    }
+
+    // compute the 1d representation for the position (x right, y up, z into background)
+    public static long getId(int[] pos) {
+        return getId(pos[0], pos[1], pos[2]);
+    }
+
+    // get shift value (value that needs to be added to another pos id to
+    // shift it by that much into that direction)
+    public static long getShiftOperand(int shiftX, int shiftY, int shiftZ) {
+        return shiftX * stepX + shiftY * stepY + shiftZ * stepZ;
+    }
+
+    public static int getX(long id) {
+        return (int) (id & mask) - radius;
+    }
+
+    public static int getY(long id) {
+        return (int) ((id >>> (2 * bits)) & mask) - radius;
+    }
+
+    public static int getZ(long id) {
+        return (int) ((id >>> bits) & mask) - radius;
+    }
+
+    // compute the position for the 1d representation
+    public static int[] getPos(long id) {
+        return new int[] {getX(id), getY(id), getZ(id)};
+    }
+
+    // compute the (short) position for the 1d representation
+    public static short[] getShortPos(long id) {
+        return new short[] {(short) getX(id), (short) getY(id), (short) getZ(id)};
+    }
+
+    // change position depending on orientation (move into direction)
+    public static long change(long pos, int orientation) {
+        switch (orientation) {
+            case 0: return changeX(pos, true);
+            case 1: return changeX(pos, false);
+            case 2: return changeY(pos, true);
+            case 3: return changeY(pos, false);
+            case 4: return changeZ(pos, true);
+            default: return changeZ(pos, false);
+        }
+    }
+
+    public static long changeX(long pos, boolean add) {
+        return pos + (add ? stepX : -stepX);
+    }
+    public static long changeY(long pos, boolean add) {
+        return pos + (add ? stepY : -stepY);
+    }
+    public static long changeZ(long pos, boolean add) {
+        return pos + (add ? stepZ : -stepZ);
+    }
+}
@@ -0,0 +1,129 @@
+package com.vitco.app.low;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Test that the mapping is a bijection and compare the lookups with the int version.
+ */
+public class LongCubeIndexerTest {
+
+    private static boolean testConversion(int x, int y, int z) {
+        int[] pos = LongCubeIndexer.getPos(LongCubeIndexer.getId(x, y, z));
+        if (!(pos[0] == x && pos[1] == y && pos[2] == z)) {
+            System.out.println(
+                    pos[0] + " == " + x + " && " + pos[1] + " == " + y + " && " + pos[2] + " == " + z
+            );
+            return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void testMapping() throws Exception {
+        // small values and the borders
+        for (int x = -3; x <= 3; x++) {
+            for (int y = -3; y <= 3; y++) {
+                for (int z = -3; z <= 3; z++) {
+                    assert testConversion(x, y, z);
+                }
+            }
+        }
+        int max = LongCubeIndexer.radius - 1;
+        int min = -LongCubeIndexer.radius;
+        assert testConversion(max, max, max);
+        assert testConversion(min, min, min);
+        assert testConversion(min, max, min);
+        assert testConversion(1000000, -1000000, 5);
+
+        // random positions (beyond the limits of the int version)
+        Random rand = new Random(1);
+        for (int i = 0; i < 1000000; i++) {
+            int x = rand.nextInt(LongCubeIndexer.width) - LongCubeIndexer.radius;
+            int y = rand.nextInt(LongCubeIndexer.width) - LongCubeIndexer.radius;
+            int z = rand.nextInt(LongCubeIndexer.width) - LongCubeIndexer.radius;
+            assert testConversion(x, y, z);
+        }
+    }
+
+    @Test
+    public void testChange() throws Exception {
+        long id = LongCubeIndexer.getId(-5, 1000, 123456);
+        assert LongCubeIndexer.change(id, 0) == LongCubeIndexer.getId(-4, 1000, 123456);
+        assert LongCubeIndexer.change(id, 1) == LongCubeIndexer.getId(-6, 1000, 123456);
+        assert LongCubeIndexer.change(id, 2) == LongCubeIndexer.getId(-5, 1001, 123456);
+        assert LongCubeIndexer.change(id, 3) == LongCubeIndexer.getId(-5, 999, 123456);
+        assert LongCubeIndexer.change(id, 4) == LongCubeIndexer.getId(-5, 1000, 123457);
+        assert LongCubeIndexer.change(id, 5) == LongCubeIndexer.getId(-5, 1000, 123455);
+        assert id + LongCubeIndexer.getShiftOperand(-3, 2, -1) == LongCubeIndexer.getId(-8, 1002, 123455);
+        short[] pos = LongCubeIndexer.getShortPos(LongCubeIndexer.getId(-300, 20, 7));
+        assert pos[0] == -300 && pos[1] == 20 && pos[2] == 7;
+    }
+
+    // compare the lookup throughput of the int and the long keyed index
+    // (only prints the times, they depend too much on the machine to be asserted,
+    // reads with long keys are expected to take up to twice as long)
+    @Test
+    public void benchmark() throws Exception {
+        int size = 100; // 1M positions
+        Object value = new Object();
+        for (int run = 0; run < 3; run++) {
+            TIntObjectHashMap<Object> intIndex = new TIntObjectHashMap<Object>();
+            long time = System.currentTimeMillis();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        intIndex.put(CubeIndexer.getId(x, y, z), value);
+                    }
+                }
+            }
+            long intWriteTime = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            int found = 0;
+            for (int x = -size / 2; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        if (intIndex.containsKey(CubeIndexer.getId(x, y, z))) {
+                            found++;
+                        }
+                    }
+                }
+            }
+            long intReadTime = System.currentTimeMillis() - time;
+            assert found == size * size * size;
+
+            TLongObjectHashMap<Object> longIndex = new TLongObjectHashMap<Object>();
+            time = System.currentTimeMillis();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        longIndex.put(LongCubeIndexer.getId(x, y, z), value);
+                    }
+                }
+            }
+            long longWriteTime = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            found = 0;
+            for (int x = -size / 2; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        if (longIndex.containsKey(LongCubeIndexer.getId(x, y, z))) {
+                            found++;
+                        }
+                    }
+                }
+            }
+            long longReadTime = System.currentTimeMillis() - time;
+            assert found == size * size * size;
+
+            System.out.println("Int index: " + intWriteTime + " ms write, " + intReadTime + " ms read");
+            System.out.println("Long index: " + longWriteTime + " ms write, " + longReadTime + " ms read");
+            System.out.println(String.format("Long / int: %.2f write, %.2f read",
+                    longWriteTime / (double) Math.max(1, intWriteTime), longReadTime / (double) Math.max(1, intReadTime)));
+        }
+    }
+
+}
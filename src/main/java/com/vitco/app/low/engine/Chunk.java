@@ -1,8 +1,374 @@
 package com.vitco.app.low.engine;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 /**
  * A chunk of voxel ( e.g. 32 ^ 3 )
+ *
+ * Every cell only stores an index into a per-chunk palette (equal entries are
+ * stored once, unless the values are known to be unique). Chunks that contain few voxel keep a sorted list of used cells,
+ * denser chunks use a packed array with as few bits per cell as the palette allows.
  */
-public class Chunk {
-    protected final static int CHUNK_SIZE = 32;
+public final class Chunk<T> {
+    protected final static int CHUNK_BITS = 5;
+    protected final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+    protected final static int CHUNK_MASK = CHUNK_SIZE - 1;
+    protected final static int CELL_COUNT = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+    // switch from the sparse to the packed representation when more cells are used
+    private final static int SPARSE_LIMIT = 512;
+    // switch back to the sparse representation when less cells are used
+    private final static int PACKED_LIMIT = SPARSE_LIMIT / 4;
+
+    // compute the cell for local coordinates (x right, y up, z into background)
+    protected static int getCell(int x, int y, int z) {
+        return (x & CHUNK_MASK) | ((z & CHUNK_MASK) << CHUNK_BITS) | ((y & CHUNK_MASK) << (2 * CHUNK_BITS));
+    }
+
+    // the chunk position (in chunk coordinates)
+    public final int cx;
+    public final int cy;
+    public final int cz;
+
+    protected Chunk(int cx, int cy, int cz, boolean deduplicate) {
+        this.cx = cx;
+        this.cy = cy;
+        this.cz = cz;
+        paletteIndex = deduplicate ? new TObjectIntHashMap<T>() : null;
+    }
+
+    // ------------------------------
+    // palette (index zero means "empty")
+
+    private Object[] palette = new Object[4];
+    private int[] paletteUse = new int[4];
+    private int paletteSize = 1;
+    // null if equal entries are not merged
+    private final TObjectIntHashMap<T> paletteIndex;
+    private TIntArrayList freeEntries = null;
+
+    // obtain the palette index for a value (the use count is increased)
+    private int acquire(T value) {
+        int entry = paletteIndex == null ? 0 : paletteIndex.get(value);
+        if (entry == 0) {
+            if (freeEntries != null && !freeEntries.isEmpty()) {
+                entry = freeEntries.removeAt(freeEntries.size() - 1);
+            } else {
+                entry = paletteSize++;
+                if (entry == palette.length) {
+                    Object[] newPalette = new Object[palette.length * 2];
+                    System.arraycopy(palette, 0, newPalette, 0, palette.length);
+                    palette = newPalette;
+                    int[] newPaletteUse = new int[paletteUse.length * 2];
+                    System.arraycopy(paletteUse, 0, newPaletteUse, 0, paletteUse.length);
+                    paletteUse = newPaletteUse;
+                }
+                // make sure the packed array can hold the new index
+                if (packed != null && entry >= (1 << bits)) {
+                    repack(bitsFor(entry));
+                }
+            }
+            palette[entry] = value;
+            if (paletteIndex != null) {
+                paletteIndex.put(value, entry);
+            }
+        }
+        paletteUse[entry]++;
+        return entry;
+    }
+
+    // decrease the use count of a palette index
+    private void release(int entry) {
+        if (--paletteUse[entry] == 0) {
+            if (paletteIndex != null) {
+                paletteIndex.remove(palette[entry]);
+            }
+            palette[entry] = null;
+            if (freeEntries == null) {
+                freeEntries = new TIntArrayList();
+            }
+            freeEntries.add(entry);
+        }
+    }
+
+    // ------------------------------
+    // cell storage
+
+    private int count = 0;
+    // sparse representation (sorted by cell)
+    private short[] sparseCells = new short[4];
+    private int[] sparseEntries = new int[4];
+    // packed representation
+    private long[] packed = null;
+    private int bits = 0;
+    private int bitsShift = 0;
+
+    // the smallest amount of bits (power of two) that can store this index
+    private static int bitsFor(int maxEntry) {
+        int result = 1;
+        while ((1 << result) <= maxEntry) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    // convert to packed representation with the given bits per cell
+    private void repack(int newBits) {
+        int newBitsShift = Integer.numberOfTrailingZeros(newBits);
+        long[] newPacked = new long[CELL_COUNT >> (6 - newBitsShift)];
+        if (packed == null) {
+            for (int i = 0; i < count; i++) {
+                write(newPacked, newBits, newBitsShift, sparseCells[i], sparseEntries[i]);
+            }
+            sparseCells = null;
+            sparseEntries = null;
+        } else {
+            for (int cell = 0; cell < CELL_COUNT; cell++) {
+                int entry = read(packed, bits, bitsShift, cell);
+                if (entry != 0) {
+                    write(newPacked, newBits, newBitsShift, cell, entry);
+                }
+            }
+        }
+        packed = newPacked;
+        bits = newBits;
+        bitsShift = newBitsShift;
+    }
+
+    // convert back to the sparse representation
+    private void unpack() {
+        short[] newCells = new short[Math.max(4, count)];
+        int[] newEntries = new int[newCells.length];
+        int i = 0;
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            int entry = read(packed, bits, bitsShift, cell);
+            if (entry != 0) {
+                newCells[i] = (short) cell;
+                newEntries[i++] = entry;
+            }
+        }
+        sparseCells = newCells;
+        sparseEntries = newEntries;
+        packed = null;
+        bits = 0;
+        bitsShift = 0;
+    }
+
+    private static int read(long[] data, int bits, int bitsShift, int cell) {
+        int offset = (cell & ((1 << (6 - bitsShift)) - 1)) << bitsShift;
+        return (int) ((data[cell >>> (6 - bitsShift)] >>> offset) & ((1L << bits) - 1));
+    }
+
+    private static void write(long[] data, int bits, int bitsShift, int cell, int entry) {
+        int word = cell >>> (6 - bitsShift);
+        int offset = (cell & ((1 << (6 - bitsShift)) - 1)) << bitsShift;
+        long mask = ((1L << bits) - 1) << offset;
+        data[word] = (data[word] & ~mask) | (((long) entry << offset) & mask);
+    }
+
+    // binary search in the sparse cells
+    private int sparseIndex(int cell) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midCell = sparseCells[mid];
+            if (midCell < cell) {
+                low = mid + 1;
+            } else if (midCell > cell) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int getEntry(int cell) {
+        if (packed != null) {
+            return read(packed, bits, bitsShift, cell);
+        }
+        int index = sparseIndex(cell);
+        return index < 0 ? 0 : sparseEntries[index];
+    }
+
+    // set the entry of a cell (zero clears the cell)
+    private void setEntry(int cell, int entry) {
+        if (packed != null) {
+            int old = read(packed, bits, bitsShift, cell);
+            write(packed, bits, bitsShift, cell, entry);
+            if (old == 0 && entry != 0) {
+                count++;
+            } else if (old != 0 && entry == 0) {
+                count--;
+                if (count < PACKED_LIMIT) {
+                    unpack();
+                }
+            }
+            return;
+        }
+        int index = sparseIndex(cell);
+        if (index >= 0) {
+            if (entry != 0) {
+                sparseEntries[index] = entry;
+            } else {
+                count--;
+                System.arraycopy(sparseCells, index + 1, sparseCells, index, count - index);
+                System.arraycopy(sparseEntries, index + 1, sparseEntries, index, count - index);
+            }
+        } else if (entry != 0) {
+            if (count == SPARSE_LIMIT) {
+                repack(bitsFor(paletteSize - 1));
+                setEntry(cell, entry);
+                return;
+            }
+            index = -index - 1;
+            if (count == sparseCells.length) {
+                int newLength = Math.min(SPARSE_LIMIT, count * 2);
+                short[] newCells = new short[newLength];
+                System.arraycopy(sparseCells, 0, newCells, 0, count);
+                sparseCells = newCells;
+                int[] newEntries = new int[newLength];
+                System.arraycopy(sparseEntries, 0, newEntries, 0, count);
+                sparseEntries = newEntries;
+            }
+            System.arraycopy(sparseCells, index, sparseCells, index + 1, count - index);
+            System.arraycopy(sparseEntries, index, sparseEntries, index + 1, count - index);
+            sparseCells[index] = (short) cell;
+            sparseEntries[index] = entry;
+            count++;
+        }
+    }
+
+    // ------------------------------
+
+    // get the value of a cell (or null)
+    @SuppressWarnings("unchecked")
+    protected T get(int cell) {
+        return (T) palette[getEntry(cell)];
+    }
+
+    // set the value of a cell, returns the previous value (or null)
+    @SuppressWarnings("unchecked")
+    protected T set(int cell, T value) {
+        if (value == null) {
+            return remove(cell);
+        }
+        int old = getEntry(cell);
+        T result = (T) palette[old];
+        int entry = acquire(value);
+        setEntry(cell, entry);
+        if (old != 0) {
+            release(old);
+        }
+        return result;
+    }
+
+    // clear a cell, returns the previous value (or null)
+    @SuppressWarnings("unchecked")
+    protected T remove(int cell) {
+        int old = getEntry(cell);
+        if (old == 0) {
+            return null;
+        }
+        T result = (T) palette[old];
+        setEntry(cell, 0);
+        release(old);
+        return result;
+    }
+
+    // the amount of used cells
+    public int size() {
+        return count;
+    }
+
+    // the amount of different values in this chunk
+    public int getPaletteSize() {
+        if (paletteIndex == null) {
+            return paletteSize - 1 - (freeEntries == null ? 0 : freeEntries.size());
+        }
+        return paletteIndex.size();
+    }
+
+    // visit all values of this chunk (in cell order)
+    @SuppressWarnings("unchecked")
+    protected void forEach(VoxelVisitor<T> visitor) {
+        int baseX = cx << CHUNK_BITS;
+        int baseY = cy << CHUNK_BITS;
+        int baseZ = cz << CHUNK_BITS;
+        if (packed != null) {
+            int perWord = 1 << (6 - bitsShift);
+            for (int word = 0; word < packed.length; word++) {
+                if (packed[word] != 0) {
+                    for (int cell = word * perWord, end = cell + perWord; cell < end; cell++) {
+                        int entry = read(packed, bits, bitsShift, cell);
+                        if (entry != 0) {
+                            visitor.visit(baseX + (cell & CHUNK_MASK),
+                                    baseY + (cell >> (2 * CHUNK_BITS)),
+                                    baseZ + ((cell >> CHUNK_BITS) & CHUNK_MASK),
+                                    (T) palette[entry]);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int cell = sparseCells[i];
+                visitor.visit(baseX + (cell & CHUNK_MASK),
+                        baseY + (cell >> (2 * CHUNK_BITS)),
+                        baseZ + ((cell >> CHUNK_BITS) & CHUNK_MASK),
+                        (T) palette[sparseEntries[i]]);
+            }
+        }
+    }
+
+    // visit all values in a plane of this chunk (axis 0 = x, 1 = y, 2 = z)
+    @SuppressWarnings("unchecked")
+    protected void forEachInPlane(int axis, int value, VoxelVisitor<T> visitor) {
+        int baseX = cx << CHUNK_BITS;
+        int baseY = cy << CHUNK_BITS;
+        int baseZ = cz << CHUNK_BITS;
+        int local = value & CHUNK_MASK;
+        if (packed != null) {
+            for (int u = 0; u < CHUNK_SIZE; u++) {
+                for (int v = 0; v < CHUNK_SIZE; v++) {
+                    int x, y, z;
+                    switch (axis) {
+                        case 0: x = local; y = u; z = v; break;
+                        case 1: x = v; y = local; z = u; break;
+                        default: x = v; y = u; z = local; break;
+                    }
+                    int entry = read(packed, bits, bitsShift, getCell(x, y, z));
+                    if (entry != 0) {
+                        visitor.visit(baseX + x, baseY + y, baseZ + z, (T) palette[entry]);
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int cell = sparseCells[i];
+                int x = cell & CHUNK_MASK;
+                int y = cell >> (2 * CHUNK_BITS);
+                int z = (cell >> CHUNK_BITS) & CHUNK_MASK;
+                if ((axis == 0 ? x : (axis == 1 ? y : z)) == local) {
+                    visitor.visit(baseX + x, baseY + y, baseZ + z, (T) palette[sparseEntries[i]]);
+                }
+            }
+        }
+    }
+
+    // estimate the memory used by this chunk (without the values themselves)
+    public long getByteSize() {
+        long result = 64 + palette.length * 4L + paletteUse.length * 4L;
+        if (paletteIndex != null) {
+            result += paletteIndex.capacity() * 9L;
+        }
+        if (packed != null) {
+            result += packed.length * 8L;
+        } else {
+            result += sparseCells.length * 2L + sparseEntries.length * 4L;
+        }
+        return result;
+    }
 }
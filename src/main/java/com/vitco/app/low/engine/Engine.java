@@ -1,76 +1,221 @@
 package com.vitco.app.low.engine;
 
-import com.vitco.app.low.CubeIndexer;
-import com.vitco.app.util.misc.IntegerTools;
-import gnu.trove.map.hash.TIntObjectHashMap;
-
-import java.util.HashMap;
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
 
 /**
  * Proves fast read/write access to voxel in the world.
+ *
+ * The world is split into chunks (32 ^ 3) and every chunk stores its
+ * values in a palette, i.e. equal values (e.g. VoxelType) are only stored
+ * once per chunk and every cell needs only a few bits.
  */
-public class Engine {
+public final class Engine<T> {
+
+    // holds the different known chunks
+    private final TLongObjectHashMap<Chunk<T>> chunks = new TLongObjectHashMap<Chunk<T>>();
 
-    // ------------------------------
-    // static information for all engines (!!!)
+    // false if the values are unique per position (e.g. voxel instances), the
+    // chunks then skip the lookup of equal palette entries
+    private final boolean deduplicate;
 
-    // holds the different known voxel types
-    private static final HashMap<VoxelType, VoxelType> voxelTypes = new HashMap<VoxelType, VoxelType>();
+    public Engine() {
+        this(true);
+    }
 
-    // generate unique ids for the voxel
-    private static int uidCount = 1;
-    private static int generateUID() {
-        return uidCount++;
+    public Engine(boolean deduplicate) {
+        this.deduplicate = deduplicate;
     }
 
-    // -----------------------------
+    // the amount of values in this engine
+    private int size = 0;
 
-    // holds the different known chunks
-    private final TIntObjectHashMap<Chunk> chunks = new TIntObjectHashMap<Chunk>();
-
-    // obtain the appropriate chunk (create a new one if it doesn't exist)
-    private Chunk getChunk(int[] xyz) {
-        int chunkId = CubeIndexer.getId(
-                IntegerTools.ifloordiv2(xyz[0], Chunk.CHUNK_SIZE),
-                IntegerTools.ifloordiv2(xyz[1], Chunk.CHUNK_SIZE),
-                IntegerTools.ifloordiv2(xyz[2], Chunk.CHUNK_SIZE));
-        Chunk result = chunks.get(chunkId);
+    // the last accessed chunk (access is usually local), this is a single
+    // reference so that concurrent reads never see a mismatched chunk
+    private Chunk<T> lastChunk = null;
+
+    // compute the id of the chunk that contains this position
+    private static long getChunkId(int x, int y, int z) {
+        return LongCubeIndexer.getId(x >> Chunk.CHUNK_BITS, y >> Chunk.CHUNK_BITS, z >> Chunk.CHUNK_BITS);
+    }
+
+    // obtain the appropriate chunk (create a new one if requested and it doesn't exist)
+    private Chunk<T> getChunk(int x, int y, int z, boolean create) {
+        Chunk<T> last = lastChunk;
+        if (last != null && last.cx == x >> Chunk.CHUNK_BITS &&
+                last.cy == y >> Chunk.CHUNK_BITS && last.cz == z >> Chunk.CHUNK_BITS) {
+            return last;
+        }
+        long chunkId = getChunkId(x, y, z);
+        Chunk<T> result = chunks.get(chunkId);
         if (result == null) {
-            result = new Chunk();
+            if (!create) {
+                return null;
+            }
+            result = new Chunk<T>(x >> Chunk.CHUNK_BITS, y >> Chunk.CHUNK_BITS, z >> Chunk.CHUNK_BITS, deduplicate);
             chunks.put(chunkId, result);
         }
+        lastChunk = result;
         return result;
     }
 
-    // delete a voxel
-    public boolean delete(int[][] xyzs) {
-        return false;
+    // get a voxel (or null)
+    public T get(int x, int y, int z) {
+        Chunk<T> chunk = getChunk(x, y, z, false);
+        return chunk == null ? null : chunk.get(Chunk.getCell(x, y, z));
+    }
+
+    // get a voxel (or null)
+    public T get(int[] pos) {
+        return get(pos[0], pos[1], pos[2]);
     }
 
-    // set a voxel
-    public void set(int[][] xyzs, VoxelType newType) {
-        // get the voxel type if it already exists, or create a new one
-        VoxelType type = voxelTypes.get(newType);
-        if (type == null) {
-            voxelTypes.put(newType, newType);
-            newType.uId = generateUID();
-            type = newType;
+    // set a voxel, returns the previous value (or null)
+    public T set(int x, int y, int z, T value) {
+        if (value == null) {
+            return remove(x, y, z);
         }
+        T result = getChunk(x, y, z, true).set(Chunk.getCell(x, y, z), value);
+        if (result == null) {
+            size++;
+        }
+        return result;
+    }
+
+    // set several voxel to the same value
+    public void set(int[][] xyzs, T value) {
+        for (int[] xyz : xyzs) {
+            set(xyz[0], xyz[1], xyz[2], value);
+        }
+    }
+
+    // delete a voxel, returns the previous value (or null)
+    public T remove(int x, int y, int z) {
+        Chunk<T> chunk = getChunk(x, y, z, false);
+        if (chunk == null) {
+            return null;
+        }
+        T result = chunk.remove(Chunk.getCell(x, y, z));
+        if (result != null) {
+            size--;
+            // discard empty chunks
+            if (chunk.size() == 0) {
+                chunks.remove(getChunkId(x, y, z));
+                lastChunk = null;
+            }
+        }
+        return result;
+    }
+
+    // delete several voxel, returns true if any voxel was deleted
+    public boolean delete(int[][] xyzs) {
+        boolean result = false;
         for (int[] xyz : xyzs) {
-            // increase the used count
-            type.usedCount++;
-            // get the chunk this voxel lives in
-            Chunk chunk = getChunk(xyz);
-            // check if the voxel already exists (and decrease used count of the type if so)
-            // ...
-            // update the voxel in the chunk
-            // ...
+            result |= remove(xyz[0], xyz[1], xyz[2]) != null;
+        }
+        return result;
+    }
+
+    // the amount of voxel
+    public int size() {
+        return size;
+    }
+
+    // the amount of chunks that contain voxel
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    // remove all voxel
+    public void clear() {
+        chunks.clear();
+        lastChunk = null;
+        size = 0;
+    }
+
+    // visit all voxel
+    public void forEach(VoxelVisitor<T> visitor) {
+        for (TLongObjectIterator<Chunk<T>> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            it.value().forEach(visitor);
+        }
+    }
+
+    // visit all voxel in a plane (axis 0 = x, 1 = y, 2 = z)
+    public void forEachInPlane(int axis, int value, VoxelVisitor<T> visitor) {
+        int chunkValue = value >> Chunk.CHUNK_BITS;
+        for (TLongObjectIterator<Chunk<T>> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            Chunk<T> chunk = it.value();
+            if ((axis == 0 ? chunk.cx : (axis == 1 ? chunk.cy : chunk.cz)) == chunkValue) {
+                chunk.forEachInPlane(axis, value, visitor);
+            }
+        }
+    }
+
+    // visit all voxel in a box (min and max are inclusive)
+    public void forEachInBox(int[] min, int[] max, VoxelVisitor<T> visitor) {
+        int minCX = min[0] >> Chunk.CHUNK_BITS, maxCX = max[0] >> Chunk.CHUNK_BITS;
+        int minCY = min[1] >> Chunk.CHUNK_BITS, maxCY = max[1] >> Chunk.CHUNK_BITS;
+        int minCZ = min[2] >> Chunk.CHUNK_BITS, maxCZ = max[2] >> Chunk.CHUNK_BITS;
+        long boxChunks = (maxCX - minCX + 1L) * (maxCY - minCY + 1L) * (maxCZ - minCZ + 1L);
+        if (boxChunks < chunks.size()) {
+            // probe the chunks of the box
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                for (int cy = minCY; cy <= maxCY; cy++) {
+                    for (int cz = minCZ; cz <= maxCZ; cz++) {
+                        Chunk<T> chunk = chunks.get(LongCubeIndexer.getId(cx, cy, cz));
+                        if (chunk != null) {
+                            forEachInBox(chunk, min, max, visitor);
+                        }
+                    }
+                }
+            }
+        } else {
+            // check all chunks
+            for (TLongObjectIterator<Chunk<T>> it = chunks.iterator(); it.hasNext();) {
+                it.advance();
+                Chunk<T> chunk = it.value();
+                if (chunk.cx >= minCX && chunk.cx <= maxCX &&
+                        chunk.cy >= minCY && chunk.cy <= maxCY &&
+                        chunk.cz >= minCZ && chunk.cz <= maxCZ) {
+                    forEachInBox(chunk, min, max, visitor);
+                }
+            }
+        }
+    }
+
+    // helper to visit the voxel of a chunk that are in a box
+    private static <T> void forEachInBox(Chunk<T> chunk, final int[] min, final int[] max, final VoxelVisitor<T> visitor) {
+        int baseX = chunk.cx << Chunk.CHUNK_BITS;
+        int baseY = chunk.cy << Chunk.CHUNK_BITS;
+        int baseZ = chunk.cz << Chunk.CHUNK_BITS;
+        if (baseX >= min[0] && baseX + Chunk.CHUNK_MASK <= max[0] &&
+                baseY >= min[1] && baseY + Chunk.CHUNK_MASK <= max[1] &&
+                baseZ >= min[2] && baseZ + Chunk.CHUNK_MASK <= max[2]) {
+            // the chunk is completely inside the box
+            chunk.forEach(visitor);
+        } else {
+            chunk.forEach(new VoxelVisitor<T>() {
+                @Override
+                public void visit(int x, int y, int z, T value) {
+                    if (x >= min[0] && x <= max[0] && y >= min[1] && y <= max[1] && z >= min[2] && z <= max[2]) {
+                        visitor.visit(x, y, z, value);
+                    }
+                }
+            });
         }
     }
 
-    // get a voxel
-    public VoxelType get(int[][] xyz) {
-        return null;
+    // estimate the memory used by this engine (without the values themselves)
+    public long getByteSize() {
+        long result = 32 + chunks.capacity() * 17L;
+        for (TLongObjectIterator<Chunk<T>> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            result += it.value().getByteSize();
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,229 @@
+package com.vitco.app.low.engine;
+
+import com.vitco.app.low.CubeIndexer;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Test the chunked voxel storage against a simple map.
+ */
+public class EngineTest {
+
+    // helper
+    private static String key(int x, int y, int z) {
+        return x + "_" + y + "_" + z;
+    }
+
+    // helper
+    private static boolean same(VoxelType a, VoxelType b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random rand = new Random(12345);
+        VoxelType[] types = new VoxelType[20];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new VoxelType(new Color(rand.nextInt()));
+        }
+
+        final Engine<VoxelType> engine = new Engine<VoxelType>();
+        final HashMap<String, VoxelType> reference = new HashMap<String, VoxelType>();
+
+        for (int i = 0; i < 300000; i++) {
+            // dense region around the origin (so chunks are packed and unpacked)
+            int x = rand.nextInt(80) - 40;
+            int y = rand.nextInt(20) - 10;
+            int z = rand.nextInt(80) - 40;
+            if (rand.nextFloat() < 0.6) {
+                // use a new instance to check the palette deduplication
+                VoxelType type = new VoxelType(types[rand.nextInt(types.length)].color);
+                assert same(engine.set(x, y, z, type), reference.put(key(x, y, z), type));
+            } else {
+                assert same(engine.remove(x, y, z), reference.remove(key(x, y, z)));
+            }
+            assert engine.size() == reference.size();
+        }
+
+        // check all values
+        for (int x = -45; x < 45; x++) {
+            for (int y = -15; y < 15; y++) {
+                for (int z = -45; z < 45; z++) {
+                    assert same(engine.get(x, y, z), reference.get(key(x, y, z)));
+                }
+            }
+        }
+
+        // check iteration
+        final int[] count = new int[1];
+        engine.forEach(new VoxelVisitor<VoxelType>() {
+            @Override
+            public void visit(int x, int y, int z, VoxelType value) {
+                assert value.equals(reference.get(key(x, y, z)));
+                count[0]++;
+            }
+        });
+        assert count[0] == reference.size();
+
+        // check plane iteration
+        for (int axis = 0; axis < 3; axis++) {
+            for (final int plane : new int[] {-33, -32, -1, 0, 5, 31, 32}) {
+                int expected = 0;
+                for (String pos : reference.keySet()) {
+                    if (Integer.valueOf(pos.split("_")[axis]) == plane) {
+                        expected++;
+                    }
+                }
+                final int finalAxis = axis;
+                final int[] planeCount = new int[1];
+                engine.forEachInPlane(axis, plane, new VoxelVisitor<VoxelType>() {
+                    @Override
+                    public void visit(int x, int y, int z, VoxelType value) {
+                        assert (finalAxis == 0 ? x : (finalAxis == 1 ? y : z)) == plane;
+                        assert value.equals(reference.get(key(x, y, z)));
+                        planeCount[0]++;
+                    }
+                });
+                assert planeCount[0] == expected;
+            }
+        }
+
+        // check box iteration (small boxes probe the chunks, large boxes check all chunks)
+        for (int[][] box : new int[][][] {
+                {{-3, -2, -1}, {4, 2, 3}}, {{-33, -5, 0}, {-31, 5, 31}},
+                {{0, 0, 0}, {31, 31, 31}}, {{-100, -100, -100}, {100, 100, 100}}}) {
+            final int[] min = box[0];
+            final int[] max = box[1];
+            int expected = 0;
+            for (String pos : reference.keySet()) {
+                String[] split = pos.split("_");
+                boolean inside = true;
+                for (int i = 0; i < 3; i++) {
+                    int value = Integer.valueOf(split[i]);
+                    inside &= value >= min[i] && value <= max[i];
+                }
+                if (inside) {
+                    expected++;
+                }
+            }
+            final int[] boxCount = new int[1];
+            engine.forEachInBox(min, max, new VoxelVisitor<VoxelType>() {
+                @Override
+                public void visit(int x, int y, int z, VoxelType value) {
+                    assert x >= min[0] && x <= max[0] && y >= min[1] && y <= max[1] && z >= min[2] && z <= max[2];
+                    assert value.equals(reference.get(key(x, y, z)));
+                    boxCount[0]++;
+                }
+            });
+            assert boxCount[0] == expected;
+        }
+
+        // remove everything
+        for (String pos : reference.keySet()) {
+            String[] split = pos.split("_");
+            assert engine.remove(Integer.valueOf(split[0]), Integer.valueOf(split[1]), Integer.valueOf(split[2])) != null;
+        }
+        assert engine.size() == 0;
+        assert engine.getChunkCount() == 0;
+    }
+
+    @Test
+    public void testPalette() throws Exception {
+        Engine<VoxelType> engine = new Engine<VoxelType>();
+        // fill one chunk completely with two different types
+        for (int x = 0; x < 32; x++) {
+            for (int y = 0; y < 32; y++) {
+                for (int z = 0; z < 32; z++) {
+                    engine.set(x, y, z, new VoxelType((x + y + z) % 2 == 0 ? Color.RED : Color.BLUE));
+                }
+            }
+        }
+        assert engine.size() == 32 * 32 * 32;
+        assert engine.getChunkCount() == 1;
+        // two types need two bits per cell (index zero is reserved for "empty")
+        assert engine.getByteSize() < 32 * 32 * 32 / 4 + 1024;
+        assert engine.get(1, 0, 0).color.equals(Color.BLUE);
+        assert engine.get(1, 1, 0).color.equals(Color.RED);
+    }
+
+    // compare memory and speed with a position index (as used by VoxelLayer before)
+    @Test
+    public void benchmark() throws Exception {
+        Random rand = new Random(1);
+        VoxelType[] types = new VoxelType[64];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new VoxelType(new Color(rand.nextInt()));
+        }
+        int size = 100; // 1M voxel
+
+        for (int run = 0; run < 3; run++) {
+            System.gc();
+            long memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+            long time = System.currentTimeMillis();
+            Engine<VoxelType> engine = new Engine<VoxelType>();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        engine.set(x, y, z, types[(x / 10 + y / 10 + z / 10) % types.length]);
+                    }
+                }
+            }
+            long engineTime = System.currentTimeMillis() - time;
+            System.gc();
+            long engineMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - memory;
+            time = System.currentTimeMillis();
+            int found = 0;
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        if (engine.get(x, y, z) != null) {
+                            found++;
+                        }
+                    }
+                }
+            }
+            long engineReadTime = System.currentTimeMillis() - time;
+            assert found == size * size * size;
+
+            System.gc();
+            memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+            time = System.currentTimeMillis();
+            TIntObjectHashMap<VoxelType> index = new TIntObjectHashMap<VoxelType>();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        index.put(CubeIndexer.getId(x, y, z), types[(x / 10 + y / 10 + z / 10) % types.length]);
+                    }
+                }
+            }
+            long indexTime = System.currentTimeMillis() - time;
+            System.gc();
+            long indexMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - memory;
+            time = System.currentTimeMillis();
+            found = 0;
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        if (index.get(CubeIndexer.getId(x, y, z)) != null) {
+                            found++;
+                        }
+                    }
+                }
+            }
+            long indexReadTime = System.currentTimeMillis() - time;
+            assert found == size * size * size;
+
+            int count = size * size * size;
+            System.out.println("Engine: " + engineTime + " ms write, " + engineReadTime + " ms read, " +
+                    engine.getByteSize() / (float) count + " (" + engineMemory / (float) count + ") bytes per voxel");
+            System.out.println("Index: " + indexTime + " ms write, " + indexReadTime + " ms read, " +
+                    indexMemory / (float) count + " bytes per voxel");
+            assert engine.getByteSize() / count < 4;
+        }
+    }
+
+}
@@ -5,13 +5,7 @@ import java.awt.*;
 /**
  * This describes a voxel type (i.e. a block with very specific properties).
  */
-public class VoxelType {
-    protected int uId = 0;
-    protected int usedCount = 0;
-
-
-    // -----------------
-
+public final class VoxelType {
 
     public final Color color;
 
@@ -0,0 +1,8 @@
+package com.vitco.app.low.engine;
+
+/**
+ * Visits the values stored in an engine together with their position.
+ */
+public interface VoxelVisitor<T> {
+    void visit(int x, int y, int z, T value);
+}
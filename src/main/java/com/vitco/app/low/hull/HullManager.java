@@ -1,12 +1,12 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.triangulate.util.Grid2PolyHelper;
 import com.vitco.app.settings.VitcoSettings;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -23,37 +23,37 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     // --------------
 
     // maps position to objects
-    private final TIntObjectHashMap<T> id2obj = new TIntObjectHashMap<T>();
+    private final TLongObjectHashMap<T> id2obj = new TLongObjectHashMap<T>();
 
     // border
-    private final TIntHashSet[] border = new TIntHashSet[]{
-            new TIntHashSet(),new TIntHashSet(),new TIntHashSet(),
-            new TIntHashSet(),new TIntHashSet(),new TIntHashSet()
+    private final TLongHashSet[] border = new TLongHashSet[]{
+            new TLongHashSet(),new TLongHashSet(),new TLongHashSet(),
+            new TLongHashSet(),new TLongHashSet(),new TLongHashSet()
     };
 
     // border changes
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderAdded = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderAdded = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderRemoved = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderRemoved = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
     
     // add/remove buffer
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderBufferAdded = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderBufferAdded = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
 
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderBufferRemoved = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderBufferRemoved = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
 
     // ---------------------
@@ -72,42 +72,42 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
 
     @Override
     public final boolean contains(short[] pos) {
-        return id2obj.containsKey(CubeIndexer.getId(pos));
+        return id2obj.containsKey(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean contains(int posId) {
+    public final boolean contains(long posId) {
         return id2obj.containsKey(posId);
     }
 
     @Override
     public final boolean containsBorder(short[] pos, int orientation) {
-        return border[orientation].contains(CubeIndexer.getId(pos));
+        return border[orientation].contains(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean containsBorder(int posId, int orientation) {
+    public final boolean containsBorder(long posId, int orientation) {
         return border[orientation].contains(posId);
     }
 
     @Override
-    public final int[] getPosIds() {
+    public final long[] getPosIds() {
         return id2obj.keys();
     }
 
     @Override
     public T get(short[] pos) {
-        return id2obj.get(CubeIndexer.getId(pos));
+        return id2obj.get(LongCubeIndexer.getId(pos));
     }
 
     @Override
     public final void update(short[] pos, T object) {
         //System.out.println("U " + pos[0] + "," + pos[1] + "," + pos[2]);
-        update(CubeIndexer.getId(pos), object);
+        update(LongCubeIndexer.getId(pos), object);
     }
 
     @Override
-    public final void update(int posId, T object) {
+    public final void update(long posId, T object) {
         // store the object
         if (id2obj.put(posId, object) != null) {
             // the element was only updated (but existed already)
@@ -135,7 +135,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             T obj = id2obj.get(posId);
 
             // check borders
-            int idOff = posId-1;
+            long idOff = posId-1;
             if (id2obj.containsKey(idOff)) {
                 border[0].remove(idOff);
                 if (null == borderBufferAdded[0].remove(idOff)) {
@@ -166,7 +166,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.widthwidth;
+            idOff = posId-LongCubeIndexer.stepY;
             if (id2obj.containsKey(idOff)) {
                 border[2].remove(idOff);
                 if (null == borderBufferAdded[2].remove(idOff)) {
@@ -181,7 +181,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.widthwidth;
+            idOff = posId+LongCubeIndexer.stepY;
             if (id2obj.containsKey(idOff)) {
                 border[3].remove(idOff);
                 if (null == borderBufferAdded[3].remove(idOff)) {
@@ -197,7 +197,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.width;
+            idOff = posId-LongCubeIndexer.stepZ;
             if (id2obj.containsKey(idOff)) {
                 border[4].remove(idOff);
                 if (null == borderBufferAdded[4].remove(idOff)) {
@@ -212,7 +212,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.width;
+            idOff = posId+LongCubeIndexer.stepZ;
             if (id2obj.containsKey(idOff)) {
                 border[5].remove(idOff);
                 if (null == borderBufferAdded[5].remove(idOff)) {
@@ -232,11 +232,11 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     @Override
     public final boolean clearPosition(short[] pos) {
         //System.out.println("C " + pos[0] + "," + pos[1] + "," + pos[2]);
-        return clearPosition(CubeIndexer.getId(pos));
+        return clearPosition(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean clearPosition(int posId) {
+    public final boolean clearPosition(long posId) {
 
         // remove the object (the actual removal needs to be done
         // last, because we still need the reference to the object
@@ -246,7 +246,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             T objOff;
 
             // check borders
-            int idOff = posId-1;
+            long idOff = posId-1;
             if (id2obj.containsKey(idOff)) {
                 border[0].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -279,7 +279,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.widthwidth;
+            idOff = posId-LongCubeIndexer.stepY;
             if (id2obj.containsKey(idOff)) {
                 border[2].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -295,7 +295,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.widthwidth;
+            idOff = posId+LongCubeIndexer.stepY;
             if (id2obj.containsKey(idOff)) {
                 border[3].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -312,7 +312,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.width;
+            idOff = posId-LongCubeIndexer.stepZ;
             if (id2obj.containsKey(idOff)) {
                 border[4].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -328,7 +328,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.width;
+            idOff = posId+LongCubeIndexer.stepZ;
             if (id2obj.containsKey(idOff)) {
                 border[5].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -358,7 +358,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
         borderAdded[direction].putAll(borderBufferRemoved[direction]);
 
         // remove the values that are pending as remove (remove is stronger!)
-        for (TIntIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
+        for (TLongIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
             borderAdded[direction].remove(it.next());
         }
 
@@ -380,7 +380,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
         Set<T> result = new HashSet<T>(borderRemoved[direction].valueCollection());
 
         // remove the values that are pending as remove (remove is stronger!)
-        for (TIntIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
+        for (TLongIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
             borderAdded[direction].remove(it.next());
         }
 
@@ -395,8 +395,8 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     public final short[][] getHull(int direction) {
         short[][] result = new short[border[direction].size()][3]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = border[direction].iterator(); it.hasNext();) {
-            short[] val = CubeIndexer.getPos(it.next());
+        for (TLongIterator it = border[direction].iterator(); it.hasNext();) {
+            short[] val = LongCubeIndexer.getShortPos(it.next());
             result[count][0] = val[0];
             result[count][1] = val[1];
             result[count][2] = val[2];
@@ -407,8 +407,8 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
 
     // get the visible voxel ids
     @Override
-    public final TIntHashSet getVisibleVoxelsIds() {
-        TIntHashSet visibleVoxels = new TIntHashSet();
+    public final TLongHashSet getVisibleVoxelsIds() {
+        TLongHashSet visibleVoxels = new TLongHashSet();
         for (int i = 0; i < 6; i++) {
             visibleVoxels.addAll(border[i]);
         }
@@ -417,7 +417,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
 
     // get the current hull as ids
     @Override
-    public final int[] getHullAsIds(int direction) {
+    public final long[] getHullAsIds(int direction) {
         return border[direction].toArray();
     }
 
@@ -1,11 +1,11 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import com.vitco.app.low.CubeIndexer;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.map.hash.TIntShortHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongShortHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -50,7 +50,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
 
         // starting grid coordinates
         short lastHitSide;
-        int pos = CubeIndexer.getId(
+        long pos = LongCubeIndexer.getId(
                 (short) Math.floor(origin.x),
                 (short) Math.floor(origin.y),
                 (short) Math.floor(origin.z)
@@ -92,22 +92,22 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
                 double diffZX = valZX * (tMaxX + offX) - (tMaxZ + offZ);
                 if (diffZX < 0) {
                     tMaxX++;
-                    pos = CubeIndexer.changeX(pos, stepXB);
+                    pos = LongCubeIndexer.changeX(pos, stepXB);
                     lastHitSide = sideX;
                 } else {
                     tMaxZ++;
-                    pos = CubeIndexer.changeZ(pos, stepZB);
+                    pos = LongCubeIndexer.changeZ(pos, stepZB);
                     lastHitSide = sideZ;
                 }
             } else {
                 double diffZY = valZY * (tMaxY + offY) - (tMaxZ + offZ);
                 if (diffZY < 0) {
                     tMaxY++;
-                    pos = CubeIndexer.changeY(pos, stepYB);
+                    pos = LongCubeIndexer.changeY(pos, stepYB);
                     lastHitSide = sideY;
                 } else {
                     tMaxZ++;
-                    pos = CubeIndexer.changeZ(pos, stepZB);
+                    pos = LongCubeIndexer.changeZ(pos, stepZB);
                     lastHitSide = sideZ;
                 }
             }
@@ -115,7 +115,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             // check for containment
             if (containsBorder(pos, lastHitSide)) { // hit side has to be visible
                 //if (id2obj.containsKey(pos)) { // any voxel can be hit
-                short[] result = CubeIndexer.getPos(pos);
+                short[] result = LongCubeIndexer.getShortPos(pos);
                 return new short[] {result[0], result[1], result[2], lastHitSide};
             }
         }
@@ -128,19 +128,19 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // ==============================
 
     // holds the computed exterior
-    private final TIntHashSet[] exterior = new TIntHashSet[] {
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private final TLongHashSet[] exterior = new TLongHashSet[] {
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
     };
     // holds the computed interior
-    private final TIntHashSet[] interior = new TIntHashSet[] {
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private final TLongHashSet[] interior = new TLongHashSet[] {
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
     };
 
     // helper, return true if given border is present in hull
     // if true -> add border to stack if not already present in processed
-    private boolean detectStepAdd(ArrayList<int[]> stack, int pos, int orientation, TIntHashSet[] processed) {
+    private boolean detectStepAdd(ArrayList<long[]> stack, long pos, int orientation, TLongHashSet[] processed) {
         boolean result = false;
         // (1) check if extension exists as border,
         if (containsBorder(pos, orientation)) {
@@ -148,7 +148,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             if (!processed[orientation].contains(pos)) {
                 processed[orientation].add(pos);
                 // (3) add to stack
-                stack.add(new int[] {pos, orientation});
+                stack.add(new long[] {pos, orientation});
             }
             result = true;
         }
@@ -158,7 +158,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // check which borders are correct neighbouring borders for a given border
     // then add to stack if not already processed
     // Note: This uses a "fold down model" for checking the neighbouring borders
-    private void detectStep(ArrayList<int[]> stack, int pos, short orientation, TIntHashSet[] processed) {
+    private void detectStep(ArrayList<long[]> stack, long pos, short orientation, TLongHashSet[] processed) {
         int[][] axisToCheck;
         switch (orientation) {
             case 0:case 1:
@@ -183,14 +183,14 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         // --
         for (int[] axis : axisToCheck) {
             // check negative
-            int posN = CubeIndexer.change(pos, axis[0]);
-            int posNOff = CubeIndexer.change(posN, orientation);
+            long posN = LongCubeIndexer.change(pos, axis[0]);
+            long posNOff = LongCubeIndexer.change(posN, orientation);
             boolean detectedN = detectStepAdd(stack, posNOff, axis[1], processed) ||
                     detectStepAdd(stack, posN, orientation, processed) ||
                     detectStepAdd(stack, pos, axis[0], processed);
             // check positive
-            int posP = CubeIndexer.change(pos, axis[1]);
-            int posPOff = CubeIndexer.change(posP, orientation);
+            long posP = LongCubeIndexer.change(pos, axis[1]);
+            long posPOff = LongCubeIndexer.change(posP, orientation);
             boolean detectedP = detectStepAdd(stack, posPOff, axis[0], processed) ||
                     detectStepAdd(stack, posP, orientation, processed) ||
                     detectStepAdd(stack, pos, axis[1], processed);
@@ -204,19 +204,19 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // follow an outline for a given starting border
     // store found borders in processed
     // returns the detected outline
-    private TIntHashSet[] detectContour(int pos, short orientation, TIntHashSet[] processed) {
-        TIntHashSet[] result = new TIntHashSet[] {
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private TLongHashSet[] detectContour(long pos, short orientation, TLongHashSet[] processed) {
+        TLongHashSet[] result = new TLongHashSet[] {
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
         // stack of currently processing voxel sides
-        ArrayList<int[]> stack = new ArrayList<int[]>();
+        ArrayList<long[]> stack = new ArrayList<long[]>();
         detectStepAdd(stack, pos, orientation, processed);
         // follow all path
         while (!stack.isEmpty()) {
-            int[] cur = stack.remove(0);
+            long[] cur = stack.remove(0);
             // add to result
-            result[cur[1]].add(cur[0]);
+            result[(int) cur[1]].add(cur[0]);
             // check all extensions and add to stack
             detectStep(stack, cur[0], (short) cur[1], processed);
         }
@@ -227,13 +227,13 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // helper class that wraps a (continuous set of sides)
     private static final class HullWrapper {
         // holds the data
-        private TIntHashSet[] data = new TIntHashSet[] {
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+        private TLongHashSet[] data = new TLongHashSet[] {
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
 
         // constructor
-        public HullWrapper(TIntHashSet[] data) {
+        public HullWrapper(TLongHashSet[] data) {
             for (int i = 0; i < 6; i++) {
                 this.data[i].addAll(data[i]);
             }
@@ -243,17 +243,17 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         public boolean contains(HullWrapper other) {
             // -- check if the other HullWrapper is contained in this hull wrapper
             // fetch a first side into X direction
-            short[] side = CubeIndexer.getPos(other.data[0].iterator().next());
+            short[] side = LongCubeIndexer.getShortPos(other.data[0].iterator().next());
             // search for all sides at the found YZ position in the potential "outer" HullWrapper
             ArrayList<Short> list = new ArrayList<Short>();
-            for (TIntIterator it = this.data[0].iterator(); it.hasNext();) {
-                short[] val = CubeIndexer.getPos(it.next());
+            for (TLongIterator it = this.data[0].iterator(); it.hasNext();) {
+                short[] val = LongCubeIndexer.getShortPos(it.next());
                 if (val[1] == side[1] && val[2] == side[2]) {
                     list.add(val[0]);
                 }
             }
-            for (TIntIterator it = this.data[1].iterator(); it.hasNext();) {
-                short[] val = CubeIndexer.getPos(it.next());
+            for (TLongIterator it = this.data[1].iterator(); it.hasNext();) {
+                short[] val = LongCubeIndexer.getShortPos(it.next());
                 if (val[1] == side[1] && val[2] == side[2]) {
                     list.add(val[0]);
                 }
@@ -286,28 +286,28 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         // holds known interior sides
         ArrayList<HullWrapper> interior = new ArrayList<HullWrapper>();
         // holds the processed sides
-        TIntHashSet[] processed = new TIntHashSet[]{
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+        TLongHashSet[] processed = new TLongHashSet[]{
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
         // true if a hole was found
         boolean interiorFound = false;
         // loop over all potential starting positions
         // (one direction is enough for this!)
-        for (int pos : getHullAsIds(0)) {
+        for (long pos : getHullAsIds(0)) {
             // check if this side was already processed with another starting position
             if (!processed[0].contains(pos)) {
                 // -- fetch the contour that this border belongs to
-                TIntHashSet[] detected = detectContour(pos, (short) 0, processed);
+                TLongHashSet[] detected = detectContour(pos, (short) 0, processed);
 
                 // -- analyse whether it's outside or inside facing hull
                 int minA = Integer.MAX_VALUE;
-                for (TIntIterator it = detected[0].iterator(); it.hasNext(); ) {
-                    minA = Math.min(minA, CubeIndexer.getPos(it.next())[0]);
+                for (TLongIterator it = detected[0].iterator(); it.hasNext(); ) {
+                    minA = Math.min(minA, LongCubeIndexer.getShortPos(it.next())[0]);
                 }
                 int minB = Integer.MAX_VALUE;
-                for (TIntIterator it = detected[1].iterator(); it.hasNext(); ) {
-                    minB = Math.min(minB, CubeIndexer.getPos(it.next())[0]);
+                for (TLongIterator it = detected[1].iterator(); it.hasNext(); ) {
+                    minB = Math.min(minB, LongCubeIndexer.getShortPos(it.next())[0]);
                 }
                 boolean isInsideHull = minA < minB;
 
@@ -363,8 +363,8 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     public short[][] getExteriorHull(int direction) {
         short[][] result = new short[exterior[direction].size()][3]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = exterior[direction].iterator(); it.hasNext(); ) {
-            short[] val = CubeIndexer.getPos(it.next());
+        for (TLongIterator it = exterior[direction].iterator(); it.hasNext(); ) {
+            short[] val = LongCubeIndexer.getShortPos(it.next());
             result[count][0] = val[0];
             result[count][1] = val[1];
             result[count][2] = val[2];
@@ -380,8 +380,8 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     public short[][] getInteriorHull(int direction) {
         short[][] result = new short[interior[direction].size()][3]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = interior[direction].iterator(); it.hasNext(); ) {
-            short[] val = CubeIndexer.getPos(it.next());
+        for (TLongIterator it = interior[direction].iterator(); it.hasNext(); ) {
+            short[] val = LongCubeIndexer.getShortPos(it.next());
             result[count][0] = val[0];
             result[count][1] = val[1];
             result[count][2] = val[2];
@@ -401,9 +401,9 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // get the empty positions of voxels inside
     // Required computeExterior() to be called before working
     @Override
-    public int[] getEmptyInterior() {
+    public long[] getEmptyInterior() {
         // result
-        TIntArrayList list = new TIntArrayList();
+        TLongArrayList list = new TLongArrayList();
         // -- fetch the interior faces into two opposite directions
         short[][] hullA = getInteriorHull(0);
         short[][] hullB = getInteriorHull(1);
@@ -414,17 +414,17 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             // find places to fill
             int iA = 0;
             int iB = 0;
-            TIntShortHashMap buffer = new TIntShortHashMap();
+            TLongShortHashMap buffer = new TLongShortHashMap();
             while (iB < hullB.length || iA < hullA.length) {
                 if (iA < hullA.length && (!(iB < hullB.length) || hullA[iA][0] < hullB[iB][0])) {
                     // front face - add the starting position
-                    buffer.put(CubeIndexer.getId(0, hullA[iA][1], hullA[iA][2]), hullA[iA][0]);
+                    buffer.put(LongCubeIndexer.getId(0, hullA[iA][1], hullA[iA][2]), hullA[iA][0]);
                     iA++;
                 } else {
                     // back face - add missing until finish positions
-                    short val = buffer.remove(CubeIndexer.getId(0, hullB[iB][1], hullB[iB][2]));
+                    short val = buffer.remove(LongCubeIndexer.getId(0, hullB[iB][1], hullB[iB][2]));
                     for (short pos = ++val; pos < hullB[iB][0]; pos++) {
-                        list.add(CubeIndexer.getId(pos, hullB[iB][1], hullB[iB][2]));
+                        list.add(LongCubeIndexer.getId(pos, hullB[iB][1], hullB[iB][2]));
                     }
                     iB++;
                 }
@@ -437,10 +437,10 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // get the voxel positions of voxels inside
     // Required computeExterior() to be called before working
     @Override
-    public int[] getFilledInterior() {
-        TIntArrayList result = new TIntArrayList();
+    public long[] getFilledInterior() {
+        TLongArrayList result = new TLongArrayList();
         // loop over all objects
-        for (int posId : getPosIds()) {
+        for (long posId : getPosIds()) {
             // exclude positions that have an exterior face attached
             if (!exterior[0].contains(posId) && !exterior[1].contains(posId) &&
                     !exterior[2].contains(posId) && !exterior[3].contains(posId) &&
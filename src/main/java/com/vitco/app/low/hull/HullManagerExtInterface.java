@@ -26,9 +26,9 @@ public interface HullManagerExtInterface {
 
     // get the empty positions of voxels inside
     // Required computeExterior() to be called before working
-    int[] getEmptyInterior();
+    long[] getEmptyInterior();
 
     // get the voxel positions of voxels inside
     // Required computeExterior() to be called before working
-    int[] getFilledInterior();
+    long[] getFilledInterior();
 }
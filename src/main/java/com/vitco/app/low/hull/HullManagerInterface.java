@@ -1,7 +1,7 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.util.Set;
 
@@ -17,13 +17,13 @@ public interface HullManagerInterface<T> {
 
     boolean contains(short[] pos);
 
-    boolean contains(int posId);
+    boolean contains(long posId);
 
     boolean containsBorder(short[] pos, int orientation);
 
-    boolean containsBorder(int posId, int orientation);
+    boolean containsBorder(long posId, int orientation);
 
-    int[] getPosIds();
+    long[] getPosIds();
 
     // obtain object by position
     T get(short[] pos);
@@ -32,13 +32,13 @@ public interface HullManagerInterface<T> {
     public void update(short[] pos, T object);
 
     // remove an object from this hull finder
-    void update(int posId, T object);
+    void update(long posId, T object);
 
     // remove an object from this hull finder
     public boolean clearPosition(short[] pos);
 
     // remove an object from this hull finder
-    boolean clearPosition(int posId);
+    boolean clearPosition(long posId);
 
     // get the hull additions (in direction 0-5)
     Set<T> getHullAdditions(int direction);
@@ -50,10 +50,10 @@ public interface HullManagerInterface<T> {
     short[][] getHull(int direction);
 
     // get the visible voxel ids
-    TIntHashSet getVisibleVoxelsIds();
+    TLongHashSet getVisibleVoxelsIds();
 
     // get the current hull as ids
-    int[] getHullAsIds(int direction);
+    long[] getHullAsIds(int direction);
 
     // get the outline of all voxels into one direction
     SimpleVector[][] getOutline(int direction);
@@ -7,6 +7,11 @@ import org.poly2tri.triangulation.delaunay.DelaunayTriangle;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * - Testing Poly2Tri and in particular new conversion "voxel -> polygon" by doing in depth validation of created geometry.
@@ -32,4 +37,48 @@ public class TestGrid2TriPolyFast extends AbstractTriangulationTest {
     public void testTriangulationCase() throws IOException {
         super.testTriangulationCase("test.png", "out.png", 20, false);
     }
+
+    // helper - the points of all triangles
+    private static String describe(ArrayList<DelaunayTriangle> tris) {
+        StringBuilder result = new StringBuilder();
+        for (DelaunayTriangle tri : tris) {
+            for (int i = 0; i < 3; i++) {
+                result.append(tri.points[i].getX()).append(",").append(tri.points[i].getY()).append(" ");
+            }
+        }
+        return result.toString();
+    }
+
+    // triangulating on several threads gives the same result
+    @Test
+    public void testParallel() throws Exception {
+        final ArrayList<boolean[][]> grids = new ArrayList<boolean[][]>();
+        ArrayList<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            Random rand = new Random(i);
+            boolean[][] data = new boolean[rand.nextInt(50) + 5][rand.nextInt(50) + 5];
+            for (int j = 0, count = data.length * data[0].length; j < count; j++) {
+                data[rand.nextInt(data.length)][rand.nextInt(data[0].length)] = true;
+            }
+            grids.add(data);
+            expected.add(describe(triangulate(data)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+            for (final boolean[][] data : grids) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return describe(triangulate(data));
+                    }
+                }));
+            }
+            for (int i = 0; i < grids.size(); i++) {
+                assert expected.get(i).equals(results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
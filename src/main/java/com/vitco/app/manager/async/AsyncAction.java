@@ -15,6 +15,9 @@ public abstract class AsyncAction implements Runnable {
     // name of this AsyncAction
     public final String name;
 
+    // the group of this AsyncAction (null if the action is exclusive)
+    public final String group;
+
     // can be overriden to delay execution of this AsyncAction
     public boolean ready() {
         return true;
@@ -25,7 +28,16 @@ public abstract class AsyncAction implements Runnable {
     // same name queueing up in the AsyncActionManager
     // IMPORTANT: it doesn't enforce this for not delayed actions
     public AsyncAction(String name) {
+        this(name, null);
+    }
+
+    // actions of the same group are executed in order, but in parallel to
+    // actions of other groups (e.g. the rendering of the different views)
+    // IMPORTANT: grouped actions must not change shared data, they only
+    // run while no exclusive (not grouped) action is executed
+    public AsyncAction(String name, String group) {
         this.name = name;
+        this.group = group;
     }
 
     // once this reaches Integer.MAX_VALUE it will reset to Integer.MIN_VALUE
@@ -35,6 +47,7 @@ public abstract class AsyncAction implements Runnable {
         synchronized (AsyncAction.class) {
             name = String.valueOf(c++);
         }
+        group = null;
     }
 
 }
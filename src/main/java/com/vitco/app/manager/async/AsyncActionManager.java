@@ -9,9 +9,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Manages Async Actions
+ *
+ * Actions without a group are executed one after another. Grouped actions are executed in
+ * order per group and in parallel to other groups, but never while an action without group runs.
  */
 public class AsyncActionManager {
 
@@ -56,14 +61,70 @@ public class AsyncActionManager {
     // execute each AsyncAction
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
+    // one executor per group, so the actions of a group keep their order
+    private final HashMap<String, ExecutorService> groupExecutors = new HashMap<String, ExecutorService>();
+
+    // grouped actions share this lock, the other actions need it exclusively
+    // (fair, so the exclusive actions are not starved by the grouped actions)
+    private final ReentrantReadWriteLock actionLock = new ReentrantReadWriteLock(true);
+
+    // execute an action on the correct executor
+    private void execute(final AsyncAction action) {
+        if (action.group == null) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    actionLock.writeLock().lock();
+                    try {
+                        action.run();
+                    } finally {
+                        actionLock.writeLock().unlock();
+                    }
+                }
+            });
+        } else {
+            ExecutorService groupExecutor;
+            synchronized (groupExecutors) {
+                groupExecutor = groupExecutors.get(action.group);
+                if (groupExecutor == null) {
+                    groupExecutor = Executors.newSingleThreadExecutor();
+                    groupExecutors.put(action.group, groupExecutor);
+                }
+            }
+            groupExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    actionLock.readLock().lock();
+                    try {
+                        action.run();
+                    } finally {
+                        actionLock.readLock().unlock();
+                    }
+                }
+            });
+        }
+    }
+
     private final LifeTimeThread workerThread = new LifeTimeThread() {
 
         @Override
         public void onAfterStop() {
-            executor.shutdown();
+            ArrayList<ExecutorService> executors = new ArrayList<ExecutorService>();
+            executors.add(executor);
+            synchronized (groupExecutors) {
+                executors.addAll(groupExecutors.values());
+            }
+            for (ExecutorService service : executors) {
+                service.shutdown();
+            }
             // Wait until all threads are finish
-            //noinspection StatementWithEmptyBody
-            while (!executor.isTerminated()) {}
+            try {
+                for (ExecutorService service : executors) {
+                    service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
         @Override
@@ -89,7 +150,7 @@ public class AsyncActionManager {
                     // remove first in case the action adds
                     // itself to the cue again (e.g. for refreshWorld())
                     actionNames.remove(actionName);
-                    executor.execute(action);
+                    execute(action);
                 } else {
                     idleStack.add(actionName);
                 }
@@ -0,0 +1,165 @@
+package com.vitco.app.manager.async;
+
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.SimpleVector;
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.world.CWorld;
+import com.vitco.app.core.world.WorldManager;
+import com.vitco.app.manager.action.ActionManager;
+import com.vitco.app.manager.thread.LifeTimeThread;
+import com.vitco.app.manager.thread.ThreadManagerInterface;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the ordering of grouped and exclusive async actions and measure
+ * the frame rate when four views are rendered.
+ */
+public class AsyncActionManagerTest {
+
+    // helper - manager with simple thread handling
+    private static AsyncActionManager createManager(final ArrayList<LifeTimeThread> threads) {
+        AsyncActionManager asyncActionManager = new AsyncActionManager();
+        asyncActionManager.setThreadManager(new ThreadManagerInterface() {
+            @Override
+            public void setActionManager(ActionManager actionManager) {}
+            @Override
+            public void manage(LifeTimeThread thread) {
+                threads.add(thread);
+                thread.start();
+            }
+            @Override
+            public void init() {}
+            @Override
+            public void remove(LifeTimeThread thread) {
+                thread.stopThread();
+            }
+        });
+        asyncActionManager.init();
+        return asyncActionManager;
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+        ArrayList<LifeTimeThread> threads = new ArrayList<LifeTimeThread>();
+        final AsyncActionManager asyncActionManager = createManager(threads);
+        final int groups = 4;
+        final int actions = 200;
+        final CountDownLatch done = new CountDownLatch(groups * actions + actions);
+        final AtomicInteger groupRunning = new AtomicInteger(0);
+        final AtomicInteger exclusiveRunning = new AtomicInteger(0);
+        final AtomicInteger errors = new AtomicInteger(0);
+        final int[] lastIndex = new int[groups];
+        for (int i = 0; i < actions; i++) {
+            for (int g = 0; g < groups; g++) {
+                final int groupIndex = g;
+                final int index = i;
+                asyncActionManager.addAsyncAction(new AsyncAction("action" + g + "_" + i, "group" + g) {
+                    @Override
+                    public void performAction() {
+                        groupRunning.incrementAndGet();
+                        // the actions of a group keep their order
+                        if (exclusiveRunning.get() != 0 || lastIndex[groupIndex] != index) {
+                            errors.incrementAndGet();
+                        }
+                        lastIndex[groupIndex] = index + 1;
+                        Thread.yield();
+                        groupRunning.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+            asyncActionManager.addAsyncAction(new AsyncAction() {
+                @Override
+                public void performAction() {
+                    // nothing else runs while an exclusive action runs
+                    if (exclusiveRunning.incrementAndGet() != 1 || groupRunning.get() != 0) {
+                        errors.incrementAndGet();
+                    }
+                    Thread.yield();
+                    exclusiveRunning.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assert done.await(30, TimeUnit.SECONDS);
+        assert errors.get() == 0;
+        for (LifeTimeThread thread : threads) {
+            thread.stopThread();
+        }
+    }
+
+    // render four views (as the main view and the side views), returns the frame rate
+    private static float renderViews(boolean grouped, final int frames) throws Exception {
+        ArrayList<LifeTimeThread> threads = new ArrayList<LifeTimeThread>();
+        final AsyncActionManager asyncActionManager = createManager(threads);
+        final CountDownLatch done = new CountDownLatch(4);
+        ArrayList<AsyncAction> renderActions = new ArrayList<AsyncAction>();
+        Random rand = new Random(1);
+        for (int side = -1; side < 3; side++) {
+            final CWorld world = new CWorld(true, side, false);
+            for (int x = 0; x < 24; x++) {
+                for (int y = 0; y < 24; y++) {
+                    for (int z = 0; z < 24; z++) {
+                        if (rand.nextInt(3) != 0) {
+                            world.updateVoxel(new Voxel(0, x - 12, -y, z - 12, 0xFF000000 | rand.nextInt(), 0));
+                        }
+                    }
+                }
+            }
+            //noinspection StatementWithEmptyBody
+            while (!world.refreshWorld()) {}
+            world.getCamera().setPosition(new SimpleVector(-200, -150, -300));
+            world.getCamera().lookAt(new SimpleVector(0, -12, 0));
+            final FrameBuffer buffer = new FrameBuffer(1024, 768, FrameBuffer.SAMPLINGMODE_NORMAL);
+            renderActions.add(new AsyncAction("render" + side, grouped ? "render" + side : null) {
+                private int count = 0;
+                @Override
+                public void performAction() {
+                    buffer.clear(Color.BLACK);
+                    // as in the views (jPCT is not thread safe)
+                    WorldManager.JPCT_LOCK.readLock().lock();
+                    try {
+                        world.renderScene(buffer);
+                        world.draw(buffer);
+                    } finally {
+                        WorldManager.JPCT_LOCK.readLock().unlock();
+                    }
+                    buffer.update();
+                    // render again (as on camera changes)
+                    if (++count < frames) {
+                        asyncActionManager.addAsyncAction(this);
+                    } else {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        System.gc();
+        long time = System.currentTimeMillis();
+        for (AsyncAction action : renderActions) {
+            asyncActionManager.addAsyncAction(action);
+        }
+        assert done.await(60, TimeUnit.SECONDS);
+        float fps = frames * 4 * 1000f / (System.currentTimeMillis() - time);
+        for (LifeTimeThread thread : threads) {
+            thread.stopThread();
+        }
+        return fps;
+    }
+
+    // the frame rate of all views together
+    @Test
+    public void benchmark() throws Exception {
+        for (int run = 0; run < 3; run++) {
+            System.out.println(String.format("Sequential: %.1f fps, per view threads: %.1f fps (%d cores)",
+                    renderViews(false, 50), renderViews(true, 50), Runtime.getRuntime().availableProcessors()));
+        }
+    }
+}
@@ -124,7 +124,7 @@ public class Preferences implements PreferencesInterface {
         }
     }
 
-    private static String getUserDataDirectory() {
+    public static String getUserDataDirectory() {
         return System.getProperty("user.home") + File.separator + ".voxelshop" + File.separator;
     }
 
@@ -14,7 +14,7 @@ import java.awt.image.BufferedImage;
  */
 public final class VitcoSettings {
 
-    // object that all data access is synced to
+    // object that the preferences and the error handler are synced to
     public static final Object SYNC = new Object();
 
     // color for the "big bounding box"
@@ -87,7 +87,9 @@ public final class VitcoSettings {
 
     // cursor
     public static final Cursor CURSOR_DEFAULT = Cursor.getDefaultCursor();
-    public static final Cursor CURSOR_BLANK = Toolkit.getDefaultToolkit().createCustomCursor(
+    // (no custom cursor without a display, e.g. for the batch converter)
+    public static final Cursor CURSOR_BLANK = GraphicsEnvironment.isHeadless() ? CURSOR_DEFAULT :
+            Toolkit.getDefaultToolkit().createCustomCursor(
             new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), new Point(0, 0), "blank cursor");
 
     // initial settings
@@ -205,11 +207,30 @@ public final class VitcoSettings {
             new Color(243, 243, 243), new Color(255, 255, 255)
     };
 
-    // maximum voxel count per layer (and for picture import)
-    public static final int MAX_VOXEL_COUNT_PER_LAYER = 100000;
+    // amount of changed positions that are remembered for the incremental view updates (2 ^ bits)
+    public static final int CHANGE_LOG_BITS = 18;
+
+    // memory budget for the undo history (older history is moved to a temporary file)
+    public static final long HISTORY_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    // size of the autosave journal before it is folded into a new base file
+    public static final long JOURNAL_COMPACTION_SIZE = 16L * 1024 * 1024;
 
     // grid size for triangulation
     public static final int TRI_GRID_SIZE = 13;
+
+    // worker threads that triangulate changed areas (shared by all views)
+    public static final int TRIANGULATION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // maximum amount of triangulated areas that are added to a view per refresh
+    public static final int MAX_AREA_COMMITS = 10;
+    // time to wait for a triangulation when nothing else can be done (ms)
+    public static final int TRIANGULATION_WAIT = 10;
+    // rows of the z buffer that are post-processed (shader, t-junctions) as one task
+    public static final int POST_PROCESSING_TILE_ROWS = 32;
+    // smaller z buffers are post-processed in one loop (the tiles cost more than they save)
+    public static final int POST_PROCESSING_MIN_TILED_SIZE = 512 * 512;
+    // pixels of the image strips that are rendered as one task by the offline renderer
+    public static final int OFFLINE_RENDER_STRIP_PIXELS = 1024 * 1024;
     //offset
     public static final int TRI_GRID_OFFSET = 6;
 
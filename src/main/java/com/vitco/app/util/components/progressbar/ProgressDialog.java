@@ -15,6 +15,7 @@ import java.beans.PropertyChangeListener;
  * A progress bar that encapsulates a ProgressWorker and displays the status of this action.
  *
  * The progress bar blocks all user interaction but prevents the program from freezing.
+ * A dialog that is not modal only shows the progress and the user can keep working.
  */
 public class ProgressDialog extends JDialog {
 
@@ -47,7 +48,14 @@ public class ProgressDialog extends JDialog {
     // constructor
     public ProgressDialog(Frame owner) {
         // make sure this JDialog is blocking (set modal flag)
-        super(owner, true);
+        this(owner, true);
+    }
+
+    // constructor (start() only blocks if the dialog is modal)
+    public ProgressDialog(Frame owner, boolean modal) {
+        super(owner, modal);
+        // do not take the keyboard focus from the owner
+        this.setFocusableWindowState(modal);
 
         // hide title and close button of frame
         this.setUndecorated(true);
@@ -0,0 +1,432 @@
+package com.vitco.app.util.file;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * To read a file (binary or not) from a little endian byte buffer.
+ *
+ * Provides the methods of FileIn and RandomAccessFileIn, but the file is memory
+ * mapped (or read at once if it is small), so reading a value does not result in
+ * a native call. The "Rev" methods read little endian values, the others big endian.
+ */
+public class ByteBufferIn {
+
+    // files smaller than this are read into memory instead of being mapped
+    private static final int MAP_THRESHOLD = 1024 * 1024;
+
+    private final ByteBuffer buffer;
+
+    private final File file;
+    public final File getInternalFile() {
+        return file;
+    }
+
+    // constructor
+    public ByteBufferIn(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + file);
+            }
+            ByteBuffer content;
+            if (size < MAP_THRESHOLD) {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining() && channel.read(content) != -1) {}
+                content.flip();
+            } else {
+                // the mapping stays valid when the channel is closed
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            buffer = content.order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // constructor
+    public ByteBufferIn(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    // constructor (e.g. for data in memory)
+    public ByteBufferIn(ByteBuffer buffer) {
+        this.file = null;
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // share the content, but read with a separate position
+    private ByteBufferIn(ByteBufferIn other) {
+        this.file = other.file;
+        this.buffer = other.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.position(0);
+    }
+
+    // a reader of the same content that starts at the beginning
+    public final ByteBufferIn duplicate() {
+        return new ByteBufferIn(this);
+    }
+
+    // make sure that there are enough bytes left
+    private void require(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            buffer.position(buffer.limit());
+            throw new EOFException();
+        }
+    }
+
+    // ---------------------
+    // FileIn methods
+
+    // returns null if eof is reached
+    public String readLine() {
+        StringBuilder lineBuf = new StringBuilder();
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            int c1 = buffer.get() & 0xFF;
+            switch (c1) {
+                case '\n':
+                    return lineBuf.toString();
+                case '\r':
+                    if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                        buffer.get();
+                    }
+                    return lineBuf.toString();
+                default:
+                    lineBuf.append((char) c1);
+            }
+        }
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int read(byte[] b) {
+        if (b.length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(b.length, buffer.remaining());
+        buffer.get(b, 0, count);
+        return count;
+    }
+
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return Integer.reverseBytes(buffer.getInt());
+    }
+
+    public int readIntRev() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public float readFloatRev() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readUTF8String(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        if (length != read(bytes)) {
+            return null;
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    public String readASCIIString(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        if (length != read(bytes)) {
+            return null;
+        }
+        return new String(bytes, "ASCII");
+    }
+
+    // read space terminated string
+    public String readSpaceString() throws IOException {
+        if (!nextSpaceToken()) {
+            return null;
+        }
+        return new String(getTokenBytes(tokenStart, tokenEnd), "ISO-8859-1");
+    }
+
+    // ---------------------
+    // tokenizer (no objects are created for the common cases)
+
+    // the bounds of the last space terminated token
+    private int tokenStart = 0;
+    private int tokenEnd = 0;
+
+    // find the next space terminated token (false if the end of the file is reached first)
+    private boolean nextSpaceToken() {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        for (int i = pos; i < limit; i++) {
+            if (buffer.get(i) == 32) {
+                tokenStart = pos;
+                tokenEnd = i;
+                buffer.position(i + 1);
+                return true;
+            }
+        }
+        buffer.position(limit);
+        return false;
+    }
+
+    private byte[] getTokenBytes(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return bytes;
+    }
+
+    // powers of ten that are exact as doubles
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // read a space terminated integer (same result as parsing readSpaceString())
+    public int readSpaceInt(int defaultValue) {
+        if (!nextSpaceToken() || tokenStart == tokenEnd) {
+            return defaultValue;
+        }
+        int i = tokenStart;
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == tokenEnd) {
+                return defaultValue;
+            }
+        }
+        long result = 0;
+        for (; i < tokenEnd; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return defaultValue;
+            }
+            result = result * 10 + digit;
+            if (result > Integer.MAX_VALUE + 1L) {
+                return defaultValue;
+            }
+        }
+        result = negative ? -result : result;
+        return result > Integer.MAX_VALUE ? defaultValue : (int) result;
+    }
+
+    // read a space terminated float (same result as parsing readSpaceString())
+    public float readSpaceFloat(float defaultValue) throws IOException {
+        if (!nextSpaceToken()) {
+            return defaultValue;
+        }
+        // surrounding white space is ignored
+        int start = tokenStart;
+        int end = tokenEnd;
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        // simple decimal numbers that can be computed exactly
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= (1L << 53) / 10) {
+                    break; // too many digits (not exact)
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction != -1) {
+                    fraction++;
+                }
+            } else if (b == '.' && fraction == -1) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && fraction < POW10.length) {
+            // correctly rounded, since the mantissa and the power of ten are exact
+            double result = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+            // rounding to float is only ambiguous if the double is exactly between two floats
+            if ((Double.doubleToRawLongBits(result) & 0x1FFFFFFFL) != 0x10000000L) {
+                return (float) (negative ? -result : result);
+            }
+        }
+        // everything else (e.g. exponents)
+        try {
+            return Float.parseFloat(new String(getTokenBytes(start, end), "ISO-8859-1"));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return Long.reverseBytes(buffer.getLong());
+    }
+
+    public char readChar() throws IOException {
+        require(2);
+        return Character.reverseBytes(buffer.getChar());
+    }
+
+    public int readByteUnsigned() {
+        return read();
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return Short.reverseBytes(buffer.getShort());
+    }
+
+    public short readShortRev() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readShortUnsigned() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    public int readShortRevUnsigned() throws IOException {
+        return readShortRev() & 0xffff;
+    }
+
+    // finalize
+    public void finish() {
+        // nothing to release (the mapping is released by the garbage collector)
+    }
+
+    public int readIntRevUnsigned() throws IOException {
+        return readIntRev() & 0xffffff;
+    }
+
+    public int readIntUnsigned() throws IOException {
+        return readInt() & 0xffffff;
+    }
+
+    public long readLongRev() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public boolean skipBytes(int count) {
+        if (count < 0 || count > buffer.remaining()) {
+            buffer.position(buffer.limit());
+            return false;
+        }
+        buffer.position(buffer.position() + count);
+        return true;
+    }
+
+    public BufferedImage readImage() throws IOException {
+        int length = readIntRev();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    // ---------------------
+    // RandomAccessFileIn methods
+
+    public long length() {
+        return buffer.limit();
+    }
+
+    public long getFilePointer() {
+        return buffer.position();
+    }
+
+    // positions after the end of the file are moved to the end
+    public void seek(long pos) {
+        buffer.position((int) Math.max(0, Math.min(pos, buffer.limit())));
+    }
+
+    public static final int CURRENT = 1;
+    public static final int BEGINNING = 2;
+
+    public void seek(int length, int type) {
+        switch (type) {
+            case CURRENT:
+                skipBytes(length);
+                break;
+            default:
+                seek(length);
+                break;
+        }
+    }
+
+    public int readUInt8() throws IOException {
+        return ((int)readByte()) & 0xFF;
+    }
+
+    public int readUInt32() throws IOException {
+        return readIntRevUnsigned();
+    }
+
+    public int readInt32() throws IOException {
+        return readIntRev();
+    }
+
+    public String readASCII(int length) throws IOException {
+        return readASCIIString(length);
+    }
+
+    public byte[] readBytes(int length) {
+        byte[] result = new byte[length];
+        read(result);
+        return result;
+    }
+
+    public void close() {
+        finish();
+    }
+}
@@ -0,0 +1,215 @@
+package com.vitco.app.util.file;
+
+import com.vitco.app.util.misc.NumberTools;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Test that the byte buffer reader behaves like FileIn and RandomAccessFileIn.
+ */
+public class ByteBufferInTest {
+
+    // write random bytes to a temporary file
+    private static File createFile(int size, long seed) throws Exception {
+        File file = File.createTempFile("reader", ".bin");
+        file.deleteOnExit();
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        // some text lines
+        byte[] text = "first line\r\nsecond\rthird\nspace string \n".getBytes("ASCII");
+        System.arraycopy(text, 0, bytes, 0, Math.min(text.length, size));
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testSameAsFileIn() throws Exception {
+        // small files are read, large files are mapped
+        for (int size : new int[] {1000, 3 * 1024 * 1024}) {
+            File file = createFile(size, size);
+            FileIn fileIn = new FileIn(file);
+            RandomAccessFileIn raf = new RandomAccessFileIn(file, "r");
+            ByteBufferIn in = new ByteBufferIn(file);
+            ByteBufferIn rin = in.duplicate();
+            try {
+                for (int i = 0; i < 3; i++) {
+                    assert fileIn.readLine().equals(in.readLine());
+                }
+                assert fileIn.readSpaceString().equals(in.readSpaceString());
+                Random rand = new Random(1);
+                while (in.getFilePointer() < size - 20) {
+                    switch (rand.nextInt(12)) {
+                        case 0: assert fileIn.readIntRev() == in.readIntRev(); break;
+                        case 1: assert fileIn.readInt() == in.readInt(); break;
+                        case 2: assert fileIn.readShortRevUnsigned() == in.readShortRevUnsigned(); break;
+                        case 3: assert fileIn.readShort() == in.readShort(); break;
+                        case 4: assert fileIn.readByteUnsigned() == in.readByteUnsigned(); break;
+                        case 5: assert fileIn.readByte() == in.readByte(); break;
+                        case 6: assert Float.compare(Float.intBitsToFloat(fileIn.readIntRev()), in.readFloatRev()) == 0; break;
+                        case 7: assert Double.compare(fileIn.readDouble(), in.readDouble()) == 0; break;
+                        case 8: assert fileIn.readLongRev() == in.readLongRev(); break;
+                        case 9: assert fileIn.readIntRevUnsigned() == in.readIntRevUnsigned(); break;
+                        case 10: assert fileIn.readASCIIString(3).equals(in.readASCIIString(3)); break;
+                        default: assert fileIn.skipBytes(5) == in.skipBytes(5); break;
+                    }
+                }
+                // random access
+                for (int i = 0; i < 100; i++) {
+                    long pos = rand.nextInt(size - 10);
+                    raf.seek(pos);
+                    rin.seek(pos);
+                    assert raf.readInt() == rin.readInt();
+                    assert raf.readUInt8() == rin.readUInt8();
+                    assert raf.readUInt32() == rin.readUInt32();
+                    assert Float.compare(raf.readFloat(), rin.readFloat()) == 0;
+                    assert raf.getFilePointer() == rin.getFilePointer();
+                }
+                assert raf.length() == rin.length();
+                // end of file
+                rin.seek(size - 2);
+                assert rin.read() != -1;
+                assert rin.readByteUnsigned() != -1;
+                assert rin.read() == -1;
+                assert rin.read(new byte[4]) == -1;
+                assert rin.readLine() == null;
+                assert !rin.skipBytes(1);
+                try {
+                    rin.readIntRev();
+                    assert false;
+                } catch (EOFException ignored) {}
+            } finally {
+                fileIn.finish();
+                raf.close();
+                in.finish();
+            }
+        }
+    }
+
+    // space separated tokens (valid and invalid)
+    private static String createTokens(int count, long seed) {
+        String[] special = new String[] {"", "-", "+", ".", "-0", "+7", "1.", ".5", "1e3", "2.5E-2", "NaN", "-Infinity",
+                "0x10", "1f", "\n12", "3\n", "1.2.3", "2147483647", "2147483648", "-2147483648", "-2147483649",
+                "99999999999", "0.00000000001", "123456789.123", "1a"};
+        Random rand = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            switch (rand.nextInt(5)) {
+                case 0: text.append(special[rand.nextInt(special.length)]); break;
+                case 1: text.append(rand.nextInt()); break;
+                case 2: text.append(rand.nextFloat()); break;
+                case 3: text.append(rand.nextInt(1000) / 100f); break;
+                default: text.append(rand.nextInt(256) / 255f); break;
+            }
+            text.append(' ');
+        }
+        // unterminated token at the end
+        return text.append("12").toString();
+    }
+
+    @Test
+    public void testTokenizer() throws Exception {
+        int count = 100000;
+        byte[] text = createTokens(count, 1).getBytes("ASCII");
+        ByteBufferIn strings = new ByteBufferIn(ByteBuffer.wrap(text));
+        ByteBufferIn ints = new ByteBufferIn(ByteBuffer.wrap(text));
+        ByteBufferIn floats = new ByteBufferIn(ByteBuffer.wrap(text));
+        for (int i = 0; i < count; i++) {
+            String token = strings.readSpaceString();
+            assert NumberTools.parseInt(token, -1) == ints.readSpaceInt(-1) : token;
+            assert Float.compare(NumberTools.parseFloat(token, -1f), floats.readSpaceFloat(-1f)) == 0 : token;
+        }
+        // no space before the end of the file
+        assert strings.readSpaceString() == null;
+        assert ints.readSpaceInt(-1) == -1;
+        assert floats.readSpaceFloat(-1f) == -1f;
+    }
+
+    // compare the speed of reading many small values
+    @Test
+    public void benchmark() throws Exception {
+        int count = 1024 * 1024;
+        File file = File.createTempFile("benchmark", ".bin");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (int i = 0; i < count; i++) {
+                out.writeInt(i);
+                out.writeShort(i);
+                out.writeByte(i);
+            }
+        } finally {
+            out.close();
+        }
+        for (int run = 0; run < 2; run++) {
+            long time = System.currentTimeMillis();
+            FileIn fileIn = new FileIn(file);
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += fileIn.readIntRev() + fileIn.readShortRevUnsigned() + fileIn.readByteUnsigned();
+            }
+            fileIn.finish();
+            System.out.println("FileIn: " + (System.currentTimeMillis() - time) + " ms");
+
+            time = System.currentTimeMillis();
+            ByteBufferIn in = new ByteBufferIn(file);
+            long other = 0;
+            for (int i = 0; i < count; i++) {
+                other += in.readIntRev() + in.readShortRevUnsigned() + in.readByteUnsigned();
+            }
+            in.finish();
+            System.out.println("ByteBufferIn: " + (System.currentTimeMillis() - time) + " ms");
+            assert sum == other;
+        }
+    }
+
+    // compare the speed of parsing numbers from text
+    @Test
+    public void benchmarkTokenizer() throws Exception {
+        int count = 4 * 1024 * 1024;
+        Random rand = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i += 4) {
+            text.append(rand.nextInt(2)).append(' ');
+            for (int j = 0; j < 3; j++) {
+                text.append(rand.nextInt(256) / 255f).append(' ');
+            }
+        }
+        byte[] bytes = text.toString().getBytes("ASCII");
+        for (int run = 0; run < 2; run++) {
+            long time = System.currentTimeMillis();
+            ByteBufferIn in = new ByteBufferIn(ByteBuffer.wrap(bytes));
+            double sum = 0;
+            for (int i = 0; i < count; i += 4) {
+                sum += NumberTools.parseInt(in.readSpaceString(), 0);
+                for (int j = 0; j < 3; j++) {
+                    sum += NumberTools.parseFloat(in.readSpaceString(), 0f);
+                }
+            }
+            System.out.println("Strings: " + (System.currentTimeMillis() - time) + " ms");
+
+            time = System.currentTimeMillis();
+            in = new ByteBufferIn(ByteBuffer.wrap(bytes));
+            double other = 0;
+            for (int i = 0; i < count; i += 4) {
+                other += in.readSpaceInt(0);
+                for (int j = 0; j < 3; j++) {
+                    other += in.readSpaceFloat(0f);
+                }
+            }
+            System.out.println("Tokenizer: " + (System.currentTimeMillis() - time) + " ms");
+            assert sum == other;
+        }
+    }
+}
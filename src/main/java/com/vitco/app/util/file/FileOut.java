@@ -1,8 +1,6 @@
 package com.vitco.app.util.file;
 
-import com.googlecode.pngtastic.core.PngChunk;
-import com.googlecode.pngtastic.core.PngImage;
-import com.googlecode.pngtastic.core.PngOptimizer;
+import com.vitco.app.util.graphic.PngEncoder;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -104,40 +102,13 @@ public class FileOut {
 
     // write an image file compressed
     public void writeImageCompressed(BufferedImage img) throws IOException {
+        writeImageData(PngEncoder.encode(img, true));
+    }
 
-        // convert to png
-        ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-        ImageIO.write(img, "png", tmp);
-        tmp.close();
-
-        // compress
-        PngImage pngImage = new PngOptimizer().optimize(
-                new PngImage(new ByteArrayInputStream(tmp.toByteArray())),
-                9
-        );
-
-        // extract compressed data as png
-        ByteArrayOutputStream compressedPngData = new ByteArrayOutputStream();
-        DataOutputStream outputStreamWrapper = new DataOutputStream(compressedPngData);
-        outputStreamWrapper.writeLong(PngImage.SIGNATURE);
-        for (PngChunk chunk : pngImage.getChunks())
-        {
-            outputStreamWrapper.writeInt(chunk.getLength());
-            outputStreamWrapper.write(chunk.getType());
-            outputStreamWrapper.write(chunk.getData());
-            int i = (int)chunk.getCRC();
-            outputStreamWrapper.writeInt(i);
-        }
-        outputStreamWrapper.close();
-        compressedPngData.close();
-
-        // convert to png byte array
-        byte[] data = compressedPngData.toByteArray();
-        int contentLength = data.length;
-
+    // write an encoded image (e.g. from PngEncoder)
+    public void writeImageData(byte[] data) throws IOException {
         // write the size
-        this.writeIntRev(contentLength);
-
+        this.writeIntRev(data.length);
         // write the data
         p.write(data);
     }
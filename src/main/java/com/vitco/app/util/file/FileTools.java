@@ -62,6 +62,13 @@ public class FileTools {
         return name.substring(0, name.lastIndexOf('.'));
     }
 
+    // return the extension of a file (empty if there is none)
+    public static String extractExtension(File f) {
+        String name = f.getName();
+        String withoutExtension = extractNameWithoutExtension(f);
+        return name.length() > withoutExtension.length() ? name.substring(withoutExtension.length() + 1) : "";
+    }
+
     // remove extension from file and return file path without extension
     public static String removeExtension(File f) {
         // if it's a directory, don't remove the extension
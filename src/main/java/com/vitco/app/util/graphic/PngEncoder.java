@@ -0,0 +1,176 @@
+package com.vitco.app.util.graphic;
+
+import com.googlecode.pngtastic.core.PngChunk;
+import com.googlecode.pngtastic.core.PngImage;
+import com.googlecode.pngtastic.core.PngOptimizer;
+import com.vitco.app.util.misc.WorkerPool;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Encodes images as png on the shared worker threads.
+ *
+ * The results are cached by image content, so an image that did not change since
+ * the last export is not encoded (and optimized) again. The images must not be
+ * modified while they are encoded.
+ */
+public final class PngEncoder {
+
+    // prevent instantiation
+    private PngEncoder() {}
+
+    // the maximum size of all cached results (in bytes)
+    private static final long CACHE_SIZE = 64 * 1024 * 1024;
+
+    // encoded images by content (least recently used first)
+    private static final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private static long cacheSize = 0;
+
+    // notified when an image is encoded (in order, on the calling thread)
+    public interface EncodeListener {
+        void onEncoded(int index);
+    }
+
+    // the cache key of an image (null if the content can not be hashed)
+    private static String getKey(BufferedImage image, boolean optimize) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        int type = buffer.getDataType();
+        if (type != DataBuffer.TYPE_BYTE && type != DataBuffer.TYPE_INT) {
+            return null;
+        }
+        // the hash only covers the data buffer, so the buffer needs to contain exactly
+        // this image (e.g. not for sub images) and the color model needs to be known
+        // from the type (e.g. not for indexed images with different palettes)
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 ||
+                raster.getSampleModelTranslateY() != 0 || buffer.getNumBanks() != 1 || buffer.getOffset() != 0 ||
+                buffer.getSize() != image.getWidth() * image.getHeight() * raster.getNumDataElements() ||
+                image.getType() == BufferedImage.TYPE_CUSTOM || image.getColorModel() instanceof IndexColorModel) {
+            return null;
+        }
+        return GraphicTools.getHash(image) + "_" + image.getType() + "_" +
+                image.getWidth() + "x" + image.getHeight() + (optimize ? "_optimized" : "");
+    }
+
+    private static synchronized byte[] getCached(String key) {
+        return cache.get(key);
+    }
+
+    private static synchronized void putCached(String key, byte[] data) {
+        byte[] previous = cache.put(key, data);
+        cacheSize += data.length - (previous == null ? 0 : previous.length);
+        // remove the least recently used results
+        for (Iterator<Map.Entry<String, byte[]>> it = cache.entrySet().iterator();
+             it.hasNext() && cacheSize > CACHE_SIZE; ) {
+            cacheSize -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    // clear all cached results
+    public static synchronized void clearCache() {
+        cache.clear();
+        cacheSize = 0;
+    }
+
+    // encode an image (in this thread)
+    private static byte[] encodeImage(BufferedImage image, boolean optimize) throws IOException {
+        String key = getKey(image, optimize);
+        if (key != null) {
+            byte[] cached = getCached(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // convert to png
+        ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", tmp);
+        tmp.close();
+        byte[] data = tmp.toByteArray();
+
+        if (optimize) {
+            // compress
+            PngImage pngImage = new PngOptimizer().optimize(new PngImage(new ByteArrayInputStream(data)), 9);
+            // extract compressed data as png
+            ByteArrayOutputStream compressedPngData = new ByteArrayOutputStream();
+            DataOutputStream outputStreamWrapper = new DataOutputStream(compressedPngData);
+            outputStreamWrapper.writeLong(PngImage.SIGNATURE);
+            for (PngChunk chunk : pngImage.getChunks()) {
+                outputStreamWrapper.writeInt(chunk.getLength());
+                outputStreamWrapper.write(chunk.getType());
+                outputStreamWrapper.write(chunk.getData());
+                outputStreamWrapper.writeInt((int) chunk.getCRC());
+            }
+            outputStreamWrapper.close();
+            data = compressedPngData.toByteArray();
+        }
+
+        if (key != null) {
+            putCached(key, data);
+        }
+        return data;
+    }
+
+    // encode an image as png (optionally optimized for size)
+    public static byte[] encode(BufferedImage image, boolean optimize) throws IOException {
+        return encodeImage(image, optimize);
+    }
+
+    // encode several images in parallel (the results are in the same order)
+    public static byte[][] encode(BufferedImage[] images, boolean optimize) throws IOException {
+        return encode(images, optimize, null);
+    }
+
+    // encode several images in parallel and notify the listener (can be null)
+    public static byte[][] encode(BufferedImage[] images, final boolean optimize, EncodeListener listener) throws IOException {
+        ArrayList<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        for (final BufferedImage image : images) {
+            futures.add(WorkerPool.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return encodeImage(image, optimize);
+                }
+            }));
+        }
+        byte[][] result = new byte[images.length][];
+        try {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = futures.get(i).get();
+                if (listener != null) {
+                    listener.onEncoded(i);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding images.", e);
+        } catch (ExecutionException e) {
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package com.vitco.app.util.graphic;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the parallel and cached png encoding.
+ */
+public class PngEncoderTest {
+
+    // helper - an image with some structure (so that it compresses)
+    private static BufferedImage createImage(int size, long seed) {
+        Random rand = new Random(seed);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                image.setRGB(x, y, rand.nextInt(4) == 0 ? rand.nextInt() : 0xFF000000 | (x * 7) | (y << 8));
+            }
+        }
+        return image;
+    }
+
+    // helper
+    private static void assertSame(BufferedImage image, byte[] png) throws Exception {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        assert decoded.getWidth() == image.getWidth() && decoded.getHeight() == image.getHeight();
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                assert decoded.getRGB(x, y) == image.getRGB(x, y);
+            }
+        }
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        PngEncoder.clearCache();
+        BufferedImage[] images = new BufferedImage[8];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = createImage(32 + i, i);
+        }
+        for (boolean optimize : new boolean[] {false, true}) {
+            byte[][] encoded = PngEncoder.encode(images, optimize);
+            for (int i = 0; i < images.length; i++) {
+                assertSame(images[i], encoded[i]);
+                assert Arrays.equals(encoded[i], PngEncoder.encode(images[i], optimize));
+            }
+        }
+        // a changed image is encoded again
+        BufferedImage image = images[0];
+        byte[] before = PngEncoder.encode(image, true);
+        image.setRGB(0, 0, 0xFF123456);
+        byte[] after = PngEncoder.encode(image, true);
+        assert before != after;
+        assertSame(image, after);
+    }
+
+    @Test
+    public void testSharedData() throws Exception {
+        PngEncoder.clearCache();
+        // sub images of the same raster
+        BufferedImage image = createImage(64, 1);
+        BufferedImage first = image.getSubimage(0, 0, 32, 32);
+        BufferedImage second = image.getSubimage(32, 32, 32, 32);
+        assertSame(first, PngEncoder.encode(first, false));
+        assertSame(second, PngEncoder.encode(second, false));
+        // indexed images with the same data but different palettes
+        byte[] red = new byte[] {0, (byte) 255};
+        byte[] none = new byte[] {0, 0};
+        BufferedImage redImage = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(1, 2, red, none, none));
+        BufferedImage blueImage = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(1, 2, none, none, red));
+        redImage.getRaster().setSample(3, 4, 0, 1);
+        blueImage.getRaster().setSample(3, 4, 0, 1);
+        assertSame(redImage, PngEncoder.encode(redImage, false));
+        assertSame(blueImage, PngEncoder.encode(blueImage, false));
+        // the listener is notified in order
+        final int[] notified = {0};
+        PngEncoder.encode(new BufferedImage[] {first, second, image}, false, new PngEncoder.EncodeListener() {
+            @Override
+            public void onEncoded(int index) {
+                assert index == notified[0]++;
+            }
+        });
+        assert notified[0] == 3;
+    }
+
+    // encoding many textures (sequential, parallel and cached)
+    @Test
+    public void benchmark() throws Exception {
+        BufferedImage[] images = new BufferedImage[16];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = createImage(128, i);
+        }
+        PngEncoder.clearCache();
+        long time = System.currentTimeMillis();
+        for (BufferedImage image : images) {
+            PngEncoder.encode(image, true);
+        }
+        System.out.println("Sequential: " + (System.currentTimeMillis() - time) + " ms");
+
+        PngEncoder.clearCache();
+        time = System.currentTimeMillis();
+        PngEncoder.encode(images, true);
+        System.out.println("Parallel: " + (System.currentTimeMillis() - time) + " ms");
+
+        time = System.currentTimeMillis();
+        PngEncoder.encode(images, true);
+        System.out.println("Cached: " + (System.currentTimeMillis() - time) + " ms");
+    }
+}
@@ -0,0 +1,234 @@
+package com.vitco.app.util.graphic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a png image strip by strip, so the image is never in memory as a whole.
+ *
+ * The strips are encoded independently with encodeStrip() (e.g. on different threads)
+ * and then written in order. Every strip is a part of the deflate stream that ends
+ * with a sync flush, so the encoded strips can simply be appended to each other.
+ */
+public final class PngStreamWriter {
+
+    // png signature
+    private static final byte[] SIGNATURE = new byte[] {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    // zlib header (deflate, fast compression)
+    private static final byte[] ZLIB_HEADER = new byte[] {0x78, 0x5E};
+
+    // compression level (much faster than the default, the size is nearly the same)
+    private static final int COMPRESSION_LEVEL = 4;
+
+    // the last (empty) block of the deflate stream
+    private static final byte[] FINAL_BLOCK = new byte[] {0x01, 0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    // an encoded strip of rows
+    public static final class Strip {
+        private final int rows;
+        private final byte[] data;
+        // checksum and length of the uncompressed (filtered) rows
+        private final long adler;
+        private final long length;
+
+        private Strip(int rows, byte[] data, long adler, long length) {
+            this.rows = rows;
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+
+        // the size of the encoded data
+        public int getSize() {
+            return data.length;
+        }
+    }
+
+    // ---------------------------
+    // encoding
+
+    // the paeth predictor
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        return pa <= pb && pa <= pc ? a : (pb <= pc ? b : c);
+    }
+
+    // filter a row with all filter types and copy the one with the smallest sum of
+    // absolute differences (prev is null for the first row of a strip)
+    private static void filterRow(byte[] row, byte[] prev, byte[][] candidates, byte[] target, int offset) {
+        int len = row.length;
+        long[] sums = new long[5];
+        // none
+        for (int i = 0; i < len; i++) {
+            sums[0] += Math.abs(row[i]);
+        }
+        // sub
+        byte[] sub = candidates[1];
+        for (int i = 0; i < len; i++) {
+            int value = i < 4 ? row[i] : row[i] - row[i - 4];
+            sub[i] = (byte) value;
+            sums[1] += Math.abs(sub[i]);
+        }
+        if (prev != null) {
+            byte[] up = candidates[2];
+            byte[] average = candidates[3];
+            byte[] paeth = candidates[4];
+            for (int i = 0; i < len; i++) {
+                int x = row[i] & 0xFF;
+                int a = i < 4 ? 0 : row[i - 4] & 0xFF;
+                int b = prev[i] & 0xFF;
+                int c = i < 4 ? 0 : prev[i - 4] & 0xFF;
+                up[i] = (byte) (x - b);
+                average[i] = (byte) (x - ((a + b) >> 1));
+                paeth[i] = (byte) (x - paeth(a, b, c));
+                sums[2] += Math.abs(up[i]);
+                sums[3] += Math.abs(average[i]);
+                sums[4] += Math.abs(paeth[i]);
+            }
+        }
+        int bestType = 0;
+        for (int type = 1; type < (prev == null ? 2 : 5); type++) {
+            if (sums[type] < sums[bestType]) {
+                bestType = type;
+            }
+        }
+        target[offset] = (byte) bestType;
+        System.arraycopy(bestType == 0 ? row : candidates[bestType], 0, target, offset + 1, len);
+    }
+
+    // encode rows of argb pixels (can be called from any thread)
+    public static Strip encodeStrip(int[] argb, int width, int rows) {
+        int rowLength = width * 4;
+        byte[] raw = new byte[rows * (rowLength + 1)];
+        byte[] row = new byte[rowLength];
+        byte[] prev = new byte[rowLength];
+        byte[][] candidates = new byte[5][rowLength];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int color = argb[i];
+                row[x * 4] = (byte) (color >> 16);
+                row[x * 4 + 1] = (byte) (color >> 8);
+                row[x * 4 + 2] = (byte) color;
+                row[x * 4 + 3] = (byte) (color >>> 24);
+            }
+            // the first row does not depend on the previous strip
+            filterRow(row, y == 0 ? null : prev, candidates, raw, y * (rowLength + 1));
+            byte[] tmp = prev;
+            prev = row;
+            row = tmp;
+        }
+
+        // compress (no final block, this is done when the image is finished)
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL, true);
+        deflater.setInput(raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[65536];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length || !deflater.needsInput());
+        deflater.end();
+
+        Adler32 adler = new Adler32();
+        adler.update(raw);
+        return new Strip(rows, out.toByteArray(), adler.getValue(), raw.length);
+    }
+
+    // combine the adler checksum of two parts (see adler32_combine of zlib)
+    static long combineAdler(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    // ---------------------------
+    // writing
+
+    private final DataOutputStream out;
+    private final int height;
+
+    // the rows written so far
+    private int rows = 0;
+    // checksum of all written (uncompressed) rows
+    private long adler = 1;
+
+    // constructor (writes the header)
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.height = height;
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // bit depth
+        headerData.writeByte(6); // color type (rgba)
+        headerData.writeByte(0); // compression
+        headerData.writeByte(0); // filter
+        headerData.writeByte(0); // interlace
+        writeChunk("IHDR", header.toByteArray());
+    }
+
+    // write a chunk
+    private void writeChunk(String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // write the next strip
+    public void write(Strip strip) throws IOException {
+        if (rows + strip.rows > height) {
+            throw new IOException("Too many rows for the image height.");
+        }
+        if (rows == 0) {
+            // the zlib header is part of the first chunk
+            byte[] data = new byte[ZLIB_HEADER.length + strip.data.length];
+            System.arraycopy(ZLIB_HEADER, 0, data, 0, ZLIB_HEADER.length);
+            System.arraycopy(strip.data, 0, data, ZLIB_HEADER.length, strip.data.length);
+            writeChunk("IDAT", data);
+        } else {
+            writeChunk("IDAT", strip.data);
+        }
+        adler = combineAdler(adler, strip.adler, strip.length);
+        rows += strip.rows;
+    }
+
+    // finish the image (all rows need to be written)
+    public void finish() throws IOException {
+        if (rows != height) {
+            throw new IOException("Missing rows (" + rows + " of " + height + " written).");
+        }
+        // end the deflate stream and add the checksum
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        DataOutputStream endData = new DataOutputStream(end);
+        endData.write(FINAL_BLOCK);
+        endData.writeInt((int) adler);
+        writeChunk("IDAT", end.toByteArray());
+        writeChunk("IEND", new byte[0]);
+        out.flush();
+    }
+}
@@ -0,0 +1,126 @@
+package com.vitco.app.util.graphic;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+
+/**
+ * Test the png encoding strip by strip.
+ */
+public class PngStreamWriterTest {
+
+    // helper - argb pixels with some structure (so that all filters are used)
+    private static int[] createPixels(int width, int height, long seed) {
+        Random rand = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = rand.nextInt(10) == 0 ? rand.nextInt(256) : 255;
+                pixels[y * width + x] = rand.nextInt(5) == 0 ? rand.nextInt() :
+                        (alpha << 24) | ((x * 3) & 0xFF) << 16 | ((y * 5) & 0xFF) << 8 | ((x + y) & 0xFF);
+            }
+        }
+        return pixels;
+    }
+
+    // helper - encode the pixels in strips
+    private static byte[] encode(int[] pixels, int width, int height, int stripRows) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngStreamWriter writer = new PngStreamWriter(out, width, height);
+        for (int y = 0; y < height; y += stripRows) {
+            int rows = Math.min(stripRows, height - y);
+            int[] strip = new int[width * rows];
+            System.arraycopy(pixels, y * width, strip, 0, strip.length);
+            writer.write(PngStreamWriter.encodeStrip(strip, width, rows));
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        int width = 301;
+        int height = 257;
+        int[] pixels = createPixels(width, height, 1);
+        for (int stripRows : new int[] {1, 7, 64, 257}) {
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(pixels, width, height, stripRows)));
+            assert decoded.getWidth() == width && decoded.getHeight() == height;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assert decoded.getRGB(x, y) == pixels[y * width + x] : stripRows + " " + x + " " + y;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCombineAdler() throws Exception {
+        Random rand = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            byte[] data = new byte[rand.nextInt(200000)];
+            rand.nextBytes(data);
+            int split = rand.nextInt(data.length + 1);
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+            Adler32 all = new Adler32();
+            all.update(data);
+            assert PngStreamWriter.combineAdler(first.getValue(), second.getValue(), data.length - split) == all.getValue();
+        }
+    }
+
+    // encoding a large image in one piece and in strips (on all cores)
+    @Test
+    public void benchmark() throws Exception {
+        final int width = 4096;
+        int height = 2048;
+        final int stripRows = 128;
+        final int[] pixels = createPixels(width, height, 1);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        for (int run = 0; run < 3; run++) {
+            long time = System.currentTimeMillis();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            long single = System.currentTimeMillis() - time;
+            int singleSize = out.size();
+
+            time = System.currentTimeMillis();
+            ArrayList<Future<PngStreamWriter.Strip>> futures = new ArrayList<Future<PngStreamWriter.Strip>>();
+            for (int y = 0; y < height; y += stripRows) {
+                final int from = y;
+                futures.add(pool.submit(new Callable<PngStreamWriter.Strip>() {
+                    @Override
+                    public PngStreamWriter.Strip call() throws Exception {
+                        int[] strip = new int[width * stripRows];
+                        System.arraycopy(pixels, from * width, strip, 0, strip.length);
+                        return PngStreamWriter.encodeStrip(strip, width, stripRows);
+                    }
+                }));
+            }
+            out = new ByteArrayOutputStream();
+            PngStreamWriter writer = new PngStreamWriter(out, width, height);
+            for (Future<PngStreamWriter.Strip> future : futures) {
+                writer.write(future.get());
+            }
+            writer.finish();
+            long strips = System.currentTimeMillis() - time;
+
+            System.out.println(String.format("4096 x 2048: ImageIO %d ms (%d kb), strips %d ms (%d kb) (%d cores)",
+                    single, singleSize / 1024, strips, out.size() / 1024, Runtime.getRuntime().availableProcessors()));
+        }
+        pool.shutdown();
+    }
+}
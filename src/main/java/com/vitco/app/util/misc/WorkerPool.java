@@ -0,0 +1,105 @@
+package com.vitco.app.util.misc;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The worker threads that are shared by all work that is split into tasks
+ * (post-processing, offline rendering and png encoding).
+ *
+ * One worker per core, so the different kinds of work do not compete with each other
+ * for more threads than there are cores.
+ */
+public final class WorkerPool {
+
+    // prevent instantiation
+    private WorkerPool() {}
+
+    // the amount of workers
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    // create a pool of daemon threads (for work that needs its own amount of threads)
+    public static ExecutorService create(final String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // the workers
+    private static final ExecutorService pool = create("Worker", THREADS);
+
+    // processes a single part of the work
+    public interface PartProcessor {
+        void process(int part);
+    }
+
+    // true if there is more than one core (otherwise splitting work only adds overhead)
+    public static boolean isParallel() {
+        return THREADS > 1;
+    }
+
+    // run a task on a worker
+    public static <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    // process the parts [0, count) and return when all are done
+    // (the calling thread processes parts as well, so this also works when all workers
+    // are busy and when it is called from a worker)
+    public static void forEach(final int count, final PartProcessor processor) {
+        if (count <= 1 || !isParallel()) {
+            for (int part = 0; part < count; part++) {
+                processor.process(part);
+            }
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+        Runnable runner = new Runnable() {
+            @Override
+            public void run() {
+                for (int part = next.getAndIncrement(); part < count; part = next.getAndIncrement()) {
+                    try {
+                        processor.process(part);
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        for (int i = 1, helpers = Math.min(count, THREADS); i < helpers; i++) {
+            pool.execute(runner);
+        }
+        runner.run();
+        // the remaining parts are already processed by workers
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+}
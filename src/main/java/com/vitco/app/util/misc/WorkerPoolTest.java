@@ -0,0 +1,61 @@
+package com.vitco.app.util.misc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Test the shared workers.
+ */
+public class WorkerPoolTest {
+
+    // every part is processed exactly once (also when called from the workers)
+    @Test
+    public void testForEach() throws Exception {
+        ArrayList<Future<AtomicIntegerArray>> futures = new ArrayList<Future<AtomicIntegerArray>>();
+        for (int i = 0; i < 20; i++) {
+            final int count = i * 7;
+            futures.add(WorkerPool.submit(new Callable<AtomicIntegerArray>() {
+                @Override
+                public AtomicIntegerArray call() throws Exception {
+                    final AtomicIntegerArray processed = new AtomicIntegerArray(count);
+                    WorkerPool.forEach(count, new WorkerPool.PartProcessor() {
+                        @Override
+                        public void process(int part) {
+                            processed.incrementAndGet(part);
+                        }
+                    });
+                    return processed;
+                }
+            }));
+        }
+        for (Future<AtomicIntegerArray> future : futures) {
+            AtomicIntegerArray processed = future.get();
+            for (int part = 0; part < processed.length(); part++) {
+                assert processed.get(part) == 1;
+            }
+        }
+    }
+
+    // an exception of a part is thrown by forEach
+    @Test
+    public void testException() throws Exception {
+        boolean thrown = false;
+        try {
+            WorkerPool.forEach(100, new WorkerPool.PartProcessor() {
+                @Override
+                public void process(int part) {
+                    if (part == 42) {
+                        throw new IllegalStateException();
+                    }
+                }
+            });
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        assert thrown;
+    }
+}